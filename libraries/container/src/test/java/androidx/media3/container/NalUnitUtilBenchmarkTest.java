@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.container;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.Util;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Throughput benchmarks for scanning Annex B data with {@link NalUnitUtil}.
+ *
+ * <p>The data is a synthetic stream of NAL units whose payloads contain zero bytes and emulation
+ * prevention bytes at a rate similar to encoded video. The throughput is logged for comparison, and
+ * the tests only fail if the scan results are wrong.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class NalUnitUtilBenchmarkTest {
+
+  private static final String TAG = "NalUnitUtilBenchmark";
+
+  private static final int NAL_UNIT_COUNT = 2_000;
+  private static final int WARM_UP_RUNS = 5;
+  private static final int MEASURED_RUNS = 20;
+
+  private static byte[] data;
+  private static int escapeCount;
+
+  @BeforeClass
+  public static void createData() {
+    Random random = new Random(/* seed= */ 0);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    escapeCount = 0;
+    for (int i = 0; i < NAL_UNIT_COUNT; i++) {
+      output.write(NalUnitUtil.NAL_START_CODE, /* off= */ 0, NalUnitUtil.NAL_START_CODE.length);
+      output.write(NalUnitUtil.NAL_UNIT_TYPE_NON_IDR);
+      int payloadLength = 100 + random.nextInt(1_900);
+      for (int j = 0; j < payloadLength; j++) {
+        if (random.nextInt(512) == 0) {
+          output.write(0);
+          output.write(0);
+          output.write(3);
+          escapeCount++;
+        } else if (random.nextInt(16) == 0) {
+          output.write(0);
+        }
+        // A byte other than zero can't complete a start code or emulation prevention sequence.
+        output.write(1 + random.nextInt(255));
+      }
+    }
+    data = output.toByteArray();
+  }
+
+  @Test
+  public void findNalUnit_tsPacketPayloads() {
+    // The payload of a TS packet without an adaptation field.
+    runFindNalUnitBenchmark(/* chunkLength= */ 184);
+  }
+
+  @Test
+  public void findNalUnit_largeBuffers() {
+    runFindNalUnitBenchmark(/* chunkLength= */ 65_536);
+  }
+
+  @Test
+  public void unescapeStream() {
+    byte[] buffer = new byte[data.length];
+    int unescapedLength = 0;
+    for (int i = 0; i < WARM_UP_RUNS; i++) {
+      System.arraycopy(data, 0, buffer, 0, data.length);
+      unescapedLength = NalUnitUtil.unescapeStream(buffer, data.length);
+    }
+    long elapsedTimeNs = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      System.arraycopy(data, 0, buffer, 0, data.length);
+      long startTimeNs = System.nanoTime();
+      unescapedLength = NalUnitUtil.unescapeStream(buffer, data.length);
+      elapsedTimeNs += System.nanoTime() - startTimeNs;
+    }
+
+    logThroughput("unescapeStream", elapsedTimeNs);
+    assertThat(unescapedLength).isEqualTo(data.length - escapeCount);
+  }
+
+  private static void runFindNalUnitBenchmark(int chunkLength) {
+    for (int i = 0; i < WARM_UP_RUNS; i++) {
+      findNalUnits(chunkLength);
+    }
+    int nalUnitCount = 0;
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      nalUnitCount = findNalUnits(chunkLength);
+    }
+    long elapsedTimeNs = System.nanoTime() - startTimeNs;
+
+    logThroughput("findNalUnit with " + chunkLength + " byte chunks", elapsedTimeNs);
+    assertThat(nalUnitCount).isEqualTo(NAL_UNIT_COUNT);
+  }
+
+  /** Returns the number of NAL units found when scanning the data in chunks, as readers do. */
+  private static int findNalUnits(int chunkLength) {
+    boolean[] prefixFlags = new boolean[3];
+    int nalUnitCount = 0;
+    for (int chunkStart = 0; chunkStart < data.length; chunkStart += chunkLength) {
+      int chunkEnd = Math.min(chunkStart + chunkLength, data.length);
+      int offset = chunkStart;
+      while (true) {
+        int nalUnitOffset = NalUnitUtil.findNalUnit(data, offset, chunkEnd, prefixFlags);
+        if (nalUnitOffset == chunkEnd) {
+          break;
+        }
+        nalUnitCount++;
+        offset = nalUnitOffset + 3;
+      }
+    }
+    return nalUnitCount;
+  }
+
+  private static void logThroughput(String name, long elapsedTimeNs) {
+    double megabytesPerSecond = (double) data.length * MEASURED_RUNS * 1_000 / elapsedTimeNs;
+    Log.i(TAG, Util.formatInvariant("%s: %.2f MB/s", name, megabytesPerSecond));
+  }
+}
@@ -156,6 +156,15 @@ public final class NalUnitUtilTest {
     assertUnescapeMatchesExpected("0000030200000300", "000002000000");
   }
 
+  @Test
+  public void unescape_multipleEscapeSequences_unescapesAll() {
+    assertUnescapeMatchesExpected("000003", "0000");
+    assertUnescapeMatchesExpected("00000300000300", "0000000000");
+    assertUnescapeMatchesExpected("0000000301FF0000030000", "00000001FF00000000");
+    assertUnescapeMatchesExpected("AB00000003000003", "AB0000000000");
+    assertUnescapeMatchesExpected("0003000003", "00030000");
+  }
+
   @Test
   public void discardToSps() {
     assertDiscardToSpsMatchesExpected("", "");
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.database;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Coalesces keyed writes to a database provided by a {@link DatabaseProvider} into batched
+ * transactions.
+ *
+ * <p>Each write is associated with a key, and a pending write is replaced if a new write with the
+ * same key is issued before it's flushed. Pending writes are flushed in a single transaction when
+ * {@link #flush()} is called, when the number of pending writes reaches the configured maximum, or
+ * by the first call to {@link #write(String, Write)} made after the oldest pending write has been
+ * pending for longer than the configured maximum delay.
+ *
+ * <p>Pending writes are not visible to readers of the database. Callers should therefore {@link
+ * #flush()} before reading data that may have been written through the batcher, and should {@link
+ * #cancel(String) cancel} any pending write for a key before deleting the corresponding data.
+ *
+ * <p>Pending writes are lost if the process is killed before they're flushed. Only writes whose
+ * loss is acceptable, such as progress updates or access timestamps, should be batched.
+ *
+ * <p>This class is thread safe.
+ */
+@UnstableApi
+public final class DatabaseWriteBatcher {
+
+  /** A write to the database. */
+  public interface Write {
+
+    /**
+     * Applies the write to the database.
+     *
+     * @param database The writable database.
+     * @throws SQLException If an error occurs applying the write.
+     */
+    void apply(SQLiteDatabase database) throws SQLException;
+  }
+
+  /** The default maximum number of pending writes. */
+  public static final int DEFAULT_MAX_PENDING_WRITE_COUNT = 256;
+
+  private final DatabaseProvider databaseProvider;
+  private final long maxWriteDelayMs;
+  private final int maxPendingWriteCount;
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Write> pendingWrites;
+
+  @GuardedBy("this")
+  private long oldestPendingWriteTimeMs;
+
+  /**
+   * Creates an instance.
+   *
+   * @param databaseProvider Provides the database to which writes are applied.
+   * @param maxWriteDelayMs The maximum duration for which a write may be pending before it's
+   *     flushed by a subsequent write, in milliseconds. Zero disables batching, meaning that each
+   *     write is applied immediately.
+   * @param maxPendingWriteCount The maximum number of pending writes. A flush occurs when this
+   *     number is reached.
+   */
+  public DatabaseWriteBatcher(
+      DatabaseProvider databaseProvider, long maxWriteDelayMs, int maxPendingWriteCount) {
+    this(databaseProvider, maxWriteDelayMs, maxPendingWriteCount, Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ DatabaseWriteBatcher(
+      DatabaseProvider databaseProvider,
+      long maxWriteDelayMs,
+      int maxPendingWriteCount,
+      Clock clock) {
+    checkArgument(maxWriteDelayMs >= 0);
+    checkArgument(maxPendingWriteCount > 0);
+    this.databaseProvider = databaseProvider;
+    this.maxWriteDelayMs = maxWriteDelayMs;
+    this.maxPendingWriteCount = maxPendingWriteCount;
+    this.clock = clock;
+    pendingWrites = new LinkedHashMap<>();
+    oldestPendingWriteTimeMs = C.TIME_UNSET;
+  }
+
+  /**
+   * Issues a write, replacing any pending write with the same key.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param key The key of the write.
+   * @param write The write.
+   * @throws DatabaseIOException If a flush is triggered and an error occurs applying the pending
+   *     writes.
+   */
+  @WorkerThread
+  public synchronized void write(String key, Write write) throws DatabaseIOException {
+    long nowMs = clock.elapsedRealtime();
+    // Remove before putting so that iteration order reflects the latest write for each key.
+    pendingWrites.remove(key);
+    pendingWrites.put(key, write);
+    if (oldestPendingWriteTimeMs == C.TIME_UNSET) {
+      oldestPendingWriteTimeMs = nowMs;
+    }
+    if (maxWriteDelayMs == 0
+        || pendingWrites.size() >= maxPendingWriteCount
+        || nowMs - oldestPendingWriteTimeMs >= maxWriteDelayMs) {
+      flush();
+    }
+  }
+
+  /**
+   * Cancels the pending write with the given key, if there is one.
+   *
+   * @param key The key of the write to cancel.
+   */
+  public synchronized void cancel(String key) {
+    pendingWrites.remove(key);
+    if (pendingWrites.isEmpty()) {
+      oldestPendingWriteTimeMs = C.TIME_UNSET;
+    }
+  }
+
+  /** Returns the number of pending writes. */
+  public synchronized int getPendingWriteCount() {
+    return pendingWrites.size();
+  }
+
+  /**
+   * Applies all pending writes in a single transaction.
+   *
+   * <p>Pending writes are discarded if an error occurs, in which case none of them are applied.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @throws DatabaseIOException If an error occurs applying the pending writes.
+   */
+  @WorkerThread
+  public synchronized void flush() throws DatabaseIOException {
+    if (pendingWrites.isEmpty()) {
+      return;
+    }
+    List<Write> writes = new ArrayList<>(pendingWrites.values());
+    pendingWrites.clear();
+    oldestPendingWriteTimeMs = C.TIME_UNSET;
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        for (int i = 0; i < writes.size(); i++) {
+          writes.get(i).apply(writableDatabase);
+        }
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.database;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DatabaseWriteBatcher}. */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseWriteBatcherTest {
+
+  private static final String TABLE_NAME = "TestTable";
+
+  private DatabaseProvider databaseProvider;
+  private FakeClock clock;
+
+  @Before
+  public void setUp() {
+    databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    databaseProvider
+        .getWritableDatabase()
+        .execSQL("CREATE TABLE " + TABLE_NAME + " (key TEXT PRIMARY KEY NOT NULL, value INTEGER)");
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+  }
+
+  @Test
+  public void write_withZeroDelay_appliesImmediately() throws DatabaseIOException {
+    DatabaseWriteBatcher batcher =
+        new DatabaseWriteBatcher(
+            databaseProvider, /* maxWriteDelayMs= */ 0, /* maxPendingWriteCount= */ 10, clock);
+
+    batcher.write("a", newWrite("a", 1));
+
+    assertThat(batcher.getPendingWriteCount()).isEqualTo(0);
+    assertThat(readTable()).containsExactly("a", 1L);
+  }
+
+  @Test
+  public void write_withinDelay_isPendingUntilFlush() throws DatabaseIOException {
+    DatabaseWriteBatcher batcher =
+        new DatabaseWriteBatcher(
+            databaseProvider, /* maxWriteDelayMs= */ 1000, /* maxPendingWriteCount= */ 10, clock);
+
+    batcher.write("a", newWrite("a", 1));
+    batcher.write("b", newWrite("b", 2));
+
+    assertThat(batcher.getPendingWriteCount()).isEqualTo(2);
+    assertThat(readTable()).isEmpty();
+
+    batcher.flush();
+
+    assertThat(batcher.getPendingWriteCount()).isEqualTo(0);
+    assertThat(readTable()).containsExactly("a", 1L, "b", 2L);
+  }
+
+  @Test
+  public void write_sameKey_replacesPendingWrite() throws DatabaseIOException {
+    DatabaseWriteBatcher batcher =
+        new DatabaseWriteBatcher(
+            databaseProvider, /* maxWriteDelayMs= */ 1000, /* maxPendingWriteCount= */ 10, clock);
+
+    batcher.write("a", newWrite("a", 1));
+    batcher.write("a", newWrite("a", 2));
+
+    assertThat(batcher.getPendingWriteCount()).isEqualTo(1);
+    batcher.flush();
+    assertThat(readTable()).containsExactly("a", 2L);
+  }
+
+  @Test
+  public void write_afterDelayElapsed_flushesPendingWrites() throws DatabaseIOException {
+    DatabaseWriteBatcher batcher =
+        new DatabaseWriteBatcher(
+            databaseProvider, /* maxWriteDelayMs= */ 1000, /* maxPendingWriteCount= */ 10, clock);
+
+    batcher.write("a", newWrite("a", 1));
+    clock.advanceTime(999);
+    batcher.write("b", newWrite("b", 2));
+    assertThat(readTable()).isEmpty();
+    clock.advanceTime(1);
+    batcher.write("c", newWrite("c", 3));
+
+    assertThat(batcher.getPendingWriteCount()).isEqualTo(0);
+    assertThat(readTable()).containsExactly("a", 1L, "b", 2L, "c", 3L);
+  }
+
+  @Test
+  public void write_reachingMaxPendingWriteCount_flushesPendingWrites()
+      throws DatabaseIOException {
+    DatabaseWriteBatcher batcher =
+        new DatabaseWriteBatcher(
+            databaseProvider, /* maxWriteDelayMs= */ 1000, /* maxPendingWriteCount= */ 2, clock);
+
+    batcher.write("a", newWrite("a", 1));
+    assertThat(readTable()).isEmpty();
+    batcher.write("b", newWrite("b", 2));
+
+    assertThat(readTable()).containsExactly("a", 1L, "b", 2L);
+  }
+
+  @Test
+  public void cancel_removesPendingWrite() throws DatabaseIOException {
+    DatabaseWriteBatcher batcher =
+        new DatabaseWriteBatcher(
+            databaseProvider, /* maxWriteDelayMs= */ 1000, /* maxPendingWriteCount= */ 10, clock);
+
+    batcher.write("a", newWrite("a", 1));
+    batcher.write("b", newWrite("b", 2));
+    batcher.cancel("a");
+    batcher.flush();
+
+    assertThat(readTable()).containsExactly("b", 2L);
+  }
+
+  private static DatabaseWriteBatcher.Write newWrite(String key, long value) {
+    return database -> {
+      ContentValues values = new ContentValues();
+      values.put("key", key);
+      values.put("value", value);
+      database.replaceOrThrow(TABLE_NAME, /* nullColumnHack= */ null, values);
+    };
+  }
+
+  private Map<String, Long> readTable() {
+    Map<String, Long> values = new HashMap<>();
+    SQLiteDatabase database = databaseProvider.getReadableDatabase();
+    try (Cursor cursor =
+        database.query(
+            TABLE_NAME,
+            new String[] {"key", "value"},
+            /* selection= */ null,
+            /* selectionArgs= */ null,
+            /* groupBy= */ null,
+            /* having= */ null,
+            /* orderBy= */ null)) {
+      while (cursor.moveToNext()) {
+        values.put(cursor.getString(0), cursor.getLong(1));
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.min;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import javax.net.SocketFactory;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A pool of persistent HTTP/1.1 connections, shared by the {@link SocketHttpDataSource} instances
+ * that are created by the same {@link SocketHttpDataSource.Factory}.
+ *
+ * <p>Connections are keyed by scheme, host and port. A connection whose response has been read in
+ * full is returned to the pool and reused by the next request to the same host, avoiding the cost
+ * of TCP and TLS connection setup. Idle connections are closed after the keep-alive duration, or
+ * earlier if the server advertises a shorter keep-alive timeout.
+ *
+ * <p>The number of concurrent connections to each host is limited. When the limit is reached, a
+ * request waits for a connection to be returned to the pool. If pipelining is enabled, a {@code
+ * GET} or {@code HEAD} request may instead be written to a connection whose previous response is
+ * still being read, and its response is read once the previous ones have been consumed.
+ * Pipelining can cause head-of-line blocking, and some servers and proxies don't handle it
+ * correctly, so it's disabled by default.
+ *
+ * <p>This class is thread safe.
+ */
+@UnstableApi
+public final class HttpConnectionPool {
+
+  /** Builder for {@link HttpConnectionPool} instances. */
+  public static final class Builder {
+
+    private int maxConnectionsPerHost;
+    private int maxIdleConnectionsPerHost;
+    private long keepAliveDurationMs;
+    private int maxPipelinedRequestsPerConnection;
+    private Clock clock;
+
+    /** Creates a builder. */
+    public Builder() {
+      maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+      maxIdleConnectionsPerHost = DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST;
+      keepAliveDurationMs = DEFAULT_KEEP_ALIVE_DURATION_MS;
+      maxPipelinedRequestsPerConnection = 1;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the maximum number of connections to a single host, including both idle connections
+     * and connections that are in use.
+     *
+     * <p>The default is {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST}.
+     *
+     * @param maxConnectionsPerHost The maximum number of connections per host.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+      checkArgument(maxConnectionsPerHost > 0);
+      this.maxConnectionsPerHost = maxConnectionsPerHost;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of idle connections that are kept open for a single host.
+     *
+     * <p>The default is {@link #DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST}.
+     *
+     * @param maxIdleConnectionsPerHost The maximum number of idle connections per host.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxIdleConnectionsPerHost(int maxIdleConnectionsPerHost) {
+      checkArgument(maxIdleConnectionsPerHost >= 0);
+      this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+      return this;
+    }
+
+    /**
+     * Sets the maximum duration for which an idle connection is kept open, in milliseconds.
+     *
+     * <p>The default is {@link #DEFAULT_KEEP_ALIVE_DURATION_MS}.
+     *
+     * @param keepAliveDurationMs The keep-alive duration, in milliseconds.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setKeepAliveDurationMs(long keepAliveDurationMs) {
+      checkArgument(keepAliveDurationMs >= 0);
+      this.keepAliveDurationMs = keepAliveDurationMs;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of requests that may be outstanding on a single connection. Values
+     * greater than 1 enable HTTP/1.1 pipelining of {@code GET} and {@code HEAD} requests, which is
+     * used only when the per-host connection limit has been reached.
+     *
+     * <p>The default is 1, meaning that pipelining is disabled.
+     *
+     * @param maxPipelinedRequestsPerConnection The maximum number of outstanding requests per
+     *     connection.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    public Builder setMaxPipelinedRequestsPerConnection(int maxPipelinedRequestsPerConnection) {
+      checkArgument(maxPipelinedRequestsPerConnection > 0);
+      this.maxPipelinedRequestsPerConnection = maxPipelinedRequestsPerConnection;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to expire idle connections. Should only be set for testing.
+     *
+     * @param clock The {@link Clock}.
+     * @return This builder.
+     */
+    @CanIgnoreReturnValue
+    @VisibleForTesting
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Builds the {@link HttpConnectionPool}. */
+    public HttpConnectionPool build() {
+      return new HttpConnectionPool(this);
+    }
+  }
+
+  /** The default maximum number of connections per host. */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
+
+  /** The default maximum number of idle connections per host. */
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 4;
+
+  /** The default keep-alive duration for idle connections, in milliseconds. */
+  public static final long DEFAULT_KEEP_ALIVE_DURATION_MS = 60_000;
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final int maxConnectionsPerHost;
+  private final int maxIdleConnectionsPerHost;
+  private final long keepAliveDurationMs;
+  private final int maxPipelinedRequestsPerConnection;
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private final HashMap<String, HostConnections> hostConnections;
+
+  private HttpConnectionPool(Builder builder) {
+    maxConnectionsPerHost = builder.maxConnectionsPerHost;
+    maxIdleConnectionsPerHost = builder.maxIdleConnectionsPerHost;
+    keepAliveDurationMs = builder.keepAliveDurationMs;
+    maxPipelinedRequestsPerConnection = builder.maxPipelinedRequestsPerConnection;
+    clock = builder.clock;
+    hostConnections = new HashMap<>();
+  }
+
+  /** Returns the total number of open connections, including idle connections. */
+  public synchronized int getConnectionCount() {
+    int count = 0;
+    for (HostConnections connections : hostConnections.values()) {
+      count += connections.idle.size() + connections.active.size();
+    }
+    return count;
+  }
+
+  /** Returns the number of idle connections. */
+  public synchronized int getIdleConnectionCount() {
+    evictExpiredConnections();
+    int count = 0;
+    for (HostConnections connections : hostConnections.values()) {
+      count += connections.idle.size();
+    }
+    return count;
+  }
+
+  /** Closes all idle connections. Connections that are in use are unaffected. */
+  public synchronized void evictAll() {
+    for (HostConnections connections : hostConnections.values()) {
+      while (!connections.idle.isEmpty()) {
+        connections.idle.removeFirst().closeQuietly();
+      }
+    }
+  }
+
+  /**
+   * Acquires a connection to the given address, reusing an idle connection if one is available.
+   *
+   * <p>The request must be written using {@link Connection#writeRequest(byte[], byte[])}, and the
+   * connection must be returned by calling {@link #release(Connection, boolean, long)} once the
+   * response has been read or abandoned.
+   *
+   * @param address The address to connect to.
+   * @param connectTimeoutMs The connect timeout, in milliseconds. Also bounds the time spent
+   *     waiting for a connection when the per-host limit has been reached.
+   * @param readTimeoutMs The read timeout used while establishing a new connection, in
+   *     milliseconds. The read timeout for the response is applied by {@link
+   *     Connection#awaitResponse(int, int)}.
+   * @param allowPipelining Whether the request may be pipelined behind other requests.
+   * @param allowReuse Whether an idle connection may be reused.
+   * @return The connection.
+   * @throws IOException If a connection could not be established.
+   */
+  /* package */ Connection acquire(
+      Address address,
+      int connectTimeoutMs,
+      int readTimeoutMs,
+      boolean allowPipelining,
+      boolean allowReuse)
+      throws IOException {
+    long deadlineMs = clock.elapsedRealtime() + connectTimeoutMs;
+    HostConnections connections;
+    synchronized (this) {
+      connections = getHostConnections(address.key);
+      while (true) {
+        evictExpiredConnections();
+        if (allowReuse && !connections.idle.isEmpty()) {
+          // Prefer the most recently used connection, which is the least likely to have been
+          // closed by the server.
+          Connection connection = connections.idle.removeLast();
+          connections.active.add(connection);
+          connection.outstandingRequestCount++;
+          return connection;
+        }
+        int connectionCount =
+            connections.idle.size() + connections.active.size() + connections.pendingConnectCount;
+        if (connectionCount >= maxConnectionsPerHost && !connections.idle.isEmpty()) {
+          // Make room for a new connection by closing an idle one that mustn't be reused.
+          connections.idle.removeFirst().closeQuietly();
+          connectionCount--;
+        }
+        if (connectionCount < maxConnectionsPerHost) {
+          connections.pendingConnectCount++;
+          break;
+        }
+        if (allowPipelining && maxPipelinedRequestsPerConnection > 1) {
+          @Nullable Connection connection = getPipeliningCandidate(connections);
+          if (connection != null) {
+            connection.outstandingRequestCount++;
+            return connection;
+          }
+        }
+        long remainingMs = deadlineMs - clock.elapsedRealtime();
+        if (remainingMs <= 0) {
+          throw new SocketTimeoutException("Timed out waiting for a connection to " + address.key);
+        }
+        try {
+          wait(remainingMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+
+    Connection connection;
+    try {
+      connection = Connection.connect(address, connectTimeoutMs, readTimeoutMs);
+    } catch (IOException | RuntimeException e) {
+      synchronized (this) {
+        connections.pendingConnectCount--;
+        notifyAll();
+      }
+      throw e;
+    }
+    synchronized (this) {
+      connections.pendingConnectCount--;
+      connections.active.add(connection);
+      connection.outstandingRequestCount++;
+    }
+    return connection;
+  }
+
+  /**
+   * Releases a connection previously returned by {@link #acquire}, after the response to one of
+   * its requests has been read or abandoned.
+   *
+   * @param connection The connection.
+   * @param reusable Whether the connection can be used for further requests. Must be {@code false}
+   *     if the response wasn't read in full, or if the server requested that the connection be
+   *     closed.
+   * @param keepAliveTimeoutMs The keep-alive timeout advertised by the server, in milliseconds,
+   *     or {@link androidx.media3.common.C#TIME_UNSET} if unknown.
+   */
+  /* package */ void release(Connection connection, boolean reusable, long keepAliveTimeoutMs) {
+    connection.onResponseCompleted(reusable);
+    synchronized (this) {
+      HostConnections connections = getHostConnections(connection.address.key);
+      connection.outstandingRequestCount--;
+      if (connection.isBroken()) {
+        // Other requests may still be reading from or waiting for the connection. It's closed
+        // once they've all been released.
+        if (connection.outstandingRequestCount == 0) {
+          connections.active.remove(connection);
+          connection.closeQuietly();
+        }
+      } else if (connection.outstandingRequestCount == 0) {
+        connections.active.remove(connection);
+        long keepAliveDurationMs =
+            keepAliveTimeoutMs > 0
+                ? min(keepAliveTimeoutMs, this.keepAliveDurationMs)
+                : this.keepAliveDurationMs;
+        connection.expiryTimeMs = clock.elapsedRealtime() + keepAliveDurationMs;
+        connection.pipeliningSupported = true;
+        connections.idle.addLast(connection);
+        while (connections.idle.size() > maxIdleConnectionsPerHost) {
+          connections.idle.removeFirst().closeQuietly();
+        }
+      } else {
+        // The server kept the connection alive, so further requests can be pipelined onto it.
+        connection.pipeliningSupported = true;
+      }
+      notifyAll();
+    }
+  }
+
+  @GuardedBy("this")
+  private HostConnections getHostConnections(String key) {
+    @Nullable HostConnections connections = hostConnections.get(key);
+    if (connections == null) {
+      connections = new HostConnections();
+      hostConnections.put(key, connections);
+    }
+    return connections;
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private Connection getPipeliningCandidate(HostConnections connections) {
+    @Nullable Connection candidate = null;
+    for (int i = 0; i < connections.active.size(); i++) {
+      Connection connection = connections.active.get(i);
+      if (connection.pipeliningSupported
+          && !connection.isBroken()
+          && connection.outstandingRequestCount < maxPipelinedRequestsPerConnection
+          && (candidate == null
+              || connection.outstandingRequestCount < candidate.outstandingRequestCount)) {
+        candidate = connection;
+      }
+    }
+    return candidate;
+  }
+
+  @GuardedBy("this")
+  private void evictExpiredConnections() {
+    long nowMs = clock.elapsedRealtime();
+    for (HostConnections connections : hostConnections.values()) {
+      Iterator<Connection> iterator = connections.idle.iterator();
+      while (iterator.hasNext()) {
+        Connection connection = iterator.next();
+        if (connection.expiryTimeMs <= nowMs || connection.isBroken()) {
+          iterator.remove();
+          connection.closeQuietly();
+        }
+      }
+    }
+  }
+
+  /** The connections to a single host. */
+  private static final class HostConnections {
+
+    /** Idle connections, ordered from least to most recently used. */
+    public final ArrayDeque<Connection> idle;
+
+    /** Connections with at least one outstanding request. */
+    public final ArrayList<Connection> active;
+
+    /** The number of connections that are being established. */
+    public int pendingConnectCount;
+
+    public HostConnections() {
+      idle = new ArrayDeque<>();
+      active = new ArrayList<>();
+    }
+  }
+
+  /** The address of an HTTP server. */
+  /* package */ static final class Address {
+
+    /** The scheme, which is either {@code http} or {@code https}. */
+    public final String scheme;
+
+    /** The host name, without brackets for IPv6 literals. */
+    public final String host;
+
+    /** The port. */
+    public final int port;
+
+    /** The key used to pool connections to this address. */
+    public final String key;
+
+    public Address(String scheme, String host, int port) {
+      this.scheme = scheme;
+      this.host = host;
+      this.port = port;
+      key = scheme + "://" + host + ":" + port;
+    }
+
+    /** Returns whether connections to this address use TLS. */
+    public boolean isSecure() {
+      return "https".equals(scheme);
+    }
+  }
+
+  /** A connection to an HTTP server. */
+  /* package */ static final class Connection {
+
+    public final Address address;
+    private final Socket socket;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    // Held while writing a request, instead of the connection's monitor, so that a slow write
+    // doesn't block threads that only need to check or update the state of the connection.
+    private final Object writeLock;
+
+    // Guarded by the pool.
+    private int outstandingRequestCount;
+    private long expiryTimeMs;
+    private boolean pipeliningSupported;
+
+    @GuardedBy("this")
+    private int nextRequestSequenceNumber;
+
+    @GuardedBy("this")
+    private int currentResponseSequenceNumber;
+
+    // Written while holding the connection's monitor, but read without it.
+    private volatile boolean broken;
+
+    private Connection(Address address, Socket socket) throws IOException {
+      this.address = address;
+      this.socket = socket;
+      writeLock = new Object();
+      inputStream = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+      outputStream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    /** Establishes a connection to the given address. */
+    public static Connection connect(Address address, int connectTimeoutMs, int readTimeoutMs)
+        throws IOException {
+      Socket socket = SocketFactory.getDefault().createSocket();
+      try {
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(readTimeoutMs);
+        socket.connect(new InetSocketAddress(address.host, address.port), connectTimeoutMs);
+        if (address.isSecure()) {
+          SSLSocket sslSocket =
+              (SSLSocket)
+                  ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                      .createSocket(socket, address.host, address.port, /* autoClose= */ true);
+          socket = sslSocket;
+          sslSocket.startHandshake();
+          HostnameVerifier hostnameVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+          if (!hostnameVerifier.verify(address.host, sslSocket.getSession())) {
+            throw new IOException("Hostname verification failed for " + address.host);
+          }
+        }
+        return new Connection(address, socket);
+      } catch (IOException | RuntimeException e) {
+        Util.closeQuietly(socket);
+        throw e;
+      }
+    }
+
+    /** Returns the stream from which responses are read. */
+    public InputStream getInputStream() {
+      return inputStream;
+    }
+
+    /**
+     * Writes a request to the connection.
+     *
+     * <p>Requests written by different threads are written one at a time, in the order of their
+     * sequence numbers.
+     *
+     * @param head The request line and headers, including the terminating empty line.
+     * @param body The request body, or {@code null}.
+     * @return A sequence number to pass to {@link #awaitResponse(int, int)}.
+     * @throws IOException If an error occurs writing the request.
+     */
+    public int writeRequest(byte[] head, @Nullable byte[] body) throws IOException {
+      synchronized (writeLock) {
+        int sequenceNumber;
+        synchronized (this) {
+          if (broken) {
+            throw new IOException("Connection closed");
+          }
+          sequenceNumber = nextRequestSequenceNumber++;
+        }
+        try {
+          outputStream.write(head);
+          if (body != null) {
+            outputStream.write(body);
+          }
+          outputStream.flush();
+        } catch (IOException e) {
+          synchronized (this) {
+            markBroken();
+          }
+          throw e;
+        }
+        return sequenceNumber;
+      }
+    }
+
+    /**
+     * Blocks until the responses to all requests written before the one with the given sequence
+     * number have been consumed, so that its response can be read from {@link #getInputStream()},
+     * and then applies the read timeout of the request to the connection.
+     *
+     * <p>The read timeout only starts once the earlier responses have been consumed. Until then,
+     * the wait is bounded by the read timeouts of the requests that are reading those responses,
+     * and a failure of one of them makes this method throw. Changing the timeout earlier would
+     * change the timeout of the request that's reading its response.
+     *
+     * @param sequenceNumber The sequence number returned by {@link #writeRequest}.
+     * @param readTimeoutMs The read timeout of the request, in milliseconds.
+     * @throws IOException If the connection is closed before the response can be read.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public synchronized void awaitResponse(int sequenceNumber, int readTimeoutMs)
+        throws IOException {
+      while (!broken && currentResponseSequenceNumber != sequenceNumber) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // The response will still be sent, so later responses can't be read in order. Earlier
+          // responses are unaffected.
+          markBroken();
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (broken) {
+        throw new IOException("Connection closed before pipelined response");
+      }
+      try {
+        socket.setSoTimeout(readTimeoutMs);
+      } catch (IOException e) {
+        markBroken();
+        throw e;
+      }
+    }
+
+    /** Returns whether a request has previously been written to the connection. */
+    public synchronized boolean isReused() {
+      return nextRequestSequenceNumber > 0;
+    }
+
+    /** Returns whether the connection can no longer be used. */
+    public boolean isBroken() {
+      return broken || socket.isClosed();
+    }
+
+    private synchronized void onResponseCompleted(boolean reusable) {
+      currentResponseSequenceNumber++;
+      if (!reusable) {
+        markBroken();
+      }
+      notifyAll();
+    }
+
+    @GuardedBy("this")
+    private void markBroken() {
+      broken = true;
+      notifyAll();
+    }
+
+    private void closeQuietly() {
+      synchronized (this) {
+        markBroken();
+      }
+      Util.closeQuietly(socket);
+    }
+  }
+}
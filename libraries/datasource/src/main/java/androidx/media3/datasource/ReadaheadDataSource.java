@@ -0,0 +1,494 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataSource} that coalesces small reads into larger reads from an upstream {@link
+ * DataSource}.
+ *
+ * <p>Extractors typically issue many small reads, each of which results in a system call when
+ * reading from sources such as {@link FileDataSource} or {@link ContentDataSource}. This data
+ * source reads ahead of the requested position into a buffer, and serves subsequent reads from the
+ * buffer. The readahead size starts small and doubles while reads remain sequential, so that
+ * random access such as probing doesn't read more data than necessary. Reads that are at least as
+ * large as the current readahead size bypass the buffer.
+ *
+ * <p>The buffer is retained when the source is closed, so that it can be reused if the source is
+ * reopened at a position inside the buffered range of the same resource. This makes small
+ * backward seeks, as well as reopening at the position at which reading stopped, cheap. In this
+ * case the upstream {@link DataSource} is only opened once data beyond the buffered range is
+ * required. Buffers are recycled through a pool that's shared by all instances created by the
+ * same {@link Factory}.
+ *
+ * <p>Reusing buffered data assumes that the resource doesn't change between reads. It's therefore
+ * only done for requests without a body, and only if the {@link DataSpec#uri}, {@link
+ * DataSpec#key}, {@link DataSpec#flags} and {@link DataSpec#httpRequestHeaders} match those of
+ * the request that populated the buffer.
+ */
+@UnstableApi
+public final class ReadaheadDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link ReadaheadDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+
+    private int bufferSize;
+    private int minReadaheadSize;
+    private int maxPooledBufferCount;
+    @Nullable private BufferPool bufferPool;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamFactory A {@link DataSource.Factory} that provides upstream {@link DataSource
+     *     DataSources} for {@link ReadaheadDataSource} instances created by the factory.
+     */
+    public Factory(DataSource.Factory upstreamFactory) {
+      this.upstreamFactory = upstreamFactory;
+      bufferSize = DEFAULT_BUFFER_SIZE;
+      minReadaheadSize = DEFAULT_MIN_READAHEAD_SIZE;
+      maxPooledBufferCount = DEFAULT_MAX_POOLED_BUFFER_COUNT;
+    }
+
+    /**
+     * Sets the size of the buffer used by each {@link ReadaheadDataSource}, in bytes.
+     *
+     * <p>Up to three quarters of the buffer are used for readahead, and the remainder retains
+     * recently read data for backward seeks.
+     *
+     * <p>The default is {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @param bufferSize The buffer size, in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+      bufferPool = null;
+      return this;
+    }
+
+    /**
+     * Sets the initial readahead size, in bytes, which is used after opening and after each
+     * non-sequential access.
+     *
+     * <p>The default is {@link #DEFAULT_MIN_READAHEAD_SIZE}.
+     *
+     * @param minReadaheadSize The initial readahead size, in bytes.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMinReadaheadSize(int minReadaheadSize) {
+      this.minReadaheadSize = minReadaheadSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of unused buffers that are kept for reuse by data sources created by
+     * this factory.
+     *
+     * <p>The default is {@link #DEFAULT_MAX_POOLED_BUFFER_COUNT}.
+     *
+     * @param maxPooledBufferCount The maximum number of pooled buffers.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMaxPooledBufferCount(int maxPooledBufferCount) {
+      this.maxPooledBufferCount = maxPooledBufferCount;
+      bufferPool = null;
+      return this;
+    }
+
+    @Override
+    public ReadaheadDataSource createDataSource() {
+      if (bufferPool == null) {
+        bufferPool = new BufferPool(bufferSize, maxPooledBufferCount);
+      }
+      return new ReadaheadDataSource(
+          upstreamFactory.createDataSource(), bufferPool, minReadaheadSize);
+    }
+  }
+
+  /** The default buffer size, in bytes. */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /** The default initial readahead size, in bytes. */
+  public static final int DEFAULT_MIN_READAHEAD_SIZE = 4 * 1024;
+
+  /** The default maximum number of pooled buffers per {@link Factory}. */
+  public static final int DEFAULT_MAX_POOLED_BUFFER_COUNT = 4;
+
+  private final DataSource upstream;
+  private final BufferPool bufferPool;
+  private final int minReadaheadSize;
+  private final int maxReadaheadSize;
+
+  // State of the buffer, which holds the data in [bufferPosition, bufferPosition + bufferLength) of
+  // the resource requested by bufferDataSpec. The next read is served from readIndex.
+  @Nullable private byte[] buffer;
+  @Nullable private byte[] retainedBuffer;
+  private boolean retainedBufferPooled;
+  @Nullable private DataSpec bufferDataSpec;
+  @Nullable private Uri bufferUri;
+  private Map<String, List<String>> bufferResponseHeaders;
+  private long bufferPosition;
+  private int bufferLength;
+  private int readIndex;
+  private long resourceLength;
+  private int readaheadSize;
+
+  // State of the current request.
+  @Nullable private DataSpec dataSpec;
+  @Nullable private Uri uri;
+  private Map<String, List<String>> responseHeaders;
+  private boolean upstreamOpened;
+  private long bytesRemaining;
+
+  /**
+   * Creates an instance with default settings.
+   *
+   * @param upstream The upstream {@link DataSource}.
+   */
+  public ReadaheadDataSource(DataSource upstream) {
+    this(
+        upstream,
+        new BufferPool(DEFAULT_BUFFER_SIZE, /* maxPooledBufferCount= */ 1),
+        DEFAULT_MIN_READAHEAD_SIZE);
+  }
+
+  private ReadaheadDataSource(DataSource upstream, BufferPool bufferPool, int minReadaheadSize) {
+    this.upstream = checkNotNull(upstream);
+    this.bufferPool = bufferPool;
+    maxReadaheadSize = bufferPool.bufferSize - bufferPool.bufferSize / 4;
+    checkArgument(minReadaheadSize > 0 && minReadaheadSize <= maxReadaheadSize);
+    this.minReadaheadSize = minReadaheadSize;
+    readaheadSize = minReadaheadSize;
+    resourceLength = C.LENGTH_UNSET;
+    responseHeaders = Collections.emptyMap();
+    bufferResponseHeaders = Collections.emptyMap();
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    this.dataSpec = dataSpec;
+    acquireBuffer();
+    long position = dataSpec.position;
+    if (bufferLength > 0
+        && isSameResource(checkNotNull(bufferDataSpec), dataSpec)
+        && position >= bufferPosition
+        && position <= bufferPosition + bufferLength) {
+      // Serve the request from the buffer, and defer opening upstream until it's exhausted.
+      readIndex = (int) (position - bufferPosition);
+      uri = bufferUri;
+      responseHeaders = bufferResponseHeaders;
+      if (dataSpec.length != C.LENGTH_UNSET) {
+        bytesRemaining = dataSpec.length;
+      } else if (resourceLength != C.LENGTH_UNSET) {
+        bytesRemaining = resourceLength - position;
+      } else {
+        bytesRemaining = C.LENGTH_UNSET;
+      }
+      return bytesRemaining;
+    }
+
+    boolean isSequential =
+        bufferDataSpec != null
+            && isSameResource(bufferDataSpec, dataSpec)
+            && position == bufferPosition + readIndex;
+    if (bufferDataSpec == null || !isSameResource(bufferDataSpec, dataSpec)) {
+      resourceLength = C.LENGTH_UNSET;
+    }
+    if (!isSequential) {
+      readaheadSize = minReadaheadSize;
+    }
+    resetBuffer(dataSpec, position);
+    bytesRemaining = upstream.open(dataSpec);
+    upstreamOpened = true;
+    uri = upstream.getUri();
+    responseHeaders = upstream.getResponseHeaders();
+    bufferUri = uri;
+    bufferResponseHeaders = responseHeaders;
+    if (dataSpec.length == C.LENGTH_UNSET && bytesRemaining != C.LENGTH_UNSET) {
+      resourceLength = position + bytesRemaining;
+    }
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] target, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      length = (int) min(length, bytesRemaining);
+    }
+    byte[] buffer = checkNotNull(this.buffer);
+
+    int bufferedBytes = bufferLength - readIndex;
+    if (bufferedBytes > 0) {
+      int bytesToCopy = min(bufferedBytes, length);
+      System.arraycopy(buffer, readIndex, target, offset, bytesToCopy);
+      readIndex += bytesToCopy;
+      updateBytesRemaining(bytesToCopy);
+      return bytesToCopy;
+    }
+
+    openUpstreamIfNecessary();
+    long upstreamPosition = bufferPosition + bufferLength;
+    if (length >= readaheadSize) {
+      // Large reads bypass the buffer, which is left empty at the position after the read.
+      int bytesRead = upstream.read(target, offset, length);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        onEndOfUpstream(upstreamPosition);
+        return C.RESULT_END_OF_INPUT;
+      }
+      bufferPosition = upstreamPosition + bytesRead;
+      bufferLength = 0;
+      readIndex = 0;
+      updateBytesRemaining(bytesRead);
+      return bytesRead;
+    }
+
+    int fillLength = readaheadSize;
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      fillLength = (int) min(fillLength, bytesRemaining);
+    }
+    if (buffer.length - bufferLength < fillLength) {
+      compactBuffer(buffer, /* retainLength= */ buffer.length - maxReadaheadSize);
+    }
+    int bytesRead = upstream.read(buffer, bufferLength, fillLength);
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      onEndOfUpstream(upstreamPosition);
+      return C.RESULT_END_OF_INPUT;
+    }
+    bufferLength += bytesRead;
+    readaheadSize = min(readaheadSize * 2, maxReadaheadSize);
+
+    int bytesToCopy = min(bytesRead, length);
+    System.arraycopy(buffer, readIndex, target, offset, bytesToCopy);
+    readIndex += bytesToCopy;
+    updateBytesRemaining(bytesToCopy);
+    return bytesToCopy;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return responseHeaders;
+  }
+
+  @Override
+  public void close() throws IOException {
+    dataSpec = null;
+    uri = null;
+    responseHeaders = Collections.emptyMap();
+    if (buffer != null) {
+      // Return the buffer to the pool, but remember it so that its contents can be reused if it's
+      // still unused when this source is reopened.
+      retainedBuffer = buffer;
+      retainedBufferPooled = bufferPool.release(buffer, /* owner= */ this);
+      buffer = null;
+    }
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+
+  private void acquireBuffer() {
+    if (buffer != null) {
+      return;
+    }
+    @Nullable byte[] retainedBuffer = this.retainedBuffer;
+    this.retainedBuffer = null;
+    if (retainedBuffer != null
+        && (!retainedBufferPooled || bufferPool.reclaim(retainedBuffer, /* owner= */ this))) {
+      buffer = retainedBuffer;
+    } else {
+      buffer = bufferPool.acquire();
+      bufferDataSpec = null;
+      bufferLength = 0;
+      readIndex = 0;
+    }
+  }
+
+  private void resetBuffer(DataSpec dataSpec, long position) {
+    bufferDataSpec = dataSpec;
+    bufferPosition = position;
+    bufferLength = 0;
+    readIndex = 0;
+  }
+
+  /**
+   * Moves the most recently read data to the start of the buffer, retaining at most {@code
+   * retainLength} bytes before the read position.
+   */
+  private void compactBuffer(byte[] buffer, int retainLength) {
+    int discardLength = readIndex - min(readIndex, retainLength);
+    if (discardLength == 0) {
+      return;
+    }
+    System.arraycopy(buffer, discardLength, buffer, 0, bufferLength - discardLength);
+    bufferPosition += discardLength;
+    bufferLength -= discardLength;
+    readIndex -= discardLength;
+  }
+
+  private void openUpstreamIfNecessary() throws IOException {
+    if (upstreamOpened) {
+      return;
+    }
+    DataSpec dataSpec = checkNotNull(this.dataSpec);
+    long upstreamPosition = bufferPosition + bufferLength;
+    upstream.open(dataSpec.subrange(upstreamPosition - dataSpec.position));
+    upstreamOpened = true;
+  }
+
+  private void updateBytesRemaining(int bytesRead) {
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      bytesRemaining -= bytesRead;
+    }
+  }
+
+  private void onEndOfUpstream(long upstreamPosition) {
+    DataSpec dataSpec = checkNotNull(this.dataSpec);
+    if (dataSpec.length == C.LENGTH_UNSET) {
+      resourceLength = upstreamPosition;
+    }
+    bytesRemaining = 0;
+  }
+
+  private static boolean isSameResource(DataSpec bufferDataSpec, DataSpec dataSpec) {
+    return bufferDataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+        && dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+        && bufferDataSpec.httpBody == null
+        && dataSpec.httpBody == null
+        && bufferDataSpec.flags == dataSpec.flags
+        && bufferDataSpec.uri.equals(dataSpec.uri)
+        && Util.areEqual(bufferDataSpec.key, dataSpec.key)
+        && bufferDataSpec.httpRequestHeaders.equals(dataSpec.httpRequestHeaders);
+  }
+
+  /** A pool of equally sized buffers. */
+  private static final class BufferPool {
+
+    public final int bufferSize;
+
+    private final int maxPooledBufferCount;
+
+    @GuardedBy("this")
+    private final ArrayDeque<PooledBuffer> pooledBuffers;
+
+    public BufferPool(int bufferSize, int maxPooledBufferCount) {
+      checkArgument(bufferSize > 0);
+      this.bufferSize = bufferSize;
+      this.maxPooledBufferCount = maxPooledBufferCount;
+      pooledBuffers = new ArrayDeque<>();
+    }
+
+    /** Returns a buffer, which is taken from the pool if possible. */
+    public synchronized byte[] acquire() {
+      // Take the least recently released buffer, so that recently released buffers remain
+      // available to be reclaimed by their previous owners.
+      @Nullable PooledBuffer pooledBuffer = pooledBuffers.pollFirst();
+      return pooledBuffer != null ? pooledBuffer.buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buffer The buffer.
+     * @param owner The object that's releasing the buffer, which may later {@link #reclaim} it.
+     * @return Whether the buffer was added to the pool. If {@code false}, the caller retains
+     *     ownership of the buffer.
+     */
+    public synchronized boolean release(byte[] buffer, Object owner) {
+      if (pooledBuffers.size() >= maxPooledBufferCount) {
+        return false;
+      }
+      pooledBuffers.addLast(new PooledBuffer(buffer, owner));
+      return true;
+    }
+
+    /**
+     * Removes a buffer from the pool, if it hasn't been acquired by another caller since it was
+     * released by the given owner.
+     *
+     * @param buffer The buffer.
+     * @param owner The object that released the buffer.
+     * @return Whether the buffer was removed from the pool, in which case its contents are
+     *     unchanged.
+     */
+    public synchronized boolean reclaim(byte[] buffer, Object owner) {
+      Iterator<PooledBuffer> iterator = pooledBuffers.descendingIterator();
+      while (iterator.hasNext()) {
+        PooledBuffer pooledBuffer = iterator.next();
+        if (pooledBuffer.buffer == buffer) {
+          if (pooledBuffer.owner != owner) {
+            return false;
+          }
+          iterator.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static final class PooledBuffer {
+
+      public final byte[] buffer;
+      public final Object owner;
+
+      public PooledBuffer(byte[] buffer, Object owner) {
+        this.buffer = buffer;
+        this.owner = owner;
+      }
+    }
+  }
+}
@@ -0,0 +1,1132 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static androidx.media3.common.util.Util.castNonNull;
+import static androidx.media3.datasource.HttpUtil.buildRangeRequestHeader;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import android.security.NetworkSecurityPolicy;
+import androidx.annotation.DoNotInline;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.media3.common.C;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec.HttpMethod;
+import androidx.media3.datasource.HttpConnectionPool.Address;
+import androidx.media3.datasource.HttpConnectionPool.Connection;
+import com.google.common.base.Ascii;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An {@link HttpDataSource} that implements HTTP/1.1 directly on top of sockets, reusing
+ * connections through an {@link HttpConnectionPool}.
+ *
+ * <p>Unlike {@link DefaultHttpDataSource}, whose connection reuse is controlled by the platform,
+ * this implementation keeps connections alive across requests to the same host and optionally
+ * pipelines requests, which reduces time to first byte for short requests such as HLS segments and
+ * low-latency parts. It has no dependencies beyond the platform, which makes it suitable for
+ * environments in which neither Cronet nor OkHttp are available.
+ *
+ * <p>All redirects are handled by this implementation. By default cross-protocol redirects (i.e.
+ * redirects from HTTP to HTTPS or vice versa) are not followed. Cross-protocol redirects can be
+ * enabled by passing {@code true} to {@link Factory#setAllowCrossProtocolRedirects(boolean)}.
+ *
+ * <p>Note: HTTP request headers will be set using all parameters passed via (in order of decreasing
+ * priority) the {@code dataSpec}, {@link #setRequestProperty} and the default properties that can
+ * be passed to {@link HttpDataSource.Factory#setDefaultRequestProperties(Map)}.
+ */
+@UnstableApi
+public final class SocketHttpDataSource extends BaseDataSource implements HttpDataSource {
+
+  /** {@link DataSource.Factory} for {@link SocketHttpDataSource} instances. */
+  public static final class Factory implements HttpDataSource.Factory {
+
+    private final RequestProperties defaultRequestProperties;
+
+    @Nullable private TransferListener transferListener;
+    @Nullable private Predicate<String> contentTypePredicate;
+    @Nullable private String userAgent;
+    @Nullable private HttpConnectionPool connectionPool;
+    private int connectTimeoutMs;
+    private int readTimeoutMs;
+    private boolean allowCrossProtocolRedirects;
+    private boolean keepPostFor302Redirects;
+
+    /** Creates an instance. */
+    public Factory() {
+      defaultRequestProperties = new RequestProperties();
+      connectTimeoutMs = DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+      readTimeoutMs = DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS;
+    }
+
+    @CanIgnoreReturnValue
+    @Override
+    public Factory setDefaultRequestProperties(Map<String, String> defaultRequestProperties) {
+      this.defaultRequestProperties.clearAndSet(defaultRequestProperties);
+      return this;
+    }
+
+    /**
+     * Sets the {@link HttpConnectionPool} that will be used.
+     *
+     * <p>The default is {@code null}, which causes a pool with default settings to be created and
+     * shared by all data sources created by this factory.
+     *
+     * @param connectionPool The {@link HttpConnectionPool} that will be used, or {@code null} to
+     *     use a pool with default settings.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setConnectionPool(@Nullable HttpConnectionPool connectionPool) {
+      this.connectionPool = connectionPool;
+      return this;
+    }
+
+    /**
+     * Sets the user agent that will be used.
+     *
+     * <p>The default is {@code null}, which causes no user agent header to be sent.
+     *
+     * @param userAgent The user agent that will be used, or {@code null} to send no user agent.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setUserAgent(@Nullable String userAgent) {
+      this.userAgent = userAgent;
+      return this;
+    }
+
+    /**
+     * Sets the connect timeout, in milliseconds.
+     *
+     * <p>The default is {@link DefaultHttpDataSource#DEFAULT_CONNECT_TIMEOUT_MILLIS}.
+     *
+     * @param connectTimeoutMs The connect timeout, in milliseconds, that will be used.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setConnectTimeoutMs(int connectTimeoutMs) {
+      this.connectTimeoutMs = connectTimeoutMs;
+      return this;
+    }
+
+    /**
+     * Sets the read timeout, in milliseconds.
+     *
+     * <p>The default is {@link DefaultHttpDataSource#DEFAULT_READ_TIMEOUT_MILLIS}.
+     *
+     * @param readTimeoutMs The read timeout, in milliseconds, that will be used.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setReadTimeoutMs(int readTimeoutMs) {
+      this.readTimeoutMs = readTimeoutMs;
+      return this;
+    }
+
+    /**
+     * Sets whether to allow cross protocol redirects.
+     *
+     * <p>The default is {@code false}.
+     *
+     * @param allowCrossProtocolRedirects Whether to allow cross protocol redirects.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setAllowCrossProtocolRedirects(boolean allowCrossProtocolRedirects) {
+      this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
+      return this;
+    }
+
+    /**
+     * Sets a content type {@link Predicate}. If a content type is rejected by the predicate then a
+     * {@link HttpDataSource.InvalidContentTypeException} is thrown from {@link
+     * SocketHttpDataSource#open(DataSpec)}.
+     *
+     * <p>The default is {@code null}.
+     *
+     * @param contentTypePredicate The content type {@link Predicate}, or {@code null} to clear a
+     *     predicate that was previously set.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setContentTypePredicate(@Nullable Predicate<String> contentTypePredicate) {
+      this.contentTypePredicate = contentTypePredicate;
+      return this;
+    }
+
+    /**
+     * Sets the {@link TransferListener} that will be used.
+     *
+     * <p>The default is {@code null}.
+     *
+     * <p>See {@link DataSource#addTransferListener(TransferListener)}.
+     *
+     * @param transferListener The listener that will be used.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setTransferListener(@Nullable TransferListener transferListener) {
+      this.transferListener = transferListener;
+      return this;
+    }
+
+    /**
+     * Sets whether we should keep the POST method and body when we have HTTP 302 redirects for a
+     * POST request.
+     */
+    @CanIgnoreReturnValue
+    public Factory setKeepPostFor302Redirects(boolean keepPostFor302Redirects) {
+      this.keepPostFor302Redirects = keepPostFor302Redirects;
+      return this;
+    }
+
+    @Override
+    public SocketHttpDataSource createDataSource() {
+      if (connectionPool == null) {
+        connectionPool = new HttpConnectionPool.Builder().build();
+      }
+      SocketHttpDataSource dataSource =
+          new SocketHttpDataSource(
+              connectionPool,
+              userAgent,
+              connectTimeoutMs,
+              readTimeoutMs,
+              allowCrossProtocolRedirects,
+              defaultRequestProperties,
+              contentTypePredicate,
+              keepPostFor302Redirects);
+      if (transferListener != null) {
+        dataSource.addTransferListener(transferListener);
+      }
+      return dataSource;
+    }
+  }
+
+  private static final int MAX_REDIRECTS = 20; // Same limit as okhttp.
+  private static final int HTTP_STATUS_TEMPORARY_REDIRECT = 307;
+  private static final int HTTP_STATUS_PERMANENT_REDIRECT = 308;
+  private static final int HTTP_STATUS_RANGE_NOT_SATISFIABLE = 416;
+  private static final long MAX_BYTES_TO_DRAIN = 8 * 1024;
+  private static final int MAX_LINE_LENGTH = 16 * 1024;
+  private static final int MAX_HEADER_COUNT = 256;
+
+  private final HttpConnectionPool connectionPool;
+  private final boolean allowCrossProtocolRedirects;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+  @Nullable private final String userAgent;
+  private final RequestProperties defaultRequestProperties;
+  private final RequestProperties requestProperties;
+  @Nullable private final Predicate<String> contentTypePredicate;
+  private final boolean keepPostFor302Redirects;
+
+  @Nullable private DataSpec dataSpec;
+  @Nullable private Response response;
+  @Nullable private InputStream inputStream;
+  private boolean opened;
+  private long bytesToRead;
+  private long bytesRead;
+
+  private SocketHttpDataSource(
+      HttpConnectionPool connectionPool,
+      @Nullable String userAgent,
+      int connectTimeoutMillis,
+      int readTimeoutMillis,
+      boolean allowCrossProtocolRedirects,
+      RequestProperties defaultRequestProperties,
+      @Nullable Predicate<String> contentTypePredicate,
+      boolean keepPostFor302Redirects) {
+    super(/* isNetwork= */ true);
+    this.connectionPool = connectionPool;
+    this.userAgent = userAgent;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
+    this.defaultRequestProperties = defaultRequestProperties;
+    this.contentTypePredicate = contentTypePredicate;
+    this.keepPostFor302Redirects = keepPostFor302Redirects;
+    requestProperties = new RequestProperties();
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return response == null ? null : Uri.parse(response.url.toString());
+  }
+
+  @Override
+  public int getResponseCode() {
+    return response == null ? -1 : response.code;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return response == null ? ImmutableMap.of() : response.headers;
+  }
+
+  @Override
+  public void setRequestProperty(String name, String value) {
+    checkNotNull(name);
+    checkNotNull(value);
+    requestProperties.set(name, value);
+  }
+
+  @Override
+  public void clearRequestProperty(String name) {
+    checkNotNull(name);
+    requestProperties.remove(name);
+  }
+
+  @Override
+  public void clearAllRequestProperties() {
+    requestProperties.clear();
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    this.dataSpec = dataSpec;
+    bytesRead = 0;
+    bytesToRead = 0;
+    transferInitializing(dataSpec);
+
+    Response response;
+    try {
+      response = executeFollowingRedirects(dataSpec);
+      this.response = response;
+    } catch (IOException e) {
+      closeResponseQuietly();
+      throw HttpDataSourceException.createForIOException(
+          e, dataSpec, HttpDataSourceException.TYPE_OPEN);
+    }
+
+    // Check for a valid response code.
+    int responseCode = response.code;
+    if (responseCode < 200 || responseCode > 299) {
+      if (responseCode == HTTP_STATUS_RANGE_NOT_SATISFIABLE) {
+        long documentSize = HttpUtil.getDocumentSize(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        if (dataSpec.position == documentSize) {
+          response.discardBody();
+          opened = true;
+          transferStarted(dataSpec);
+          return dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : 0;
+        }
+      }
+
+      byte[] errorResponseBody;
+      try {
+        errorResponseBody = Util.toByteArray(response.body);
+      } catch (IOException e) {
+        errorResponseBody = Util.EMPTY_BYTE_ARRAY;
+      }
+      closeResponseQuietly();
+      @Nullable
+      IOException cause =
+          responseCode == HTTP_STATUS_RANGE_NOT_SATISFIABLE
+              ? new DataSourceException(PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE)
+              : null;
+      throw new InvalidResponseCodeException(
+          responseCode, response.message, cause, response.headers, dataSpec, errorResponseBody);
+    }
+
+    // Check for a valid content type.
+    @Nullable String contentType = response.getHeader(HttpHeaders.CONTENT_TYPE);
+    if (contentTypePredicate != null && !contentTypePredicate.apply(contentType)) {
+      closeResponseQuietly();
+      throw new InvalidContentTypeException(contentType, dataSpec);
+    }
+
+    // If we requested a range starting from a non-zero position and received a 200 rather than a
+    // 206, then the server does not support partial requests. We'll need to manually skip to the
+    // requested position.
+    long bytesToSkip = responseCode == 200 && dataSpec.position != 0 ? dataSpec.position : 0;
+
+    // Determine the length of the data to be read, after skipping.
+    boolean isCompressed = "gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"));
+    if (!isCompressed) {
+      if (dataSpec.length != C.LENGTH_UNSET) {
+        bytesToRead = dataSpec.length;
+      } else {
+        long contentLength =
+            HttpUtil.getContentLength(
+                response.getHeader(HttpHeaders.CONTENT_LENGTH),
+                response.getHeader(HttpHeaders.CONTENT_RANGE));
+        bytesToRead =
+            contentLength != C.LENGTH_UNSET ? (contentLength - bytesToSkip) : C.LENGTH_UNSET;
+      }
+    } else {
+      // Gzip is enabled. If the server opts to use gzip then the content length in the response
+      // will be that of the compressed data, which isn't what we want. Always use the dataSpec
+      // length in this case.
+      bytesToRead = dataSpec.length;
+    }
+
+    try {
+      inputStream = isCompressed ? new GZIPInputStream(response.body) : response.body;
+    } catch (IOException e) {
+      closeResponseQuietly();
+      throw new HttpDataSourceException(
+          e,
+          dataSpec,
+          PlaybackException.ERROR_CODE_IO_UNSPECIFIED,
+          HttpDataSourceException.TYPE_OPEN);
+    }
+
+    opened = true;
+    transferStarted(dataSpec);
+
+    try {
+      skipFully(bytesToSkip, dataSpec);
+    } catch (IOException e) {
+      closeResponseQuietly();
+
+      if (e instanceof HttpDataSourceException) {
+        throw (HttpDataSourceException) e;
+      }
+      throw new HttpDataSourceException(
+          e,
+          dataSpec,
+          PlaybackException.ERROR_CODE_IO_UNSPECIFIED,
+          HttpDataSourceException.TYPE_OPEN);
+    }
+
+    return bytesToRead;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws HttpDataSourceException {
+    try {
+      return readInternal(buffer, offset, length);
+    } catch (IOException e) {
+      throw HttpDataSourceException.createForIOException(
+          e, castNonNull(dataSpec), HttpDataSourceException.TYPE_READ);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      @Nullable Response response = this.response;
+      if (response != null) {
+        // Drain a small remainder so that the connection can be reused.
+        response.discardBody();
+      }
+    } finally {
+      inputStream = null;
+      response = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+
+  /** Executes the request for a {@link DataSpec}, following redirects where permitted. */
+  private Response executeFollowingRedirects(DataSpec dataSpec) throws IOException {
+    URL url = new URL(dataSpec.uri.toString());
+    @HttpMethod int httpMethod = dataSpec.httpMethod;
+    @Nullable byte[] httpBody = dataSpec.httpBody;
+
+    int redirectCount = 0;
+    while (redirectCount++ <= MAX_REDIRECTS) {
+      Response response = execute(url, httpMethod, httpBody, dataSpec);
+      int responseCode = response.code;
+      @Nullable String location = response.getHeader(HttpHeaders.LOCATION);
+      if ((httpMethod == DataSpec.HTTP_METHOD_GET || httpMethod == DataSpec.HTTP_METHOD_HEAD)
+          && (responseCode == HttpURLConnection.HTTP_MULT_CHOICE
+              || responseCode == HttpURLConnection.HTTP_MOVED_PERM
+              || responseCode == HttpURLConnection.HTTP_MOVED_TEMP
+              || responseCode == HttpURLConnection.HTTP_SEE_OTHER
+              || responseCode == HTTP_STATUS_TEMPORARY_REDIRECT
+              || responseCode == HTTP_STATUS_PERMANENT_REDIRECT)) {
+        response.discardBody();
+        url = handleRedirect(url, location, dataSpec);
+      } else if (httpMethod == DataSpec.HTTP_METHOD_POST
+          && (responseCode == HttpURLConnection.HTTP_MULT_CHOICE
+              || responseCode == HttpURLConnection.HTTP_MOVED_PERM
+              || responseCode == HttpURLConnection.HTTP_MOVED_TEMP
+              || responseCode == HttpURLConnection.HTTP_SEE_OTHER)) {
+        response.discardBody();
+        boolean shouldKeepPost =
+            keepPostFor302Redirects && responseCode == HttpURLConnection.HTTP_MOVED_TEMP;
+        if (!shouldKeepPost) {
+          // POST request follows the redirect and is transformed into a GET request.
+          httpMethod = DataSpec.HTTP_METHOD_GET;
+          httpBody = null;
+        }
+        url = handleRedirect(url, location, dataSpec);
+      } else {
+        return response;
+      }
+    }
+
+    // If we get here we've been redirected more times than are permitted.
+    throw new HttpDataSourceException(
+        new NoRouteToHostException("Too many redirects: " + redirectCount),
+        dataSpec,
+        PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
+        HttpDataSourceException.TYPE_OPEN);
+  }
+
+  /**
+   * Writes a single request to a pooled connection and reads the response status line and headers.
+   *
+   * <p>Idempotent requests that fail on a reused or pipelined connection, which may have been
+   * closed by the server while idle, are retried once on a new connection.
+   */
+  private Response execute(
+      URL url, @HttpMethod int httpMethod, @Nullable byte[] httpBody, DataSpec dataSpec)
+      throws IOException {
+    Address address = getAddress(url);
+    if (!address.isSecure() && Util.SDK_INT >= 24) {
+      if (!Api24.isCleartextTrafficPermitted(address.host)) {
+        throw new IOException("Cleartext HTTP traffic to " + address.host + " not permitted");
+      }
+    }
+    byte[] requestHead = buildRequestHead(url, httpMethod, httpBody, dataSpec);
+    boolean isIdempotent =
+        httpMethod == DataSpec.HTTP_METHOD_GET || httpMethod == DataSpec.HTTP_METHOD_HEAD;
+    boolean isRetry = false;
+    while (true) {
+      Connection connection =
+          connectionPool.acquire(
+              address,
+              connectTimeoutMillis,
+              readTimeoutMillis,
+              /* allowPipelining= */ isIdempotent && !isRetry,
+              /* allowReuse= */ !isRetry);
+      boolean connectionReused = connection.isReused();
+      try {
+        int sequenceNumber = connection.writeRequest(requestHead, httpBody);
+        connection.awaitResponse(sequenceNumber, readTimeoutMillis);
+        return readResponse(url, connection, httpMethod);
+      } catch (IOException e) {
+        connectionPool.release(connection, /* reusable= */ false, C.TIME_UNSET);
+        // A timeout is an InterruptedIOException too, but unlike an interruption it may be caused
+        // by a stale reused connection, so it's retried.
+        boolean isInterrupted =
+            e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+        if (!isIdempotent || isRetry || !connectionReused || isInterrupted) {
+          throw e;
+        }
+        isRetry = true;
+      }
+    }
+  }
+
+  private byte[] buildRequestHead(
+      URL url, @HttpMethod int httpMethod, @Nullable byte[] httpBody, DataSpec dataSpec) {
+    Map<String, String> requestHeaders = new HashMap<>();
+    requestHeaders.putAll(defaultRequestProperties.getSnapshot());
+    requestHeaders.putAll(requestProperties.getSnapshot());
+    requestHeaders.putAll(dataSpec.httpRequestHeaders);
+
+    @Nullable String rangeHeader = buildRangeRequestHeader(dataSpec.position, dataSpec.length);
+    if (rangeHeader != null) {
+      requestHeaders.put(HttpHeaders.RANGE, rangeHeader);
+    }
+    if (userAgent != null) {
+      requestHeaders.put(HttpHeaders.USER_AGENT, userAgent);
+    }
+    boolean allowGzip = dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP);
+    requestHeaders.put(HttpHeaders.ACCEPT_ENCODING, allowGzip ? "gzip" : "identity");
+
+    StringBuilder requestHead = new StringBuilder();
+    String path = url.getFile();
+    requestHead
+        .append(DataSpec.getStringForHttpMethod(httpMethod))
+        .append(' ')
+        .append(path.isEmpty() ? "/" : path)
+        .append(" HTTP/1.1\r\n");
+    if (!containsHeaderIgnoringCase(requestHeaders, HttpHeaders.HOST)) {
+      requestHead.append(HttpHeaders.HOST).append(": ").append(url.getHost());
+      if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+        requestHead.append(':').append(url.getPort());
+      }
+      requestHead.append("\r\n");
+    }
+    for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+      if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+        requestHead.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+      }
+    }
+    if (httpBody != null) {
+      requestHead.append(HttpHeaders.CONTENT_LENGTH).append(": ").append(httpBody.length);
+      requestHead.append("\r\n");
+    } else if (httpMethod == DataSpec.HTTP_METHOD_POST) {
+      requestHead.append(HttpHeaders.CONTENT_LENGTH).append(": 0\r\n");
+    }
+    requestHead.append("\r\n");
+    try {
+      return requestHead.toString().getBytes("ISO-8859-1");
+    } catch (UnsupportedEncodingException e) {
+      // ISO-8859-1 is always supported.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Reads the status line and headers of a response, skipping any informational responses. */
+  private Response readResponse(URL url, Connection connection, @HttpMethod int httpMethod)
+      throws IOException {
+    InputStream inputStream = connection.getInputStream();
+    while (true) {
+      String statusLine = readLine(inputStream);
+      // Status line format is "HTTP/1.1 200 OK".
+      if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+        throw new ProtocolException("Unexpected status line: " + statusLine);
+      }
+      boolean isHttp10 = statusLine.charAt(7) == '0';
+      int code;
+      try {
+        code = Integer.parseInt(statusLine.substring(9, 12));
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Unexpected status line: " + statusLine);
+      }
+      String message = statusLine.length() > 13 ? statusLine.substring(13) : "";
+      Map<String, List<String>> headers = readHeaders(inputStream);
+      if (code >= 100 && code < 200) {
+        // Informational responses such as 100 Continue precede the final response.
+        continue;
+      }
+      return new Response(
+          connectionPool, connection, url, code, message, headers, isHttp10, httpMethod);
+    }
+  }
+
+  /**
+   * Handles a redirect.
+   *
+   * @param originalUrl The original URL.
+   * @param location The Location header in the response. May be {@code null}.
+   * @param dataSpec The {@link DataSpec}.
+   * @return The next URL.
+   * @throws HttpDataSourceException If redirection isn't possible.
+   */
+  private URL handleRedirect(URL originalUrl, @Nullable String location, DataSpec dataSpec)
+      throws HttpDataSourceException {
+    if (location == null) {
+      throw new HttpDataSourceException(
+          "Null location redirect",
+          dataSpec,
+          PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
+          HttpDataSourceException.TYPE_OPEN);
+    }
+    // Form the new url.
+    URL url;
+    try {
+      url = new URL(originalUrl, location);
+    } catch (MalformedURLException e) {
+      throw new HttpDataSourceException(
+          e,
+          dataSpec,
+          PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
+          HttpDataSourceException.TYPE_OPEN);
+    }
+
+    // Check that the protocol of the new url is supported.
+    String protocol = url.getProtocol();
+    if (!"https".equals(protocol) && !"http".equals(protocol)) {
+      throw new HttpDataSourceException(
+          "Unsupported protocol redirect: " + protocol,
+          dataSpec,
+          PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
+          HttpDataSourceException.TYPE_OPEN);
+    }
+    if (!allowCrossProtocolRedirects && !protocol.equals(originalUrl.getProtocol())) {
+      throw new HttpDataSourceException(
+          "Disallowed cross-protocol redirect ("
+              + originalUrl.getProtocol()
+              + " to "
+              + protocol
+              + ")",
+          dataSpec,
+          PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
+          HttpDataSourceException.TYPE_OPEN);
+    }
+    return url;
+  }
+
+  /**
+   * Attempts to skip the specified number of bytes in full.
+   *
+   * @param bytesToSkip The number of bytes to skip.
+   * @param dataSpec The {@link DataSpec}.
+   * @throws IOException If the thread is interrupted during the operation, or if the data ended
+   *     before skipping the specified number of bytes.
+   */
+  private void skipFully(long bytesToSkip, DataSpec dataSpec) throws IOException {
+    if (bytesToSkip == 0) {
+      return;
+    }
+    byte[] skipBuffer = new byte[4096];
+    while (bytesToSkip > 0) {
+      int readLength = (int) min(bytesToSkip, skipBuffer.length);
+      int read = castNonNull(inputStream).read(skipBuffer, 0, readLength);
+      if (Thread.currentThread().isInterrupted()) {
+        throw new HttpDataSourceException(
+            new InterruptedIOException(),
+            dataSpec,
+            PlaybackException.ERROR_CODE_IO_UNSPECIFIED,
+            HttpDataSourceException.TYPE_OPEN);
+      }
+      if (read == -1) {
+        throw new HttpDataSourceException(
+            dataSpec,
+            PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE,
+            HttpDataSourceException.TYPE_OPEN);
+      }
+      bytesToSkip -= read;
+      bytesTransferred(read);
+    }
+  }
+
+  /**
+   * Reads up to {@code length} bytes of data and stores them into {@code buffer}, starting at index
+   * {@code offset}.
+   *
+   * <p>This method blocks until at least one byte of data can be read, the end of the opened range
+   * is detected, or an exception is thrown.
+   *
+   * @param buffer The buffer into which the read data should be stored.
+   * @param offset The start offset into {@code buffer} at which data should be written.
+   * @param readLength The maximum number of bytes to read.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the end of the opened
+   *     range is reached.
+   * @throws IOException If an error occurs reading from the source.
+   */
+  private int readInternal(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    if (bytesToRead != C.LENGTH_UNSET) {
+      long bytesRemaining = bytesToRead - bytesRead;
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      readLength = (int) min(readLength, bytesRemaining);
+    }
+
+    @Nullable InputStream inputStream = this.inputStream;
+    if (inputStream == null) {
+      // The response has no body, for example because the requested range is empty.
+      return C.RESULT_END_OF_INPUT;
+    }
+    int read = inputStream.read(buffer, offset, readLength);
+    if (read == -1) {
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    bytesRead += read;
+    bytesTransferred(read);
+    return read;
+  }
+
+  /** Closes the current response without attempting to reuse its connection. */
+  private void closeResponseQuietly() {
+    if (response != null) {
+      response.release(/* reusable= */ false);
+      response = null;
+    }
+    inputStream = null;
+  }
+
+  private static Address getAddress(URL url) throws IOException {
+    String scheme = Ascii.toLowerCase(url.getProtocol());
+    if (!"http".equals(scheme) && !"https".equals(scheme)) {
+      throw new MalformedURLException("Unsupported protocol: " + scheme);
+    }
+    String host = url.getHost();
+    if (host.startsWith("[") && host.endsWith("]")) {
+      host = host.substring(1, host.length() - 1);
+    }
+    int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    return new Address(scheme, host, port);
+  }
+
+  private static boolean containsHeaderIgnoringCase(Map<String, String> headers, String name) {
+    for (String key : headers.keySet()) {
+      if (name.equalsIgnoreCase(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Map<String, List<String>> readHeaders(InputStream inputStream)
+      throws IOException {
+    Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    int headerCount = 0;
+    while (true) {
+      String line = readLine(inputStream);
+      if (line.isEmpty()) {
+        break;
+      }
+      if (++headerCount > MAX_HEADER_COUNT) {
+        throw new ProtocolException("Too many response headers");
+      }
+      int separatorIndex = line.indexOf(':');
+      if (separatorIndex <= 0) {
+        throw new ProtocolException("Unexpected header: " + line);
+      }
+      String name = line.substring(0, separatorIndex).trim();
+      String value = line.substring(separatorIndex + 1).trim();
+      @Nullable List<String> values = headers.get(name);
+      if (values == null) {
+        values = new ArrayList<>();
+        headers.put(name, values);
+      }
+      values.add(value);
+    }
+    for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    return Collections.unmodifiableMap(headers);
+  }
+
+  /** Reads a CRLF or LF terminated line, returning it without the terminator. */
+  private static String readLine(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    while (true) {
+      int b = inputStream.read();
+      if (b == -1) {
+        throw new EOFException("Unexpected end of stream");
+      } else if (b == '\n') {
+        break;
+      } else if (line.size() == MAX_LINE_LENGTH) {
+        throw new ProtocolException("Line too long");
+      }
+      line.write(b);
+    }
+    int length = line.size();
+    byte[] bytes = line.toByteArray();
+    if (length > 0 && bytes[length - 1] == '\r') {
+      length--;
+    }
+    return new String(bytes, 0, length, "ISO-8859-1");
+  }
+
+  /** A response whose status line and headers have been read. */
+  private static final class Response {
+
+    public final URL url;
+    public final int code;
+    public final String message;
+    public final Map<String, List<String>> headers;
+    public final ResponseBodyInputStream body;
+
+    private final HttpConnectionPool connectionPool;
+    private final Connection connection;
+    private final boolean keepAlive;
+    private final long keepAliveTimeoutMs;
+    private boolean released;
+
+    public Response(
+        HttpConnectionPool connectionPool,
+        Connection connection,
+        URL url,
+        int code,
+        String message,
+        Map<String, List<String>> headers,
+        boolean isHttp10,
+        @HttpMethod int httpMethod)
+        throws IOException {
+      this.connectionPool = connectionPool;
+      this.connection = connection;
+      this.url = url;
+      this.code = code;
+      this.message = message;
+      this.headers = headers;
+
+      @Nullable String connectionHeader = getHeader(HttpHeaders.CONNECTION);
+      @Nullable
+      String connectionToken =
+          connectionHeader == null ? null : Ascii.toLowerCase(connectionHeader);
+      boolean keepAlive =
+          isHttp10
+              ? connectionToken != null && connectionToken.contains("keep-alive")
+              : connectionToken == null || !connectionToken.contains("close");
+      keepAliveTimeoutMs = parseKeepAliveTimeoutMs(getHeader("Keep-Alive"));
+
+      InputStream inputStream = connection.getInputStream();
+      @Nullable String transferEncoding = getHeader(HttpHeaders.TRANSFER_ENCODING);
+      @Nullable String contentLength = getHeader(HttpHeaders.CONTENT_LENGTH);
+      if (httpMethod == DataSpec.HTTP_METHOD_HEAD
+          || code == HttpURLConnection.HTTP_NO_CONTENT
+          || code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        body = new FixedLengthInputStream(this, inputStream, /* length= */ 0);
+      } else if (transferEncoding != null
+          && Ascii.toLowerCase(transferEncoding).contains("chunked")) {
+        body = new ChunkedInputStream(this, inputStream);
+      } else if (contentLength != null) {
+        long length;
+        try {
+          length = Long.parseLong(contentLength);
+        } catch (NumberFormatException e) {
+          throw new ProtocolException("Unexpected Content-Length: " + contentLength);
+        }
+        body = new FixedLengthInputStream(this, inputStream, length);
+      } else {
+        // The body is delimited by the end of the connection.
+        keepAlive = false;
+        body = new UntilClosedInputStream(this, inputStream);
+      }
+      this.keepAlive = keepAlive;
+    }
+
+    /** Returns the first value of a header, or {@code null} if it's not present. */
+    @Nullable
+    public String getHeader(String name) {
+      @Nullable List<String> values = headers.get(name);
+      return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Discards the rest of the body, draining it if only a small number of bytes remain so that
+     * the connection can be reused, and releases the connection.
+     */
+    public void discardBody() {
+      if (released) {
+        return;
+      }
+      try {
+        body.drain(MAX_BYTES_TO_DRAIN);
+      } catch (IOException e) {
+        // Do nothing. The connection isn't reused.
+      }
+      release(/* reusable= */ body.isExhausted());
+    }
+
+    /** Called by the body stream when the end of the body has been reached. */
+    public void onBodyExhausted() {
+      release(/* reusable= */ true);
+    }
+
+    /** Releases the connection, unless it's already been released. */
+    public void release(boolean reusable) {
+      if (released) {
+        return;
+      }
+      released = true;
+      connectionPool.release(connection, reusable && keepAlive, keepAliveTimeoutMs);
+    }
+
+    private static long parseKeepAliveTimeoutMs(@Nullable String keepAliveHeader) {
+      if (keepAliveHeader == null) {
+        return C.TIME_UNSET;
+      }
+      for (String parameter : Util.split(keepAliveHeader, ",")) {
+        String[] keyAndValue = Util.splitAtFirst(parameter.trim(), "=");
+        if (keyAndValue.length == 2 && "timeout".equalsIgnoreCase(keyAndValue[0].trim())) {
+          try {
+            return Long.parseLong(keyAndValue[1].trim()) * 1000;
+          } catch (NumberFormatException e) {
+            return C.TIME_UNSET;
+          }
+        }
+      }
+      return C.TIME_UNSET;
+    }
+  }
+
+  /** An {@link InputStream} for a response body, which releases the connection at its end. */
+  private abstract static class ResponseBodyInputStream extends InputStream {
+
+    protected final Response response;
+    protected final InputStream inputStream;
+
+    private boolean exhausted;
+
+    protected ResponseBodyInputStream(Response response, InputStream inputStream) {
+      this.response = response;
+      this.inputStream = inputStream;
+    }
+
+    /** Returns whether the end of the body has been reached. */
+    public final boolean isExhausted() {
+      return exhausted;
+    }
+
+    /**
+     * Reads and discards up to {@code maxBytes} bytes, or until the end of the body is reached.
+     */
+    public final void drain(long maxBytes) throws IOException {
+      byte[] buffer = new byte[1024];
+      long bytesDrained = 0;
+      while (!exhausted && bytesDrained <= maxBytes) {
+        int read = read(buffer, 0, buffer.length);
+        if (read == -1) {
+          break;
+        }
+        bytesDrained += read;
+      }
+    }
+
+    @Override
+    public final int read() throws IOException {
+      byte[] buffer = new byte[1];
+      int read = read(buffer, 0, 1);
+      return read == -1 ? -1 : (buffer[0] & 0xFF);
+    }
+
+    @Override
+    public final int read(byte[] buffer, int offset, int length) throws IOException {
+      if (exhausted) {
+        return -1;
+      }
+      if (length == 0) {
+        return 0;
+      }
+      int read = readBody(buffer, offset, length);
+      if (read == -1) {
+        exhausted = true;
+        onEndOfBody();
+      }
+      return read;
+    }
+
+    @Override
+    public void close() {
+      // Closing is handled by the data source, which decides whether the connection is reused.
+    }
+
+    /** Reads from the body, returning -1 at its end. */
+    protected abstract int readBody(byte[] buffer, int offset, int length) throws IOException;
+
+    /** Called once when the end of the body is reached. */
+    protected void onEndOfBody() {
+      response.onBodyExhausted();
+    }
+  }
+
+  /** A body whose length is given by the Content-Length header. */
+  private static final class FixedLengthInputStream extends ResponseBodyInputStream {
+
+    private long bytesRemaining;
+
+    public FixedLengthInputStream(Response response, InputStream inputStream, long length) {
+      super(response, inputStream);
+      bytesRemaining = length;
+    }
+
+    @Override
+    protected int readBody(byte[] buffer, int offset, int length) throws IOException {
+      if (bytesRemaining == 0) {
+        return -1;
+      }
+      int read = inputStream.read(buffer, offset, (int) min(length, bytesRemaining));
+      if (read == -1) {
+        throw new EOFException("Unexpected end of response body");
+      }
+      bytesRemaining -= read;
+      return read;
+    }
+  }
+
+  /** A body that uses chunked transfer encoding. */
+  private static final class ChunkedInputStream extends ResponseBodyInputStream {
+
+    private long bytesRemainingInChunk;
+    private boolean readFirstChunkHeader;
+
+    public ChunkedInputStream(Response response, InputStream inputStream) {
+      super(response, inputStream);
+    }
+
+    @Override
+    protected int readBody(byte[] buffer, int offset, int length) throws IOException {
+      if (bytesRemainingInChunk == 0) {
+        if (readFirstChunkHeader) {
+          // Consume the CRLF that follows the previous chunk's data.
+          readLine(inputStream);
+        }
+        readFirstChunkHeader = true;
+        String chunkHeader = readLine(inputStream);
+        int extensionIndex = chunkHeader.indexOf(';');
+        String chunkSize =
+            (extensionIndex == -1 ? chunkHeader : chunkHeader.substring(0, extensionIndex)).trim();
+        try {
+          bytesRemainingInChunk = Long.parseLong(chunkSize, /* radix= */ 16);
+        } catch (NumberFormatException e) {
+          throw new ProtocolException("Unexpected chunk size: " + chunkHeader);
+        }
+        if (bytesRemainingInChunk == 0) {
+          // Discard any trailers.
+          readHeaders(inputStream);
+          return -1;
+        }
+      }
+      int read = inputStream.read(buffer, offset, (int) min(length, bytesRemainingInChunk));
+      if (read == -1) {
+        throw new EOFException("Unexpected end of chunked response body");
+      }
+      bytesRemainingInChunk -= read;
+      return read;
+    }
+  }
+
+  /** A body that is delimited by the end of the connection. */
+  private static final class UntilClosedInputStream extends ResponseBodyInputStream {
+
+    public UntilClosedInputStream(Response response, InputStream inputStream) {
+      super(response, inputStream);
+    }
+
+    @Override
+    protected int readBody(byte[] buffer, int offset, int length) throws IOException {
+      return inputStream.read(buffer, offset, length);
+    }
+
+    @Override
+    protected void onEndOfBody() {
+      response.release(/* reusable= */ false);
+    }
+  }
+
+  @RequiresApi(24)
+  private static final class Api24 {
+    @DoNotInline
+    public static boolean isCleartextTrafficPermitted(String host) {
+      return NetworkSecurityPolicy.getInstance().isCleartextTrafficPermitted(host);
+    }
+  }
+}
@@ -233,6 +233,25 @@ public interface Cache {
   @WorkerThread
   void commitFile(File file, long length) throws CacheException;
 
+  /**
+   * Commits a file into the cache, as with {@link #commitFile(File, long)}, additionally providing
+   * a hash of its content. A cache may use the hash to store files with identical content only
+   * once, even if they belong to different keys.
+   *
+   * <p>The default implementation ignores the hash and calls {@link #commitFile(File, long)}.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param file A newly written cache file.
+   * @param length The length of the newly written cache file in bytes.
+   * @param contentHash A SHA-256 hash of the content of the file.
+   * @throws CacheException If an error is encountered.
+   */
+  @WorkerThread
+  default void commitFile(File file, long length, byte[] contentHash) throws CacheException {
+    commitFile(file, length);
+  }
+
   /**
    * Releases a {@link CacheSpan} obtained from {@link #startReadWrite(String, long, long)} which
    * corresponded to a hole in the cache.
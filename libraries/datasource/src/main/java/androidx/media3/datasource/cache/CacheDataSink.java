@@ -33,6 +33,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -51,6 +53,7 @@ public final class CacheDataSink implements DataSink {
     private @MonotonicNonNull Cache cache;
     private long fragmentSize;
     private int bufferSize;
+    private boolean contentHashingEnabled;
 
     /** Creates an instance. */
     public Factory() {
@@ -106,9 +109,27 @@ public final class CacheDataSink implements DataSink {
       return this;
     }
 
+    /**
+     * Sets whether a hash of the content of each cache file is computed as it's written, and passed
+     * to {@link Cache#commitFile(File, long, byte[])}. Caches such as {@link SimpleCache} use the
+     * hash to store identical content only once across all keys, which is useful when many
+     * resources share segments, for example bumpers, ads or variants sharing the same video track.
+     *
+     * <p>The default value is {@code false}.
+     *
+     * @param contentHashingEnabled Whether content hashing is enabled.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setContentHashingEnabled(boolean contentHashingEnabled) {
+      this.contentHashingEnabled = contentHashingEnabled;
+      return this;
+    }
+
     @Override
     public DataSink createDataSink() {
-      return new CacheDataSink(checkNotNull(cache), fragmentSize, bufferSize);
+      return new CacheDataSink(
+          checkNotNull(cache), fragmentSize, bufferSize, contentHashingEnabled);
     }
   }
 
@@ -132,6 +153,7 @@ public final class CacheDataSink implements DataSink {
   private final Cache cache;
   private final long fragmentSize;
   private final int bufferSize;
+  @Nullable private final MessageDigest contentDigest;
 
   @Nullable private DataSpec dataSpec;
   private long dataSpecFragmentSize;
@@ -166,6 +188,11 @@ public final class CacheDataSink implements DataSink {
    *     value disables buffering.
    */
   public CacheDataSink(Cache cache, long fragmentSize, int bufferSize) {
+    this(cache, fragmentSize, bufferSize, /* contentHashingEnabled= */ false);
+  }
+
+  private CacheDataSink(
+      Cache cache, long fragmentSize, int bufferSize, boolean contentHashingEnabled) {
     Assertions.checkState(
         fragmentSize > 0 || fragmentSize == C.LENGTH_UNSET,
         "fragmentSize must be positive or C.LENGTH_UNSET.");
@@ -179,6 +206,7 @@ public final class CacheDataSink implements DataSink {
     this.cache = checkNotNull(cache);
     this.fragmentSize = fragmentSize == C.LENGTH_UNSET ? Long.MAX_VALUE : fragmentSize;
     this.bufferSize = bufferSize;
+    contentDigest = contentHashingEnabled ? createContentDigest() : null;
   }
 
   @Override
@@ -216,6 +244,9 @@ public final class CacheDataSink implements DataSink {
         int bytesToWrite =
             (int) min(length - bytesWritten, dataSpecFragmentSize - outputStreamBytesWritten);
         castNonNull(outputStream).write(buffer, offset + bytesWritten, bytesToWrite);
+        if (contentDigest != null) {
+          contentDigest.update(buffer, offset + bytesWritten, bytesToWrite);
+        }
         bytesWritten += bytesToWrite;
         outputStreamBytesWritten += bytesToWrite;
         dataSpecBytesWritten += bytesToWrite;
@@ -258,6 +289,9 @@ public final class CacheDataSink implements DataSink {
       outputStream = underlyingFileOutputStream;
     }
     outputStreamBytesWritten = 0;
+    if (contentDigest != null) {
+      contentDigest.reset();
+    }
   }
 
   private void closeCurrentOutputStream() throws IOException {
@@ -274,11 +308,22 @@ public final class CacheDataSink implements DataSink {
       outputStream = null;
       File fileToCommit = castNonNull(file);
       file = null;
-      if (success) {
+      if (success && contentDigest != null) {
+        cache.commitFile(fileToCommit, outputStreamBytesWritten, contentDigest.digest());
+      } else if (success) {
         cache.commitFile(fileToCommit, outputStreamBytesWritten);
       } else {
         fileToCommit.delete();
       }
     }
   }
+
+  private static MessageDigest createContentDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-256 is supported on all platforms.
+      throw new IllegalStateException(e);
+    }
+  }
 }
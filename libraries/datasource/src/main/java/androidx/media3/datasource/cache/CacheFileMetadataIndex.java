@@ -25,6 +25,7 @@ import androidx.annotation.WorkerThread;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.database.DatabaseIOException;
 import androidx.media3.database.DatabaseProvider;
+import androidx.media3.database.DatabaseWriteBatcher;
 import androidx.media3.database.VersionTable;
 import java.util.HashMap;
 import java.util.Map;
@@ -61,6 +62,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           + " INTEGER NOT NULL)";
 
   private final DatabaseProvider databaseProvider;
+  private final DatabaseWriteBatcher writeBatcher;
 
   private @MonotonicNonNull String tableName;
 
@@ -98,7 +100,22 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    * @param databaseProvider Provides the database in which the index is stored.
    */
   public CacheFileMetadataIndex(DatabaseProvider databaseProvider) {
+    this(databaseProvider, /* maxWriteDelayMs= */ 0);
+  }
+
+  /**
+   * @param databaseProvider Provides the database in which the index is stored.
+   * @param maxWriteDelayMs The maximum duration for which calls to {@link #set(String, long, long)}
+   *     may be batched before being written to the database, in milliseconds, or zero to write
+   *     each call immediately.
+   */
+  public CacheFileMetadataIndex(DatabaseProvider databaseProvider, long maxWriteDelayMs) {
     this.databaseProvider = databaseProvider;
+    writeBatcher =
+        new DatabaseWriteBatcher(
+            databaseProvider,
+            maxWriteDelayMs,
+            DatabaseWriteBatcher.DEFAULT_MAX_PENDING_WRITE_COUNT);
   }
 
   /**
@@ -147,6 +164,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    */
   @WorkerThread
   public Map<String, CacheFileMetadata> getAll() throws DatabaseIOException {
+    writeBatcher.flush();
     try (Cursor cursor = getCursor()) {
       Map<String, CacheFileMetadata> fileMetadata = new HashMap<>(cursor.getCount());
       while (cursor.moveToNext()) {
@@ -164,6 +182,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   /**
    * Sets metadata for a given file.
    *
+   * <p>If write batching is enabled, the metadata may not be written to the database until a later
+   * call to this method or to {@link #flush()}.
+   *
    * <p>This method may be slow and shouldn't normally be called on the main thread.
    *
    * @param name The name of the file.
@@ -173,17 +194,25 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    */
   @WorkerThread
   public void set(String name, long length, long lastTouchTimestamp) throws DatabaseIOException {
-    Assertions.checkNotNull(tableName);
-    try {
-      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
-      ContentValues values = new ContentValues();
-      values.put(COLUMN_NAME, name);
-      values.put(COLUMN_LENGTH, length);
-      values.put(COLUMN_LAST_TOUCH_TIMESTAMP, lastTouchTimestamp);
-      writableDatabase.replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
-    } catch (SQLException e) {
-      throw new DatabaseIOException(e);
-    }
+    String tableName = Assertions.checkNotNull(this.tableName);
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_NAME, name);
+    values.put(COLUMN_LENGTH, length);
+    values.put(COLUMN_LAST_TOUCH_TIMESTAMP, lastTouchTimestamp);
+    writeBatcher.write(
+        name, database -> database.replaceOrThrow(tableName, /* nullColumnHack= */ null, values));
+  }
+
+  /**
+   * Writes any metadata whose write is pending due to batching to the database.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @throws DatabaseIOException If an error occurs writing the metadata.
+   */
+  @WorkerThread
+  public void flush() throws DatabaseIOException {
+    writeBatcher.flush();
   }
 
   /**
@@ -197,6 +226,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   @WorkerThread
   public void remove(String name) throws DatabaseIOException {
     Assertions.checkNotNull(tableName);
+    writeBatcher.cancel(name);
     try {
       SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
       writableDatabase.delete(tableName, WHERE_NAME_EQUALS, new String[] {name});
@@ -216,6 +246,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   @WorkerThread
   public void removeAll(Set<String> names) throws DatabaseIOException {
     Assertions.checkNotNull(tableName);
+    for (String name : names) {
+      writeBatcher.cancel(name);
+    }
     try {
       SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
       writableDatabase.beginTransactionNonExclusive();
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.Util;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Deduplicates cache files with identical content by replacing them with hard links to a single
+ * copy.
+ *
+ * <p>The store holds one entry per distinct content, named after the hash and length of the
+ * content. Each entry is a hard link to the same data as every cache file that shares that content,
+ * so the link count of an entry is one more than the number of cache files referencing it. An
+ * entry whose link count drops to one is no longer referenced and is deleted.
+ *
+ * <p>Methods must only be called while holding the lock of the owning {@link SimpleCache}.
+ */
+@RequiresApi(26)
+/* package */ final class ContentAddressedFileStore {
+
+  /** The name of the store directory within the cache directory. */
+  public static final String DIRECTORY_NAME = "dedup";
+
+  private static final String TAG = "ContentAddressedStore";
+  private static final String TEMP_FILE_SUFFIX = ".link";
+
+  private final File directory;
+  private final HashMap<Long, ArrayList<File>> entriesByLength;
+
+  private boolean supported;
+
+  /**
+   * @param cacheDir The cache directory, in which the store directory is created.
+   */
+  public ContentAddressedFileStore(File cacheDir) {
+    directory = new File(cacheDir, DIRECTORY_NAME);
+    entriesByLength = new HashMap<>();
+    supported = true;
+  }
+
+  /**
+   * Loads the existing entries, deleting any that are no longer referenced by a cache file. Must be
+   * called after stale cache files have been deleted.
+   */
+  public void initialize() {
+    entriesByLength.clear();
+    @Nullable File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      long length = parseLength(file.getName());
+      int linkCount = getLinkCount(file);
+      if (length <= 0 || linkCount == 1) {
+        file.delete();
+      } else if (linkCount > 1) {
+        getOrAddEntries(length).add(file);
+      }
+    }
+  }
+
+  /**
+   * Deduplicates a newly written cache file. If the store already holds identical content, the file
+   * is replaced by a hard link to it. Otherwise the file becomes the stored copy for its content.
+   *
+   * @param file The newly written cache file.
+   * @param length The length of the file in bytes.
+   * @param contentHash A hash of the content of the file.
+   * @return Whether the file was replaced by a link to previously stored content.
+   */
+  public boolean deduplicate(File file, long length, byte[] contentHash) {
+    if (!supported || getLinkCount(file) != 1) {
+      // Either links can't be tracked, or the file is unexpectedly linked already.
+      return false;
+    }
+    File entry = new File(directory, Util.toHexString(contentHash) + "." + length);
+    if (entry.exists()) {
+      File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+      try {
+        Files.createLink(tempFile.toPath(), entry.toPath());
+        Files.move(
+            tempFile.toPath(),
+            file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        ArrayList<File> entries = getOrAddEntries(length);
+        if (!entries.contains(entry)) {
+          entries.add(entry);
+        }
+        return true;
+      } catch (IOException | UnsupportedOperationException e) {
+        Log.w(TAG, "Failed to link " + file + " to " + entry, e);
+        tempFile.delete();
+        return false;
+      }
+    }
+    try {
+      if (!directory.exists()) {
+        Files.createDirectories(directory.toPath());
+      }
+      Files.createLink(entry.toPath(), file.toPath());
+      getOrAddEntries(length).add(entry);
+    } catch (IOException | UnsupportedOperationException e) {
+      Log.w(TAG, "Failed to store " + file, e);
+      if (e instanceof UnsupportedOperationException) {
+        // Hard links aren't supported by the file system.
+        supported = false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the entry that shares its content with the given cache file, or null if the file is
+   * not deduplicated.
+   *
+   * @param file The cache file.
+   * @param length The length of the file in bytes.
+   */
+  @Nullable
+  public File getEntry(File file, long length) {
+    @Nullable ArrayList<File> entries = entriesByLength.get(length);
+    if (entries == null || getLinkCount(file) <= 1) {
+      return null;
+    }
+    for (int i = 0; i < entries.size(); i++) {
+      File entry = entries.get(i);
+      try {
+        if (Files.isSameFile(entry.toPath(), file.toPath())) {
+          return entry;
+        }
+      } catch (IOException e) {
+        // Either file no longer exists. Try the next entry.
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Releases an entry after a cache file referencing it has been deleted, deleting the entry if it
+   * is no longer referenced.
+   *
+   * @param entry The entry, as returned by {@link #getEntry(File, long)}.
+   */
+  public void releaseEntry(File entry) {
+    if (getLinkCount(entry) > 1) {
+      return;
+    }
+    entry.delete();
+    long length = parseLength(entry.getName());
+    @Nullable ArrayList<File> entries = entriesByLength.get(length);
+    if (entries != null) {
+      entries.remove(entry);
+      if (entries.isEmpty()) {
+        entriesByLength.remove(length);
+      }
+    }
+  }
+
+  private ArrayList<File> getOrAddEntries(long length) {
+    @Nullable ArrayList<File> entries = entriesByLength.get(length);
+    if (entries == null) {
+      entries = new ArrayList<>();
+      entriesByLength.put(length, entries);
+    }
+    return entries;
+  }
+
+  /** Returns the number of hard links to the file, or 0 if it cannot be determined. */
+  private int getLinkCount(File file) {
+    try {
+      return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+    } catch (IOException e) {
+      return 0;
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      // The "unix" attribute view isn't available, so references can't be tracked.
+      supported = false;
+      return 0;
+    }
+  }
+
+  private static long parseLength(String fileName) {
+    int separatorIndex = fileName.lastIndexOf('.');
+    if (separatorIndex == -1) {
+      return C.LENGTH_UNSET;
+    }
+    try {
+      return Long.parseLong(fileName.substring(separatorIndex + 1));
+    } catch (NumberFormatException e) {
+      return C.LENGTH_UNSET;
+    }
+  }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.media3.common.C;
+import androidx.media3.common.PriorityTaskManager;
+import androidx.media3.common.PriorityTaskManager.PriorityTooLowException;
+import androidx.media3.common.util.RunnableFutureTask;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Caches the data defined by a {@link DataSpec} by splitting uncached ranges into chunks that are
+ * written concurrently.
+ *
+ * <p>Each chunk is written by a {@link CacheWriter} with its own {@link CacheDataSource}, running
+ * on the provided {@link Executor}, so that each chunk is written to its own span in the cache.
+ * This allows a single large resource to be downloaded over multiple connections.
+ *
+ * <p>Chunking requires the length of the resource to be known. If it isn't known, and isn't stored
+ * in the cache's {@link ContentMetadata}, then the resource is first read sequentially until a
+ * response reports its length, after which the remaining ranges are written in parallel. If no
+ * response reports a length, the whole resource is written sequentially.
+ */
+@UnstableApi
+public final class ParallelCacheWriter {
+
+  /** The default maximum length of each chunk, in bytes. */
+  public static final long DEFAULT_CHUNK_LENGTH_BYTES = 8 * 1024 * 1024;
+
+  private final CacheDataSource.Factory cacheDataSourceFactory;
+  private final CacheDataSource dataSource;
+  private final Cache cache;
+  private final DataSpec dataSpec;
+  private final String cacheKey;
+  private final Executor executor;
+  private final long chunkLengthBytes;
+  private final int maxParallelChunks;
+  private final byte[] temporaryBuffer;
+  @Nullable private final CacheWriter.ProgressListener progressListener;
+
+  @GuardedBy("activeTasks")
+  private final ArrayList<ChunkTask> activeTasks;
+
+  private final ArrayDeque<ChunkTask> recycledTasks;
+
+  @GuardedBy("this")
+  private long endPosition;
+
+  @GuardedBy("this")
+  private long bytesCached;
+
+  @GuardedBy("activeTasks")
+  private boolean isCanceled;
+
+  /**
+   * Creates an instance.
+   *
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which data
+   *     will be written. A {@link CacheDataSource} is created for each chunk that's written
+   *     concurrently.
+   * @param dataSpec Defines the data to be written.
+   * @param executor An {@link Executor} on which chunks are written. Must be able to run {@code
+   *     maxParallelChunks} tasks concurrently for all of them to be written in parallel.
+   * @param chunkLengthBytes The maximum length of each chunk, in bytes.
+   * @param maxParallelChunks The maximum number of chunks that are written concurrently.
+   * @param progressListener An optional progress listener. May be called from any thread.
+   */
+  public ParallelCacheWriter(
+      CacheDataSource.Factory cacheDataSourceFactory,
+      DataSpec dataSpec,
+      Executor executor,
+      long chunkLengthBytes,
+      int maxParallelChunks,
+      @Nullable CacheWriter.ProgressListener progressListener) {
+    checkArgument(chunkLengthBytes > 0);
+    checkArgument(maxParallelChunks > 0);
+    this.cacheDataSourceFactory = cacheDataSourceFactory;
+    this.dataSpec = dataSpec;
+    this.executor = executor;
+    this.chunkLengthBytes = chunkLengthBytes;
+    this.maxParallelChunks = maxParallelChunks;
+    this.progressListener = progressListener;
+    dataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+    cache = dataSource.getCache();
+    cacheKey = dataSource.getCacheKeyFactory().buildCacheKey(dataSpec);
+    temporaryBuffer = new byte[CacheWriter.DEFAULT_BUFFER_SIZE_BYTES];
+    activeTasks = new ArrayList<>();
+    recycledTasks = new ArrayDeque<>();
+  }
+
+  /**
+   * Cancels this writer's caching operation. {@link #cache} checks for cancelation frequently
+   * during execution, and throws an {@link InterruptedIOException} if it sees that the caching
+   * operation has been canceled.
+   */
+  public void cancel() {
+    synchronized (activeTasks) {
+      isCanceled = true;
+      for (int i = 0; i < activeTasks.size(); i++) {
+        activeTasks.get(i).cancel(/* interruptIfRunning= */ true);
+      }
+    }
+  }
+
+  /**
+   * Caches the requested data, skipping any that's already cached.
+   *
+   * <p>If the {@link CacheDataSource} instances created by the factory have a {@link
+   * PriorityTaskManager}, then it's the responsibility of the caller to call {@link
+   * PriorityTaskManager#add} to register with the manager before calling this method, and to call
+   * {@link PriorityTaskManager#remove} afterwards to unregister. {@link PriorityTooLowException}
+   * will be thrown if the priority required by the {@link CacheDataSource} is not high enough for
+   * progress to be made.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @throws IOException If an error occurs reading the data, or writing the data into the cache, or
+   *     if the operation is canceled. If canceled, an {@link InterruptedIOException} is thrown. The
+   *     method may be called again to continue the operation from where the error occurred.
+   */
+  @WorkerThread
+  public void cache() throws IOException {
+    throwIfCanceled();
+
+    long endPosition;
+    synchronized (this) {
+      bytesCached = cache.getCachedBytes(cacheKey, dataSpec.position, dataSpec.length);
+      this.endPosition = resolveEndPosition();
+      endPosition = this.endPosition;
+    }
+    notifyProgress(/* newBytesCached= */ 0);
+
+    // Read sequentially until the end position is known.
+    long position = dataSpec.position;
+    while (endPosition == C.INDEX_UNSET) {
+      throwIfCanceled();
+      long blockLength = cache.getCachedLength(cacheKey, position, Long.MAX_VALUE);
+      position += blockLength > 0 ? blockLength : readLeadingChunk(position);
+      synchronized (this) {
+        endPosition = this.endPosition;
+      }
+    }
+
+    try {
+      while (position < endPosition) {
+        throwIfCanceled();
+        long blockLength = cache.getCachedLength(cacheKey, position, endPosition - position);
+        if (blockLength > 0) {
+          position += blockLength;
+          continue;
+        }
+        // There's a hole of length -blockLength, which is split into chunks.
+        long holeEndPosition = position - blockLength;
+        while (position < holeEndPosition) {
+          long chunkLength = min(chunkLengthBytes, holeEndPosition - position);
+          startChunk(position, chunkLength);
+          position += chunkLength;
+        }
+      }
+      while (true) {
+        @Nullable ChunkTask oldestTask;
+        synchronized (activeTasks) {
+          oldestTask = activeTasks.isEmpty() ? null : activeTasks.get(0);
+        }
+        if (oldestTask == null) {
+          break;
+        }
+        awaitChunk(oldestTask);
+      }
+    } finally {
+      // If one of the tasks has failed, then other tasks may still be doing work. Cancel them and
+      // wait until they finish before returning.
+      ArrayList<ChunkTask> remainingTasks;
+      synchronized (activeTasks) {
+        remainingTasks = new ArrayList<>(activeTasks);
+        activeTasks.clear();
+      }
+      for (int i = 0; i < remainingTasks.size(); i++) {
+        remainingTasks.get(i).cancel(/* interruptIfRunning= */ true);
+      }
+      for (int i = 0; i < remainingTasks.size(); i++) {
+        remainingTasks.get(i).blockUntilFinished();
+      }
+    }
+  }
+
+  private long resolveEndPosition() {
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      return dataSpec.position + dataSpec.length;
+    }
+    long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+    return contentLength == C.LENGTH_UNSET ? C.INDEX_UNSET : contentLength;
+  }
+
+  /**
+   * Reads up to one chunk from an unbounded request starting at {@code position}, so that the
+   * length of the resource is stored in the cache if the response reports it.
+   *
+   * @return The number of bytes read.
+   */
+  private long readLeadingChunk(long position) throws IOException {
+    DataSpec unboundedDataSpec =
+        dataSpec.buildUpon().setPosition(position).setLength(C.LENGTH_UNSET).build();
+    long resolvedLength;
+    try {
+      resolvedLength = dataSource.open(unboundedDataSpec);
+    } catch (IOException e) {
+      DataSourceUtil.closeQuietly(dataSource);
+      throw e;
+    }
+    // If the length isn't reported, read the whole resource sequentially.
+    long maxBytesToRead = resolvedLength == C.LENGTH_UNSET ? Long.MAX_VALUE : chunkLengthBytes;
+    long totalBytesRead = 0;
+    try {
+      if (resolvedLength != C.LENGTH_UNSET) {
+        onEndPosition(position + resolvedLength);
+      }
+      while (totalBytesRead < maxBytesToRead) {
+        throwIfCanceled();
+        int bytesToRead = (int) min(temporaryBuffer.length, maxBytesToRead - totalBytesRead);
+        int bytesRead = dataSource.read(temporaryBuffer, /* offset= */ 0, bytesToRead);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          onEndPosition(position + totalBytesRead);
+          break;
+        }
+        totalBytesRead += bytesRead;
+        onNewBytesCached(bytesRead);
+      }
+    } catch (IOException e) {
+      DataSourceUtil.closeQuietly(dataSource);
+      throw e;
+    }
+    // An exception must be thrown if closing fails, since otherwise there's no way of knowing
+    // whether the data was successfully cached.
+    dataSource.close();
+    return totalBytesRead;
+  }
+
+  private void startChunk(long position, long length) throws IOException {
+    // Wait for the oldest chunk to finish if the maximum number of chunks are already active.
+    while (true) {
+      ChunkTask oldestTask;
+      synchronized (activeTasks) {
+        throwIfCanceled();
+        if (activeTasks.size() < maxParallelChunks) {
+          break;
+        }
+        oldestTask = activeTasks.get(0);
+      }
+      awaitChunk(oldestTask);
+    }
+
+    CacheDataSource chunkDataSource;
+    byte[] chunkTemporaryBuffer;
+    @Nullable ChunkTask recycledTask = recycledTasks.pollFirst();
+    if (recycledTask != null) {
+      chunkDataSource = recycledTask.dataSource;
+      chunkTemporaryBuffer = recycledTask.temporaryBuffer;
+    } else {
+      chunkDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+      chunkTemporaryBuffer = new byte[CacheWriter.DEFAULT_BUFFER_SIZE_BYTES];
+    }
+    DataSpec chunkDataSpec = dataSpec.buildUpon().setPosition(position).setLength(length).build();
+    ChunkTask task = new ChunkTask(chunkDataSpec, chunkDataSource, chunkTemporaryBuffer);
+    synchronized (activeTasks) {
+      throwIfCanceled();
+      activeTasks.add(task);
+    }
+    executor.execute(task);
+  }
+
+  private void awaitChunk(ChunkTask task) throws IOException {
+    try {
+      task.get();
+    } catch (ExecutionException e) {
+      Throwable cause = checkNotNull(e.getCause());
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      // The cause must be an uncaught Throwable type.
+      Util.sneakyThrow(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (CancellationException e) {
+      // The task was canceled by cancel() before it started.
+      throw new InterruptedIOException();
+    }
+    synchronized (activeTasks) {
+      activeTasks.remove(task);
+    }
+    recycledTasks.addLast(task);
+  }
+
+  private void onEndPosition(long endPosition) {
+    synchronized (this) {
+      if (this.endPosition == endPosition) {
+        return;
+      }
+      this.endPosition = endPosition;
+    }
+    notifyProgress(/* newBytesCached= */ 0);
+  }
+
+  private void onNewBytesCached(long newBytesCached) {
+    synchronized (this) {
+      bytesCached += newBytesCached;
+    }
+    notifyProgress(newBytesCached);
+  }
+
+  private synchronized void notifyProgress(long newBytesCached) {
+    if (progressListener != null) {
+      long length = endPosition == C.INDEX_UNSET ? C.LENGTH_UNSET : endPosition - dataSpec.position;
+      progressListener.onProgress(length, bytesCached, newBytesCached);
+    }
+  }
+
+  private void throwIfCanceled() throws InterruptedIOException {
+    synchronized (activeTasks) {
+      if (isCanceled) {
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  private final class ChunkTask extends RunnableFutureTask<Void, IOException> {
+
+    public final CacheDataSource dataSource;
+    public final byte[] temporaryBuffer;
+
+    private final CacheWriter cacheWriter;
+
+    public ChunkTask(DataSpec dataSpec, CacheDataSource dataSource, byte[] temporaryBuffer) {
+      this.dataSource = dataSource;
+      this.temporaryBuffer = temporaryBuffer;
+      cacheWriter =
+          new CacheWriter(
+              dataSource,
+              dataSpec,
+              temporaryBuffer,
+              (requestLength, bytesCached, newBytesCached) -> {
+                if (newBytesCached > 0) {
+                  onNewBytesCached(newBytesCached);
+                }
+              });
+    }
+
+    @Override
+    protected Void doWork() throws IOException {
+      cacheWriter.cache();
+      return null;
+    }
+
+    @Override
+    protected void cancelWork() {
+      cacheWriter.cancel();
+    }
+  }
+}
@@ -68,6 +68,7 @@ public final class SimpleCache implements Cache {
   private final CacheEvictor evictor;
   private final CachedContentIndex contentIndex;
   @Nullable private final CacheFileMetadataIndex fileIndex;
+  @Nullable private final ContentAddressedFileStore contentStore;
   private final HashMap<String, ArrayList<Listener>> listeners;
   private final Random random;
   private final boolean touchCacheSpans;
@@ -167,6 +168,40 @@ public final class SimpleCache implements Cache {
         /* preferLegacyIndex= */ false);
   }
 
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * <p>The file metadata stored in the database is updated whenever a span is committed or
+   * touched. These updates are batched into a single transaction for up to {@code
+   * fileMetadataMaxWriteDelayMs}. Updates that are still pending when the process is killed are
+   * lost, in which case the affected spans revert to their previous last touch timestamps when the
+   * cache is next initialized.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which the cache index is stored.
+   * @param fileMetadataMaxWriteDelayMs The maximum duration for which file metadata updates may be
+   *     batched, in milliseconds, or zero to write each update immediately.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      DatabaseProvider databaseProvider,
+      long fileMetadataMaxWriteDelayMs) {
+    this(
+        cacheDir,
+        evictor,
+        new CachedContentIndex(
+            databaseProvider,
+            cacheDir,
+            /* legacyIndexSecretKey= */ null,
+            /* legacyIndexEncrypt= */ false,
+            /* preferLegacyIndex= */ false),
+        new CacheFileMetadataIndex(databaseProvider, fileMetadataMaxWriteDelayMs));
+  }
+
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the cache directory.
    * Hence the directory cannot be used to store other files.
@@ -220,6 +255,7 @@ public final class SimpleCache implements Cache {
     this.evictor = evictor;
     this.contentIndex = contentIndex;
     this.fileIndex = fileIndex;
+    contentStore = Util.SDK_INT >= 26 ? new ContentAddressedFileStore(cacheDir) : null;
     listeners = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
@@ -263,6 +299,13 @@ public final class SimpleCache implements Cache {
     }
     listeners.clear();
     removeStaleSpans();
+    if (fileIndex != null) {
+      try {
+        fileIndex.flush();
+      } catch (IOException e) {
+        Log.e(TAG, "Storing file metadata failed", e);
+      }
+    }
     try {
       contentIndex.store();
     } catch (IOException e) {
@@ -431,6 +474,28 @@ public final class SimpleCache implements Cache {
     notifyAll();
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>If another file with the same length and content hash has been committed, possibly for a
+   * different key, the file is replaced by a hard link to it so that the content is stored on disk
+   * only once. The content is deleted when the last span referencing it is removed. Linked spans
+   * still count towards {@link #getCacheSpace()} and cache eviction individually. Deduplication
+   * requires API level 26 and a file system that supports hard links.
+   */
+  @Override
+  public synchronized void commitFile(File file, long length, byte[] contentHash)
+      throws CacheException {
+    Assertions.checkState(!released);
+    commitFile(file, length);
+    // Deduplicate only once the span has been committed, so that a file that fails validation
+    // never holds a reference to stored content. The cache's lock is held throughout, so the span
+    // can't be read before its file is replaced.
+    if (Util.SDK_INT >= 26 && contentStore != null && length > 0 && file.exists()) {
+      contentStore.deduplicate(file, length, contentHash);
+    }
+  }
+
   @Override
   public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
     Assertions.checkState(!released);
@@ -555,6 +620,9 @@ public final class SimpleCache implements Cache {
       } else {
         loadDirectory(cacheDir, /* isRoot= */ true, files, /* fileMetadata= */ null);
       }
+      if (Util.SDK_INT >= 26 && contentStore != null) {
+        contentStore.initialize();
+      }
     } catch (IOException e) {
       String message = "Failed to initialize cache indices: " + cacheDir;
       Log.e(TAG, message, e);
@@ -596,6 +664,10 @@ public final class SimpleCache implements Cache {
     }
     for (File file : files) {
       String fileName = file.getName();
+      if (isRoot && fileName.equals(ContentAddressedFileStore.DIRECTORY_NAME)) {
+        // Skip the content store, which is loaded separately.
+        continue;
+      }
       if (isRoot && fileName.indexOf('.') == -1) {
         loadDirectory(file, /* isRoot= */ false, file.listFiles(), fileMetadata);
       } else {
@@ -697,9 +769,20 @@ public final class SimpleCache implements Cache {
 
   private void removeSpanInternal(CacheSpan span) {
     @Nullable CachedContent cachedContent = contentIndex.get(span.key);
-    if (cachedContent == null || !cachedContent.removeSpan(span)) {
+    if (cachedContent == null) {
       return;
     }
+    @Nullable
+    File contentStoreEntry =
+        Util.SDK_INT >= 26 && contentStore != null && span.file != null
+            ? contentStore.getEntry(span.file, span.length)
+            : null;
+    if (!cachedContent.removeSpan(span)) {
+      return;
+    }
+    if (Util.SDK_INT >= 26 && contentStoreEntry != null) {
+      Assertions.checkNotNull(contentStore).releaseEntry(contentStoreEntry);
+    }
     totalSpace -= span.length;
     if (fileIndex != null) {
       String fileName = Assertions.checkNotNull(span.file).getName();
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ReadaheadDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public class ReadaheadDataSourceTest {
+
+  private static final Uri URI = Uri.parse("test://test.test");
+  private static final Uri OTHER_URI = Uri.parse("test://other.test");
+  private static final int DATA_LENGTH = 100_000;
+
+  private byte[] data;
+  private FakeDataSource fakeDataSource;
+  private CountingDataSource upstream;
+
+  @Before
+  public void setUp() {
+    data = TestUtil.buildTestData(DATA_LENGTH);
+    fakeDataSource =
+        new FakeDataSource(new FakeDataSet().setData(URI, data).setData(OTHER_URI, data));
+    upstream = new CountingDataSource(fakeDataSource);
+  }
+
+  @Test
+  public void smallSequentialReads_coalescedIntoFewerUpstreamReads() throws IOException {
+    ReadaheadDataSource dataSource = new ReadaheadDataSource(upstream);
+
+    assertThat(dataSource.open(new DataSpec(URI))).isEqualTo(DATA_LENGTH);
+    byte[] readData = new byte[DATA_LENGTH];
+    int position = 0;
+    int bytesRead;
+    while ((bytesRead = dataSource.read(readData, position, 8)) != C.RESULT_END_OF_INPUT) {
+      position += bytesRead;
+    }
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    // The readahead size grows from 4 KiB to 48 KiB, so a handful of reads suffice.
+    assertThat(upstream.readCount).isLessThan(10);
+  }
+
+  @Test
+  public void largeRead_bypassesBuffer() throws IOException {
+    ReadaheadDataSource dataSource = new ReadaheadDataSource(upstream);
+    dataSource.open(new DataSpec(URI));
+
+    byte[] readData = new byte[DATA_LENGTH];
+    int bytesRead = dataSource.read(readData, /* offset= */ 0, DATA_LENGTH);
+    dataSource.close();
+
+    assertThat(bytesRead).isEqualTo(DATA_LENGTH);
+    assertThat(readData).isEqualTo(data);
+    assertThat(upstream.readCount).isEqualTo(1);
+  }
+
+  @Test
+  public void reopenWithinBuffer_readsFromBufferWithoutOpeningUpstream() throws IOException {
+    ReadaheadDataSource dataSource = new ReadaheadDataSource(upstream);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readExactly(dataSource, /* length= */ 1000);
+    dataSource.close();
+    fakeDataSource.getAndClearOpenedDataSpecs();
+    int readCount = upstream.readCount;
+
+    long length = dataSource.open(new DataSpec.Builder().setUri(URI).setPosition(500).build());
+    byte[] readData = DataSourceUtil.readExactly(dataSource, /* length= */ 500);
+
+    assertThat(length).isEqualTo(DATA_LENGTH - 500);
+    assertThat(dataSource.getUri()).isEqualTo(URI);
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 500, 1000));
+    assertThat(upstream.readCount).isEqualTo(readCount);
+    assertThat(fakeDataSource.getAndClearOpenedDataSpecs()).isEmpty();
+    dataSource.close();
+  }
+
+  @Test
+  public void reopenWithinBuffer_readBeyondBuffer_opensUpstreamAtEndOfBuffer() throws IOException {
+    ReadaheadDataSource dataSource = new ReadaheadDataSource(upstream);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readExactly(dataSource, /* length= */ 1000);
+    dataSource.close();
+    fakeDataSource.getAndClearOpenedDataSpecs();
+
+    dataSource.open(new DataSpec.Builder().setUri(URI).setPosition(500).build());
+    byte[] readData = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 500, DATA_LENGTH));
+    DataSpec[] openedDataSpecs = fakeDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    // The first read fills the buffer with the initial readahead size.
+    assertThat(openedDataSpecs[0].position)
+        .isEqualTo(ReadaheadDataSource.DEFAULT_MIN_READAHEAD_SIZE);
+  }
+
+  @Test
+  public void reopenOutsideBuffer_opensUpstream() throws IOException {
+    ReadaheadDataSource dataSource = new ReadaheadDataSource(upstream);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readExactly(dataSource, /* length= */ 10);
+    dataSource.close();
+    fakeDataSource.getAndClearOpenedDataSpecs();
+
+    dataSource.open(new DataSpec.Builder().setUri(URI).setPosition(50_000).build());
+    byte[] readData = DataSourceUtil.readExactly(dataSource, /* length= */ 10);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 50_000, 50_010));
+    DataSpec[] openedDataSpecs = fakeDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].position).isEqualTo(50_000);
+  }
+
+  @Test
+  public void reopenWithDifferentUri_doesNotReuseBuffer() throws IOException {
+    ReadaheadDataSource dataSource = new ReadaheadDataSource(upstream);
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readExactly(dataSource, /* length= */ 10);
+    dataSource.close();
+    fakeDataSource.getAndClearOpenedDataSpecs();
+
+    dataSource.open(new DataSpec(OTHER_URI));
+    DataSourceUtil.readExactly(dataSource, /* length= */ 10);
+    dataSource.close();
+
+    DataSpec[] openedDataSpecs = fakeDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].uri).isEqualTo(OTHER_URI);
+  }
+
+  @Test
+  public void bufferAcquiredByOtherSource_reopenWithinBuffer_opensUpstream() throws IOException {
+    ReadaheadDataSource.Factory factory =
+        new ReadaheadDataSource.Factory(() -> upstream).setMaxPooledBufferCount(1);
+    ReadaheadDataSource dataSource = factory.createDataSource();
+    ReadaheadDataSource otherDataSource = factory.createDataSource();
+    dataSource.open(new DataSpec(URI));
+    DataSourceUtil.readExactly(dataSource, /* length= */ 10);
+    dataSource.close();
+    // The other source takes the pooled buffer released by the first one.
+    otherDataSource.open(new DataSpec(OTHER_URI));
+    DataSourceUtil.readExactly(otherDataSource, /* length= */ 10);
+    otherDataSource.close();
+    fakeDataSource.getAndClearOpenedDataSpecs();
+
+    dataSource.open(new DataSpec(URI));
+    byte[] readData = DataSourceUtil.readExactly(dataSource, /* length= */ 10);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOf(data, 10));
+    assertThat(fakeDataSource.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  /** A {@link DataSource} that counts calls to {@link #read(byte[], int, int)}. */
+  private static final class CountingDataSource implements DataSource {
+
+    private final DataSource upstream;
+
+    public int readCount;
+
+    public CountingDataSource(DataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      readCount++;
+      return upstream.read(buffer, offset, length);
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+      upstream.close();
+    }
+  }
+}
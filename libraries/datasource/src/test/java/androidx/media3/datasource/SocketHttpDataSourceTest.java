@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.NullableType;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.base.Charsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SocketHttpDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public class SocketHttpDataSourceTest {
+
+  private MockWebServer mockWebServer;
+  private HttpConnectionPool connectionPool;
+
+  @Before
+  public void setUp() throws Exception {
+    mockWebServer = new MockWebServer();
+    mockWebServer.start();
+    connectionPool = new HttpConnectionPool.Builder().build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connectionPool.evictAll();
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void open_setsCorrectHeaders() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(206));
+    Map<String, String> defaultRequestProperties = new HashMap<>();
+    defaultRequestProperties.put("0", "fromFactory");
+    defaultRequestProperties.put("1", "fromFactory");
+    HttpDataSource dataSource =
+        createFactory().setDefaultRequestProperties(defaultRequestProperties).createDataSource();
+    dataSource.setRequestProperty("1", "fromSetter");
+    dataSource.setRequestProperty("2", "fromSetter");
+    Map<String, String> dataSpecRequestProperties = new HashMap<>();
+    dataSpecRequestProperties.put("2", "fromDataSpec");
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(mockWebServer.url("/test-path").toString())
+            .setPosition(10)
+            .setLength(20)
+            .setHttpRequestHeaders(dataSpecRequestProperties)
+            .build();
+
+    dataSource.open(dataSpec);
+    dataSource.close();
+
+    RecordedRequest request = mockWebServer.takeRequest(10, SECONDS);
+    Headers headers = request.getHeaders();
+    assertThat(request.getPath()).isEqualTo("/test-path");
+    assertThat(headers.get("0")).isEqualTo("fromFactory");
+    assertThat(headers.get("1")).isEqualTo("fromSetter");
+    assertThat(headers.get("2")).isEqualTo("fromDataSpec");
+    assertThat(headers.get("Range")).isEqualTo("bytes=10-29");
+    assertThat(headers.get("Host"))
+        .isEqualTo(mockWebServer.getHostName() + ":" + mockWebServer.getPort());
+  }
+
+  @Test
+  public void open_sequentialRequests_reusesConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("first"));
+    mockWebServer.enqueue(new MockResponse().setChunkedBody("second", /* maxChunkSize= */ 2));
+    HttpDataSource dataSource = createFactory().createDataSource();
+
+    byte[] first = readAll(dataSource, "/first");
+    byte[] second = readAll(dataSource, "/second");
+
+    assertThat(new String(first, Charsets.UTF_8)).isEqualTo("first");
+    assertThat(new String(second, Charsets.UTF_8)).isEqualTo("second");
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(1);
+    assertThat(connectionPool.getConnectionCount()).isEqualTo(1);
+    assertThat(connectionPool.getIdleConnectionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void open_connectionCloseResponse_doesNotReuseConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("first").setHeader("Connection", "close"));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+    HttpDataSource dataSource = createFactory().createDataSource();
+
+    readAll(dataSource, "/first");
+    readAll(dataSource, "/second");
+
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(0);
+  }
+
+  @Test
+  public void open_reusedConnectionClosedByServer_retriesOnNewConnection() throws Exception {
+    mockWebServer.enqueue(
+        new MockResponse().setBody("first").setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+    HttpDataSource dataSource = createFactory().createDataSource();
+    readAll(dataSource, "/first");
+
+    byte[] second = readAll(dataSource, "/second");
+
+    assertThat(new String(second, Charsets.UTF_8)).isEqualTo("second");
+  }
+
+  @Test
+  public void open_redirect_followsLocation() throws Exception {
+    mockWebServer.enqueue(
+        new MockResponse().setResponseCode(302).setHeader("Location", "/redirected"));
+    mockWebServer.enqueue(new MockResponse().setBody("redirected"));
+    HttpDataSource dataSource = createFactory().createDataSource();
+
+    dataSource.open(new DataSpec(Uri.parse(mockWebServer.url("/original").toString())));
+    Uri uri = dataSource.getUri();
+    byte[] data = DataSourceUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(new String(data, Charsets.UTF_8)).isEqualTo("redirected");
+    assertThat(uri.getPath()).isEqualTo("/redirected");
+    mockWebServer.takeRequest(10, SECONDS);
+    RecordedRequest redirectedRequest = mockWebServer.takeRequest(10, SECONDS);
+    assertThat(redirectedRequest.getPath()).isEqualTo("/redirected");
+    assertThat(redirectedRequest.getSequenceNumber()).isEqualTo(1);
+  }
+
+  @Test
+  public void open_invalidResponseCode() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(404).setBody("failure msg"));
+    HttpDataSource dataSource = createFactory().createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/test-path").toString()).build();
+
+    HttpDataSource.InvalidResponseCodeException exception =
+        assertThrows(
+            HttpDataSource.InvalidResponseCodeException.class, () -> dataSource.open(dataSpec));
+
+    assertThat(exception.responseCode).isEqualTo(404);
+    assertThat(exception.responseBody).isEqualTo("failure msg".getBytes(Charsets.UTF_8));
+  }
+
+  @Test
+  public void close_beforeEndOfLargeBody_doesNotReuseConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(new byte[100_000])));
+    HttpDataSource dataSource = createFactory().createDataSource();
+    dataSource.open(new DataSpec(Uri.parse(mockWebServer.url("/large").toString())));
+    dataSource.read(new byte[10], 0, 10);
+
+    dataSource.close();
+
+    assertThat(connectionPool.getConnectionCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void open_atPerHostLimitBeforeFirstResponse_waitsForConnection() throws Exception {
+    connectionPool =
+        new HttpConnectionPool.Builder()
+            .setMaxConnectionsPerHost(1)
+            .setMaxPipelinedRequestsPerConnection(2)
+            .build();
+    mockWebServer.enqueue(new MockResponse().setBody("first"));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+    HttpDataSource firstDataSource = createFactory().createDataSource();
+    HttpDataSource secondDataSource = createFactory().createDataSource();
+
+    firstDataSource.open(new DataSpec(Uri.parse(mockWebServer.url("/first").toString())));
+    Thread secondThread =
+        new Thread(
+            () -> {
+              try {
+                secondDataSource.open(
+                    new DataSpec(Uri.parse(mockWebServer.url("/second").toString())));
+              } catch (HttpDataSource.HttpDataSourceException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    secondThread.start();
+    byte[] first = DataSourceUtil.readToEnd(firstDataSource);
+    firstDataSource.close();
+    secondThread.join();
+    byte[] second = DataSourceUtil.readToEnd(secondDataSource);
+    secondDataSource.close();
+
+    assertThat(new String(first, Charsets.UTF_8)).isEqualTo("first");
+    assertThat(new String(second, Charsets.UTF_8)).isEqualTo("second");
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(1);
+  }
+
+  @Test
+  public void open_atPerHostLimitWithPipelining_writesRequestBeforePreviousResponseIsRead()
+      throws Exception {
+    connectionPool =
+        new HttpConnectionPool.Builder()
+            .setMaxConnectionsPerHost(1)
+            .setMaxPipelinedRequestsPerConnection(2)
+            .build();
+    mockWebServer.enqueue(new MockResponse().setBody("warm-up"));
+    mockWebServer.enqueue(new MockResponse().setBody("first"));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+    HttpDataSource firstDataSource = createFactory().createDataSource();
+    HttpDataSource secondDataSource = createFactory().createDataSource();
+    // Pipelining is only used on connections that have been kept alive after a response.
+    readAll(firstDataSource, "/warm-up");
+
+    firstDataSource.open(new DataSpec(Uri.parse(mockWebServer.url("/first").toString())));
+    Thread secondThread =
+        new Thread(
+            () -> {
+              try {
+                secondDataSource.open(
+                    new DataSpec(Uri.parse(mockWebServer.url("/second").toString())));
+              } catch (HttpDataSource.HttpDataSourceException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    secondThread.start();
+    mockWebServer.takeRequest(10, SECONDS);
+    mockWebServer.takeRequest(10, SECONDS);
+    // The first response hasn't been read yet.
+    @Nullable RecordedRequest secondRequest = mockWebServer.takeRequest(5, SECONDS);
+    byte[] first = DataSourceUtil.readToEnd(firstDataSource);
+    firstDataSource.close();
+    secondThread.join();
+    byte[] second = DataSourceUtil.readToEnd(secondDataSource);
+    secondDataSource.close();
+
+    assertThat(secondRequest).isNotNull();
+    assertThat(secondRequest.getPath()).isEqualTo("/second");
+    assertThat(secondRequest.getSequenceNumber()).isEqualTo(2);
+    assertThat(new String(first, Charsets.UTF_8)).isEqualTo("first");
+    assertThat(new String(second, Charsets.UTF_8)).isEqualTo("second");
+    assertThat(connectionPool.getConnectionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void open_pipelinedBehindSlowReaderForLongerThanReadTimeout_bothRequestsSucceed()
+      throws Exception {
+    connectionPool =
+        new HttpConnectionPool.Builder()
+            .setMaxConnectionsPerHost(1)
+            .setMaxPipelinedRequestsPerConnection(2)
+            .build();
+    mockWebServer.enqueue(new MockResponse().setBody("warm-up"));
+    mockWebServer.enqueue(new MockResponse().setBody("first"));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+    SocketHttpDataSource.Factory factory = createFactory().setReadTimeoutMs(500);
+    HttpDataSource firstDataSource = factory.createDataSource();
+    HttpDataSource secondDataSource = factory.createDataSource();
+    readAll(firstDataSource, "/warm-up");
+    firstDataSource.open(new DataSpec(Uri.parse(mockWebServer.url("/first").toString())));
+    AtomicReference<@NullableType Exception> secondOpenException = new AtomicReference<>();
+    Thread secondThread =
+        new Thread(
+            () -> {
+              try {
+                secondDataSource.open(
+                    new DataSpec(Uri.parse(mockWebServer.url("/second").toString())));
+              } catch (HttpDataSource.HttpDataSourceException e) {
+                secondOpenException.set(e);
+              }
+            });
+    secondThread.start();
+    mockWebServer.takeRequest(10, SECONDS);
+    mockWebServer.takeRequest(10, SECONDS);
+    mockWebServer.takeRequest(10, SECONDS);
+
+    // The second request waits for longer than its read timeout, which only starts once the first
+    // response has been read.
+    Thread.sleep(1_000);
+    byte[] first = DataSourceUtil.readToEnd(firstDataSource);
+    firstDataSource.close();
+    secondThread.join();
+    assertThat(secondOpenException.get()).isNull();
+    byte[] second = DataSourceUtil.readToEnd(secondDataSource);
+    secondDataSource.close();
+
+    assertThat(new String(first, Charsets.UTF_8)).isEqualTo("first");
+    assertThat(new String(second, Charsets.UTF_8)).isEqualTo("second");
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void open_readTimeoutOnReusedConnection_retriesOnNewConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("first"));
+    mockWebServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+    HttpDataSource dataSource = createFactory().setReadTimeoutMs(500).createDataSource();
+    readAll(dataSource, "/first");
+
+    byte[] second = readAll(dataSource, "/second");
+
+    assertThat(new String(second, Charsets.UTF_8)).isEqualTo("second");
+    mockWebServer.takeRequest(10, SECONDS);
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(1);
+    // The retry is sent on a new connection.
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getSequenceNumber()).isEqualTo(0);
+  }
+
+  private SocketHttpDataSource.Factory createFactory() {
+    return new SocketHttpDataSource.Factory().setConnectionPool(connectionPool);
+  }
+
+  private byte[] readAll(HttpDataSource dataSource, String path) throws Exception {
+    dataSource.open(new DataSpec(Uri.parse(mockWebServer.url(path).toString())));
+    try {
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
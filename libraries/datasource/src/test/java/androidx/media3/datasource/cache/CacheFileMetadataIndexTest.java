@@ -126,6 +126,22 @@ public class CacheFileMetadataIndexTest {
     assertThat(metadata.lastTouchTimestamp).isEqualTo(123);
   }
 
+  @Test
+  public void insertWithBatching_removeBeforeFlush_discardsPendingWrite()
+      throws DatabaseIOException {
+    CacheFileMetadataIndex index =
+        new CacheFileMetadataIndex(
+            TestUtil.getInMemoryDatabaseProvider(), /* maxWriteDelayMs= */ 60_000);
+    index.initialize(/* uid= */ 1234);
+
+    index.set("name1", /* length= */ 123, /* lastTouchTimestamp= */ 456);
+    index.set("name2", /* length= */ 789, /* lastTouchTimestamp= */ 123);
+    index.remove("name1");
+
+    Map<String, CacheFileMetadata> all = index.getAll();
+    assertThat(all.keySet()).containsExactly("name2");
+  }
+
   private static CacheFileMetadataIndex newInitializedIndex() throws DatabaseIOException {
     CacheFileMetadataIndex index =
         new CacheFileMetadataIndex(TestUtil.getInMemoryDatabaseProvider());
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.datasource.cache;
+
+import static androidx.media3.test.utils.CacheAsserts.assertDataCached;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.NullableType;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelCacheWriter}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParallelCacheWriterTest {
+
+  private static final Uri URI = Uri.parse("test_data");
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private ExecutorService executor;
+  private List<FakeDataSource> upstreamDataSources;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    executor = Executors.newFixedThreadPool(/* nThreads= */ 4);
+    upstreamDataSources = new ArrayList<>();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void cache_knownLength_writesEachChunkToItsOwnSpan() throws Exception {
+    byte[] data = TestUtil.buildTestData(1000);
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    ParallelCacheWriter cacheWriter =
+        new ParallelCacheWriter(
+            createCacheDataSourceFactory(data, /* simulateUnknownLength= */ false),
+            new DataSpec(URI, /* position= */ 0, /* length= */ 1000),
+            executor,
+            /* chunkLengthBytes= */ 100,
+            /* maxParallelChunks= */ 4,
+            progressRecorder);
+
+    cacheWriter.cache();
+
+    assertDataCached(cache, new DataSpec(URI, /* position= */ 0, /* length= */ 1000), data);
+    assertThat(cache.getCachedSpans("test_data")).hasSize(10);
+    assertThat(progressRecorder.requestLength).isEqualTo(1000);
+    assertThat(progressRecorder.bytesCached).isEqualTo(1000);
+    assertThat(progressRecorder.totalNewBytesCached).isEqualTo(1000);
+  }
+
+  @Test
+  public void cache_partiallyCached_onlyRequestsUncachedChunks() throws Exception {
+    byte[] data = TestUtil.buildTestData(1000);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        createCacheDataSourceFactory(data, /* simulateUnknownLength= */ false);
+    new CacheWriter(
+            cacheDataSourceFactory.createDataSourceForDownloading(),
+            new DataSpec(URI, /* position= */ 200, /* length= */ 300),
+            /* temporaryBuffer= */ null,
+            /* progressListener= */ null)
+        .cache();
+    upstreamDataSources.clear();
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    ParallelCacheWriter cacheWriter =
+        new ParallelCacheWriter(
+            cacheDataSourceFactory,
+            new DataSpec(URI, /* position= */ 0, /* length= */ 1000),
+            executor,
+            /* chunkLengthBytes= */ 250,
+            /* maxParallelChunks= */ 4,
+            progressRecorder);
+
+    cacheWriter.cache();
+
+    assertDataCached(cache, new DataSpec(URI, /* position= */ 0, /* length= */ 1000), data);
+    List<Long> requestedPositions = new ArrayList<>();
+    for (DataSpec dataSpec : getOpenedUpstreamDataSpecs()) {
+      requestedPositions.add(dataSpec.position);
+    }
+    assertThat(requestedPositions).containsExactly(0L, 500L, 750L);
+    assertThat(progressRecorder.totalNewBytesCached).isEqualTo(700);
+  }
+
+  @Test
+  public void cache_unknownLength_readsLeadingChunkThenWritesRemainingChunks() throws Exception {
+    byte[] data = TestUtil.buildTestData(1000);
+    ParallelCacheWriter cacheWriter =
+        new ParallelCacheWriter(
+            createCacheDataSourceFactory(data, /* simulateUnknownLength= */ false),
+            new DataSpec(URI),
+            executor,
+            /* chunkLengthBytes= */ 300,
+            /* maxParallelChunks= */ 4,
+            /* progressListener= */ null);
+
+    cacheWriter.cache();
+
+    assertDataCached(cache, new DataSpec(URI), data);
+    List<DataSpec> openedDataSpecs = getOpenedUpstreamDataSpecs();
+    assertThat(openedDataSpecs).hasSize(4);
+    assertThat(openedDataSpecs.get(0).position).isEqualTo(0);
+    assertThat(openedDataSpecs.get(0).length).isEqualTo(C.LENGTH_UNSET);
+  }
+
+  @Test
+  public void cache_unknownLengthNotReported_writesSequentially() throws Exception {
+    byte[] data = TestUtil.buildTestData(1000);
+    ProgressRecorder progressRecorder = new ProgressRecorder();
+    ParallelCacheWriter cacheWriter =
+        new ParallelCacheWriter(
+            createCacheDataSourceFactory(data, /* simulateUnknownLength= */ true),
+            new DataSpec(URI),
+            executor,
+            /* chunkLengthBytes= */ 300,
+            /* maxParallelChunks= */ 4,
+            progressRecorder);
+
+    cacheWriter.cache();
+
+    assertDataCached(cache, new DataSpec(URI), data);
+    assertThat(getOpenedUpstreamDataSpecs()).hasSize(1);
+    assertThat(progressRecorder.requestLength).isEqualTo(1000);
+    assertThat(progressRecorder.bytesCached).isEqualTo(1000);
+  }
+
+  @Test
+  public void cache_canceledBeforeChunksStart_throwsInterruptedIOException() throws Exception {
+    byte[] data = TestUtil.buildTestData(1000);
+    List<Runnable> queuedTasks = Collections.synchronizedList(new ArrayList<>());
+    ParallelCacheWriter cacheWriter =
+        new ParallelCacheWriter(
+            createCacheDataSourceFactory(data, /* simulateUnknownLength= */ false),
+            new DataSpec(URI, /* position= */ 0, /* length= */ 1000),
+            /* executor= */ queuedTasks::add,
+            /* chunkLengthBytes= */ 100,
+            /* maxParallelChunks= */ 4,
+            /* progressListener= */ null);
+    AtomicReference<@NullableType Exception> cacheException = new AtomicReference<>();
+    Thread cacheThread =
+        new Thread(
+            () -> {
+              try {
+                cacheWriter.cache();
+              } catch (IOException e) {
+                cacheException.set(e);
+              }
+            });
+    cacheThread.start();
+    // The executor never runs the tasks, so the writer waits for the first chunk.
+    while (queuedTasks.size() < 4) {
+      Thread.sleep(10);
+    }
+
+    cacheWriter.cancel();
+    cacheThread.join();
+
+    assertThat(cacheException.get()).isInstanceOf(InterruptedIOException.class);
+  }
+
+  private CacheDataSource.Factory createCacheDataSourceFactory(
+      byte[] data, boolean simulateUnknownLength) {
+    return new CacheDataSource.Factory()
+        .setCache(cache)
+        .setUpstreamDataSourceFactory(
+            () -> {
+              // FakeDataSet isn't thread safe, so each upstream source needs its own instance.
+              FakeDataSet fakeDataSet =
+                  new FakeDataSet()
+                      .newData(URI)
+                      .setSimulateUnknownLength(simulateUnknownLength)
+                      .appendReadData(data)
+                      .endData();
+              FakeDataSource dataSource = new FakeDataSource(fakeDataSet);
+              synchronized (upstreamDataSources) {
+                upstreamDataSources.add(dataSource);
+              }
+              return dataSource;
+            });
+  }
+
+  private List<DataSpec> getOpenedUpstreamDataSpecs() {
+    List<DataSpec> openedDataSpecs = new ArrayList<>();
+    synchronized (upstreamDataSources) {
+      for (FakeDataSource dataSource : upstreamDataSources) {
+        for (DataSpec dataSpec : dataSource.getAndClearOpenedDataSpecs()) {
+          openedDataSpecs.add(dataSpec);
+        }
+      }
+    }
+    return openedDataSpecs;
+  }
+
+  private static final class ProgressRecorder implements CacheWriter.ProgressListener {
+
+    private long requestLength = C.LENGTH_UNSET;
+    private long bytesCached;
+    private long totalNewBytesCached;
+
+    @Override
+    public synchronized void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+      this.requestLength = requestLength;
+      this.bytesCached = bytesCached;
+      totalNewBytesCached += newBytesCached;
+    }
+  }
+}
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertThrows;
 import static org.mockito.Mockito.doAnswer;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.media3.common.util.Util;
 import androidx.media3.database.DatabaseProvider;
 import androidx.media3.datasource.cache.Cache.CacheException;
@@ -32,6 +33,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.NavigableSet;
 import java.util.Random;
 import org.junit.After;
@@ -629,6 +632,106 @@ public class SimpleCacheTest {
         () -> simpleCache.startReadWriteNonBlocking(KEY_1, 0, LENGTH_UNSET));
   }
 
+  @Test
+  public void commitFileWithContentHash_identicalContent_storesContentOnce() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    byte[] data = generateData(KEY_1, /* position= */ 0, /* length= */ 15);
+
+    CacheSpan holeSpan1 = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCacheWithContentHash(simpleCache, KEY_1, /* position= */ 0, data);
+    simpleCache.releaseHoleSpan(holeSpan1);
+    CacheSpan holeSpan2 = simpleCache.startReadWrite(KEY_2, 10, LENGTH_UNSET);
+    addCacheWithContentHash(simpleCache, KEY_2, /* position= */ 10, data);
+    simpleCache.releaseHoleSpan(holeSpan2);
+
+    CacheSpan span1 = simpleCache.getCachedSpans(KEY_1).first();
+    CacheSpan span2 = simpleCache.getCachedSpans(KEY_2).first();
+    assertThat(span1.file).isNotEqualTo(span2.file);
+    assertThat(Files.isSameFile(span1.file.toPath(), span2.file.toPath())).isTrue();
+    try (FileInputStream inputStream = new FileInputStream(span2.file)) {
+      assertThat(toByteArray(inputStream)).isEqualTo(data);
+    }
+    assertThat(getContentStoreFiles()).hasLength(1);
+  }
+
+  @Test
+  public void commitFileWithContentHash_differentContent_storesEachContent() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+
+    CacheSpan holeSpan1 = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCacheWithContentHash(simpleCache, KEY_1, /* position= */ 0, generateData(KEY_1, 0, 15));
+    simpleCache.releaseHoleSpan(holeSpan1);
+    CacheSpan holeSpan2 = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCacheWithContentHash(simpleCache, KEY_2, /* position= */ 0, generateData(KEY_2, 0, 15));
+    simpleCache.releaseHoleSpan(holeSpan2);
+
+    CacheSpan span1 = simpleCache.getCachedSpans(KEY_1).first();
+    CacheSpan span2 = simpleCache.getCachedSpans(KEY_2).first();
+    assertThat(Files.isSameFile(span1.file.toPath(), span2.file.toPath())).isFalse();
+    assertCachedDataReadCorrect(span1);
+    assertCachedDataReadCorrect(span2);
+    assertThat(getContentStoreFiles()).hasLength(2);
+  }
+
+  @Test
+  public void removeResource_withSharedContent_deletesContentWhenNoLongerReferenced()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    byte[] data = generateData(KEY_1, /* position= */ 0, /* length= */ 15);
+    CacheSpan holeSpan1 = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCacheWithContentHash(simpleCache, KEY_1, /* position= */ 0, data);
+    simpleCache.releaseHoleSpan(holeSpan1);
+    CacheSpan holeSpan2 = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCacheWithContentHash(simpleCache, KEY_2, /* position= */ 0, data);
+    simpleCache.releaseHoleSpan(holeSpan2);
+
+    simpleCache.removeResource(KEY_1);
+
+    assertThat(getContentStoreFiles()).hasLength(1);
+    try (FileInputStream inputStream =
+        new FileInputStream(simpleCache.getCachedSpans(KEY_2).first().file)) {
+      assertThat(toByteArray(inputStream)).isEqualTo(data);
+    }
+
+    // Reinitialize the cache to check that references are restored from disk.
+    simpleCache.release();
+    simpleCache = getSimpleCache();
+    simpleCache.removeResource(KEY_2);
+
+    assertThat(getContentStoreFiles()).isEmpty();
+  }
+
+  @Test
+  public void commitFileWithContentHash_failsValidation_doesNotReferenceStoredContent()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    byte[] data = generateData(KEY_1, /* position= */ 0, /* length= */ 15);
+    CacheSpan holeSpan1 = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCacheWithContentHash(simpleCache, KEY_1, /* position= */ 0, data);
+    simpleCache.releaseHoleSpan(holeSpan1);
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 5);
+    simpleCache.applyContentMetadataMutations(KEY_2, mutations);
+    CacheSpan holeSpan2 = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+
+    // The span extends beyond the content length of the key.
+    assertThrows(
+        IllegalStateException.class,
+        () -> addCacheWithContentHash(simpleCache, KEY_2, /* position= */ 0, data));
+    simpleCache.releaseHoleSpan(holeSpan2);
+
+    File[] contentStoreFiles = getContentStoreFiles();
+    assertThat(contentStoreFiles).hasLength(1);
+    // The stored content is only linked from its entry and the span of KEY_1.
+    assertThat(Files.getAttribute(contentStoreFiles[0].toPath(), "unix:nlink")).isEqualTo(2);
+  }
+
+  private File[] getContentStoreFiles() {
+    @Nullable
+    File[] files = new File(cacheDir, ContentAddressedFileStore.DIRECTORY_NAME).listFiles();
+    return files != null ? files : new File[0];
+  }
+
   private SimpleCache getSimpleCache() {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
   }
@@ -642,6 +745,16 @@ public class SimpleCacheTest {
     simpleCache.commitFile(file, length);
   }
 
+  private static void addCacheWithContentHash(
+      SimpleCache simpleCache, String key, int position, byte[] data) throws Exception {
+    File file = simpleCache.startFile(key, position, data.length);
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(data);
+    }
+    simpleCache.commitFile(
+        file, data.length, MessageDigest.getInstance("SHA-256").digest(data));
+  }
+
   private static void assertCachedDataReadCorrect(CacheSpan cacheSpan) throws IOException {
     assertThat(cacheSpan.isCached).isTrue();
     byte[] expected = generateData(cacheSpan.key, (int) cacheSpan.position, (int) cacheSpan.length);
@@ -25,7 +25,6 @@ import androidx.media3.common.Format;
 import androidx.media3.common.Metadata;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.common.util.Assertions;
-import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.decoder.flac.FlacBinarySearchSeeker.OutputFrameHolder;
 import androidx.media3.extractor.Extractor;
@@ -78,7 +77,6 @@ public final class FlacExtractor implements Extractor {
   public static final int FLAG_DISABLE_ID3_METADATA =
       androidx.media3.extractor.flac.FlacExtractor.FLAG_DISABLE_ID3_METADATA;
 
-  private final ParsableByteArray outputBuffer;
   private final boolean id3MetadataDisabled;
 
   @Nullable private FlacDecoderJni decoderJni;
@@ -104,7 +102,6 @@ public final class FlacExtractor implements Extractor {
    *     {@link Flags}.
    */
   public FlacExtractor(int flags) {
-    outputBuffer = new ParsableByteArray();
     id3MetadataDisabled = (flags & FLAG_DISABLE_ID3_METADATA) != 0;
   }
 
@@ -137,7 +134,7 @@ public final class FlacExtractor implements Extractor {
       decodeStreamMetadata(input);
 
       if (binarySearchSeeker != null && binarySearchSeeker.isSeeking()) {
-        return handlePendingSeek(input, seekPosition, outputBuffer, outputFrameHolder, trackOutput);
+        return handlePendingSeek(input, seekPosition, outputFrameHolder, trackOutput);
       }
 
       ByteBuffer outputByteBuffer = outputFrameHolder.byteBuffer;
@@ -152,7 +149,7 @@ public final class FlacExtractor implements Extractor {
         return RESULT_END_OF_INPUT;
       }
 
-      outputSample(outputBuffer, outputSize, decoderJni.getLastFrameTimestamp(), trackOutput);
+      outputSample(outputByteBuffer, outputSize, decoderJni.getLastFrameTimestamp(), trackOutput);
       return decoderJni.isEndOfData() ? RESULT_END_OF_INPUT : RESULT_CONTINUE;
     } finally {
       decoderJni.clearData();
@@ -210,8 +207,10 @@ public final class FlacExtractor implements Extractor {
     streamMetadataDecoded = true;
     if (this.streamMetadata == null) {
       this.streamMetadata = streamMetadata;
-      outputBuffer.reset(streamMetadata.getMaxDecodedFrameSize());
-      outputFrameHolder = new OutputFrameHolder(ByteBuffer.wrap(outputBuffer.getData()));
+      // The decoder writes into a direct buffer without an intermediate array, and the buffer is
+      // passed to the track output without being copied into a ParsableByteArray.
+      outputFrameHolder =
+          new OutputFrameHolder(ByteBuffer.allocateDirect(streamMetadata.getMaxDecodedFrameSize()));
       binarySearchSeeker =
           outputSeekMap(
               flacDecoderJni,
@@ -229,14 +228,14 @@ public final class FlacExtractor implements Extractor {
   private int handlePendingSeek(
       ExtractorInput input,
       PositionHolder seekPosition,
-      ParsableByteArray outputBuffer,
       OutputFrameHolder outputFrameHolder,
       TrackOutput trackOutput)
       throws IOException {
     int seekResult = binarySearchSeeker.handlePendingSeek(input, seekPosition);
     ByteBuffer outputByteBuffer = outputFrameHolder.byteBuffer;
     if (seekResult == RESULT_CONTINUE && outputByteBuffer.limit() > 0) {
-      outputSample(outputBuffer, outputByteBuffer.limit(), outputFrameHolder.timeUs, trackOutput);
+      outputSample(
+          outputByteBuffer, outputByteBuffer.limit(), outputFrameHolder.timeUs, trackOutput);
     }
     return seekResult;
   }
@@ -287,8 +286,8 @@ public final class FlacExtractor implements Extractor {
   }
 
   private static void outputSample(
-      ParsableByteArray sampleData, int size, long timeUs, TrackOutput output) {
-    sampleData.setPosition(0);
+      ByteBuffer sampleData, int size, long timeUs, TrackOutput output) {
+    sampleData.position(0);
     output.sampleData(sampleData, size);
     output.sampleMetadata(
         timeUs, C.BUFFER_FLAG_KEY_FRAME, size, /* offset= */ 0, /* cryptoData= */ null);
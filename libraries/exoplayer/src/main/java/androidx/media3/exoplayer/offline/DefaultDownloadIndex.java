@@ -34,6 +34,7 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import androidx.media3.database.DatabaseIOException;
 import androidx.media3.database.DatabaseProvider;
+import androidx.media3.database.DatabaseWriteBatcher;
 import androidx.media3.database.VersionTable;
 import androidx.media3.exoplayer.offline.Download.FailureReason;
 import androidx.media3.exoplayer.offline.Download.State;
@@ -143,6 +144,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   private final String name;
   private final String tableName;
   private final DatabaseProvider databaseProvider;
+  private final DatabaseWriteBatcher writeBatcher;
   private final Object initializationLock;
 
   @GuardedBy("initializationLock")
@@ -174,9 +176,37 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
    *     tables in which downloads are persisted.
    */
   public DefaultDownloadIndex(DatabaseProvider databaseProvider, String name) {
+    this(databaseProvider, name, /* maxWriteDelayMs= */ 0);
+  }
+
+  /**
+   * Creates an instance that stores the {@link Download Downloads} in an SQLite database provided
+   * by a {@link DatabaseProvider}, batching writes of {@link Download#STATE_DOWNLOADING
+   * downloading} downloads.
+   *
+   * <p>Writes of downloads in {@link Download#STATE_DOWNLOADING} typically only update their
+   * progress. When {@code maxWriteDelayMs} is non-zero, these writes are held in memory and
+   * coalesced into a single transaction, which is committed by the first write issued after {@code
+   * maxWriteDelayMs} has elapsed, or before any other operation on the index. Progress written
+   * during the last {@code maxWriteDelayMs} may be lost if the process is killed. Writes of
+   * downloads in any other state are always applied immediately.
+   *
+   * @param databaseProvider Provides the SQLite database in which downloads are persisted.
+   * @param name The name of the index. This name is incorporated into the names of the SQLite
+   *     tables in which downloads are persisted.
+   * @param maxWriteDelayMs The maximum duration for which progress updates may be batched, in
+   *     milliseconds, or zero to apply every write immediately.
+   */
+  public DefaultDownloadIndex(
+      DatabaseProvider databaseProvider, String name, long maxWriteDelayMs) {
     this.name = name;
     this.databaseProvider = databaseProvider;
     tableName = TABLE_PREFIX + name;
+    writeBatcher =
+        new DatabaseWriteBatcher(
+            databaseProvider,
+            maxWriteDelayMs,
+            DatabaseWriteBatcher.DEFAULT_MAX_PENDING_WRITE_COUNT);
     initializationLock = new Object();
   }
 
@@ -184,6 +214,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   @Nullable
   public Download getDownload(String id) throws DatabaseIOException {
     ensureInitialized();
+    writeBatcher.flush();
     try (Cursor cursor = getCursor(WHERE_ID_EQUALS, new String[] {id})) {
       if (cursor.getCount() == 0) {
         return null;
@@ -198,6 +229,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   @Override
   public DownloadCursor getDownloads(@Download.State int... states) throws DatabaseIOException {
     ensureInitialized();
+    writeBatcher.flush();
     Cursor cursor = getCursor(getStateQuery(states), /* selectionArgs= */ null);
     return new DownloadCursorImpl(cursor);
   }
@@ -205,17 +237,17 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   @Override
   public void putDownload(Download download) throws DatabaseIOException {
     ensureInitialized();
-    try {
-      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
-      putDownloadInternal(download, writableDatabase);
-    } catch (SQLiteException e) {
-      throw new DatabaseIOException(e);
+    writeBatcher.write(download.request.id, database -> putDownloadInternal(download, database));
+    if (download.state != Download.STATE_DOWNLOADING) {
+      writeBatcher.flush();
     }
   }
 
   @Override
   public void removeDownload(String id) throws DatabaseIOException {
     ensureInitialized();
+    writeBatcher.cancel(id);
+    writeBatcher.flush();
     try {
       databaseProvider.getWritableDatabase().delete(tableName, WHERE_ID_EQUALS, new String[] {id});
     } catch (SQLiteException e) {
@@ -226,6 +258,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   @Override
   public void setDownloadingStatesToQueued() throws DatabaseIOException {
     ensureInitialized();
+    writeBatcher.flush();
     try {
       ContentValues values = new ContentValues();
       values.put(COLUMN_STATE, Download.STATE_QUEUED);
@@ -239,6 +272,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   @Override
   public void setStatesToRemoving() throws DatabaseIOException {
     ensureInitialized();
+    writeBatcher.flush();
     try {
       ContentValues values = new ContentValues();
       values.put(COLUMN_STATE, Download.STATE_REMOVING);
@@ -255,6 +289,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   @Override
   public void setStopReason(int stopReason) throws DatabaseIOException {
     ensureInitialized();
+    writeBatcher.flush();
     try {
       ContentValues values = new ContentValues();
       values.put(COLUMN_STOP_REASON, stopReason);
@@ -268,6 +303,7 @@ public final class DefaultDownloadIndex implements WritableDownloadIndex {
   @Override
   public void setStopReason(String id, int stopReason) throws DatabaseIOException {
     ensureInitialized();
+    writeBatcher.flush();
     try {
       ContentValues values = new ContentValues();
       values.put(COLUMN_STOP_REASON, stopReason);
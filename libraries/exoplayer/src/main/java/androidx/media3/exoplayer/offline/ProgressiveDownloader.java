@@ -29,6 +29,7 @@ import androidx.media3.common.util.Util;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.cache.CacheDataSource;
 import androidx.media3.datasource.cache.CacheWriter;
+import androidx.media3.datasource.cache.ParallelCacheWriter;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -41,7 +42,8 @@ public final class ProgressiveDownloader implements Downloader {
   private final Executor executor;
   private final DataSpec dataSpec;
   private final CacheDataSource dataSource;
-  private final CacheWriter cacheWriter;
+  @Nullable private final CacheWriter cacheWriter;
+  @Nullable private final ParallelCacheWriter parallelCacheWriter;
   @Nullable private final PriorityTaskManager priorityTaskManager;
 
   @Nullable private ProgressListener progressListener;
@@ -66,12 +68,32 @@ public final class ProgressiveDownloader implements Downloader {
    * @param mediaItem The media item with a uri to the stream to be downloaded.
    * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
    *     download will be written.
-   * @param executor An {@link Executor} used to make requests for the media being downloaded. In
-   *     the future, providing an {@link Executor} that uses multiple threads may speed up the
-   *     download by allowing parts of it to be executed in parallel.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded. Use
+   *     {@link #ProgressiveDownloader(MediaItem, CacheDataSource.Factory, Executor, int)} to
+   *     download parts of the stream in parallel.
    */
   public ProgressiveDownloader(
       MediaItem mediaItem, CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
+    this(mediaItem, cacheDataSourceFactory, executor, /* maxParallelChunks= */ 1);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param mediaItem The media item with a uri to the stream to be downloaded.
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
+   *     download will be written.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded.
+   * @param maxParallelChunks The maximum number of chunks of the stream that are downloaded in
+   *     parallel. If greater than one, uncached parts of the stream are split into chunks of up to
+   *     {@link ParallelCacheWriter#DEFAULT_CHUNK_LENGTH_BYTES} that are downloaded concurrently on
+   *     the {@link Executor}, which should be able to run this many tasks at the same time.
+   */
+  public ProgressiveDownloader(
+      MediaItem mediaItem,
+      CacheDataSource.Factory cacheDataSourceFactory,
+      Executor executor,
+      int maxParallelChunks) {
     this.executor = Assertions.checkNotNull(executor);
     Assertions.checkNotNull(mediaItem.localConfiguration);
     dataSpec =
@@ -83,8 +105,21 @@ public final class ProgressiveDownloader implements Downloader {
     dataSource = cacheDataSourceFactory.createDataSourceForDownloading();
     @SuppressWarnings("nullness:methodref.receiver.bound")
     CacheWriter.ProgressListener progressListener = this::onProgress;
-    cacheWriter =
-        new CacheWriter(dataSource, dataSpec, /* temporaryBuffer= */ null, progressListener);
+    if (maxParallelChunks > 1) {
+      cacheWriter = null;
+      parallelCacheWriter =
+          new ParallelCacheWriter(
+              cacheDataSourceFactory,
+              dataSpec,
+              executor,
+              ParallelCacheWriter.DEFAULT_CHUNK_LENGTH_BYTES,
+              maxParallelChunks,
+              progressListener);
+    } else {
+      cacheWriter =
+          new CacheWriter(dataSource, dataSpec, /* temporaryBuffer= */ null, progressListener);
+      parallelCacheWriter = null;
+    }
     priorityTaskManager = cacheDataSourceFactory.getUpstreamPriorityTaskManager();
   }
 
@@ -96,6 +131,11 @@ public final class ProgressiveDownloader implements Downloader {
       priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
     }
     try {
+      if (parallelCacheWriter != null) {
+        downloadInParallel(parallelCacheWriter);
+        return;
+      }
+      CacheWriter cacheWriter = checkNotNull(this.cacheWriter);
       boolean finished = false;
       while (!finished && !isCanceled) {
         // Recreate downloadRunnable on each loop iteration to avoid rethrowing a previous error.
@@ -134,7 +174,10 @@ public final class ProgressiveDownloader implements Downloader {
     } finally {
       // If the main download thread was interrupted as part of cancelation, then it's possible that
       // the runnable is still doing work. We need to wait until it's finished before returning.
-      checkNotNull(downloadRunnable).blockUntilFinished();
+      @Nullable RunnableFutureTask<Void, IOException> downloadRunnable = this.downloadRunnable;
+      if (downloadRunnable != null) {
+        downloadRunnable.blockUntilFinished();
+      }
       if (priorityTaskManager != null) {
         priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
       }
@@ -144,6 +187,9 @@ public final class ProgressiveDownloader implements Downloader {
   @Override
   public void cancel() {
     isCanceled = true;
+    if (parallelCacheWriter != null) {
+      parallelCacheWriter.cancel();
+    }
     RunnableFutureTask<Void, IOException> downloadRunnable = this.downloadRunnable;
     if (downloadRunnable != null) {
       downloadRunnable.cancel(/* interruptIfRunning= */ true);
@@ -155,6 +201,22 @@ public final class ProgressiveDownloader implements Downloader {
     dataSource.getCache().removeResource(dataSource.getCacheKeyFactory().buildCacheKey(dataSpec));
   }
 
+  private void downloadInParallel(ParallelCacheWriter parallelCacheWriter)
+      throws IOException, InterruptedException {
+    // The chunks are downloaded on the executor, so the writer itself runs on this thread.
+    while (!isCanceled) {
+      if (priorityTaskManager != null) {
+        priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+      }
+      try {
+        parallelCacheWriter.cache();
+        return;
+      } catch (PriorityTooLowException e) {
+        // The next loop iteration will block until the task is able to proceed.
+      }
+    }
+  }
+
   private void onProgress(long contentLength, long bytesCached, long newBytesCached) {
     if (progressListener == null) {
       return;
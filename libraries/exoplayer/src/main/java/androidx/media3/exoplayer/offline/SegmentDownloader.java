@@ -25,6 +25,7 @@ import androidx.media3.common.PriorityTaskManager;
 import androidx.media3.common.PriorityTaskManager.PriorityTooLowException;
 import androidx.media3.common.StreamKey;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.RunnableFutureTask;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
@@ -43,6 +44,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 
@@ -75,6 +77,24 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
   }
 
+  /** Lists a part of the downloadable {@link Segment}s of a manifest. */
+  protected interface SegmentListLoader {
+
+    /**
+     * Loads any data required to list the segments, and returns them.
+     *
+     * <p>Called on a thread of the {@link Executor} used for the download. Data should be loaded
+     * directly on the calling thread, for example using {@link
+     * SegmentDownloader#loadManifest}, rather than using {@link SegmentDownloader#getManifest} or
+     * {@link SegmentDownloader#execute}.
+     *
+     * @param dataSource The {@link DataSource} through which to load any required data.
+     * @return The list of downloadable {@link Segment}s.
+     * @throws IOException If an error occurs loading the data required to list the segments.
+     */
+    List<Segment> load(DataSource dataSource) throws IOException;
+  }
+
   public static final long DEFAULT_MAX_MERGED_SEGMENT_START_TIME_DIFF_MS = 20 * C.MILLIS_PER_SECOND;
 
   private static final int BUFFER_SIZE_BYTES = 128 * 1024;
@@ -99,6 +119,9 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
    */
   private final ArrayList<RunnableFutureTask<?, ?>> activeRunnables;
 
+  /** Opened when a segment list has been loaded, or when the download is canceled. */
+  private final ConditionVariable segmentListLoaded;
+
   private volatile boolean isCanceled;
 
   /**
@@ -147,107 +170,131 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     cacheKeyFactory = cacheDataSourceFactory.getCacheKeyFactory();
     priorityTaskManager = cacheDataSourceFactory.getUpstreamPriorityTaskManager();
     activeRunnables = new ArrayList<>();
+    segmentListLoaded = new ConditionVariable();
     maxMergedSegmentStartTimeDiffUs = Util.msToUs(maxMergedSegmentStartTimeDiffMs);
   }
 
   @Override
   public final void download(@Nullable ProgressListener progressListener)
       throws IOException, InterruptedException {
+    ArrayDeque<SegmentListLoader> pendingSegmentListLoaders = new ArrayDeque<>();
     ArrayDeque<Segment> pendingSegments = new ArrayDeque<>();
     ArrayDeque<SegmentDownloadRunnable> recycledRunnables = new ArrayDeque<>();
+    ConcurrentLinkedQueue<SegmentListLoadRunnable> loadedSegmentListRunnables =
+        new ConcurrentLinkedQueue<>();
+    int activeSegmentListRunnableCount = 0;
     if (priorityTaskManager != null) {
       priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
     }
     try {
       CacheDataSource dataSource = cacheDataSourceFactory.createDataSourceForDownloading();
-      // Get the manifest and all of the segments.
+      // Get the manifest.
       M manifest = getManifest(dataSource, manifestDataSpec, /* removing= */ false);
       if (!streamKeys.isEmpty()) {
         manifest = manifest.copy(streamKeys);
       }
-      List<Segment> segments = getSegments(dataSource, manifest, /* removing= */ false);
+      @Nullable
+      ProgressNotifier progressNotifier =
+          progressListener != null ? new ProgressNotifier(progressListener) : null;
 
-      // Sort the segments so that we download media in the right order from the start of the
-      // content, and merge segments where possible to minimize the number of server round trips.
-      Collections.sort(segments);
-      mergeSegments(segments, cacheKeyFactory, maxMergedSegmentStartTimeDiffUs);
-
-      // Scan the segments, removing any that are fully downloaded.
-      int totalSegments = segments.size();
-      int segmentsDownloaded = 0;
-      long contentLength = 0;
-      long bytesDownloaded = 0;
-      for (int i = segments.size() - 1; i >= 0; i--) {
-        DataSpec dataSpec = segments.get(i).dataSpec;
-        String cacheKey = cacheKeyFactory.buildCacheKey(dataSpec);
-        long segmentLength = dataSpec.length;
-        if (segmentLength == C.LENGTH_UNSET) {
-          long resourceLength =
-              ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
-          if (resourceLength != C.LENGTH_UNSET) {
-            segmentLength = resourceLength - dataSpec.position;
-          }
+      // Get the segments. If the manifest provides segment list loaders, the lists are loaded in
+      // parallel below, and the segments of each list start downloading as soon as it's loaded.
+      @Nullable List<SegmentListLoader> segmentListLoaders = getSegmentListLoaders(manifest);
+      if (segmentListLoaders != null) {
+        pendingSegmentListLoaders.addAll(segmentListLoaders);
+      } else {
+        List<Segment> segments = getSegments(dataSource, manifest, /* removing= */ false);
+        addPendingSegments(segments, pendingSegments, progressNotifier);
+        if (progressNotifier != null) {
+          progressNotifier.onAllSegmentsListed();
         }
-        long segmentBytesDownloaded =
-            cache.getCachedBytes(cacheKey, dataSpec.position, segmentLength);
-        bytesDownloaded += segmentBytesDownloaded;
-        if (segmentLength != C.LENGTH_UNSET) {
-          if (segmentLength == segmentBytesDownloaded) {
-            // The segment is fully downloaded.
-            segmentsDownloaded++;
-            segments.remove(i);
+      }
+
+      // Load the segment lists and download the segments.
+      while (!isCanceled
+          && (!pendingSegmentListLoaders.isEmpty()
+              || !pendingSegments.isEmpty()
+              || !activeRunnables.isEmpty())) {
+        @Nullable RunnableFutureTask<?, ?> startedRunnable = null;
+        if (!pendingSegmentListLoaders.isEmpty() || !pendingSegments.isEmpty()) {
+          // Block until there aren't any higher priority tasks.
+          if (priorityTaskManager != null) {
+            priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
           }
-          if (contentLength != C.LENGTH_UNSET) {
-            contentLength += segmentLength;
+
+          if (!pendingSegmentListLoaders.isEmpty()) {
+            // Create and execute a runnable to load the next segment list.
+            startedRunnable =
+                new SegmentListLoadRunnable(
+                    pendingSegmentListLoaders.removeFirst(),
+                    cacheDataSourceFactory.createDataSourceForDownloading(),
+                    loadedSegmentListRunnables,
+                    segmentListLoaded);
+            activeSegmentListRunnableCount++;
+          } else {
+            // Create and execute a runnable to download the next segment.
+            CacheDataSource segmentDataSource;
+            byte[] temporaryBuffer;
+            if (!recycledRunnables.isEmpty()) {
+              SegmentDownloadRunnable recycledRunnable = recycledRunnables.removeFirst();
+              segmentDataSource = recycledRunnable.dataSource;
+              temporaryBuffer = recycledRunnable.temporaryBuffer;
+            } else {
+              segmentDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+              temporaryBuffer = new byte[BUFFER_SIZE_BYTES];
+            }
+            Segment segment = pendingSegments.removeFirst();
+            startedRunnable =
+                new SegmentDownloadRunnable(
+                    segment, segmentDataSource, progressNotifier, temporaryBuffer);
+          }
+          addActiveRunnable(startedRunnable);
+          executor.execute(startedRunnable);
+        } else if (activeSegmentListRunnableCount > 0) {
+          // There's nothing to start until another segment list has been loaded.
+          segmentListLoaded.close();
+          if (loadedSegmentListRunnables.isEmpty()) {
+            segmentListLoaded.block();
           }
-        } else {
-          contentLength = C.LENGTH_UNSET;
         }
-      }
 
-      // Download the segments.
-      @Nullable
-      ProgressNotifier progressNotifier =
-          progressListener != null
-              ? new ProgressNotifier(
-                  progressListener,
-                  contentLength,
-                  totalSegments,
-                  bytesDownloaded,
-                  segmentsDownloaded)
-              : null;
-      pendingSegments.addAll(segments);
-      while (!isCanceled && !pendingSegments.isEmpty()) {
-        // Block until there aren't any higher priority tasks.
-        if (priorityTaskManager != null) {
-          priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+        // Add the segments of segment lists that have been loaded.
+        @Nullable SegmentListLoadRunnable loadedRunnable;
+        while ((loadedRunnable = loadedSegmentListRunnables.poll()) != null) {
+          loadedRunnable.blockUntilFinished();
+          removeActiveRunnable(loadedRunnable);
+          activeSegmentListRunnableCount--;
+          try {
+            addPendingSegments(loadedRunnable.get(), pendingSegments, progressNotifier);
+          } catch (ExecutionException e) {
+            Throwable cause = Assertions.checkNotNull(e.getCause());
+            if (cause instanceof PriorityTooLowException) {
+              // We need to load this segment list again in a future loop iteration.
+              pendingSegmentListLoaders.addFirst(loadedRunnable.segmentListLoader);
+            } else if (cause instanceof IOException) {
+              throw (IOException) cause;
+            } else {
+              // The cause must be an uncaught Throwable type.
+              Util.sneakyThrow(cause);
+            }
+          }
         }
-
-        // Create and execute a runnable to download the next segment.
-        CacheDataSource segmentDataSource;
-        byte[] temporaryBuffer;
-        if (!recycledRunnables.isEmpty()) {
-          SegmentDownloadRunnable recycledRunnable = recycledRunnables.removeFirst();
-          segmentDataSource = recycledRunnable.dataSource;
-          temporaryBuffer = recycledRunnable.temporaryBuffer;
-        } else {
-          segmentDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
-          temporaryBuffer = new byte[BUFFER_SIZE_BYTES];
+        boolean allSegmentsListed =
+            pendingSegmentListLoaders.isEmpty() && activeSegmentListRunnableCount == 0;
+        if (allSegmentsListed && progressNotifier != null) {
+          progressNotifier.onAllSegmentsListed();
         }
-        Segment segment = pendingSegments.removeFirst();
-        SegmentDownloadRunnable downloadRunnable =
-            new SegmentDownloadRunnable(
-                segment, segmentDataSource, progressNotifier, temporaryBuffer);
-        addActiveRunnable(downloadRunnable);
-        executor.execute(downloadRunnable);
-
-        // Clean up runnables that have finished.
+
+        // Clean up segment runnables that have finished.
         for (int j = activeRunnables.size() - 1; j >= 0; j--) {
+          if (!(activeRunnables.get(j) instanceof SegmentDownloadRunnable)) {
+            continue;
+          }
           SegmentDownloadRunnable activeRunnable = (SegmentDownloadRunnable) activeRunnables.get(j);
-          // Only block until the runnable has finished if we don't have any more pending segments
-          // to start. If we do have pending segments to start then only process the runnable if
-          // it's already finished.
-          if (pendingSegments.isEmpty() || activeRunnable.isDone()) {
+          // Only block until the runnable has finished if we don't have any more segments or
+          // segment lists to start or wait for. Otherwise only process the runnable if it's
+          // already finished.
+          if ((allSegmentsListed && pendingSegments.isEmpty()) || activeRunnable.isDone()) {
             try {
               activeRunnable.get();
               removeActiveRunnable(j);
@@ -269,9 +316,12 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
           }
         }
 
-        // Don't move on to the next segment until the runnable for this segment has started. This
-        // drip feeds runnables to the executor, rather than providing them all up front.
-        downloadRunnable.blockUntilStarted();
+        if (startedRunnable != null) {
+          // Don't move on to the next segment or segment list until the runnable for this one has
+          // started. This drip feeds runnables to the executor, rather than providing them all up
+          // front.
+          startedRunnable.blockUntilStarted();
+        }
       }
     } finally {
       // If one of the runnables has thrown an exception, then it's possible there are other active
@@ -300,6 +350,9 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
         activeRunnables.get(i).cancel(/* interruptIfRunning= */ true);
       }
     }
+    // Wake up the download thread if it's waiting for segment lists whose runnables were canceled
+    // before they started.
+    segmentListLoaded.open();
   }
 
   @Override
@@ -339,12 +392,24 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
         new RunnableFutureTask<M, IOException>() {
           @Override
           protected M doWork() throws IOException {
-            return ParsingLoadable.load(dataSource, manifestParser, dataSpec, C.DATA_TYPE_MANIFEST);
+            return loadManifest(dataSource, dataSpec);
           }
         },
         removing);
   }
 
+  /**
+   * Loads and parses a manifest on the calling thread.
+   *
+   * @param dataSource The source to use when loading the manifest.
+   * @param dataSpec The manifest {@link DataSpec}.
+   * @return The loaded manifest.
+   * @throws IOException If an error occurs reading data from the source.
+   */
+  protected final M loadManifest(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    return ParsingLoadable.load(dataSource, manifestParser, dataSpec, C.DATA_TYPE_MANIFEST);
+  }
+
   /**
    * Executes the provided {@link RunnableFutureTask}.
    *
@@ -416,6 +481,26 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
   protected abstract List<Segment> getSegments(DataSource dataSource, M manifest, boolean removing)
       throws IOException, InterruptedException;
 
+  /**
+   * Returns {@link SegmentListLoader SegmentListLoaders} that together list all downloadable
+   * {@link Segment}s for a given manifest, or null if the segments should be listed using {@link
+   * #getSegments}.
+   *
+   * <p>The segment lists are loaded in parallel on the {@link Executor} used for the download, and
+   * the segments of each list start downloading as soon as it has been loaded, while other lists
+   * are still loading. Implementations should return a loader per independently loadable part of
+   * the manifest, for example per media playlist or representation.
+   *
+   * <p>The default implementation returns null.
+   *
+   * @param manifest The manifest containing the segments.
+   * @return The {@link SegmentListLoader SegmentListLoaders}, or null.
+   */
+  @Nullable
+  protected List<SegmentListLoader> getSegmentListLoaders(M manifest) {
+    return null;
+  }
+
   protected static DataSpec getCompressibleDataSpec(Uri uri) {
     return new DataSpec.Builder().setUri(uri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build();
   }
@@ -442,6 +527,62 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
   }
 
+  private void addPendingSegments(
+      List<Segment> segments,
+      ArrayDeque<Segment> pendingSegments,
+      @Nullable ProgressNotifier progressNotifier) {
+    // Sort the segments so that we download media in the right order from the start of the
+    // content, and merge segments where possible to minimize the number of server round trips.
+    segments = new ArrayList<>(segments);
+    Collections.sort(segments);
+    mergeSegments(segments, cacheKeyFactory, maxMergedSegmentStartTimeDiffUs);
+
+    // Scan the segments, removing any that are fully downloaded. This allows a download to resume
+    // from the first incomplete segment of each list, as soon as the list is available.
+    int totalSegments = segments.size();
+    int segmentsDownloaded = 0;
+    long contentLength = 0;
+    long bytesDownloaded = 0;
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      DataSpec dataSpec = segments.get(i).dataSpec;
+      String cacheKey = cacheKeyFactory.buildCacheKey(dataSpec);
+      long segmentLength = dataSpec.length;
+      if (segmentLength == C.LENGTH_UNSET) {
+        long resourceLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+        if (resourceLength != C.LENGTH_UNSET) {
+          segmentLength = resourceLength - dataSpec.position;
+        }
+      }
+      long segmentBytesDownloaded =
+          cache.getCachedBytes(cacheKey, dataSpec.position, segmentLength);
+      bytesDownloaded += segmentBytesDownloaded;
+      if (segmentLength != C.LENGTH_UNSET) {
+        if (segmentLength == segmentBytesDownloaded) {
+          // The segment is fully downloaded.
+          segmentsDownloaded++;
+          segments.remove(i);
+        }
+        if (contentLength != C.LENGTH_UNSET) {
+          contentLength += segmentLength;
+        }
+      } else {
+        contentLength = C.LENGTH_UNSET;
+      }
+    }
+    if (progressNotifier != null) {
+      progressNotifier.onSegmentsListed(
+          contentLength, totalSegments, bytesDownloaded, segmentsDownloaded);
+    }
+
+    // Keep the pending segments in order when adding segments of another list.
+    if (!pendingSegments.isEmpty()) {
+      segments.addAll(pendingSegments);
+      Collections.sort(segments);
+      pendingSegments.clear();
+    }
+    pendingSegments.addAll(segments);
+  }
+
   private static void mergeSegments(
       List<Segment> segments, CacheKeyFactory keyFactory, long maxMergedSegmentStartTimeDiffUs) {
     HashMap<String, Integer> lastIndexByCacheKey = new HashMap<>();
@@ -517,38 +658,83 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
   }
 
+  private static final class SegmentListLoadRunnable
+      extends RunnableFutureTask<List<Segment>, IOException> {
+
+    public final SegmentListLoader segmentListLoader;
+    private final DataSource dataSource;
+    private final ConcurrentLinkedQueue<SegmentListLoadRunnable> loadedRunnables;
+    private final ConditionVariable segmentListLoaded;
+
+    public SegmentListLoadRunnable(
+        SegmentListLoader segmentListLoader,
+        DataSource dataSource,
+        ConcurrentLinkedQueue<SegmentListLoadRunnable> loadedRunnables,
+        ConditionVariable segmentListLoaded) {
+      this.segmentListLoader = segmentListLoader;
+      this.dataSource = dataSource;
+      this.loadedRunnables = loadedRunnables;
+      this.segmentListLoaded = segmentListLoaded;
+    }
+
+    @Override
+    protected List<Segment> doWork() throws IOException {
+      try {
+        return segmentListLoader.load(dataSource);
+      } finally {
+        loadedRunnables.add(this);
+        segmentListLoaded.open();
+      }
+    }
+  }
+
   private static final class ProgressNotifier implements CacheWriter.ProgressListener {
 
     private final ProgressListener progressListener;
 
-    private final long contentLength;
-    private final int totalSegments;
-
+    private long contentLength;
+    private int totalSegments;
     private long bytesDownloaded;
     private int segmentsDownloaded;
+    private boolean allSegmentsListed;
 
-    public ProgressNotifier(
-        ProgressListener progressListener,
-        long contentLength,
-        int totalSegments,
-        long bytesDownloaded,
-        int segmentsDownloaded) {
+    public ProgressNotifier(ProgressListener progressListener) {
       this.progressListener = progressListener;
-      this.contentLength = contentLength;
-      this.totalSegments = totalSegments;
-      this.bytesDownloaded = bytesDownloaded;
-      this.segmentsDownloaded = segmentsDownloaded;
+    }
+
+    public synchronized void onSegmentsListed(
+        long contentLength, int totalSegments, long bytesDownloaded, int segmentsDownloaded) {
+      if (this.contentLength != C.LENGTH_UNSET) {
+        this.contentLength =
+            contentLength != C.LENGTH_UNSET ? this.contentLength + contentLength : C.LENGTH_UNSET;
+      }
+      this.totalSegments += totalSegments;
+      this.bytesDownloaded += bytesDownloaded;
+      this.segmentsDownloaded += segmentsDownloaded;
+    }
+
+    public synchronized void onAllSegmentsListed() {
+      allSegmentsListed = true;
     }
 
     @Override
-    public void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+    public synchronized void onProgress(
+        long requestLength, long bytesCached, long newBytesCached) {
       bytesDownloaded += newBytesCached;
-      progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
+      notifyProgress();
     }
 
-    public void onSegmentDownloaded() {
+    public synchronized void onSegmentDownloaded() {
       segmentsDownloaded++;
-      progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
+      notifyProgress();
+    }
+
+    private void notifyProgress() {
+      // The total is only known once all segments have been listed.
+      progressListener.onProgress(
+          allSegmentsListed ? contentLength : C.LENGTH_UNSET,
+          bytesDownloaded,
+          allSegmentsListed ? getPercentDownloaded() : C.PERCENTAGE_UNSET);
     }
 
     private float getPercentDownloaded() {
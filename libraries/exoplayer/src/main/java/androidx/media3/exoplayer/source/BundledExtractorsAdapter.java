@@ -15,6 +15,9 @@
  */
 package androidx.media3.exoplayer.source;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
@@ -31,6 +34,7 @@ import androidx.media3.extractor.PositionHolder;
 import androidx.media3.extractor.mp3.Mp3Extractor;
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -41,6 +45,12 @@ import java.util.Map;
 @UnstableApi
 public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor {
 
+  /**
+   * The maximum number of bytes at the start of the input that are peeked once and sniffed by all
+   * extractors.
+   */
+  private static final int SNIFF_PREFIX_LENGTH = 4096;
+
   private final ExtractorsFactory extractorsFactory;
 
   @Nullable private Extractor extractor;
@@ -73,7 +83,7 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     if (extractors.length == 1) {
       this.extractor = extractors[0];
     } else {
-      for (Extractor extractor : extractors) {
+      for (Extractor extractor : filterExtractors(extractors, extractorInput, position, length)) {
         try {
           if (extractor.sniff(extractorInput)) {
             this.extractor = extractor;
@@ -97,6 +107,53 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     extractor.init(output);
   }
 
+  /**
+   * Returns the extractors that may be able to read the input, in their original order.
+   *
+   * <p>A prefix of the input is peeked once, and every extractor sniffs an in-memory copy of it.
+   * Extractors that reject the prefix are omitted, so that they aren't sniffed against the input.
+   * Extractors that recognize the prefix and extractors that need more data to decide are kept.
+   */
+  private static List<Extractor> filterExtractors(
+      Extractor[] extractors, ExtractorInput input, long position, long length)
+      throws IOException {
+    byte[] prefix = new byte[SNIFF_PREFIX_LENGTH];
+    int prefixLength = 0;
+    int bytesPeeked = 0;
+    while (prefixLength < prefix.length && bytesPeeked != C.RESULT_END_OF_INPUT) {
+      bytesPeeked = input.peek(prefix, prefixLength, prefix.length - prefixLength);
+      if (bytesPeeked != C.RESULT_END_OF_INPUT) {
+        prefixLength += bytesPeeked;
+      }
+    }
+    input.resetPeekPosition();
+
+    PrefixExtractorInput prefixInput =
+        new PrefixExtractorInput(
+            prefix,
+            prefixLength,
+            /* isWholeInput= */ bytesPeeked == C.RESULT_END_OF_INPUT,
+            position,
+            length);
+    List<Extractor> candidateExtractors = new ArrayList<>();
+    for (Extractor extractor : extractors) {
+      prefixInput.reset();
+      boolean rejected;
+      try {
+        rejected = !extractor.sniff(prefixInput);
+      } catch (EOFException e) {
+        rejected = true;
+      } catch (IOException e) {
+        // Leave it to sniffing the input itself to surface the error.
+        rejected = false;
+      }
+      if (!rejected || prefixInput.readPastEnd) {
+        candidateExtractors.add(extractor);
+      }
+    }
+    return candidateExtractors;
+  }
+
   @Override
   public void release() {
     if (extractor != null) {
@@ -132,4 +189,193 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     return Assertions.checkNotNull(extractor)
         .read(Assertions.checkNotNull(extractorInput), positionHolder);
   }
+
+  /**
+   * An {@link ExtractorInput} for a prefix of the input, which records reads and peeks past its
+   * end. It can be reset to sniff the same prefix with several extractors.
+   */
+  private static final class PrefixExtractorInput implements ExtractorInput {
+
+    private final byte[] data;
+    private final int length;
+    private final boolean isWholeInput;
+    private final long inputPosition;
+    private final long inputLength;
+
+    private int position;
+    private int peekPosition;
+    private boolean readPastEnd;
+
+    public PrefixExtractorInput(
+        byte[] data, int length, boolean isWholeInput, long inputPosition, long inputLength) {
+      this.data = data;
+      this.length = length;
+      this.isWholeInput = isWholeInput;
+      this.inputPosition = inputPosition;
+      this.inputLength = inputLength;
+    }
+
+    /** Resets the input to the start of the prefix. */
+    public void reset() {
+      position = 0;
+      peekPosition = 0;
+      readPastEnd = false;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      int bytesRead = getAvailableLength(position, length);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      System.arraycopy(data, position, buffer, offset, bytesRead);
+      advancePosition(bytesRead);
+      return bytesRead;
+    }
+
+    @Override
+    public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+        throws EOFException {
+      if (!checkAvailable(position, length, allowEndOfInput)) {
+        return false;
+      }
+      System.arraycopy(data, position, target, offset, length);
+      advancePosition(length);
+      return true;
+    }
+
+    @Override
+    public void readFully(byte[] target, int offset, int length) throws EOFException {
+      readFully(target, offset, length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public int skip(int length) {
+      int bytesSkipped = getAvailableLength(position, length);
+      if (bytesSkipped != C.RESULT_END_OF_INPUT) {
+        advancePosition(bytesSkipped);
+      }
+      return bytesSkipped;
+    }
+
+    @Override
+    public boolean skipFully(int length, boolean allowEndOfInput) throws EOFException {
+      if (!checkAvailable(position, length, allowEndOfInput)) {
+        return false;
+      }
+      advancePosition(length);
+      return true;
+    }
+
+    @Override
+    public void skipFully(int length) throws EOFException {
+      skipFully(length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public int peek(byte[] target, int offset, int length) {
+      int bytesPeeked = getAvailableLength(peekPosition, length);
+      if (bytesPeeked == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      System.arraycopy(data, peekPosition, target, offset, bytesPeeked);
+      peekPosition += bytesPeeked;
+      return bytesPeeked;
+    }
+
+    @Override
+    public boolean peekFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+        throws EOFException {
+      if (!checkAvailable(peekPosition, length, allowEndOfInput)) {
+        return false;
+      }
+      System.arraycopy(data, peekPosition, target, offset, length);
+      peekPosition += length;
+      return true;
+    }
+
+    @Override
+    public void peekFully(byte[] target, int offset, int length) throws EOFException {
+      peekFully(target, offset, length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public boolean advancePeekPosition(int length, boolean allowEndOfInput) throws EOFException {
+      if (!checkAvailable(peekPosition, length, allowEndOfInput)) {
+        return false;
+      }
+      peekPosition += length;
+      return true;
+    }
+
+    @Override
+    public void advancePeekPosition(int length) throws EOFException {
+      advancePeekPosition(length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public void resetPeekPosition() {
+      peekPosition = position;
+    }
+
+    @Override
+    public long getPeekPosition() {
+      return inputPosition + peekPosition;
+    }
+
+    @Override
+    public long getPosition() {
+      return inputPosition + position;
+    }
+
+    @Override
+    public long getLength() {
+      return inputLength;
+    }
+
+    @Override
+    public <E extends Throwable> void setRetryPosition(long position, E e) throws E {
+      // Sniffing is never retried, so the position doesn't need to be updated.
+      throw e;
+    }
+
+    /**
+     * Returns how many of {@code length} bytes from {@code offset} in the prefix can be read, or
+     * {@link C#RESULT_END_OF_INPUT} if none can be read.
+     */
+    private int getAvailableLength(int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (offset == this.length) {
+        readPastEnd = !isWholeInput;
+        return C.RESULT_END_OF_INPUT;
+      }
+      return min(length, this.length - offset);
+    }
+
+    /**
+     * Returns whether {@code length} bytes from {@code offset} in the prefix can be read, or false
+     * if none can be read because the prefix has ended and {@code allowEndOfInput} is true.
+     *
+     * @throws EOFException If the prefix ends after {@code offset} but before all bytes are read,
+     *     or at {@code offset} and {@code allowEndOfInput} is false.
+     */
+    private boolean checkAvailable(int offset, int length, boolean allowEndOfInput)
+        throws EOFException {
+      if (length <= this.length - offset) {
+        return true;
+      }
+      readPastEnd = !isWholeInput;
+      if (allowEndOfInput && offset == this.length) {
+        return false;
+      }
+      throw new EOFException();
+    }
+
+    private void advancePosition(int length) {
+      position += length;
+      peekPosition = max(peekPosition, position);
+    }
+  }
 }
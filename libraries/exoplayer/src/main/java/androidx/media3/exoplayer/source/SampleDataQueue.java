@@ -201,6 +201,18 @@ import java.util.Arrays;
     }
   }
 
+  public void sampleData(ByteBuffer buffer, int length) {
+    while (length > 0) {
+      int bytesAppended = preAppend(length);
+      buffer.get(
+          writeAllocationNode.allocation.data,
+          writeAllocationNode.translateOffset(totalBytesWritten),
+          bytesAppended);
+      length -= bytesAppended;
+      postAppend(bytesAppended);
+    }
+  }
+
   // Private methods.
 
   /**
@@ -51,6 +51,7 @@ import androidx.media3.exoplayer.source.SampleStream.ReadFlags;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.extractor.TrackOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** A queue of media samples. */
 @UnstableApi
@@ -608,6 +609,11 @@ public class SampleQueue implements TrackOutput {
     sampleDataQueue.sampleData(data, length);
   }
 
+  @Override
+  public final void sampleData(ByteBuffer data, int length, @SampleDataPart int sampleDataPart) {
+    sampleDataQueue.sampleData(data, length);
+  }
+
   @Override
   public void sampleMetadata(
       long timeUs,
@@ -40,6 +40,7 @@ import androidx.media3.extractor.mp4.FragmentedMp4Extractor;
 import androidx.media3.extractor.text.SubtitleParser;
 import androidx.media3.extractor.text.SubtitleTranscodingExtractor;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
@@ -270,6 +271,11 @@ public final class BundledChunkExtractor implements ExtractorOutput, ChunkExtrac
       castNonNull(trackOutput).sampleData(data, length);
     }
 
+    @Override
+    public void sampleData(ByteBuffer data, int length, @SampleDataPart int sampleDataPart) {
+      castNonNull(trackOutput).sampleData(data, length);
+    }
+
     @Override
     public void sampleMetadata(
         long timeUs,
@@ -0,0 +1,485 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cache of manifests that can be shared between players, so that players loading the same
+ * manifest at the same time make a single request and share the parsed manifest.
+ *
+ * <p>A {@link DataSource} created by {@link #createDataSource(DataSource)} loads each manifest URI
+ * once at a time. A request for a URI that's already loading waits for the pending request and
+ * reads its response. The response is then served to later requests for the same URI until it
+ * expires. A {@link ParsingLoadable.Parser} created by {@link #createParser} returns the manifest
+ * parsed from a previous response with the same data, rather than parsing it again, and sets when
+ * the response expires based on the parsed manifest.
+ *
+ * <p>Only requests for the whole of a URI, without HTTP request headers or a body, are served from
+ * the cache. Players sharing a cache should load manifests with the same default request
+ * properties.
+ *
+ * <p>To share manifests between all the players of an app, a single instance should be set on all
+ * the media source factories.
+ */
+@UnstableApi
+public final class ManifestCache {
+
+  /**
+   * Provides how long the response from which a manifest was parsed can be served from the cache.
+   *
+   * @param <T> The type of the manifest.
+   */
+  public interface TtlProvider<T> {
+
+    /**
+     * Returns how long the response from which the manifest was parsed can be served from the
+     * cache, in milliseconds from the end of its load, or {@link C#TIME_UNSET} if the manifest is
+     * not expected to change.
+     */
+    long getTtlMs(T manifest);
+  }
+
+  /** The default maximum number of responses held by the cache. */
+  public static final int DEFAULT_MAX_ENTRY_COUNT = 16;
+
+  /** The default duration for which responses of manifests that don't change are served. */
+  public static final long DEFAULT_STATIC_MANIFEST_TTL_MS = 60_000;
+
+  private final int maxEntryCount;
+  private final long staticManifestTtlMs;
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Entry> entries;
+
+  /** Creates an instance with default parameters. */
+  public ManifestCache() {
+    this(DEFAULT_MAX_ENTRY_COUNT, DEFAULT_STATIC_MANIFEST_TTL_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxEntryCount The maximum number of responses held by the cache. The least recently
+   *     used responses are evicted first.
+   * @param staticManifestTtlMs How long responses of manifests that are not expected to change
+   *     are served from the cache, in milliseconds.
+   */
+  public ManifestCache(int maxEntryCount, long staticManifestTtlMs) {
+    this(maxEntryCount, staticManifestTtlMs, Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ ManifestCache(int maxEntryCount, long staticManifestTtlMs, Clock clock) {
+    checkArgument(maxEntryCount > 0);
+    this.maxEntryCount = maxEntryCount;
+    this.staticManifestTtlMs = staticManifestTtlMs;
+    this.clock = clock;
+    entries = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+  }
+
+  /**
+   * Returns a {@link DataSource} that reads manifests through the cache, loading them from {@code
+   * upstream} when needed.
+   */
+  public DataSource createDataSource(DataSource upstream) {
+    return new CachingDataSource(upstream);
+  }
+
+  /**
+   * Returns a {@link DataSource.Factory} for {@link DataSource DataSources} that read manifests
+   * through the cache, loading them from data sources created by {@code upstreamFactory} when
+   * needed.
+   */
+  public DataSource.Factory createDataSourceFactory(DataSource.Factory upstreamFactory) {
+    return () -> createDataSource(upstreamFactory.createDataSource());
+  }
+
+  /**
+   * Returns a {@link ParsingLoadable.Parser} that shares the manifests parsed from responses read
+   * through the cache.
+   *
+   * <p>Manifests are shared between parsers of the same class with equal {@code parserKey}, so the
+   * key must identify any state of the parser that affects the parsed manifest.
+   *
+   * @param parser The parser to parse manifests that aren't in the cache.
+   * @param parserKey An object identifying the state of {@code parser} that affects the parsed
+   *     manifest, or null if {@code parser} has no such state.
+   * @param ttlProvider The {@link TtlProvider} for the parsed manifests.
+   * @param <T> The type of the manifest.
+   */
+  public <T> ParsingLoadable.Parser<T> createParser(
+      ParsingLoadable.Parser<T> parser,
+      @Nullable Object parserKey,
+      TtlProvider<? super T> ttlProvider) {
+    return new CachingParser<>(parser, parserKey, ttlProvider);
+  }
+
+  /** Removes all responses and parsed manifests from the cache. */
+  public synchronized void clear() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      if (!iterator.next().loading) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private Entry openEntry(String key, DataSource upstream, DataSpec dataSpec) throws IOException {
+    Entry entry;
+    synchronized (this) {
+      @Nullable Entry awaitedEntry = null;
+      while (true) {
+        @Nullable Entry currentEntry = entries.get(key);
+        if (currentEntry == null) {
+          break;
+        } else if (currentEntry.loading) {
+          awaitedEntry = currentEntry;
+          waitForUpdate();
+        } else if (currentEntry == awaitedEntry
+            || clock.elapsedRealtime() < currentEntry.expiryTimeMs) {
+          return currentEntry;
+        } else {
+          break;
+        }
+      }
+      entry = new Entry();
+      @Nullable Entry previousEntry = entries.put(key, entry);
+      entry.previousEntry = previousEntry != null && !previousEntry.loading ? previousEntry : null;
+      evictEntries();
+    }
+    boolean loaded = false;
+    try {
+      upstream.open(dataSpec);
+      byte[] data = DataSourceUtil.readToEnd(upstream);
+      synchronized (this) {
+        entry.onLoadCompleted(
+            data,
+            checkNotNull(upstream.getUri()),
+            upstream.getResponseHeaders(),
+            clock.elapsedRealtime(),
+            /* unparsedTtlMs= */ staticManifestTtlMs);
+        loaded = true;
+        notifyAll();
+      }
+      return entry;
+    } finally {
+      if (!loaded) {
+        // Remove the entry even if an Error is thrown, so that waiting requests load the URI again.
+        synchronized (this) {
+          if (entries.get(key) == entry) {
+            entries.remove(key);
+          }
+          notifyAll();
+        }
+      }
+      upstream.close();
+    }
+  }
+
+  @GuardedBy("this")
+  private void evictEntries() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (entries.size() > maxEntryCount && iterator.hasNext()) {
+      if (!iterator.next().loading) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the loaded entry whose response has the given URI and data, or null if there is no
+   * such entry.
+   */
+  @GuardedBy("this")
+  @Nullable
+  private Entry findEntry(Uri uri, byte[] data, int dataHashCode) {
+    for (Entry entry : entries.values()) {
+      if (entry.hasData(uri, data, dataHashCode)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  @GuardedBy("this")
+  private void waitForUpdate() throws InterruptedIOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private final class CachingDataSource implements DataSource {
+
+    private final DataSource upstream;
+
+    @Nullable private Entry entry;
+    private int readPosition;
+    private boolean upstreamOpened;
+
+    public CachingDataSource(DataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      checkNotNull(transferListener);
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      if (!isCacheable(dataSpec)) {
+        upstreamOpened = true;
+        return upstream.open(dataSpec);
+      }
+      Entry entry = openEntry(dataSpec.uri.toString(), upstream, dataSpec);
+      this.entry = entry;
+      readPosition = 0;
+      return checkNotNull(entry.data).length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (upstreamOpened) {
+        return upstream.read(buffer, offset, length);
+      }
+      byte[] data = checkNotNull(checkNotNull(entry).data);
+      if (length == 0) {
+        return 0;
+      } else if (readPosition == data.length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = min(length, data.length - readPosition);
+      System.arraycopy(data, readPosition, buffer, offset, bytesRead);
+      readPosition += bytesRead;
+      return bytesRead;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      if (upstreamOpened) {
+        return upstream.getUri();
+      }
+      return entry != null ? entry.uri : null;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      if (upstreamOpened) {
+        return upstream.getResponseHeaders();
+      }
+      return entry != null ? entry.responseHeaders : Collections.emptyMap();
+    }
+
+    @Override
+    public void close() throws IOException {
+      entry = null;
+      if (upstreamOpened) {
+        upstreamOpened = false;
+        upstream.close();
+      }
+    }
+
+    private boolean isCacheable(DataSpec dataSpec) {
+      return dataSpec.position == 0
+          && dataSpec.length == C.LENGTH_UNSET
+          && dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+          && dataSpec.httpBody == null
+          && dataSpec.httpRequestHeaders.isEmpty();
+    }
+  }
+
+  private final class CachingParser<T> implements ParsingLoadable.Parser<T> {
+
+    private final ParsingLoadable.Parser<T> parser;
+    private final Object manifestKey;
+    private final TtlProvider<? super T> ttlProvider;
+
+    public CachingParser(
+        ParsingLoadable.Parser<T> parser,
+        @Nullable Object parserKey,
+        TtlProvider<? super T> ttlProvider) {
+      this.parser = parser;
+      this.ttlProvider = ttlProvider;
+      manifestKey = Arrays.asList(parser.getClass(), parserKey);
+    }
+
+    @Override
+    public T parse(Uri uri, InputStream inputStream) throws IOException {
+      byte[] data = Util.toByteArray(inputStream);
+      int dataHashCode = Arrays.hashCode(data);
+      @Nullable Entry entry;
+      synchronized (ManifestCache.this) {
+        while (true) {
+          entry = findEntry(uri, data, dataHashCode);
+          if (entry == null) {
+            break;
+          }
+          @Nullable T manifest = getManifest(entry);
+          if (manifest != null) {
+            entry.setTtlMs(getTtlMs(manifest));
+            return manifest;
+          } else if (!entry.parsingManifestKeys.contains(manifestKey)) {
+            entry.parsingManifestKeys.add(manifestKey);
+            break;
+          }
+          // Another parser is parsing the same response.
+          waitForUpdate();
+        }
+      }
+      if (entry == null) {
+        return parser.parse(uri, new ByteArrayInputStream(data));
+      }
+      @Nullable T manifest = null;
+      try {
+        manifest = parser.parse(uri, new ByteArrayInputStream(data));
+        return manifest;
+      } finally {
+        synchronized (ManifestCache.this) {
+          entry.parsingManifestKeys.remove(manifestKey);
+          if (manifest != null) {
+            entry.manifests.put(manifestKey, manifest);
+            entry.setTtlMs(getTtlMs(manifest));
+          } else {
+            entry.onParseFailed();
+          }
+          ManifestCache.this.notifyAll();
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked") // Manifests are stored under keys that include the parser class.
+    @Nullable
+    private T getManifest(Entry entry) {
+      return (T) entry.manifests.get(manifestKey);
+    }
+
+    private long getTtlMs(T manifest) {
+      long ttlMs = ttlProvider.getTtlMs(manifest);
+      return ttlMs == C.TIME_UNSET ? staticManifestTtlMs : ttlMs;
+    }
+  }
+
+  private static final class Entry {
+
+    /** The parsed manifests, keyed by parser class and parser key. */
+    public final Map<Object, Object> manifests;
+    /** The keys of the manifests that are being parsed from the response. */
+    public final Set<Object> parsingManifestKeys;
+
+    public boolean loading;
+    @Nullable public Entry previousEntry;
+    @Nullable public byte[] data;
+    @Nullable public Uri uri;
+    public Map<String, List<String>> responseHeaders;
+    public long expiryTimeMs;
+
+    private int dataHashCode;
+    private long loadCompletedTimeMs;
+    private boolean hasTtl;
+
+    public Entry() {
+      manifests = new HashMap<>();
+      parsingManifestKeys = new HashSet<>();
+      loading = true;
+      responseHeaders = Collections.emptyMap();
+    }
+
+    /**
+     * Called when the response has been loaded.
+     *
+     * @param unparsedTtlMs How long the response is served until the first manifest parsed from it
+     *     sets its TTL. The response is served in the meantime so that requests made between the
+     *     load and the parse don't load it again, and for a limited time in case it's never parsed.
+     */
+    public void onLoadCompleted(
+        byte[] data,
+        Uri uri,
+        Map<String, List<String>> responseHeaders,
+        long nowMs,
+        long unparsedTtlMs) {
+      this.data = data;
+      this.uri = uri;
+      this.responseHeaders = responseHeaders;
+      dataHashCode = Arrays.hashCode(data);
+      loadCompletedTimeMs = nowMs;
+      expiryTimeMs = nowMs + unparsedTtlMs;
+      loading = false;
+      @Nullable Entry previousEntry = this.previousEntry;
+      if (previousEntry != null && previousEntry.hasData(uri, data, dataHashCode)) {
+        // The response hasn't changed since the previous load, so neither have the manifests.
+        manifests.putAll(previousEntry.manifests);
+      }
+      this.previousEntry = null;
+    }
+
+    public boolean hasData(Uri uri, byte[] data, int dataHashCode) {
+      return !loading
+          && this.dataHashCode == dataHashCode
+          && uri.equals(this.uri)
+          && Arrays.equals(data, this.data);
+    }
+
+    public void setTtlMs(long ttlMs) {
+      long expiryTimeMs = loadCompletedTimeMs + ttlMs;
+      // The first TTL replaces the expiry of the unparsed response.
+      this.expiryTimeMs = hasTtl ? max(this.expiryTimeMs, expiryTimeMs) : expiryTimeMs;
+      hasTtl = true;
+    }
+
+    /** Expires the response if no manifest has been parsed from it, so that it's loaded again. */
+    public void onParseFailed() {
+      if (!hasTtl) {
+        expiryTimeMs = loadCompletedTimeMs;
+      }
+    }
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.UriUtil;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.cache.Cache;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheKeyFactory;
+import androidx.media3.datasource.cache.CacheWriter;
+import androidx.media3.datasource.cache.ContentMetadata;
+import com.google.common.base.Ascii;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link DataSource} that warms objects hinted by the server into a {@link Cache}.
+ *
+ * <p>Servers can hint the object a client will request next with a {@code Link} response header
+ * whose relation type is {@code preload} or {@code prefetch}, for example {@code Link:
+ * <segment2.m4s>; rel=preload}. CDN edges that receive Common Media Client Data (CMCD) can derive
+ * the hint from the {@link CmcdConfiguration#KEY_NEXT_OBJECT_REQUEST next object request} of the
+ * player. When a response carries such a hint, the hinted object is written into the cache on an
+ * {@link Executor} while the current object is being read, so that loading the next object
+ * overlaps with playback of the current one.
+ *
+ * <p>This data source should be the upstream of the {@link CacheDataSource} used for playback, and
+ * both should use the same {@link Cache} and {@link CacheKeyFactory}. If CMCD data is sent as a
+ * query parameter, the {@link CacheKeyFactory} should ignore the parameter. Playback sources should
+ * set {@link CacheDataSource#FLAG_BLOCK_ON_CACHE} to wait for an object that's being prefetched,
+ * rather than loading it a second time.
+ *
+ * <p>Hints whose URI is the same as the one of the current request are ignored, as they can't
+ * identify a byte range of the object.
+ */
+@UnstableApi
+public final class NextObjectPrefetchingDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link NextObjectPrefetchingDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    /** The default maximum number of objects that are prefetched at the same time. */
+    public static final int DEFAULT_MAX_PARALLEL_PREFETCH_COUNT = 2;
+
+    private final Cache cache;
+    private final DataSource.Factory upstreamDataSourceFactory;
+    private final Executor executor;
+
+    private CacheKeyFactory cacheKeyFactory;
+    private int maxParallelPrefetchCount;
+
+    @GuardedBy("this")
+    private final HashSet<String> prefetchingCacheKeys;
+
+    /**
+     * Creates an instance.
+     *
+     * @param cache The {@link Cache} into which hinted objects are written.
+     * @param upstreamDataSourceFactory The {@link DataSource.Factory} for the upstream sources,
+     *     which are used both for the requests of this source and for prefetching.
+     * @param executor The {@link Executor} on which hinted objects are prefetched.
+     */
+    public Factory(Cache cache, DataSource.Factory upstreamDataSourceFactory, Executor executor) {
+      this.cache = cache;
+      this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+      this.executor = executor;
+      cacheKeyFactory = CacheKeyFactory.DEFAULT;
+      maxParallelPrefetchCount = DEFAULT_MAX_PARALLEL_PREFETCH_COUNT;
+      prefetchingCacheKeys = new HashSet<>();
+    }
+
+    /**
+     * Sets the {@link CacheKeyFactory} used to write hinted objects into the cache.
+     *
+     * <p>The default is {@link CacheKeyFactory#DEFAULT}.
+     *
+     * @param cacheKeyFactory The {@link CacheKeyFactory}.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setCacheKeyFactory(CacheKeyFactory cacheKeyFactory) {
+      this.cacheKeyFactory = cacheKeyFactory;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of objects that are prefetched at the same time. Hints received
+     * while this number of objects is being prefetched are ignored.
+     *
+     * <p>The default is {@link #DEFAULT_MAX_PARALLEL_PREFETCH_COUNT}.
+     *
+     * @param maxParallelPrefetchCount The maximum number of parallel prefetches.
+     * @return This factory.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMaxParallelPrefetchCount(int maxParallelPrefetchCount) {
+      checkArgument(maxParallelPrefetchCount > 0);
+      this.maxParallelPrefetchCount = maxParallelPrefetchCount;
+      return this;
+    }
+
+    @Override
+    public NextObjectPrefetchingDataSource createDataSource() {
+      return new NextObjectPrefetchingDataSource(
+          upstreamDataSourceFactory.createDataSource(), /* factory= */ this);
+    }
+
+    private void maybePrefetch(Uri uri) {
+      DataSpec dataSpec =
+          new DataSpec.Builder().setUri(uri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build();
+      String cacheKey = cacheKeyFactory.buildCacheKey(dataSpec);
+      long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+      if (contentLength != C.LENGTH_UNSET
+          && cache.isCached(cacheKey, /* position= */ 0, contentLength)) {
+        return;
+      }
+      synchronized (this) {
+        if (prefetchingCacheKeys.size() >= maxParallelPrefetchCount
+            || !prefetchingCacheKeys.add(cacheKey)) {
+          return;
+        }
+      }
+      CacheDataSource cacheDataSource =
+          new CacheDataSource.Factory()
+              .setCache(cache)
+              .setCacheKeyFactory(cacheKeyFactory)
+              .setUpstreamDataSourceFactory(upstreamDataSourceFactory)
+              .createDataSourceForDownloading();
+      CacheWriter cacheWriter =
+          new CacheWriter(
+              cacheDataSource, dataSpec, /* temporaryBuffer= */ null, /* progressListener= */ null);
+      executor.execute(
+          () -> {
+            try {
+              cacheWriter.cache();
+            } catch (IOException e) {
+              // Prefetching is best effort. The object will be loaded when it's requested.
+              Log.w(TAG, "Failed to prefetch " + uri, e);
+            } finally {
+              synchronized (this) {
+                prefetchingCacheKeys.remove(cacheKey);
+              }
+            }
+          });
+    }
+  }
+
+  /** The name of the response header carrying the hints. */
+  public static final String LINK_HEADER = "Link";
+
+  private static final String TAG = "NextObjectPrefetchingDS";
+
+  private static final Pattern LINK_VALUE_PATTERN = Pattern.compile("<([^>]*)>([^,<]*)");
+  private static final Pattern RELATION_TYPE_PATTERN =
+      Pattern.compile("(?:^|;)\\s*rel\\s*=\\s*(?:\"([^\"]*)\"|([^;\\s]*))");
+
+  private final DataSource upstream;
+  private final Factory factory;
+
+  private NextObjectPrefetchingDataSource(DataSource upstream, Factory factory) {
+    this.upstream = upstream;
+    this.factory = factory;
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    long length = upstream.open(dataSpec);
+    @Nullable Uri uri = upstream.getUri();
+    Uri requestUri = uri != null ? uri : dataSpec.uri;
+    List<Uri> hintedUris = getHintedUris(requestUri, upstream.getResponseHeaders());
+    for (int i = 0; i < hintedUris.size(); i++) {
+      Uri hintedUri = hintedUris.get(i);
+      if (!isSameObject(hintedUri, requestUri)) {
+        factory.maybePrefetch(hintedUri);
+      }
+    }
+    return length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    return upstream.read(buffer, offset, length);
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    upstream.close();
+  }
+
+  /**
+   * Returns the URIs of the objects hinted by the {@code Link} headers of a response.
+   *
+   * @param baseUri The URI of the response, against which relative references are resolved.
+   * @param responseHeaders The response headers.
+   * @return The hinted URIs, in the order of the headers.
+   */
+  @VisibleForTesting
+  /* package */ static List<Uri> getHintedUris(
+      Uri baseUri, Map<String, List<String>> responseHeaders) {
+    List<Uri> hintedUris = new ArrayList<>();
+    for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+      if (header.getKey() == null || !Ascii.equalsIgnoreCase(header.getKey(), LINK_HEADER)) {
+        continue;
+      }
+      for (String value : header.getValue()) {
+        Matcher linkMatcher = LINK_VALUE_PATTERN.matcher(value);
+        while (linkMatcher.find()) {
+          if (isPrefetchRelation(linkMatcher.group(2))) {
+            hintedUris.add(UriUtil.resolveToUri(baseUri.toString(), linkMatcher.group(1).trim()));
+          }
+        }
+      }
+    }
+    return hintedUris;
+  }
+
+  private static boolean isPrefetchRelation(String linkParameters) {
+    Matcher relationTypeMatcher = RELATION_TYPE_PATTERN.matcher(linkParameters);
+    if (!relationTypeMatcher.find()) {
+      return false;
+    }
+    @Nullable String relationTypes = relationTypeMatcher.group(1);
+    if (relationTypes == null) {
+      relationTypes = relationTypeMatcher.group(2);
+    }
+    for (String relationType : Ascii.toLowerCase(relationTypes).split("\\s+", -1)) {
+      if (relationType.equals("preload") || relationType.equals("prefetch")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSameObject(Uri uri1, Uri uri2) {
+    return uri1.buildUpon().fragment(null).build().equals(uri2.buildUpon().fragment(null).build());
+  }
+}
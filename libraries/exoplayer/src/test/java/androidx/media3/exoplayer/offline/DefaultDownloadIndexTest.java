@@ -82,6 +82,38 @@ public class DefaultDownloadIndexTest {
     assertEqual(readDownload, download);
   }
 
+  @Test
+  public void addDownload_withWriteBatching_defersWriteUntilRead() throws DatabaseIOException {
+    String id = "id";
+    DefaultDownloadIndex batchingDownloadIndex =
+        new DefaultDownloadIndex(databaseProvider, EMPTY_NAME, /* maxWriteDelayMs= */ 60_000);
+    Download download =
+        new DownloadBuilder(id).setState(STATE_DOWNLOADING).setBytesDownloaded(200).build();
+
+    batchingDownloadIndex.putDownload(download);
+
+    assertThat(downloadIndex.getDownload(id)).isNull();
+    Download readDownload = batchingDownloadIndex.getDownload(id);
+    assertThat(readDownload).isNotNull();
+    assertEqual(readDownload, download);
+    assertThat(downloadIndex.getDownload(id)).isNotNull();
+  }
+
+  @Test
+  public void addDownload_withWriteBatchingAndNonDownloadingState_writesImmediately()
+      throws DatabaseIOException {
+    String id = "id";
+    DefaultDownloadIndex batchingDownloadIndex =
+        new DefaultDownloadIndex(databaseProvider, EMPTY_NAME, /* maxWriteDelayMs= */ 60_000);
+    Download download = new DownloadBuilder(id).setState(STATE_STOPPED).build();
+
+    batchingDownloadIndex.putDownload(download);
+
+    Download readDownload = downloadIndex.getDownload(id);
+    assertThat(readDownload).isNotNull();
+    assertEqual(readDownload, download);
+  }
+
   @Test
   public void addAndGetDownload_existingId_returnsUpdatedDownload() throws DatabaseIOException {
     String id = "id";
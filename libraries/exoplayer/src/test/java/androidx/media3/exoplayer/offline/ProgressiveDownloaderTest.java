@@ -173,6 +173,31 @@ public class ProgressiveDownloaderTest {
     assertThat(progressListener.bytesDownloaded).isEqualTo(2_000_000);
   }
 
+  @Test
+  public void download_withParallelChunks_downloadsAllData() throws Exception {
+    Uri uri = Uri.parse("test:///test.mp4");
+    FakeDataSet data = new FakeDataSet();
+    data.newData(uri).appendReadData(20_000_000);
+    FakeDataSource.Factory upstreamDataSource = new FakeDataSource.Factory().setFakeDataSet(data);
+    MediaItem mediaItem = MediaItem.fromUri(uri);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(upstreamDataSource);
+    ProgressiveDownloader downloader =
+        new ProgressiveDownloader(
+            mediaItem, cacheDataSourceFactory, Runnable::run, /* maxParallelChunks= */ 2);
+    TestProgressListener progressListener = new TestProgressListener();
+
+    downloader.download(progressListener);
+
+    assertThat(progressListener.bytesDownloaded).isEqualTo(20_000_000);
+    assertThat(
+            downloadCache.getCachedBytes(
+                "test:///test.mp4", /* position= */ 0, /* length= */ C.LENGTH_UNSET))
+        .isEqualTo(20_000_000);
+  }
+
   private static final class TestProgressListener implements Downloader.ProgressListener {
 
     public long bytesDownloaded;
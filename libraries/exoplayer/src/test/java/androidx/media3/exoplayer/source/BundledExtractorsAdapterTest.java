@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.DataReader;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.ExtractorInput;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link BundledExtractorsAdapter}. */
+@RunWith(AndroidJUnit4.class)
+public final class BundledExtractorsAdapterTest {
+
+  private static final Uri URI = Uri.parse("https://test.test/media");
+
+  @Test
+  public void init_extractorNeedingMoreDataBeforeExtractorRecognizingPrefix_keepsOrder()
+      throws IOException {
+    byte[] data = TestUtil.buildTestData(/* length= */ 100_000);
+    SniffingExtractor needsMoreData =
+        new SniffingExtractor(/* sniffLength= */ 50_000, /* recognized= */ true);
+    SniffingExtractor recognizesPrefix =
+        new SniffingExtractor(/* sniffLength= */ 16, /* recognized= */ true);
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(() -> new Extractor[] {needsMoreData, recognizesPrefix});
+
+    adapter.init(
+        new ByteArrayDataReader(data),
+        URI,
+        ImmutableMap.of(),
+        /* position= */ 0,
+        /* length= */ data.length,
+        new FakeExtractorOutput());
+
+    assertThat(needsMoreData.initialized).isTrue();
+    assertThat(recognizesPrefix.initialized).isFalse();
+  }
+
+  @Test
+  public void init_extractorRejectingPrefix_isNotSniffedAgainstInput() throws IOException {
+    byte[] data = TestUtil.buildTestData(/* length= */ 100_000);
+    SniffingExtractor rejectsPrefix =
+        new SniffingExtractor(/* sniffLength= */ 16, /* recognized= */ false);
+    SniffingExtractor recognizesPrefix =
+        new SniffingExtractor(/* sniffLength= */ 16, /* recognized= */ true);
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(() -> new Extractor[] {rejectsPrefix, recognizesPrefix});
+
+    adapter.init(
+        new ByteArrayDataReader(data),
+        URI,
+        ImmutableMap.of(),
+        /* position= */ 0,
+        /* length= */ data.length,
+        new FakeExtractorOutput());
+
+    assertThat(rejectsPrefix.sniffCount).isEqualTo(1);
+    assertThat(recognizesPrefix.sniffCount).isEqualTo(2);
+    assertThat(recognizesPrefix.initialized).isTrue();
+  }
+
+  @Test
+  public void init_noExtractorRecognizesPrefix_sniffsInputInOrder() throws IOException {
+    byte[] data = TestUtil.buildTestData(/* length= */ 100_000);
+    SniffingExtractor rejectsPrefix =
+        new SniffingExtractor(/* sniffLength= */ 16, /* recognized= */ false);
+    SniffingExtractor needsMoreData =
+        new SniffingExtractor(/* sniffLength= */ 50_000, /* recognized= */ true);
+    SniffingExtractor alsoNeedsMoreData =
+        new SniffingExtractor(/* sniffLength= */ 60_000, /* recognized= */ true);
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(
+            () -> new Extractor[] {rejectsPrefix, needsMoreData, alsoNeedsMoreData});
+
+    adapter.init(
+        new ByteArrayDataReader(data),
+        URI,
+        ImmutableMap.of(),
+        /* position= */ 0,
+        /* length= */ data.length,
+        new FakeExtractorOutput());
+
+    assertThat(rejectsPrefix.sniffCount).isEqualTo(1);
+    assertThat(needsMoreData.initialized).isTrue();
+    assertThat(alsoNeedsMoreData.initialized).isFalse();
+  }
+
+  @Test
+  public void init_inputShorterThanPrefix_rejectsExtractorsReadingPastEnd() {
+    byte[] data = TestUtil.buildTestData(/* length= */ 100);
+    SniffingExtractor readsPastEnd =
+        new SniffingExtractor(/* sniffLength= */ 200, /* recognized= */ true);
+    SniffingExtractor rejectsInput =
+        new SniffingExtractor(/* sniffLength= */ 16, /* recognized= */ false);
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(() -> new Extractor[] {readsPastEnd, rejectsInput});
+
+    assertThrows(
+        UnrecognizedInputFormatException.class,
+        () ->
+            adapter.init(
+                new ByteArrayDataReader(data),
+                URI,
+                ImmutableMap.of(),
+                /* position= */ 0,
+                /* length= */ data.length,
+                new FakeExtractorOutput()));
+    assertThat(readsPastEnd.sniffCount).isEqualTo(1);
+  }
+
+  /** An extractor that peeks a given number of bytes when sniffing. */
+  private static final class SniffingExtractor implements Extractor {
+
+    private final int sniffLength;
+    private final boolean recognized;
+
+    private int sniffCount;
+    private boolean initialized;
+
+    public SniffingExtractor(int sniffLength, boolean recognized) {
+      this.sniffLength = sniffLength;
+      this.recognized = recognized;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) throws IOException {
+      sniffCount++;
+      input.advancePeekPosition(sniffLength);
+      return recognized;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      initialized = true;
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition) {
+      return RESULT_END_OF_INPUT;
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {}
+
+    @Override
+    public void release() {}
+  }
+
+  /** A {@link DataReader} that reads from a byte array and records how far it has read. */
+  private static final class ByteArrayDataReader implements DataReader {
+
+    private final byte[] data;
+
+    private int position;
+
+    public ByteArrayDataReader(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (position == data.length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = min(length, data.length - position);
+      System.arraycopy(data, position, buffer, offset, bytesRead);
+      position += bytesRead;
+      return bytesRead;
+    }
+  }
+}
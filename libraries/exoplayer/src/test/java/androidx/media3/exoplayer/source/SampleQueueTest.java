@@ -52,6 +52,7 @@ import androidx.media3.test.utils.TestUtil;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.primitives.Bytes;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
@@ -449,6 +450,34 @@ public final class SampleQueueTest {
     assertReadTestData();
   }
 
+  @Test
+  public void sampleDataFromDirectByteBuffer_spanningAllocations_readsSampleData() {
+    ByteBuffer data = ByteBuffer.allocateDirect(DATA.length);
+    data.put(DATA);
+    data.flip();
+
+    sampleQueue.format(FORMAT_1);
+    sampleQueue.sampleData(data, DATA.length);
+    sampleQueue.sampleMetadata(
+        /* timeUs= */ 0,
+        C.BUFFER_FLAG_KEY_FRAME,
+        DATA.length,
+        /* offset= */ 0,
+        /* cryptoData= */ null);
+
+    assertThat(data.hasRemaining()).isFalse();
+    assertAllocationCount(10);
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    assertReadSample(
+        /* timeUs= */ 0,
+        /* isKeyFrame= */ true,
+        /* isDecodeOnly= */ false,
+        /* isEncrypted= */ false,
+        DATA,
+        /* offset= */ 0,
+        DATA.length);
+  }
+
   @Test
   public void emptyQueueReturnsLoadingFinished() {
     sampleQueue.sampleData(new ParsableByteArray(DATA), DATA.length);
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ManifestCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class ManifestCacheTest {
+
+  private static final Uri MANIFEST_URI = Uri.parse("https://example.test/manifest.mpd");
+  private static final long TTL_MS = 1000;
+
+  private FakeClock clock;
+  private ManifestCache manifestCache;
+  private CountingParser parser;
+  private ParsingLoadable.Parser<String> cachingParser;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    manifestCache =
+        new ManifestCache(
+            ManifestCache.DEFAULT_MAX_ENTRY_COUNT,
+            ManifestCache.DEFAULT_STATIC_MANIFEST_TTL_MS,
+            clock);
+    parser = new CountingParser();
+    cachingParser = manifestCache.createParser(parser, /* parserKey= */ null, manifest -> TTL_MS);
+  }
+
+  @Test
+  public void load_withinTtl_sharesResponseAndManifest() throws IOException {
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    String manifest1 = load(manifestCache.createDataSource(upstream1), cachingParser);
+    clock.advanceTime(TTL_MS - 1);
+    String manifest2 = load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    assertThat(manifest1).isEqualTo("manifest");
+    assertThat(manifest2).isSameInstanceAs(manifest1);
+    assertThat(upstream1.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).isEmpty();
+    assertThat(parser.parseCount).isEqualTo(1);
+  }
+
+  @Test
+  public void load_afterTtlWithUnchangedResponse_loadsAgainAndSharesManifest() throws IOException {
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    String manifest1 = load(manifestCache.createDataSource(upstream1), cachingParser);
+    clock.advanceTime(TTL_MS);
+    String manifest2 = load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    assertThat(manifest2).isSameInstanceAs(manifest1);
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(parser.parseCount).isEqualTo(1);
+  }
+
+  @Test
+  public void load_afterTtlWithChangedResponse_parsesNewManifest() throws IOException {
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("updated manifest");
+
+    load(manifestCache.createDataSource(upstream1), cachingParser);
+    clock.advanceTime(TTL_MS);
+    String manifest2 = load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    assertThat(manifest2).isEqualTo("updated manifest");
+    assertThat(parser.parseCount).isEqualTo(2);
+  }
+
+  @Test
+  public void load_staticManifest_usesStaticManifestTtl() throws IOException {
+    ParsingLoadable.Parser<String> cachingParser =
+        manifestCache.createParser(parser, /* parserKey= */ null, manifest -> C.TIME_UNSET);
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    load(manifestCache.createDataSource(upstream1), cachingParser);
+    clock.advanceTime(ManifestCache.DEFAULT_STATIC_MANIFEST_TTL_MS - 1);
+    load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void load_whileSameUriIsLoading_waitsForPendingLoad() throws Exception {
+    ConditionVariable firstLoadStarted = new ConditionVariable();
+    ConditionVariable allowFirstLoadToComplete = new ConditionVariable();
+    FakeDataSource upstream1 =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData(MANIFEST_URI)
+                .appendReadAction(
+                    () -> {
+                      firstLoadStarted.open();
+                      allowFirstLoadToComplete.blockUninterruptible();
+                    })
+                .appendReadData(Util.getUtf8Bytes("manifest"))
+                .endData());
+    FakeDataSource upstream2 = createUpstream("manifest");
+    ParsingLoadable.Parser<String> cachingParser =
+        manifestCache.createParser(parser, /* parserKey= */ null, manifest -> 0L);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    try {
+      Future<String> manifest1 =
+          executor.submit(() -> load(manifestCache.createDataSource(upstream1), cachingParser));
+      firstLoadStarted.block();
+      Thread[] secondLoadThread = new Thread[1];
+      Future<String> manifest2 =
+          executor.submit(
+              () -> {
+                secondLoadThread[0] = Thread.currentThread();
+                return load(manifestCache.createDataSource(upstream2), cachingParser);
+              });
+      while (secondLoadThread[0] == null
+          || secondLoadThread[0].getState() != Thread.State.WAITING) {
+        Thread.sleep(1);
+      }
+      allowFirstLoadToComplete.open();
+
+      assertThat(manifest1.get()).isEqualTo("manifest");
+      assertThat(manifest2.get()).isSameInstanceAs(manifest1.get());
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).isEmpty();
+    assertThat(parser.parseCount).isEqualTo(1);
+  }
+
+  @Test
+  public void load_withDifferentParserKeys_parsesManifestForEachKey() throws IOException {
+    ParsingLoadable.Parser<String> otherCachingParser =
+        manifestCache.createParser(parser, /* parserKey= */ "other", manifest -> TTL_MS);
+
+    String manifest1 = load(manifestCache.createDataSource(createUpstream("m")), cachingParser);
+    String manifest2 =
+        load(manifestCache.createDataSource(createUpstream("m")), otherCachingParser);
+
+    assertThat(manifest2).isNotSameInstanceAs(manifest1);
+    assertThat(parser.parseCount).isEqualTo(2);
+  }
+
+  @Test
+  public void load_withRange_bypassesCache() throws IOException {
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("manifest");
+    DataSpec dataSpec = new DataSpec.Builder().setUri(MANIFEST_URI).setPosition(1).build();
+
+    DataSource dataSource1 = manifestCache.createDataSource(upstream1);
+    dataSource1.open(dataSpec);
+    dataSource1.close();
+    DataSource dataSource2 = manifestCache.createDataSource(upstream2);
+    dataSource2.open(dataSpec);
+    dataSource2.close();
+
+    assertThat(upstream1.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void load_afterLoadError_loadsAgain() throws IOException {
+    FakeDataSource upstream1 =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData(MANIFEST_URI)
+                .appendReadError(new IOException())
+                .appendReadData(Util.getUtf8Bytes("manifest"))
+                .endData());
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    assertThrows(
+        IOException.class, () -> load(manifestCache.createDataSource(upstream1), cachingParser));
+    String manifest = load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    assertThat(manifest).isEqualTo("manifest");
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void load_afterLoadThrowsError_loadsAgain() throws IOException {
+    OutOfMemoryError loadError = new OutOfMemoryError();
+    FakeDataSource upstream1 =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData(MANIFEST_URI)
+                .appendReadAction(
+                    () -> {
+                      throw loadError;
+                    })
+                .appendReadData(Util.getUtf8Bytes("manifest"))
+                .endData());
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    OutOfMemoryError thrownError =
+        assertThrows(
+            OutOfMemoryError.class,
+            () -> load(manifestCache.createDataSource(upstream1), cachingParser));
+    String manifest = load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    assertThat(thrownError).isSameInstanceAs(loadError);
+    assertThat(manifest).isEqualTo("manifest");
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void open_afterLoadBeforeParse_sharesResponse() throws IOException {
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    DataSource dataSource1 = manifestCache.createDataSource(upstream1);
+    dataSource1.open(new DataSpec(MANIFEST_URI));
+    clock.advanceTime(1);
+    DataSource dataSource2 = manifestCache.createDataSource(upstream2);
+    dataSource2.open(new DataSpec(MANIFEST_URI));
+    dataSource1.close();
+    dataSource2.close();
+
+    assertThat(upstream1.getAndClearOpenedDataSpecs()).hasLength(1);
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void load_afterFirstParseSetsTtl_expiresAfterTtl() throws IOException {
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    load(manifestCache.createDataSource(upstream1), cachingParser);
+    clock.advanceTime(TTL_MS);
+    load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    // The TTL replaces the longer expiry of the unparsed response.
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void load_afterParseError_loadsAgain() throws IOException {
+    ParsingLoadable.Parser<String> failingCachingParser =
+        manifestCache.createParser(
+            (uri, inputStream) -> {
+              throw new IOException();
+            },
+            /* parserKey= */ null,
+            manifest -> TTL_MS);
+    FakeDataSource upstream1 = createUpstream("manifest");
+    FakeDataSource upstream2 = createUpstream("manifest");
+
+    assertThrows(
+        IOException.class,
+        () -> load(manifestCache.createDataSource(upstream1), failingCachingParser));
+    load(manifestCache.createDataSource(upstream2), cachingParser);
+
+    assertThat(upstream2.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  private static FakeDataSource createUpstream(String data) {
+    return new FakeDataSource(new FakeDataSet().setData(MANIFEST_URI, Util.getUtf8Bytes(data)));
+  }
+
+  private static String load(DataSource dataSource, ParsingLoadable.Parser<String> parser)
+      throws IOException {
+    return ParsingLoadable.load(dataSource, parser, MANIFEST_URI, C.DATA_TYPE_MANIFEST);
+  }
+
+  private static final class CountingParser implements ParsingLoadable.Parser<String> {
+
+    private int parseCount;
+
+    @Override
+    public synchronized String parse(Uri uri, InputStream inputStream) throws IOException {
+      parseCount++;
+      return Util.fromUtf8Bytes(Util.toByteArray(inputStream));
+    }
+  }
+}
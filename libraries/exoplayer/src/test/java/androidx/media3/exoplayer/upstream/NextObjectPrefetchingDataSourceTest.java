@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.test.utils.CacheAsserts.assertCacheEmpty;
+import static androidx.media3.test.utils.CacheAsserts.assertCachedData;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.cache.NoOpCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+import androidx.media3.test.utils.CacheAsserts.RequestSet;
+import androidx.media3.test.utils.FakeCmcdEdgeDataSource;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link NextObjectPrefetchingDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class NextObjectPrefetchingDataSourceTest {
+
+  private static final String SEGMENT_1_URI = "https://edge.test/video/seg1.m4s";
+  private static final String SEGMENT_2_URI = "https://edge.test/video/seg2.m4s";
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private FakeDataSet fakeDataSet;
+  private DataSource dataSource;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    fakeDataSet =
+        new FakeDataSet()
+            .setRandomData(SEGMENT_1_URI, /* length= */ 10)
+            .setRandomData(SEGMENT_2_URI, /* length= */ 20);
+    DataSource.Factory edgeDataSourceFactory =
+        new FakeCmcdEdgeDataSource.Factory(
+            new FakeDataSource.Factory().setFakeDataSet(fakeDataSet));
+    dataSource =
+        new NextObjectPrefetchingDataSource.Factory(
+                cache, edgeDataSourceFactory, /* executor= */ Runnable::run)
+            .createDataSource();
+  }
+
+  @After
+  public void tearDown() {
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void open_withNextObjectRequestHeader_writesNextObjectIntoCache() throws IOException {
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(SEGMENT_1_URI)
+            .setHttpRequestHeaders(
+                ImmutableMap.of(CmcdConfiguration.KEY_CMCD_REQUEST, "bl=1000,nor=\"seg2.m4s\""))
+            .build();
+
+    readToEnd(dataSpec);
+
+    assertCachedData(cache, new RequestSet(fakeDataSet).subset(SEGMENT_2_URI));
+  }
+
+  @Test
+  public void open_withNextObjectRequestQueryParameter_writesNextObjectIntoCache()
+      throws IOException {
+    Uri uri =
+        Uri.parse(SEGMENT_1_URI)
+            .buildUpon()
+            .appendQueryParameter(
+                CmcdConfiguration.CMCD_QUERY_PARAMETER_KEY, "bl=1000,nor=\"seg2.m4s\"")
+            .build();
+
+    readToEnd(new DataSpec(uri));
+
+    assertCachedData(cache, new RequestSet(fakeDataSet).subset(SEGMENT_2_URI));
+  }
+
+  @Test
+  public void open_withNextRangeRequest_doesNotPrefetch() throws IOException {
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(SEGMENT_1_URI)
+            .setHttpRequestHeaders(
+                ImmutableMap.of(
+                    CmcdConfiguration.KEY_CMCD_REQUEST, "nor=\"seg2.m4s\",nrr=\"0-9\""))
+            .build();
+
+    readToEnd(dataSpec);
+
+    assertCacheEmpty(cache);
+  }
+
+  @Test
+  public void open_withHintForSameObject_doesNotPrefetch() throws IOException {
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(SEGMENT_1_URI)
+            .setHttpRequestHeaders(
+                ImmutableMap.of(CmcdConfiguration.KEY_CMCD_REQUEST, "nor=\"seg1.m4s\""))
+            .build();
+
+    readToEnd(dataSpec);
+
+    assertCacheEmpty(cache);
+  }
+
+  @Test
+  public void getHintedUris_returnsPreloadAndPrefetchLinks() {
+    ImmutableMap<String, List<String>> responseHeaders =
+        ImmutableMap.of(
+            "link",
+            ImmutableList.of(
+                "<seg2.m4s>; rel=preload; as=fetch, </style.css>; rel=stylesheet",
+                "<https://other.test/seg3.m4s>; rel=\"next prefetch\""),
+            "Content-Type",
+            ImmutableList.of("video/mp4"));
+
+    assertThat(
+            NextObjectPrefetchingDataSource.getHintedUris(
+                Uri.parse(SEGMENT_1_URI), responseHeaders))
+        .containsExactly(Uri.parse(SEGMENT_2_URI), Uri.parse("https://other.test/seg3.m4s"))
+        .inOrder();
+  }
+
+  private void readToEnd(DataSpec dataSpec) throws IOException {
+    try {
+      dataSource.open(dataSpec);
+      DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
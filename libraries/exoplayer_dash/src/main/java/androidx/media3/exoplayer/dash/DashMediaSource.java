@@ -75,6 +75,7 @@ import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import androidx.media3.exoplayer.upstream.Loader;
 import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
 import androidx.media3.exoplayer.upstream.LoaderErrorThrower;
+import androidx.media3.exoplayer.upstream.ManifestCache;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
 import androidx.media3.exoplayer.util.SntpClient;
 import androidx.media3.extractor.text.DefaultSubtitleParserFactory;
@@ -118,6 +119,7 @@ public final class DashMediaSource extends BaseMediaSource {
     private long fallbackTargetLiveOffsetMs;
     private long minLiveStartPositionUs;
     @Nullable private ParsingLoadable.Parser<? extends DashManifest> manifestParser;
+    @Nullable private ManifestCache manifestCache;
 
     /**
      * Creates a new factory for {@link DashMediaSource}s.
@@ -280,6 +282,22 @@ public final class DashMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets the {@link ManifestCache} through which manifests are loaded and parsed, so that they
+     * are shared with other players using the same cache. The default is {@code null}.
+     *
+     * <p>Responses of dynamic manifests are shared for at most half their minimum update period.
+     *
+     * @param manifestCache The {@link ManifestCache}, or {@code null} to load and parse manifests
+     *     for each media source.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setManifestCache(@Nullable ManifestCache manifestCache) {
+      this.manifestCache = manifestCache;
+      return this;
+    }
+
     /**
      * Sets the factory to create composite {@link SequenceableLoader}s for when this media source
      * loads data from multiple streams (video, audio etc...). The default is an instance of {@link
@@ -371,6 +389,14 @@ public final class DashMediaSource extends BaseMediaSource {
       if (manifestParser == null) {
         manifestParser = new DashManifestParser();
       }
+      @Nullable DataSource.Factory manifestDataSourceFactory = this.manifestDataSourceFactory;
+      if (manifestCache != null) {
+        manifestParser = createCachingManifestParser(manifestCache, manifestParser);
+        if (manifestDataSourceFactory != null) {
+          manifestDataSourceFactory =
+              manifestCache.createDataSourceFactory(manifestDataSourceFactory);
+        }
+      }
       List<StreamKey> streamKeys = mediaItem.localConfiguration.streamKeys;
       if (!streamKeys.isEmpty()) {
         manifestParser = new FilteringManifestParser<>(manifestParser, streamKeys);
@@ -1237,6 +1263,20 @@ public final class DashMediaSource extends BaseMediaSource {
     return availableEndTimeInManifestUs;
   }
 
+  private static <T extends DashManifest> ParsingLoadable.Parser<T> createCachingManifestParser(
+      ManifestCache manifestCache, ParsingLoadable.Parser<T> manifestParser) {
+    return manifestCache.createParser(
+        manifestParser, /* parserKey= */ null, DashMediaSource::getManifestCacheTtlMs);
+  }
+
+  private static long getManifestCacheTtlMs(DashManifest manifest) {
+    if (!manifest.dynamic) {
+      return C.TIME_UNSET;
+    }
+    // Players refreshing the manifest at its minimum update period still see each update.
+    return manifest.minUpdatePeriodMs == C.TIME_UNSET ? 0 : manifest.minUpdatePeriodMs / 2;
+  }
+
   private static boolean isIndexExplicit(Period period) {
     for (int i = 0; i < period.adaptationSets.size(); i++) {
       @Nullable
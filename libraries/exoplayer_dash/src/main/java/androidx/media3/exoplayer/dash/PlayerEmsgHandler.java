@@ -38,6 +38,7 @@ import androidx.media3.extractor.metadata.MetadataInputBuffer;
 import androidx.media3.extractor.metadata.emsg.EventMessage;
 import androidx.media3.extractor.metadata.emsg.EventMessageDecoder;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
@@ -290,6 +291,11 @@ public final class PlayerEmsgHandler implements Handler.Callback {
       sampleQueue.sampleData(data, length);
     }
 
+    @Override
+    public void sampleData(ByteBuffer data, int length, @SampleDataPart int sampleDataPart) {
+      sampleQueue.sampleData(data, length);
+    }
+
     @Override
     public void sampleMetadata(
         long timeUs, int flags, int size, int offset, @Nullable CryptoData cryptoData) {
@@ -24,6 +24,7 @@ import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Pair;
 import android.util.Xml;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.DrmInitData;
@@ -33,6 +34,7 @@ import androidx.media3.common.MimeTypes;
 import androidx.media3.common.ParserException;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.Log;
+import androidx.media3.common.util.LongArray;
 import androidx.media3.common.util.NullableType;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.UriUtil;
@@ -52,7 +54,11 @@ import com.google.common.collect.Lists;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
 import java.util.regex.Matcher;
@@ -88,18 +94,30 @@ public class DashManifestParser extends DefaultHandler
 
   private final XmlPullParserFactory xmlParserFactory;
 
+  @GuardedBy("this")
+  private HashMap<SegmentTimelineRuns, List<SegmentTimelineElement>> segmentTimelines;
+
+  @GuardedBy("this")
+  private HashMap<SegmentTimelineRuns, List<SegmentTimelineElement>> previousSegmentTimelines;
+
+  private final boolean overridesBuildSegmentTimelineElement;
+
   public DashManifestParser() {
     try {
       xmlParserFactory = XmlPullParserFactory.newInstance();
     } catch (XmlPullParserException e) {
       throw new RuntimeException("Couldn't create XmlPullParserFactory instance", e);
     }
+    segmentTimelines = new HashMap<>();
+    previousSegmentTimelines = new HashMap<>();
+    overridesBuildSegmentTimelineElement = overridesBuildSegmentTimelineElement(getClass());
   }
 
   // MPD parsing.
 
   @Override
   public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
+    onParseStarted();
     try {
       XmlPullParser xpp = xmlParserFactory.newPullParser();
       xpp.setInput(inputStream, null);
@@ -1265,7 +1283,9 @@ public class DashManifestParser extends DefaultHandler
   protected List<SegmentTimelineElement> parseSegmentTimeline(
       XmlPullParser xpp, long timescale, long periodDurationMs)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    // The timeline is parsed into runs of elements with the same duration first, so that the
+    // elements of a timeline that was parsed before don't need to be built again.
+    LongArray segmentTimelineRuns = new LongArray();
     long startTime = 0;
     long elementDuration = C.TIME_UNSET;
     int elementRepeatCount = 0;
@@ -1276,8 +1296,8 @@ public class DashManifestParser extends DefaultHandler
         long newStartTime = parseLong(xpp, "t", C.TIME_UNSET);
         if (havePreviousTimelineElement) {
           startTime =
-              addSegmentTimelineElementsToList(
-                  segmentTimeline,
+              addSegmentTimelineRun(
+                  segmentTimelineRuns,
                   startTime,
                   elementDuration,
                   elementRepeatCount,
@@ -1295,19 +1315,23 @@ public class DashManifestParser extends DefaultHandler
     } while (!XmlPullParserUtil.isEndTag(xpp, "SegmentTimeline"));
     if (havePreviousTimelineElement) {
       long periodDuration = Util.scaleLargeTimestamp(periodDurationMs, timescale, 1000);
-      addSegmentTimelineElementsToList(
-          segmentTimeline,
+      addSegmentTimelineRun(
+          segmentTimelineRuns,
           startTime,
           elementDuration,
           elementRepeatCount,
           /* endTime= */ periodDuration);
     }
-    return segmentTimeline;
+    if (overridesBuildSegmentTimelineElement) {
+      return buildSegmentTimelineElements(segmentTimelineRuns.toArray());
+    }
+    return getSegmentTimeline(segmentTimelineRuns.toArray());
   }
 
   /**
-   * Adds timeline elements for one S tag to the segment timeline.
+   * Adds the run of timeline elements for one S tag to the runs of a segment timeline.
    *
+   * @param segmentTimelineRuns The start time, element duration and element count of each run.
    * @param startTime Start time of the first timeline element.
    * @param elementDuration Duration of one timeline element.
    * @param elementRepeatCount Number of timeline elements minus one. May be negative to indicate
@@ -1316,8 +1340,8 @@ public class DashManifestParser extends DefaultHandler
    *     unknown. Only needed if {@code repeatCount} is negative.
    * @return Calculated next start time.
    */
-  private long addSegmentTimelineElementsToList(
-      List<SegmentTimelineElement> segmentTimeline,
+  private static long addSegmentTimelineRun(
+      LongArray segmentTimelineRuns,
       long startTime,
       long elementDuration,
       int elementRepeatCount,
@@ -1326,13 +1350,108 @@ public class DashManifestParser extends DefaultHandler
         elementRepeatCount >= 0
             ? 1 + elementRepeatCount
             : (int) Util.ceilDivide(endTime - startTime, elementDuration);
-    for (int i = 0; i < count; i++) {
-      segmentTimeline.add(buildSegmentTimelineElement(startTime, elementDuration));
-      startTime += elementDuration;
+    if (count <= 0) {
+      return startTime;
+    }
+    segmentTimelineRuns.add(startTime);
+    segmentTimelineRuns.add(elementDuration);
+    segmentTimelineRuns.add(count);
+    return startTime + count * elementDuration;
+  }
+
+  /**
+   * Returns the segment timeline with the given runs of elements, reusing the timeline of an
+   * earlier call for the same runs during this or the previous call to {@link #parse(Uri,
+   * InputStream)}.
+   *
+   * <p>Timelines are commonly repeated for all representations of an adaptation set, and the
+   * timelines of past periods of a live stream don't change between manifest refreshes. Each
+   * timeline stores one entry per run rather than one {@link SegmentTimelineElement} per segment.
+   */
+  private List<SegmentTimelineElement> getSegmentTimeline(long[] segmentTimelineRuns) {
+    SegmentTimelineRuns key = new SegmentTimelineRuns(segmentTimelineRuns);
+    @Nullable List<SegmentTimelineElement> segmentTimeline = getCachedSegmentTimeline(key);
+    if (segmentTimeline != null) {
+      return segmentTimeline;
+    }
+    segmentTimeline = RunLengthSegmentTimeline.fromRuns(segmentTimelineRuns);
+    cacheSegmentTimeline(key, segmentTimeline);
+    return segmentTimeline;
+  }
+
+  @Nullable
+  private synchronized List<SegmentTimelineElement> getCachedSegmentTimeline(
+      SegmentTimelineRuns key) {
+    @Nullable List<SegmentTimelineElement> segmentTimeline = segmentTimelines.get(key);
+    if (segmentTimeline == null) {
+      segmentTimeline = previousSegmentTimelines.get(key);
+      if (segmentTimeline != null) {
+        segmentTimelines.put(key, segmentTimeline);
+      }
+    }
+    return segmentTimeline;
+  }
+
+  private synchronized void cacheSegmentTimeline(
+      SegmentTimelineRuns key, List<SegmentTimelineElement> segmentTimeline) {
+    segmentTimelines.put(key, segmentTimeline);
+  }
+
+  private synchronized void onParseStarted() {
+    previousSegmentTimelines = segmentTimelines;
+    segmentTimelines = new HashMap<>();
+  }
+
+  /**
+   * Builds the elements of a segment timeline with the given runs of elements through {@link
+   * #buildSegmentTimelineElement}, as done before segment timelines were stored as runs.
+   */
+  @SuppressWarnings("deprecation") // Calling the method overridden by a subclass.
+  private List<SegmentTimelineElement> buildSegmentTimelineElements(long[] segmentTimelineRuns) {
+    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    for (int i = 0; i < segmentTimelineRuns.length; i += 3) {
+      long startTime = segmentTimelineRuns[i];
+      long elementDuration = segmentTimelineRuns[i + 1];
+      long count = segmentTimelineRuns[i + 2];
+      for (int j = 0; j < count; j++) {
+        segmentTimeline.add(buildSegmentTimelineElement(startTime, elementDuration));
+        startTime += elementDuration;
+      }
+    }
+    return segmentTimeline;
+  }
+
+  /**
+   * Returns whether a subclass of {@link DashManifestParser} overrides {@link
+   * #buildSegmentTimelineElement}.
+   *
+   * <p>Methods are matched by their signature rather than their name, which may be obfuscated.
+   */
+  private static boolean overridesBuildSegmentTimelineElement(Class<?> parserClass) {
+    for (Class<?> clazz = parserClass;
+        clazz != null && clazz != DashManifestParser.class;
+        clazz = clazz.getSuperclass()) {
+      for (Method method : clazz.getDeclaredMethods()) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (!Modifier.isStatic(method.getModifiers())
+            && !Modifier.isPrivate(method.getModifiers())
+            && method.getReturnType() == SegmentTimelineElement.class
+            && parameterTypes.length == 2
+            && parameterTypes[0] == long.class
+            && parameterTypes[1] == long.class) {
+          return true;
+        }
+      }
     }
-    return startTime;
+    return false;
   }
 
+  /**
+   * @deprecated Segment timelines are stored as runs of elements. This method is only called if
+   *     it's overridden, in which case the timeline is built from one element per segment as
+   *     before, without the memory savings of the runs.
+   */
+  @Deprecated
   protected SegmentTimelineElement buildSegmentTimelineElement(long startTime, long duration) {
     return new SegmentTimelineElement(startTime, duration);
   }
@@ -2102,4 +2221,33 @@ public class DashManifestParser extends DefaultHandler
       this.revisionId = revisionId;
     }
   }
+
+  /** The runs of elements of a segment timeline, as triples of start time, duration and count. */
+  private static final class SegmentTimelineRuns {
+
+    private final long[] runs;
+    private final int hashCode;
+
+    public SegmentTimelineRuns(long[] runs) {
+      this.runs = runs;
+      hashCode = Arrays.hashCode(runs);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof SegmentTimelineRuns)) {
+        return false;
+      }
+      SegmentTimelineRuns other = (SegmentTimelineRuns) obj;
+      return hashCode == other.hashCode && Arrays.equals(runs, other.runs);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
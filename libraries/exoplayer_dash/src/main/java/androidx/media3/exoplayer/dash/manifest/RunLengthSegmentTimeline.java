@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.media3.common.util.LongArray;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTimelineElement;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable segment timeline that stores runs of contiguous elements with the same duration,
+ * rather than one {@link SegmentTimelineElement} per segment.
+ *
+ * <p>A run corresponds to an S element with a repeat count, so a timeline needs memory per S
+ * element rather than per segment. The start time and duration of a segment are found by a binary
+ * search over the index of the first segment of each run, without allocating. {@link #get(int)}
+ * creates a new {@link SegmentTimelineElement} on each call.
+ */
+/* package */ final class RunLengthSegmentTimeline extends AbstractList<SegmentTimelineElement>
+    implements RandomAccess {
+
+  private final long[] runStartTimes;
+  private final long[] runElementDurations;
+  private final int[] runFirstIndices;
+  private final int size;
+
+  /**
+   * Returns a timeline with the given elements, or {@code segmentTimeline} itself if it's already
+   * a {@link RunLengthSegmentTimeline}.
+   */
+  public static RunLengthSegmentTimeline copyOf(List<SegmentTimelineElement> segmentTimeline) {
+    if (segmentTimeline instanceof RunLengthSegmentTimeline) {
+      return (RunLengthSegmentTimeline) segmentTimeline;
+    }
+    LongArray runs = new LongArray();
+    for (int i = 0; i < segmentTimeline.size(); i++) {
+      SegmentTimelineElement element = segmentTimeline.get(i);
+      runs.add(element.startTime);
+      runs.add(element.duration);
+      runs.add(1);
+    }
+    return fromRuns(runs.toArray());
+  }
+
+  /**
+   * Returns a timeline with the given runs of elements.
+   *
+   * @param runs The runs, as consecutive triples of the start time of the first element of the run,
+   *     the duration of each element of the run and the number of elements in the run. Adjacent
+   *     runs are merged if they're contiguous and their elements have the same duration.
+   */
+  public static RunLengthSegmentTimeline fromRuns(long[] runs) {
+    checkArgument(runs.length % 3 == 0);
+    int maxRunCount = runs.length / 3;
+    long[] runStartTimes = new long[maxRunCount];
+    long[] runElementDurations = new long[maxRunCount];
+    int[] runFirstIndices = new int[maxRunCount];
+    int runCount = 0;
+    long size = 0;
+    long runEndTime = 0;
+    for (int i = 0; i < runs.length; i += 3) {
+      long startTime = runs[i];
+      long elementDuration = runs[i + 1];
+      long count = runs[i + 2];
+      if (count <= 0) {
+        continue;
+      }
+      if (runCount == 0
+          || startTime != runEndTime
+          || elementDuration != runElementDurations[runCount - 1]) {
+        runStartTimes[runCount] = startTime;
+        runElementDurations[runCount] = elementDuration;
+        runFirstIndices[runCount] = (int) size;
+        runCount++;
+      }
+      size += count;
+      checkArgument(size <= Integer.MAX_VALUE);
+      runEndTime = startTime + count * elementDuration;
+    }
+    return new RunLengthSegmentTimeline(
+        Arrays.copyOf(runStartTimes, runCount),
+        Arrays.copyOf(runElementDurations, runCount),
+        Arrays.copyOf(runFirstIndices, runCount),
+        (int) size);
+  }
+
+  private RunLengthSegmentTimeline(
+      long[] runStartTimes, long[] runElementDurations, int[] runFirstIndices, int size) {
+    this.runStartTimes = runStartTimes;
+    this.runElementDurations = runElementDurations;
+    this.runFirstIndices = runFirstIndices;
+    this.size = size;
+  }
+
+  /** Returns the number of runs of elements in the timeline. */
+  public int getRunCount() {
+    return runStartTimes.length;
+  }
+
+  /** Returns the index of the first element of a run. */
+  public int getRunFirstIndex(int run) {
+    return runFirstIndices[run];
+  }
+
+  /** Returns the start time of the first element of a run. */
+  public long getRunStartTime(int run) {
+    return runStartTimes[run];
+  }
+
+  /** Returns the duration of each element of a run. */
+  public long getRunElementDuration(int run) {
+    return runElementDurations[run];
+  }
+
+  /**
+   * Returns the start time of an element.
+   *
+   * @param index The index of the element.
+   * @return The start time, in the timescale of the enclosing element.
+   * @throws IndexOutOfBoundsException If {@code index} is out of bounds.
+   */
+  public long getStartTime(int index) {
+    int run = getRun(index);
+    return runStartTimes[run] + (index - runFirstIndices[run]) * runElementDurations[run];
+  }
+
+  /**
+   * Returns the duration of an element.
+   *
+   * @param index The index of the element.
+   * @return The duration, in the timescale of the enclosing element.
+   * @throws IndexOutOfBoundsException If {@code index} is out of bounds.
+   */
+  public long getDuration(int index) {
+    return runElementDurations[getRun(index)];
+  }
+
+  @Override
+  public SegmentTimelineElement get(int index) {
+    int run = getRun(index);
+    long elementDuration = runElementDurations[run];
+    return new SegmentTimelineElement(
+        runStartTimes[run] + (index - runFirstIndices[run]) * elementDuration, elementDuration);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  private int getRun(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    int run = Arrays.binarySearch(runFirstIndices, index);
+    // If the index isn't the first of a run, binarySearch returns -(insertion point) - 1, and the
+    // run containing the index is the one before the insertion point.
+    return run >= 0 ? run : -run - 2;
+  }
+}
@@ -119,7 +119,7 @@ public abstract class SegmentBase {
 
     /* package */ final long startNumber;
     /* package */ final long duration;
-    @Nullable /* package */ final List<SegmentTimelineElement> segmentTimeline;
+    @Nullable /* package */ final RunLengthSegmentTimeline segmentTimeline;
     private final long timeShiftBufferDepthUs;
     private final long periodStartUnixTimeUs;
 
@@ -164,7 +164,8 @@ public abstract class SegmentBase {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
-      this.segmentTimeline = segmentTimeline;
+      this.segmentTimeline =
+          segmentTimeline != null ? RunLengthSegmentTimeline.copyOf(segmentTimeline) : null;
       this.availabilityTimeOffsetUs = availabilityTimeOffsetUs;
       this.timeShiftBufferDepthUs = timeShiftBufferDepthUs;
       this.periodStartUnixTimeUs = periodStartUnixTimeUs;
@@ -188,12 +189,33 @@ public abstract class SegmentBase {
                 ? segmentNum
                 : min(segmentNum, firstSegmentNum + segmentCount - 1);
       } else {
-        // The index cannot be unbounded. Identify the segment using binary search.
-        long lowIndex = firstSegmentNum;
-        long highIndex = firstSegmentNum + segmentCount - 1;
+        // The index cannot be unbounded. Identify the run of segments containing the time using
+        // binary search, and then the segment within the run.
+        int lowRun = 0;
+        int highRun = segmentTimeline.getRunCount() - 1;
+        while (lowRun < highRun) {
+          int midRun = lowRun + (highRun - lowRun + 1) / 2;
+          if (getTimelineTimeUs(segmentTimeline.getRunStartTime(midRun)) <= timeUs) {
+            lowRun = midRun;
+          } else {
+            highRun = midRun - 1;
+          }
+        }
+        long runStartTime = segmentTimeline.getRunStartTime(lowRun);
+        long runElementDuration = segmentTimeline.getRunElementDuration(lowRun);
+        long runFirstSegmentNum = startNumber + segmentTimeline.getRunFirstIndex(lowRun);
+        long runLastSegmentNum =
+            startNumber
+                + (lowRun + 1 < segmentTimeline.getRunCount()
+                    ? segmentTimeline.getRunFirstIndex(lowRun + 1)
+                    : segmentTimeline.size())
+                - 1;
+        long lowIndex = max(firstSegmentNum, runFirstSegmentNum);
+        long highIndex = min(firstSegmentNum + segmentCount - 1, runLastSegmentNum);
         while (lowIndex <= highIndex) {
           long midIndex = lowIndex + (highIndex - lowIndex) / 2;
-          long midTimeUs = getSegmentTimeUs(midIndex);
+          long midTime = runStartTime + (midIndex - runFirstSegmentNum) * runElementDuration;
+          long midTimeUs = getTimelineTimeUs(midTime);
           if (midTimeUs < timeUs) {
             lowIndex = midIndex + 1;
           } else if (midTimeUs > timeUs) {
@@ -209,7 +231,7 @@ public abstract class SegmentBase {
     /** See {@link DashSegmentIndex#getDurationUs(long, long)}. */
     public final long getSegmentDurationUs(long sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get((int) (sequenceNumber - startNumber)).duration;
+        long duration = segmentTimeline.getDuration((int) (sequenceNumber - startNumber));
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         long segmentCount = getSegmentCount(periodDurationUs);
@@ -225,7 +247,7 @@ public abstract class SegmentBase {
       long unscaledSegmentTime;
       if (segmentTimeline != null) {
         unscaledSegmentTime =
-            segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime
+            segmentTimeline.getStartTime((int) (sequenceNumber - startNumber))
                 - presentationTimeOffset;
       } else {
         unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
@@ -233,6 +255,11 @@ public abstract class SegmentBase {
       return Util.scaleLargeTimestamp(unscaledSegmentTime, C.MICROS_PER_SECOND, timescale);
     }
 
+    private long getTimelineTimeUs(long timelineTime) {
+      return Util.scaleLargeTimestamp(
+          timelineTime - presentationTimeOffset, C.MICROS_PER_SECOND, timescale);
+    }
+
     /**
      * Returns a {@link RangedUri} defining the location of a segment for the given index in the
      * given representation.
@@ -443,7 +470,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, long sequenceNumber) {
       long time;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime;
+        time = segmentTimeline.getStartTime((int) (sequenceNumber - startNumber));
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
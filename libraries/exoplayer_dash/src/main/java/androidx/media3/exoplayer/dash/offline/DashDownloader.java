@@ -156,6 +156,49 @@ public final class DashDownloader extends SegmentDownloader<DashManifest> {
     baseUrlExclusionList = new BaseUrlExclusionList();
   }
 
+  @Override
+  protected List<SegmentListLoader> getSegmentListLoaders(DashManifest manifest) {
+    ArrayList<SegmentListLoader> segmentListLoaders = new ArrayList<>();
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      Period period = manifest.getPeriod(i);
+      long periodStartUs = Util.msToUs(period.startMs);
+      long periodDurationUs = manifest.getPeriodDurationUs(i);
+      List<AdaptationSet> adaptationSets = period.adaptationSets;
+      for (int j = 0; j < adaptationSets.size(); j++) {
+        AdaptationSet adaptationSet = adaptationSets.get(j);
+        for (int k = 0; k < adaptationSet.representations.size(); k++) {
+          Representation representation = adaptationSet.representations.get(k);
+          // Select the base URL here, as the exclusion list isn't thread-safe.
+          String baseUrl =
+              castNonNull(baseUrlExclusionList.selectBaseUrl(representation.baseUrls)).url;
+          segmentListLoaders.add(
+              dataSource -> {
+                @Nullable DashSegmentIndex index = representation.getIndex();
+                if (index == null) {
+                  @Nullable
+                  ChunkIndex seekMap =
+                      DashUtil.loadChunkIndex(dataSource, adaptationSet.type, representation);
+                  if (seekMap != null) {
+                    index =
+                        new DashWrappingSegmentIndex(
+                            seekMap, representation.presentationTimeOffsetUs);
+                  }
+                }
+                if (index == null) {
+                  // Loading succeeded but there was no index.
+                  throw new DownloadException("Missing segment index");
+                }
+                ArrayList<Segment> segments = new ArrayList<>();
+                addSegmentsForRepresentation(
+                    representation, index, baseUrl, periodStartUs, periodDurationUs, segments);
+                return segments;
+              });
+        }
+      }
+    }
+    return segmentListLoaders;
+  }
+
   @Override
   protected List<Segment> getSegments(
       DataSource dataSource, DashManifest manifest, boolean removing)
@@ -199,30 +242,39 @@ public final class DashDownloader extends SegmentDownloader<DashManifest> {
         continue;
       }
 
-      long segmentCount = index.getSegmentCount(periodDurationUs);
-      if (segmentCount == DashSegmentIndex.INDEX_UNBOUNDED) {
-        throw new DownloadException("Unbounded segment index");
-      }
-
       String baseUrl = castNonNull(baseUrlExclusionList.selectBaseUrl(representation.baseUrls)).url;
-      @Nullable RangedUri initializationUri = representation.getInitializationUri();
-      if (initializationUri != null) {
-        out.add(createSegment(representation, baseUrl, periodStartUs, initializationUri));
-      }
-      @Nullable RangedUri indexUri = representation.getIndexUri();
-      if (indexUri != null) {
-        out.add(createSegment(representation, baseUrl, periodStartUs, indexUri));
-      }
-      long firstSegmentNum = index.getFirstSegmentNum();
-      long lastSegmentNum = firstSegmentNum + segmentCount - 1;
-      for (long j = firstSegmentNum; j <= lastSegmentNum; j++) {
-        out.add(
-            createSegment(
-                representation,
-                baseUrl,
-                periodStartUs + index.getTimeUs(j),
-                index.getSegmentUrl(j)));
-      }
+      addSegmentsForRepresentation(
+          representation, index, baseUrl, periodStartUs, periodDurationUs, out);
+    }
+  }
+
+  private void addSegmentsForRepresentation(
+      Representation representation,
+      DashSegmentIndex index,
+      String baseUrl,
+      long periodStartUs,
+      long periodDurationUs,
+      ArrayList<Segment> out)
+      throws DownloadException {
+    long segmentCount = index.getSegmentCount(periodDurationUs);
+    if (segmentCount == DashSegmentIndex.INDEX_UNBOUNDED) {
+      throw new DownloadException("Unbounded segment index");
+    }
+
+    @Nullable RangedUri initializationUri = representation.getInitializationUri();
+    if (initializationUri != null) {
+      out.add(createSegment(representation, baseUrl, periodStartUs, initializationUri));
+    }
+    @Nullable RangedUri indexUri = representation.getIndexUri();
+    if (indexUri != null) {
+      out.add(createSegment(representation, baseUrl, periodStartUs, indexUri));
+    }
+    long firstSegmentNum = index.getFirstSegmentNum();
+    long lastSegmentNum = firstSegmentNum + segmentCount - 1;
+    for (long j = firstSegmentNum; j <= lastSegmentNum; j++) {
+      out.add(
+          createSegment(
+              representation, baseUrl, periodStartUs + index.getTimeUs(j), index.getSegmentUrl(j)));
     }
   }
 
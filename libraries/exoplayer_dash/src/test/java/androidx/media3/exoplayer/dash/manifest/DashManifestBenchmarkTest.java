@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static androidx.media3.test.utils.BenchmarkUtil.assertAllocationsWithinBudget;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.test.utils.BenchmarkUtil;
+import androidx.media3.test.utils.ManifestBenchmark;
+import androidx.media3.test.utils.SyntheticManifestGenerator;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Performance regression tests for parsing and refreshing DASH manifests, using {@link
+ * ManifestBenchmark} with manifests created by {@link SyntheticManifestGenerator}.
+ *
+ * <p>Each test fails if the number of bytes allocated exceeds its budget, as described in {@link
+ * BenchmarkUtil}.
+ *
+ * <p>A refresh is measured by parsing the refreshed manifest with the {@link DashManifestParser}
+ * that parsed the previous one, as {@link androidx.media3.exoplayer.dash.DashMediaSource} does.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class DashManifestBenchmarkTest {
+
+  private static final Uri MANIFEST_URI = Uri.parse("https://example.test/manifest.mpd");
+  private static final int SEGMENT_COUNT = 10_000;
+  private static final int SEGMENT_COUNT_PER_PERIOD = 2_500;
+  private static final long SEGMENT_DURATION_MS = 2_000;
+  private static final int VIDEO_REPRESENTATION_COUNT = 6;
+
+  @Test
+  public void parseMultiPeriodManifest() throws IOException {
+    byte[] data = createManifest(/* firstSegmentIndex= */ 0);
+    DashManifest manifest = parse(new DashManifestParser(), data);
+    assertThat(manifest.getPeriodCount()).isEqualTo(4);
+    assertThat(getSegmentCount(manifest)).isEqualTo(SEGMENT_COUNT);
+
+    ManifestBenchmark.Result result =
+        new ManifestBenchmark(
+                () -> {
+                  DashManifestParser parser = new DashManifestParser();
+                  return () -> parse(parser, data);
+                })
+            .run();
+
+    assertAllocationsWithinBudget(
+        "Multi-period manifest", result, /* maxAllocatedBytes= */ 350L * SEGMENT_COUNT);
+  }
+
+  @Test
+  public void refreshMultiPeriodManifest() throws IOException {
+    byte[] previousData = createManifest(/* firstSegmentIndex= */ 0);
+    byte[] data = createManifest(/* firstSegmentIndex= */ 1);
+    DashManifestParser refreshParser = new DashManifestParser();
+    parse(refreshParser, previousData);
+    DashManifest refreshedManifest = parse(refreshParser, data);
+    assertThat(refreshedManifest.getPeriodCount()).isEqualTo(5);
+    assertThat(getSegmentCount(refreshedManifest)).isEqualTo(SEGMENT_COUNT);
+
+    ManifestBenchmark.Result result =
+        new ManifestBenchmark(
+                () -> {
+                  DashManifestParser parser = new DashManifestParser();
+                  parse(parser, previousData);
+                  return () -> parse(parser, data);
+                })
+            .run();
+
+    assertAllocationsWithinBudget(
+        "Multi-period manifest refresh", result, /* maxAllocatedBytes= */ 350L * SEGMENT_COUNT);
+  }
+
+  private static byte[] createManifest(long firstSegmentIndex) {
+    return Util.getUtf8Bytes(
+        SyntheticManifestGenerator.createDashManifest(
+            firstSegmentIndex,
+            SEGMENT_COUNT,
+            SEGMENT_COUNT_PER_PERIOD,
+            SEGMENT_DURATION_MS,
+            VIDEO_REPRESENTATION_COUNT));
+  }
+
+  private static DashManifest parse(DashManifestParser parser, byte[] data) throws IOException {
+    return parser.parse(MANIFEST_URI, new ByteArrayInputStream(data));
+  }
+
+  private static long getSegmentCount(DashManifest manifest) {
+    long segmentCount = 0;
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      segmentCount +=
+          manifest
+              .getPeriod(i)
+              .adaptationSets
+              .get(0)
+              .representations
+              .get(0)
+              .getIndex()
+              .getSegmentCount(C.TIME_UNSET);
+    }
+    return segmentCount;
+  }
+}
@@ -35,6 +35,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
@@ -429,6 +430,113 @@ public class DashManifestParserTest {
     assertNextTag(xpp);
   }
 
+  @Test
+  public void parseSegmentTimeline_sameTimelineAsBefore_reusesTimeline() throws Exception {
+    DashManifestParser parser = new DashManifestParser();
+    String segmentTimeline =
+        "<SegmentTimeline><S t=\"0\" d=\"96000\" r=\"2\"/><S d=\"48000\"/></SegmentTimeline>";
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(new StringReader(segmentTimeline + segmentTimeline + NEXT_TAG));
+    xpp.next();
+
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+    xpp.next();
+    List<SegmentTimelineElement> repeatedElements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+
+    assertThat(repeatedElements).isSameInstanceAs(elements);
+    assertNextTag(xpp);
+  }
+
+  @Test
+  public void parseSegmentTimeline_buildSegmentTimelineElementOverridden_usesOverride()
+      throws Exception {
+    List<SegmentTimelineElement> builtElements = new ArrayList<>();
+    DashManifestParser parser =
+        new DashManifestParser() {
+          @Override
+          @SuppressWarnings("deprecation") // Testing the deprecated method.
+          protected SegmentTimelineElement buildSegmentTimelineElement(
+              long startTime, long duration) {
+            SegmentTimelineElement element = new SegmentTimelineElement(startTime, duration / 2);
+            builtElements.add(element);
+            return element;
+          }
+        };
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S d=\"96000\" r=\"1\"/><S d=\"48000\"/></SegmentTimeline>"
+                + NEXT_TAG));
+    xpp.next();
+
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+
+    assertThat(elements)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 48000),
+            new SegmentTimelineElement(/* startTime= */ 96000, /* duration= */ 48000),
+            new SegmentTimelineElement(/* startTime= */ 192000, /* duration= */ 24000))
+        .inOrder();
+    assertThat(elements).containsExactlyElementsIn(builtElements).inOrder();
+    assertNextTag(xpp);
+  }
+
+  @Test
+  public void parseSegmentTimeline_differentTimelineThanBefore_parsesTimeline() throws Exception {
+    DashManifestParser parser = new DashManifestParser();
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S d=\"96000\" r=\"1\"/></SegmentTimeline>"
+                + "<SegmentTimeline><S d=\"96000\" r=\"2\"/></SegmentTimeline>"
+                + NEXT_TAG));
+    xpp.next();
+
+    parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+    xpp.next();
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+
+    assertThat(elements)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 96000),
+            new SegmentTimelineElement(/* startTime= */ 96000, /* duration= */ 96000),
+            new SegmentTimelineElement(/* startTime= */ 192000, /* duration= */ 96000))
+        .inOrder();
+    assertNextTag(xpp);
+  }
+
+  @Test
+  public void parseMediaPresentationDescription_refreshedManifest_reusesSegmentTimelines()
+      throws IOException {
+    DashManifestParser parser = new DashManifestParser();
+    Uri uri = Uri.parse("https://example.com/test.mpd");
+    DashManifest manifest =
+        parser.parse(
+            uri,
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_SEGMENT_TEMPLATE));
+
+    DashManifest refreshedManifest =
+        parser.parse(
+            uri,
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_SEGMENT_TEMPLATE));
+
+    MultiSegmentRepresentation representation =
+        (MultiSegmentRepresentation)
+            manifest.getPeriod(0).adaptationSets.get(0).representations.get(0);
+    MultiSegmentRepresentation refreshedRepresentation =
+        (MultiSegmentRepresentation)
+            refreshedManifest.getPeriod(0).adaptationSets.get(0).representations.get(0);
+    assertThat(refreshedRepresentation.segmentBase.segmentTimeline).isNotNull();
+    assertThat(refreshedRepresentation.segmentBase.segmentTimeline)
+        .isSameInstanceAs(representation.segmentBase.segmentTimeline);
+  }
+
   @Test
   public void parseLabel() throws Exception {
     DashManifestParser parser = new DashManifestParser();
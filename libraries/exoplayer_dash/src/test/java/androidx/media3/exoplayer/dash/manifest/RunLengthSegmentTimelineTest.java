@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.media3.common.C;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTimelineElement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link RunLengthSegmentTimeline}. */
+@RunWith(AndroidJUnit4.class)
+public final class RunLengthSegmentTimelineTest {
+
+  @Test
+  public void fromRuns_returnsElementsOfAllRuns() {
+    RunLengthSegmentTimeline segmentTimeline =
+        RunLengthSegmentTimeline.fromRuns(
+            new long[] {
+              /* run 0 */ 0, 1000, 2, /* run 1 */ 2000, 500, 1, /* run 2 */ 3000, 1000, 2
+            });
+
+    assertThat(segmentTimeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 1000),
+            new SegmentTimelineElement(/* startTime= */ 1000, /* duration= */ 1000),
+            new SegmentTimelineElement(/* startTime= */ 2000, /* duration= */ 500),
+            new SegmentTimelineElement(/* startTime= */ 3000, /* duration= */ 1000),
+            new SegmentTimelineElement(/* startTime= */ 4000, /* duration= */ 1000))
+        .inOrder();
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void fromRuns_mergesContiguousRunsWithSameDuration() {
+    RunLengthSegmentTimeline segmentTimeline =
+        RunLengthSegmentTimeline.fromRuns(
+            new long[] {
+              /* run 0 */ 0, 1000, 2, /* run 1 */ 2000, 1000, 3, /* run 2 */ 6000, 1000, 1
+            });
+
+    assertThat(segmentTimeline).hasSize(6);
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(2);
+    assertThat(segmentTimeline.getStartTime(4)).isEqualTo(4000);
+    assertThat(segmentTimeline.getStartTime(5)).isEqualTo(6000);
+  }
+
+  @Test
+  public void fromRuns_skipsEmptyRuns() {
+    RunLengthSegmentTimeline segmentTimeline =
+        RunLengthSegmentTimeline.fromRuns(
+            new long[] {/* run 0 */ 0, 1000, 0, /* run 1 */ 0, 500, 2, /* run 2 */ 1000, 500, 0});
+
+    assertThat(segmentTimeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 500),
+            new SegmentTimelineElement(/* startTime= */ 500, /* duration= */ 500))
+        .inOrder();
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void getStartTimeAndDuration_longRun_returnsValuesOfElement() {
+    RunLengthSegmentTimeline segmentTimeline =
+        RunLengthSegmentTimeline.fromRuns(
+            new long[] {/* run 0 */ 1000, 2000, 100_000, /* run 1 */ 200_001_000, 1500, 1});
+
+    assertThat(segmentTimeline).hasSize(100_001);
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(2);
+    assertThat(segmentTimeline.getStartTime(54_321)).isEqualTo(1000 + 54_321L * 2000);
+    assertThat(segmentTimeline.getDuration(54_321)).isEqualTo(2000);
+    assertThat(segmentTimeline.getStartTime(100_000)).isEqualTo(200_001_000);
+    assertThat(segmentTimeline.getDuration(100_000)).isEqualTo(1500);
+  }
+
+  @Test
+  public void get_indexOutOfBounds_throwsIndexOutOfBoundsException() {
+    RunLengthSegmentTimeline segmentTimeline =
+        RunLengthSegmentTimeline.fromRuns(new long[] {0, 1000, 2});
+
+    assertThrows(IndexOutOfBoundsException.class, () -> segmentTimeline.get(-1));
+    assertThrows(IndexOutOfBoundsException.class, () -> segmentTimeline.get(2));
+    assertThrows(IndexOutOfBoundsException.class, () -> segmentTimeline.getStartTime(2));
+    assertThrows(IndexOutOfBoundsException.class, () -> segmentTimeline.getDuration(2));
+  }
+
+  @Test
+  public void copyOf_listOfElements_equalsListAndMergesRuns() {
+    ImmutableList<SegmentTimelineElement> elements =
+        ImmutableList.of(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 1000),
+            new SegmentTimelineElement(/* startTime= */ 1000, /* duration= */ 1000),
+            new SegmentTimelineElement(/* startTime= */ 5000, /* duration= */ 1000));
+
+    RunLengthSegmentTimeline segmentTimeline = RunLengthSegmentTimeline.copyOf(elements);
+
+    assertThat(segmentTimeline).isEqualTo(elements);
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(2);
+    assertThat(RunLengthSegmentTimeline.copyOf(segmentTimeline)).isSameInstanceAs(segmentTimeline);
+  }
+
+  @Test
+  public void segmentTemplate_longTimeline_findsSegmentsByBinarySearch() {
+    int segmentCount = 10_000;
+    SegmentBase.SegmentTemplate segmentTemplate =
+        new SegmentBase.SegmentTemplate(
+            /* initialization= */ null,
+            /* timescale= */ 1000,
+            /* presentationTimeOffset= */ 0,
+            /* startNumber= */ 1,
+            /* endNumber= */ C.INDEX_UNSET,
+            /* duration= */ 0,
+            RunLengthSegmentTimeline.fromRuns(new long[] {0, 2000, segmentCount}),
+            /* availabilityTimeOffsetUs= */ C.TIME_UNSET,
+            /* initializationTemplate= */ null,
+            /* mediaTemplate= */ null,
+            /* timeShiftBufferDepthUs= */ C.TIME_UNSET,
+            /* periodStartUnixTimeUs= */ C.TIME_UNSET);
+
+    assertThat(segmentTemplate.getSegmentCount(/* periodDurationUs= */ C.TIME_UNSET))
+        .isEqualTo(segmentCount);
+    assertThat(
+            segmentTemplate.getSegmentNum(
+                /* timeUs= */ 12_345_000_000L, /* periodDurationUs= */ C.TIME_UNSET))
+        .isEqualTo(1 + 6172);
+    assertThat(segmentTemplate.getSegmentTimeUs(/* sequenceNumber= */ 1 + 6172))
+        .isEqualTo(12_344_000_000L);
+    assertThat(
+            segmentTemplate.getSegmentDurationUs(
+                /* sequenceNumber= */ 1 + 6172, /* periodDurationUs= */ C.TIME_UNSET))
+        .isEqualTo(2_000_000);
+  }
+
+  @Test
+  public void segmentTemplate_timelineWithSeveralRuns_findsSegmentsInEachRun() {
+    SegmentBase.SegmentTemplate segmentTemplate =
+        new SegmentBase.SegmentTemplate(
+            /* initialization= */ null,
+            /* timescale= */ 1000,
+            /* presentationTimeOffset= */ 1000,
+            /* startNumber= */ 10,
+            /* endNumber= */ C.INDEX_UNSET,
+            /* duration= */ 0,
+            RunLengthSegmentTimeline.fromRuns(
+                new long[] {
+                  /* run 0 */ 1000, 2000, 3, /* run 1 */ 7000, 500, 4, /* run 2 */ 10_000, 3000, 2
+                }),
+            /* availabilityTimeOffsetUs= */ C.TIME_UNSET,
+            /* initializationTemplate= */ null,
+            /* mediaTemplate= */ null,
+            /* timeShiftBufferDepthUs= */ C.TIME_UNSET,
+            /* periodStartUnixTimeUs= */ C.TIME_UNSET);
+
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ -1, C.TIME_UNSET)).isEqualTo(10);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 0, C.TIME_UNSET)).isEqualTo(10);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 5_999_999, C.TIME_UNSET))
+        .isEqualTo(12);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 6_000_000, C.TIME_UNSET))
+        .isEqualTo(13);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 7_600_000, C.TIME_UNSET))
+        .isEqualTo(16);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 9_000_000, C.TIME_UNSET))
+        .isEqualTo(17);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 100_000_000, C.TIME_UNSET))
+        .isEqualTo(18);
+  }
+}
@@ -26,6 +26,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import android.net.Uri;
+import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.common.StreamKey;
@@ -47,10 +48,15 @@ import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.Iterables;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -175,6 +181,54 @@ public class DashDownloaderTest {
     assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
   }
 
+  @Test
+  public void downloadAllRepresentations_withParallelExecutor_matchesSerialDownload()
+      throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("text_segment_1", 1)
+            .setRandomData("text_segment_2", 2)
+            .setRandomData("text_segment_3", 3)
+            .setRandomData("period_2_segment_1", 1)
+            .setRandomData("period_2_segment_2", 2)
+            .setRandomData("period_2_segment_3", 3);
+    File parallelTempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    SimpleCache parallelCache =
+        new SimpleCache(
+            parallelTempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    ProgressListener parallelProgressListener = new ProgressListener();
+    ExecutorService executor = Executors.newFixedThreadPool(/* nThreads= */ 4);
+
+    try {
+      getDashDownloader(
+              new FakeDataSource.Factory().setFakeDataSet(fakeDataSet),
+              cache,
+              /* executor= */ Runnable::run)
+          .download(progressListener);
+      getDashDownloader(
+              new FakeDataSource.Factory().setFakeDataSet(fakeDataSet), parallelCache, executor)
+          .download(parallelProgressListener);
+
+      RequestSet requestSet = new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data");
+      assertCachedData(cache, requestSet);
+      assertCachedData(parallelCache, requestSet);
+      parallelProgressListener.assertBytesDownloaded(progressListener.bytesDownloaded);
+      assertThat(parallelProgressListener.contentLength).isEqualTo(progressListener.contentLength);
+      progressListener.assertPercentageUnsetUntilAllSegmentsListed();
+      parallelProgressListener.assertPercentageUnsetUntilAllSegmentsListed();
+    } finally {
+      executor.shutdown();
+      parallelCache.release();
+      Util.recursiveDelete(parallelTempFolder);
+    }
+  }
+
   @Test
   public void progressiveDownload() throws Exception {
     FakeDataSet fakeDataSet =
@@ -336,13 +390,22 @@ public class DashDownloaderTest {
 
   private DashDownloader getDashDownloader(
       FakeDataSource.Factory upstreamDataSourceFactory, StreamKey... keys) {
+    return getDashDownloader(upstreamDataSourceFactory, cache, /* executor= */ Runnable::run, keys);
+  }
+
+  private static DashDownloader getDashDownloader(
+      FakeDataSource.Factory upstreamDataSourceFactory,
+      Cache cache,
+      Executor executor,
+      StreamKey... keys) {
     CacheDataSource.Factory cacheDataSourceFactory =
         new CacheDataSource.Factory()
             .setCache(cache)
             .setUpstreamDataSourceFactory(upstreamDataSourceFactory);
     return new DashDownloader(
         new MediaItem.Builder().setUri(TEST_MPD_URI).setStreamKeys(keysList(keys)).build(),
-        cacheDataSourceFactory);
+        cacheDataSourceFactory,
+        executor);
   }
 
   private static ArrayList<StreamKey> keysList(StreamKey... keys) {
@@ -353,15 +416,42 @@ public class DashDownloaderTest {
 
   private static final class ProgressListener implements Downloader.ProgressListener {
 
+    private final List<Float> percentagesDownloaded;
+
+    private long contentLength;
     private long bytesDownloaded;
 
+    public ProgressListener() {
+      percentagesDownloaded = new ArrayList<>();
+    }
+
     @Override
-    public void onProgress(long contentLength, long bytesDownloaded, float percentDownloaded) {
+    public synchronized void onProgress(
+        long contentLength, long bytesDownloaded, float percentDownloaded) {
+      this.contentLength = contentLength;
       this.bytesDownloaded = bytesDownloaded;
+      percentagesDownloaded.add(percentDownloaded);
     }
 
-    public void assertBytesDownloaded(long bytesDownloaded) {
+    public synchronized void assertBytesDownloaded(long bytesDownloaded) {
       assertThat(this.bytesDownloaded).isEqualTo(bytesDownloaded);
     }
+
+    /**
+     * Asserts that the reported percentage is unset until all segments are listed, then never
+     * goes down and ends at 100.
+     */
+    public synchronized void assertPercentageUnsetUntilAllSegmentsListed() {
+      int listedIndex = 0;
+      while (listedIndex < percentagesDownloaded.size()
+          && percentagesDownloaded.get(listedIndex) == C.PERCENTAGE_UNSET) {
+        listedIndex++;
+      }
+      List<Float> listedPercentages =
+          percentagesDownloaded.subList(listedIndex, percentagesDownloaded.size());
+      assertThat(listedPercentages).doesNotContain(C.PERCENTAGE_UNSET);
+      assertThat(listedPercentages).isInOrder();
+      assertThat(Iterables.getLast(percentagesDownloaded)).isEqualTo(100f);
+    }
   }
 }
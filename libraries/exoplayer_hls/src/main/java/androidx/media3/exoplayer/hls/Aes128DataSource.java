@@ -15,24 +15,38 @@
  */
 package androidx.media3.exoplayer.hls;
 
+import static com.google.common.base.Throwables.throwIfInstanceOf;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.lang.Math.min;
+
 import android.net.Uri;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.datasource.DataSource;
-import androidx.media3.datasource.DataSourceInputStream;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.TransferListener;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -44,14 +58,38 @@ import javax.crypto.spec.SecretKeySpec;
  * <p>Note that this {@link DataSource} does not support being opened from arbitrary offsets. It is
  * designed specifically for reading whole files as defined in an HLS media playlist. For this
  * reason the implementation is private to the HLS package.
+ *
+ * <p>Data is read from the upstream source and decrypted in blocks on a separate thread, ahead of
+ * calls to {@link #read(byte[], int, int)}, so that loading and decryption overlap with the
+ * processing of the decrypted data. The threads are pooled and shared between instances, so that a
+ * thread isn't created for every segment.
  */
 /* package */ class Aes128DataSource implements DataSource {
 
+  private static final String THREAD_NAME = "ExoPlayer:Aes128DataSource";
+
+  /** The maximum number of bytes read from the upstream source and decrypted at once. */
+  private static final int BLOCK_SIZE = 32 * 1024;
+
+  /** The maximum number of decrypted blocks that are held ahead of the reader. */
+  private static final int BLOCK_COUNT = 4;
+
+  /**
+   * Runs the decryption of all instances. Idle threads are reused for later segments, and stop
+   * after a while without segments to decrypt.
+   */
+  private static final Supplier<ExecutorService> DECRYPTION_EXECUTOR_SERVICE =
+      Suppliers.memoize(
+          () -> Executors.newCachedThreadPool(runnable -> new Thread(runnable, THREAD_NAME)));
+
   private final DataSource upstream;
   private final byte[] encryptionKey;
   private final byte[] encryptionIv;
 
-  @Nullable private CipherInputStream cipherInputStream;
+  private boolean opened;
+  @Nullable private BlockDecrypter blockDecrypter;
+  @Nullable private Uri uri;
+  private Map<String, List<String>> responseHeaders;
 
   /**
    * @param upstream The upstream {@link DataSource}.
@@ -62,6 +100,7 @@ import javax.crypto.spec.SecretKeySpec;
     this.upstream = upstream;
     this.encryptionKey = encryptionKey;
     this.encryptionIv = encryptionIv;
+    responseHeaders = Collections.emptyMap();
   }
 
   @Override
@@ -88,38 +127,44 @@ import javax.crypto.spec.SecretKeySpec;
       throw new RuntimeException(e);
     }
 
-    DataSourceInputStream inputStream = new DataSourceInputStream(upstream, dataSpec);
-    cipherInputStream = new CipherInputStream(inputStream, cipher);
-    inputStream.open();
+    opened = true;
+    upstream.open(dataSpec);
+    // The upstream source is read on the decryption thread once it starts.
+    uri = upstream.getUri();
+    responseHeaders = upstream.getResponseHeaders();
+    blockDecrypter = new BlockDecrypter(upstream, cipher);
+    DECRYPTION_EXECUTOR_SERVICE.get().execute(blockDecrypter);
 
     return C.LENGTH_UNSET;
   }
 
   @Override
   public final int read(byte[] buffer, int offset, int length) throws IOException {
-    Assertions.checkNotNull(cipherInputStream);
-    int bytesRead = cipherInputStream.read(buffer, offset, length);
-    if (bytesRead < 0) {
-      return C.RESULT_END_OF_INPUT;
-    }
-    return bytesRead;
+    return Assertions.checkNotNull(blockDecrypter).read(buffer, offset, length);
   }
 
   @Override
   @Nullable
   public final Uri getUri() {
-    return upstream.getUri();
+    return uri;
   }
 
   @Override
   public final Map<String, List<String>> getResponseHeaders() {
-    return upstream.getResponseHeaders();
+    return responseHeaders;
   }
 
   @Override
   public void close() throws IOException {
-    if (cipherInputStream != null) {
-      cipherInputStream = null;
+    if (opened) {
+      opened = false;
+      if (blockDecrypter != null) {
+        // Stop using the upstream source on the decryption thread before closing it.
+        blockDecrypter.release();
+        blockDecrypter = null;
+      }
+      uri = null;
+      responseHeaders = Collections.emptyMap();
       upstream.close();
     }
   }
@@ -127,4 +172,146 @@ import javax.crypto.spec.SecretKeySpec;
   protected Cipher getCipherInstance() throws NoSuchPaddingException, NoSuchAlgorithmException {
     return Cipher.getInstance("AES/CBC/PKCS7Padding");
   }
+
+  /** Reads and decrypts the data of an upstream source in blocks when run on a separate thread. */
+  private static final class BlockDecrypter implements Runnable {
+
+    private static final ByteBuffer END_OF_INPUT = ByteBuffer.allocate(0);
+
+    private final DataSource upstream;
+    private final Cipher cipher;
+    private final BlockingQueue<ByteBuffer> emptyBuffers;
+    private final BlockingQueue<ByteBuffer> decryptedBuffers;
+    private final ConditionVariable finished;
+
+    @GuardedBy("this")
+    private boolean released;
+
+    @GuardedBy("this")
+    @Nullable
+    private Thread decryptionThread;
+
+    // Written on the decryption thread before END_OF_INPUT is queued.
+    @Nullable private Throwable error;
+    @Nullable private ByteBuffer currentBuffer;
+
+    /**
+     * @param upstream The opened upstream {@link DataSource}.
+     * @param cipher The {@link Cipher}, initialized for decryption.
+     */
+    public BlockDecrypter(DataSource upstream, Cipher cipher) {
+      this.upstream = upstream;
+      this.cipher = cipher;
+      emptyBuffers = new ArrayBlockingQueue<>(BLOCK_COUNT);
+      // The last block may be followed by END_OF_INPUT.
+      decryptedBuffers = new ArrayBlockingQueue<>(BLOCK_COUNT + 1);
+      // Decryption may output a block held back by the previous call, in addition to the input.
+      int bufferSize = BLOCK_SIZE + cipher.getBlockSize();
+      for (int i = 0; i < BLOCK_COUNT; i++) {
+        emptyBuffers.add(ByteBuffer.allocate(bufferSize));
+      }
+      finished = new ConditionVariable();
+    }
+
+    /**
+     * Reads decrypted data, blocking until it's available.
+     *
+     * <p>See {@link DataSource#read(byte[], int, int)}.
+     */
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      @Nullable ByteBuffer currentBuffer = this.currentBuffer;
+      while (currentBuffer == null || !currentBuffer.hasRemaining()) {
+        if (currentBuffer == END_OF_INPUT) {
+          @Nullable Throwable error = this.error;
+          if (error != null) {
+            throwIfInstanceOf(error, IOException.class);
+            throwIfUnchecked(error);
+          }
+          return C.RESULT_END_OF_INPUT;
+        }
+        if (currentBuffer != null) {
+          emptyBuffers.add(currentBuffer);
+        }
+        try {
+          currentBuffer = decryptedBuffers.take();
+        } catch (InterruptedException e) {
+          this.currentBuffer = null;
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        this.currentBuffer = currentBuffer;
+      }
+      int bytesRead = min(length, currentBuffer.remaining());
+      currentBuffer.get(buffer, offset, bytesRead);
+      return bytesRead;
+    }
+
+    /**
+     * Stops reading and decrypting, blocking until the upstream source is no longer used by the
+     * decryption thread.
+     */
+    public void release() {
+      @Nullable Thread decryptionThread;
+      synchronized (this) {
+        released = true;
+        decryptionThread = this.decryptionThread;
+        if (decryptionThread != null) {
+          decryptionThread.interrupt();
+        }
+      }
+      // If the decryption hasn't started, it never will and the upstream source isn't used.
+      if (decryptionThread != null) {
+        finished.blockUninterruptible();
+      }
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (released) {
+          return;
+        }
+        decryptionThread = Thread.currentThread();
+      }
+      byte[] encryptedData = new byte[BLOCK_SIZE];
+      try {
+        while (true) {
+          ByteBuffer buffer = emptyBuffers.take();
+          buffer.clear();
+          int bytesRead = upstream.read(encryptedData, /* offset= */ 0, BLOCK_SIZE);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            cipher.doFinal(ByteBuffer.allocate(0), buffer);
+            buffer.flip();
+            decryptedBuffers.add(buffer);
+            break;
+          }
+          cipher.update(ByteBuffer.wrap(encryptedData, /* offset= */ 0, bytesRead), buffer);
+          buffer.flip();
+          decryptedBuffers.add(buffer);
+        }
+      } catch (InterruptedException e) {
+        // Released.
+      } catch (GeneralSecurityException e) {
+        error = new IOException(e);
+      } catch (IOException | RuntimeException e) {
+        error = e;
+      } catch (Error e) {
+        error = e;
+        throw e;
+      } finally {
+        // The reader is unblocked even if an Error is thrown. There's always space for
+        // END_OF_INPUT, because at most BLOCK_COUNT decrypted blocks are queued.
+        decryptedBuffers.add(END_OF_INPUT);
+        synchronized (this) {
+          decryptionThread = null;
+          // Clear the interrupted flag if set, so that it doesn't leak into the next pooled task.
+          Thread.interrupted();
+        }
+        finished.open();
+      }
+    }
+  }
 }
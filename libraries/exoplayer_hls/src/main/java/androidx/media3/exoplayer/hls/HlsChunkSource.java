@@ -138,6 +138,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final PlayerId playerId;
   @Nullable private final CmcdConfiguration cmcdConfiguration;
   private final long timestampAdjusterInitializationTimeoutMs;
+  private final int maxPrefetchedSegmentCount;
+  @Nullable private final HlsSegmentPrefetcher segmentPrefetcher;
 
   private boolean isPrimaryTimestampSource;
   private byte[] scratchSpace;
@@ -179,6 +181,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    *     information is available in the multivariant playlist.
    * @param playerId The {@link PlayerId} of the player using this chunk source.
    * @param cmcdConfiguration The {@link CmcdConfiguration} for this chunk source.
+   * @param maxPrefetchedSegmentCount The maximum number of media segments following the segment
+   *     being loaded whose loads are started in parallel, or 0 to load one segment at a time.
+   *     Segments aren't prefetched if a {@link CmcdConfiguration} is set, since the CMCD data of a
+   *     request depends on the state of the player at the time the request is made.
    */
   public HlsChunkSource(
       HlsExtractorFactory extractorFactory,
@@ -191,7 +197,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       long timestampAdjusterInitializationTimeoutMs,
       @Nullable List<Format> muxedCaptionFormats,
       PlayerId playerId,
-      @Nullable CmcdConfiguration cmcdConfiguration) {
+      @Nullable CmcdConfiguration cmcdConfiguration,
+      int maxPrefetchedSegmentCount) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.playlistUrls = playlistUrls;
@@ -201,14 +208,24 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.muxedCaptionFormats = muxedCaptionFormats;
     this.playerId = playerId;
     this.cmcdConfiguration = cmcdConfiguration;
+    this.maxPrefetchedSegmentCount = maxPrefetchedSegmentCount;
     this.lastChunkRequestRealtimeMs = C.TIME_UNSET;
     keyCache = new FullSegmentEncryptionKeyCache(KEY_CACHE_SIZE);
     scratchSpace = Util.EMPTY_BYTE_ARRAY;
     liveEdgeInPeriodTimeUs = C.TIME_UNSET;
-    mediaDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
+    DataSource mediaDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
     if (mediaTransferListener != null) {
       mediaDataSource.addTransferListener(mediaTransferListener);
     }
+    if (maxPrefetchedSegmentCount > 0 && cmcdConfiguration == null) {
+      segmentPrefetcher =
+          new HlsSegmentPrefetcher(
+              dataSourceFactory, mediaTransferListener, maxPrefetchedSegmentCount);
+      mediaDataSource = segmentPrefetcher.createDataSource(mediaDataSource);
+    } else {
+      segmentPrefetcher = null;
+    }
+    this.mediaDataSource = mediaDataSource;
     encryptionDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
     trackGroup = new TrackGroup(playlistFormats);
     // Use only non-trickplay variants for preparation. See [Internal ref: b/161529098].
@@ -249,6 +266,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    */
   public void setTrackSelection(ExoTrackSelection trackSelection) {
     this.trackSelection = trackSelection;
+    if (segmentPrefetcher != null) {
+      segmentPrefetcher.cancelAll();
+    }
   }
 
   /** Returns the current {@link ExoTrackSelection}. */
@@ -259,6 +279,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   /** Resets the source. */
   public void reset() {
     fatalError = null;
+    if (segmentPrefetcher != null) {
+      segmentPrefetcher.cancelAll();
+    }
+  }
+
+  /** Releases the source. */
+  public void release() {
+    if (segmentPrefetcher != null) {
+      segmentPrefetcher.release();
+    }
   }
 
   /**
@@ -580,6 +610,68 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             shouldSpliceIn,
             playerId,
             cmcdDataFactory);
+    if (segmentPrefetcher != null) {
+      prefetchNextSegments(
+          segmentPrefetcher,
+          playlist,
+          segmentBaseHolder.mediaSequence,
+          segmentBaseHolder.partIndex,
+          out.chunk.dataSpec);
+    }
+  }
+
+  /**
+   * Starts prefetching the full segments that follow the segment being loaded, and the part of the
+   * playlist's preload hint, and cancels any other prefetches, such as those of segments of a
+   * previously selected track.
+   */
+  private void prefetchNextSegments(
+      HlsSegmentPrefetcher segmentPrefetcher,
+      HlsMediaPlaylist playlist,
+      long mediaSequence,
+      int partIndex,
+      DataSpec currentDataSpec) {
+    List<DataSpec> nextDataSpecs = new ArrayList<>();
+    int segmentIndexInPlaylist = (int) (mediaSequence - playlist.mediaSequence);
+    if (partIndex == C.INDEX_UNSET && segmentIndexInPlaylist >= 0) {
+      // Parts are published while they're loaded, so only full segments and the preload hint are
+      // prefetched.
+      for (int i = segmentIndexInPlaylist + 1;
+          i < playlist.segments.size() && nextDataSpecs.size() < maxPrefetchedSegmentCount;
+          i++) {
+        Segment segment = playlist.segments.get(i);
+        // Gap segments aren't loaded by HlsMediaChunk, so they aren't prefetched either.
+        if (!segment.hasGapTag) {
+          nextDataSpecs.add(createDataSpec(playlist, segment, /* isPreload= */ false));
+        }
+      }
+    }
+    // Open the request for the preload hint ahead of time, so that the server can respond as soon
+    // as the part becomes available rather than after the previous part has been loaded.
+    if (nextDataSpecs.size() < maxPrefetchedSegmentCount && !playlist.trailingParts.isEmpty()) {
+      HlsMediaPlaylist.Part preloadPart = Iterables.getLast(playlist.trailingParts);
+      long preloadPartMediaSequence = playlist.mediaSequence + playlist.segments.size();
+      int preloadPartIndex = playlist.trailingParts.size() - 1;
+      if (preloadPart.isPreload
+          && (preloadPartMediaSequence > mediaSequence
+              || (preloadPartMediaSequence == mediaSequence
+                  && partIndex != C.INDEX_UNSET
+                  && preloadPartIndex > partIndex))) {
+        nextDataSpecs.add(createDataSpec(playlist, preloadPart, /* isPreload= */ true));
+      }
+    }
+    segmentPrefetcher.prefetch(currentDataSpec, nextDataSpecs);
+  }
+
+  private static DataSpec createDataSpec(
+      HlsMediaPlaylist playlist, HlsMediaPlaylist.SegmentBase segmentBase, boolean isPreload) {
+    // Matches the DataSpec of the HlsMediaChunk that will load the segment.
+    return new DataSpec.Builder()
+        .setUri(UriUtil.resolveToUri(playlist.baseUri, segmentBase.url))
+        .setPosition(segmentBase.byteRangeOffset)
+        .setLength(segmentBase.byteRangeLength)
+        .setFlags(isPreload ? DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED : 0)
+        .build();
   }
 
   private boolean getIsMuxedAudioAndVideo() {
@@ -652,6 +744,29 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         trackSelection.indexOf(trackGroup.indexOf(chunk.trackFormat)), exclusionDurationMs);
   }
 
+  /**
+   * Called when the playlist of a chunk that is being loaded is updated, to start prefetching the
+   * segments and parts that have been added to the playlist.
+   *
+   * @param loadingChunk The {@link HlsMediaChunk} that is being loaded.
+   */
+  public void onPlaylistUpdated(HlsMediaChunk loadingChunk) {
+    if (segmentPrefetcher == null) {
+      return;
+    }
+    @Nullable
+    HlsMediaPlaylist playlist =
+        playlistTracker.getPlaylistSnapshot(loadingChunk.playlistUrl, /* isForPlayback= */ false);
+    if (playlist != null) {
+      prefetchNextSegments(
+          segmentPrefetcher,
+          playlist,
+          loadingChunk.chunkIndex,
+          loadingChunk.partIndex,
+          loadingChunk.dataSpec);
+    }
+  }
+
   /**
    * Called when a playlist load encounters an error.
    *
@@ -754,7 +869,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     if (fatalError != null) {
       return false;
     }
-    return trackSelection.shouldCancelChunkLoad(playbackPositionUs, loadingChunk, queue);
+    boolean shouldCancelLoad =
+        trackSelection.shouldCancelChunkLoad(playbackPositionUs, loadingChunk, queue);
+    if (shouldCancelLoad && segmentPrefetcher != null) {
+      // The prefetched segments follow the canceled chunk, so they're unlikely to be needed.
+      segmentPrefetcher.cancelAll();
+    }
+    return shouldCancelLoad;
   }
 
   // Package methods.
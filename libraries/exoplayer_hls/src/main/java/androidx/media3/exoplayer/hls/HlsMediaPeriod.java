@@ -86,6 +86,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
   private final PlayerId playerId;
   private final HlsSampleStreamWrapper.Callback sampleStreamWrapperCallback;
   private final long timestampAdjusterInitializationTimeoutMs;
+  private final int maxPrefetchedSegmentCount;
 
   @Nullable private MediaPeriod.Callback mediaPeriodCallback;
   private int pendingPrepareCount;
@@ -123,6 +124,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
    * @param timestampAdjusterInitializationTimeoutMs The timeout for the loading thread to wait for
    *     the timestamp adjuster to initialize, in milliseconds. A timeout of zero is interpreted as
    *     an infinite timeout.
+   * @param maxPrefetchedSegmentCount The maximum number of media segments that are loaded ahead of
+   *     time, in parallel with the segment being loaded.
    */
   public HlsMediaPeriod(
       HlsExtractorFactory extractorFactory,
@@ -140,7 +143,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
       @HlsMediaSource.MetadataType int metadataType,
       boolean useSessionKeys,
       PlayerId playerId,
-      long timestampAdjusterInitializationTimeoutMs) {
+      long timestampAdjusterInitializationTimeoutMs,
+      int maxPrefetchedSegmentCount) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.dataSourceFactory = dataSourceFactory;
@@ -157,6 +161,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
     this.useSessionKeys = useSessionKeys;
     this.playerId = playerId;
     this.timestampAdjusterInitializationTimeoutMs = timestampAdjusterInitializationTimeoutMs;
+    this.maxPrefetchedSegmentCount = maxPrefetchedSegmentCount;
     sampleStreamWrapperCallback = new SampleStreamWrapperCallback();
     compositeSequenceableLoader =
         compositeSequenceableLoaderFactory.createCompositeSequenceableLoader();
@@ -791,7 +796,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
             timestampAdjusterInitializationTimeoutMs,
             muxedCaptionFormats,
             playerId,
-            cmcdConfiguration);
+            cmcdConfiguration,
+            maxPrefetchedSegmentCount);
     return new HlsSampleStreamWrapper(
         uid,
         trackType,
@@ -926,7 +932,13 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsPlaylistTracker.Pla
 
     @Override
     public void onPlaylistRefreshRequired(Uri url) {
-      playlistTracker.refreshPlaylist(url);
+      if (maxPrefetchedSegmentCount > 0) {
+        // Loads are started ahead of time when prefetching, so the playlist is requested at the
+        // position where the next load is expected as well.
+        playlistTracker.refreshPlaylistAtRenditionReport(url);
+      } else {
+        playlistTracker.refreshPlaylist(url);
+      }
     }
 
     @Override
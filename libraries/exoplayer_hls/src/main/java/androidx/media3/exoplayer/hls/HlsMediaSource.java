@@ -15,6 +15,7 @@
  */
 package androidx.media3.exoplayer.hls;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static java.lang.annotation.ElementType.TYPE_USE;
 import static java.lang.annotation.RetentionPolicy.SOURCE;
@@ -38,6 +39,7 @@ import androidx.media3.exoplayer.drm.DefaultDrmSessionManagerProvider;
 import androidx.media3.exoplayer.drm.DrmSessionEventListener;
 import androidx.media3.exoplayer.drm.DrmSessionManager;
 import androidx.media3.exoplayer.drm.DrmSessionManagerProvider;
+import androidx.media3.exoplayer.hls.playlist.CachingHlsPlaylistParserFactory;
 import androidx.media3.exoplayer.hls.playlist.DefaultHlsPlaylistParserFactory;
 import androidx.media3.exoplayer.hls.playlist.DefaultHlsPlaylistTracker;
 import androidx.media3.exoplayer.hls.playlist.FilteringHlsPlaylistParserFactory;
@@ -57,6 +59,7 @@ import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.ManifestCache;
 import androidx.media3.extractor.Extractor;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import java.io.IOException;
@@ -116,6 +119,8 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean useSessionKeys;
     private long elapsedRealTimeOffsetMs;
     private long timestampAdjusterInitializationTimeoutMs;
+    private int maxPrefetchedSegmentCount;
+    @Nullable private ManifestCache manifestCache;
 
     /**
      * Creates a new factory for {@link HlsMediaSource}s.
@@ -340,6 +345,46 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the maximum number of media segments that are loaded ahead of time, in parallel with the
+     * segment being loaded. The default value is zero, which means that segments are loaded one at
+     * a time.
+     *
+     * <p>Prefetching segments avoids the gap between the end of one segment request and the start
+     * of the next one, which can improve the throughput on high latency connections. Prefetched
+     * segments are held in memory until they're loaded by the player, and are discarded if the
+     * track selection changes. For low-latency streams, the blocking request for the part of the
+     * {@code EXT-X-PRELOAD-HINT} tag is also made as soon as the hint is seen, while the previous
+     * part is being loaded, and media playlists without a valid snapshot are requested at the
+     * position of the primary playlist's rendition report for them. Segments aren't prefetched if
+     * {@linkplain #setCmcdConfigurationFactory CMCD} is enabled.
+     *
+     * @param maxPrefetchedSegmentCount The maximum number of prefetched segments.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setMaxPrefetchedSegmentCount(int maxPrefetchedSegmentCount) {
+      checkArgument(maxPrefetchedSegmentCount >= 0);
+      this.maxPrefetchedSegmentCount = maxPrefetchedSegmentCount;
+      return this;
+    }
+
+    /**
+     * Sets the {@link ManifestCache} through which playlists are loaded and parsed, so that they
+     * are shared with other players using the same cache. The default is {@code null}.
+     *
+     * <p>See {@link CachingHlsPlaylistParserFactory} for how long playlists are shared.
+     *
+     * @param manifestCache The {@link ManifestCache}, or {@code null} to load and parse playlists
+     *     for each media source.
+     * @return This factory, for convenience.
+     */
+    @CanIgnoreReturnValue
+    public Factory setManifestCache(@Nullable ManifestCache manifestCache) {
+      this.manifestCache = manifestCache;
+      return this;
+    }
+
     /**
      * Sets the offset between {@link SystemClock#elapsedRealtime()} and the time since the Unix
      * epoch. By default, is it set to {@link C#TIME_UNSET}.
@@ -366,6 +411,19 @@ public final class HlsMediaSource extends BaseMediaSource
     public HlsMediaSource createMediaSource(MediaItem mediaItem) {
       checkNotNull(mediaItem.localConfiguration);
       HlsPlaylistParserFactory playlistParserFactory = this.playlistParserFactory;
+      HlsDataSourceFactory playlistDataSourceFactory = hlsDataSourceFactory;
+      @Nullable ManifestCache manifestCache = this.manifestCache;
+      if (manifestCache != null) {
+        playlistParserFactory =
+            new CachingHlsPlaylistParserFactory(playlistParserFactory, manifestCache);
+        playlistDataSourceFactory =
+            dataType -> {
+              DataSource dataSource = hlsDataSourceFactory.createDataSource(dataType);
+              return dataType == C.DATA_TYPE_MANIFEST
+                  ? manifestCache.createDataSource(dataSource)
+                  : dataSource;
+            };
+      }
       List<StreamKey> streamKeys = mediaItem.localConfiguration.streamKeys;
       if (!streamKeys.isEmpty()) {
         playlistParserFactory =
@@ -386,12 +444,13 @@ public final class HlsMediaSource extends BaseMediaSource
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
           playlistTrackerFactory.createTracker(
-              hlsDataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory),
+              playlistDataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory),
           elapsedRealTimeOffsetMs,
           allowChunklessPreparation,
           metadataType,
           useSessionKeys,
-          timestampAdjusterInitializationTimeoutMs);
+          timestampAdjusterInitializationTimeoutMs,
+          maxPrefetchedSegmentCount);
     }
 
     @Override
@@ -412,6 +471,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final HlsPlaylistTracker playlistTracker;
   private final long elapsedRealTimeOffsetMs;
   private final long timestampAdjusterInitializationTimeoutMs;
+  private final int maxPrefetchedSegmentCount;
 
   private MediaItem.LiveConfiguration liveConfiguration;
   @Nullable private TransferListener mediaTransferListener;
@@ -432,7 +492,8 @@ public final class HlsMediaSource extends BaseMediaSource
       boolean allowChunklessPreparation,
       @MetadataType int metadataType,
       boolean useSessionKeys,
-      long timestampAdjusterInitializationTimeoutMs) {
+      long timestampAdjusterInitializationTimeoutMs,
+      int maxPrefetchedSegmentCount) {
     this.mediaItem = mediaItem;
     this.liveConfiguration = mediaItem.liveConfiguration;
     this.dataSourceFactory = dataSourceFactory;
@@ -447,6 +508,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
     this.timestampAdjusterInitializationTimeoutMs = timestampAdjusterInitializationTimeoutMs;
+    this.maxPrefetchedSegmentCount = maxPrefetchedSegmentCount;
   }
 
   @Override
@@ -511,7 +573,8 @@ public final class HlsMediaSource extends BaseMediaSource
         metadataType,
         useSessionKeys,
         getPlayerId(),
-        timestampAdjusterInitializationTimeoutMs);
+        timestampAdjusterInitializationTimeoutMs,
+        maxPrefetchedSegmentCount);
   }
 
   @Override
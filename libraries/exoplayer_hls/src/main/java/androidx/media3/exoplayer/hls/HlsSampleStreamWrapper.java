@@ -534,6 +534,10 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         && !loadingFinished
         && loader.isLoading()) {
       loader.cancelLoading();
+      return;
+    }
+    if (loader.isLoading()) {
+      chunkSource.onPlaylistUpdated(lastMediaChunk);
     }
   }
 
@@ -546,6 +550,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       }
     }
     loader.release(this);
+    chunkSource.release();
     handler.removeCallbacksAndMessages(null);
     released = true;
     hlsSampleStreams.clear();
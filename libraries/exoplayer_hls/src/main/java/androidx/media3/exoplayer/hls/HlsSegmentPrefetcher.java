@@ -0,0 +1,658 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.hls;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the next media segments of an HLS stream into memory ahead of time, while the current
+ * segment is being loaded, so that the requests for the next segments don't have to wait for the
+ * current segment to complete.
+ *
+ * <p>Prefetched segments are read through the {@link DataSource} returned by {@link
+ * #createDataSource(DataSource)}, which reads the data of a segment from memory if it's being
+ * prefetched, blocking until the data has been loaded, and otherwise reads it from the upstream
+ * {@link DataSource}. If a prefetch fails, the remaining data is read from the upstream {@link
+ * DataSource}, so failed prefetches are retried as part of the normal chunk loads.
+ *
+ * <p>The total size of the data held in memory is capped. A prefetch that would exceed the cap is
+ * stopped, and the data that it didn't load is read from the upstream {@link DataSource}.
+ *
+ * <p>Methods of this class may be called from any thread.
+ */
+/* package */ final class HlsSegmentPrefetcher {
+
+  /** The default maximum number of bytes of prefetched data held in memory. */
+  public static final long DEFAULT_MAX_BUFFERED_BYTES = 16 * 1024 * 1024;
+
+  private static final String THREAD_NAME = "ExoPlayer:HlsSegmentPrefetcher";
+  private static final int READ_BUFFER_SIZE = 32 * 1024;
+  private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+  private final HlsDataSourceFactory dataSourceFactory;
+  @Nullable private final TransferListener transferListener;
+  private final int maxPrefetchedSegmentCount;
+  private final BufferAllocator bufferAllocator;
+
+  @GuardedBy("this")
+  private final List<SegmentLoad> loads;
+
+  @GuardedBy("this")
+  private int runningLoadCount;
+
+  @GuardedBy("this")
+  @Nullable
+  private ExecutorService executorService;
+
+  @GuardedBy("this")
+  private boolean released;
+
+  /**
+   * Creates an instance that holds at most {@link #DEFAULT_MAX_BUFFERED_BYTES} of prefetched data
+   * in memory.
+   *
+   * @param dataSourceFactory The {@link HlsDataSourceFactory} from which to create the {@link
+   *     DataSource DataSources} that prefetch the segments.
+   * @param transferListener The transfer listener which should be informed of the prefetch data
+   *     transfers, or null.
+   * @param maxPrefetchedSegmentCount The maximum number of segments that are prefetched at the same
+   *     time.
+   */
+  public HlsSegmentPrefetcher(
+      HlsDataSourceFactory dataSourceFactory,
+      @Nullable TransferListener transferListener,
+      int maxPrefetchedSegmentCount) {
+    this(
+        dataSourceFactory,
+        transferListener,
+        maxPrefetchedSegmentCount,
+        /* maxBufferedBytes= */ DEFAULT_MAX_BUFFERED_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory The {@link HlsDataSourceFactory} from which to create the {@link
+   *     DataSource DataSources} that prefetch the segments.
+   * @param transferListener The transfer listener which should be informed of the prefetch data
+   *     transfers, or null.
+   * @param maxPrefetchedSegmentCount The maximum number of segments that are prefetched at the same
+   *     time.
+   * @param maxBufferedBytes The maximum number of bytes of prefetched data held in memory, across
+   *     all prefetches.
+   */
+  public HlsSegmentPrefetcher(
+      HlsDataSourceFactory dataSourceFactory,
+      @Nullable TransferListener transferListener,
+      int maxPrefetchedSegmentCount,
+      long maxBufferedBytes) {
+    checkArgument(maxPrefetchedSegmentCount > 0);
+    this.dataSourceFactory = dataSourceFactory;
+    this.transferListener = transferListener;
+    this.maxPrefetchedSegmentCount = maxPrefetchedSegmentCount;
+    bufferAllocator = new BufferAllocator(maxBufferedBytes);
+    loads = new ArrayList<>();
+  }
+
+  /**
+   * Returns a {@link DataSource} that reads the segments prefetched by this instance from memory,
+   * and everything else from {@code upstream}.
+   *
+   * @param upstream The {@link DataSource} from which data that isn't prefetched is read.
+   */
+  public DataSource createDataSource(DataSource upstream) {
+    return new PrefetchingDataSource(upstream);
+  }
+
+  /**
+   * Updates the segments that are prefetched.
+   *
+   * <p>Prefetches that don't contain any of the passed segments are canceled, unless they contain
+   * the segment that is about to be read through a {@link DataSource} returned by {@link
+   * #createDataSource(DataSource)}. Prefetches of the passed segments are started if they haven't
+   * been started yet, up to the maximum number of prefetched segments.
+   *
+   * @param currentDataSpec The {@link DataSpec} of the segment that is about to be loaded. Its
+   *     prefetch, if any, isn't canceled.
+   * @param nextDataSpecs The {@link DataSpec DataSpecs} of the segments to prefetch, in the order
+   *     in which they will be loaded.
+   */
+  public synchronized void prefetch(DataSpec currentDataSpec, List<DataSpec> nextDataSpecs) {
+    if (released) {
+      return;
+    }
+    for (int i = loads.size() - 1; i >= 0; i--) {
+      SegmentLoad load = loads.get(i);
+      if (!load.contains(currentDataSpec) && !containsAny(load, nextDataSpecs)) {
+        load.release();
+        loads.remove(i);
+      }
+    }
+    // Canceled and claimed loads keep their thread until they finish, so they're counted as well.
+    // Otherwise new loads would wait in the executor's queue behind loads blocked in a read.
+    for (int i = 0;
+        i < nextDataSpecs.size()
+            && loads.size() < maxPrefetchedSegmentCount
+            && runningLoadCount < maxPrefetchedSegmentCount;
+        i++) {
+      DataSpec dataSpec = nextDataSpecs.get(i);
+      if (findLoad(dataSpec) == null) {
+        DataSource dataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
+        if (transferListener != null) {
+          dataSource.addTransferListener(transferListener);
+        }
+        SegmentLoad load =
+            new SegmentLoad(dataSpec, dataSource, bufferAllocator, this::onLoadFinished);
+        loads.add(load);
+        runningLoadCount++;
+        getExecutorService().execute(load);
+      }
+    }
+  }
+
+  /** Cancels all prefetches that haven't been handed to a {@link DataSource} yet. */
+  public synchronized void cancelAll() {
+    for (int i = 0; i < loads.size(); i++) {
+      loads.get(i).release();
+    }
+    loads.clear();
+  }
+
+  /** Cancels all prefetches and releases the instance. */
+  public synchronized void release() {
+    cancelAll();
+    released = true;
+    if (executorService != null) {
+      executorService.shutdown();
+      executorService = null;
+    }
+  }
+
+  private synchronized void onLoadFinished() {
+    runningLoadCount--;
+  }
+
+  /**
+   * Removes and returns the prefetch from which the data of {@code dataSpec} can be read, or null
+   * if there's no such prefetch.
+   */
+  @Nullable
+  private synchronized SegmentLoad claimLoad(DataSpec dataSpec) {
+    @Nullable SegmentLoad load = findLoad(dataSpec);
+    if (load != null) {
+      loads.remove(load);
+    }
+    return load;
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private SegmentLoad findLoad(DataSpec dataSpec) {
+    for (int i = 0; i < loads.size(); i++) {
+      SegmentLoad load = loads.get(i);
+      if (load.contains(dataSpec)) {
+        return load;
+      }
+    }
+    return null;
+  }
+
+  private static boolean containsAny(SegmentLoad load, List<DataSpec> dataSpecs) {
+    for (int i = 0; i < dataSpecs.size(); i++) {
+      if (load.contains(dataSpecs.get(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @GuardedBy("this")
+  private ExecutorService getExecutorService() {
+    if (executorService == null) {
+      executorService =
+          Executors.newFixedThreadPool(
+              maxPrefetchedSegmentCount, runnable -> new Thread(runnable, THREAD_NAME));
+    }
+    return executorService;
+  }
+
+  /** Keeps track of the memory held by all prefetches, to cap it. */
+  private static final class BufferAllocator {
+
+    private final long maxBytes;
+    private final AtomicLong allocatedBytes;
+
+    public BufferAllocator(long maxBytes) {
+      this.maxBytes = maxBytes;
+      allocatedBytes = new AtomicLong();
+    }
+
+    /** Returns whether {@code bytes} more bytes can be allocated, and if so counts them. */
+    public boolean tryAllocate(long bytes) {
+      while (true) {
+        long currentAllocatedBytes = allocatedBytes.get();
+        if (currentAllocatedBytes + bytes > maxBytes) {
+          return false;
+        }
+        if (allocatedBytes.compareAndSet(currentAllocatedBytes, currentAllocatedBytes + bytes)) {
+          return true;
+        }
+      }
+    }
+
+    /** Releases bytes counted by {@link #tryAllocate(long)}. */
+    public void free(long bytes) {
+      allocatedBytes.addAndGet(-bytes);
+    }
+  }
+
+  /** Loads a segment into memory. */
+  private static final class SegmentLoad implements Runnable {
+
+    public final DataSpec dataSpec;
+
+    private final DataSource dataSource;
+    private final BufferAllocator bufferAllocator;
+    private final Runnable finishedCallback;
+
+    @GuardedBy("this")
+    private byte[] data;
+
+    // The bytes counted by the buffer allocator for this load. This includes the size of an array
+    // whose allocation failed, so that the bytes are freed when the load is released.
+    @GuardedBy("this")
+    private long allocatedBytes;
+
+    @GuardedBy("this")
+    private boolean released;
+
+    @GuardedBy("this")
+    private int length;
+
+    @GuardedBy("this")
+    private boolean opened;
+
+    @GuardedBy("this")
+    private long resolvedLength;
+
+    @GuardedBy("this")
+    @Nullable
+    private Uri uri;
+
+    @GuardedBy("this")
+    private Map<String, List<String>> responseHeaders;
+
+    @GuardedBy("this")
+    private boolean finished;
+
+    @GuardedBy("this")
+    private boolean failed;
+
+    @GuardedBy("this")
+    private boolean canceled;
+
+    @GuardedBy("this")
+    @Nullable
+    private Thread loadThread;
+
+    public SegmentLoad(
+        DataSpec dataSpec,
+        DataSource dataSource,
+        BufferAllocator bufferAllocator,
+        Runnable finishedCallback) {
+      this.dataSpec = dataSpec;
+      this.dataSource = dataSource;
+      this.bufferAllocator = bufferAllocator;
+      this.finishedCallback = finishedCallback;
+      data = new byte[0];
+      resolvedLength = C.LENGTH_UNSET;
+      responseHeaders = Collections.emptyMap();
+    }
+
+    /** Returns whether the data of {@code dataSpec} is a range of the data of this load. */
+    public boolean contains(DataSpec dataSpec) {
+      if (!this.dataSpec.uri.equals(dataSpec.uri)
+          || this.dataSpec.position > dataSpec.position
+          || !this.dataSpec.httpRequestHeaders.equals(dataSpec.httpRequestHeaders)) {
+        return false;
+      }
+      if (this.dataSpec.length == C.LENGTH_UNSET) {
+        return true;
+      }
+      return dataSpec.length != C.LENGTH_UNSET
+          && dataSpec.position + dataSpec.length
+              <= this.dataSpec.position + this.dataSpec.length;
+    }
+
+    /**
+     * Cancels the load and frees its data. Must not be called while the data may still be read.
+     *
+     * <p>The loading thread is interrupted, to abort a read that's blocked in the {@link
+     * DataSource}.
+     */
+    public synchronized void release() {
+      canceled = true;
+      if (loadThread != null) {
+        loadThread.interrupt();
+      }
+      if (!released) {
+        released = true;
+        bufferAllocator.free(allocatedBytes);
+        allocatedBytes = 0;
+        data = new byte[0];
+        length = 0;
+      }
+    }
+
+    /**
+     * Blocks until the load has opened its {@link DataSource}, or failed to do so.
+     *
+     * @return Whether the {@link DataSource} was opened.
+     * @throws InterruptedIOException If the thread was interrupted while waiting.
+     */
+    public synchronized boolean blockUntilOpened() throws InterruptedIOException {
+      while (!opened && !finished) {
+        waitForUpdate();
+      }
+      return opened;
+    }
+
+    /**
+     * Returns the length of the data from {@code position} to the end of the loaded data, or
+     * {@link C#LENGTH_UNSET} if unknown.
+     */
+    public synchronized long getLength(long position) {
+      return resolvedLength == C.LENGTH_UNSET ? C.LENGTH_UNSET : resolvedLength - position;
+    }
+
+    @Nullable
+    public synchronized Uri getUri() {
+      return uri;
+    }
+
+    public synchronized Map<String, List<String>> getResponseHeaders() {
+      return responseHeaders;
+    }
+
+    /**
+     * Reads loaded data, blocking until data at {@code position} has been loaded or the load has
+     * finished.
+     *
+     * @param position The position of the data to read, relative to the start of the load.
+     * @param buffer The buffer into which the data should be read.
+     * @param offset The start offset in {@code buffer}.
+     * @param readLength The maximum number of bytes to read.
+     * @return The number of bytes read, {@link C#RESULT_END_OF_INPUT} if the load has loaded all of
+     *     its data, or {@link C#LENGTH_UNSET} if the load failed or was canceled before loading the
+     *     data at {@code position}.
+     * @throws InterruptedIOException If the thread was interrupted while waiting.
+     */
+    public synchronized int read(long position, byte[] buffer, int offset, int readLength)
+        throws InterruptedIOException {
+      while (length <= position && !finished) {
+        waitForUpdate();
+      }
+      if (length > position) {
+        int bytesToRead = (int) min(readLength, length - position);
+        System.arraycopy(data, (int) position, buffer, offset, bytesToRead);
+        return bytesToRead;
+      }
+      return failed || canceled ? C.LENGTH_UNSET : C.RESULT_END_OF_INPUT;
+    }
+
+    @Override
+    public void run() {
+      // Readers are released and the load is counted as finished even if an Error is thrown, so
+      // that they don't block forever.
+      boolean failed = true;
+      try {
+        boolean canceled;
+        synchronized (this) {
+          canceled = this.canceled;
+          if (!canceled) {
+            loadThread = Thread.currentThread();
+          }
+        }
+        if (canceled) {
+          failed = false;
+        } else {
+          try {
+            failed = !load();
+          } finally {
+            DataSourceUtil.closeQuietly(dataSource);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        // The data that wasn't loaded is read from upstream.
+      } finally {
+        // The load stops counting towards the maximum number of prefetched segments before readers
+        // are notified, so that a reader that falls back to upstream can start new prefetches.
+        finishedCallback.run();
+        synchronized (this) {
+          loadThread = null;
+          // Clear the interrupted flag if set, to avoid it leaking into a subsequent load.
+          Thread.interrupted();
+          this.failed = failed;
+          finished = true;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Loads the data, and returns whether all of it was loaded or the load was canceled. Returns
+     * false if loading the data would exceed the cap on the memory held by prefetches.
+     */
+    private boolean load() throws IOException {
+      long resolvedLength = dataSource.open(dataSpec);
+      synchronized (this) {
+        opened = true;
+        this.resolvedLength = resolvedLength;
+        uri = dataSource.getUri();
+        responseHeaders = dataSource.getResponseHeaders();
+        // The length reported by the server is only used to size the buffer if it's within the cap.
+        if (resolvedLength != C.LENGTH_UNSET
+            && resolvedLength <= Integer.MAX_VALUE
+            && tryAllocate(resolvedLength)) {
+          data = new byte[(int) resolvedLength];
+        }
+        notifyAll();
+      }
+      byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+      while (!isCanceled()) {
+        int bytesRead = dataSource.read(readBuffer, /* offset= */ 0, readBuffer.length);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          break;
+        }
+        if (!append(readBuffer, bytesRead)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private synchronized boolean isCanceled() {
+      return canceled;
+    }
+
+    /** Appends loaded data, and returns whether it could be held in memory. */
+    private synchronized boolean append(byte[] buffer, int bytesRead) {
+      if (released) {
+        return false;
+      }
+      if (length + bytesRead > data.length) {
+        int newLength = max(length + bytesRead, max(INITIAL_BUFFER_SIZE, data.length * 2));
+        if (!tryAllocate(newLength)) {
+          return false;
+        }
+        byte[] oldData = data;
+        data = Arrays.copyOf(oldData, newLength);
+        bufferAllocator.free(oldData.length);
+        allocatedBytes -= oldData.length;
+      }
+      System.arraycopy(buffer, /* srcPos= */ 0, data, length, bytesRead);
+      length += bytesRead;
+      notifyAll();
+      return true;
+    }
+
+    @GuardedBy("this")
+    private boolean tryAllocate(long bytes) {
+      if (released || !bufferAllocator.tryAllocate(bytes)) {
+        return false;
+      }
+      allocatedBytes += bytes;
+      return true;
+    }
+
+    @GuardedBy("this")
+    private void waitForUpdate() throws InterruptedIOException {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  /**
+   * A {@link DataSource} that reads prefetched segments from memory, and everything else from an
+   * upstream {@link DataSource}.
+   */
+  private final class PrefetchingDataSource implements DataSource {
+
+    private final DataSource upstream;
+
+    @Nullable private DataSpec dataSpec;
+    @Nullable private SegmentLoad load;
+    private long loadPosition;
+    private long bytesRead;
+    private long bytesRemaining;
+    private boolean readingFromUpstream;
+
+    public PrefetchingDataSource(DataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      this.dataSpec = dataSpec;
+      bytesRead = 0;
+      @Nullable SegmentLoad load = claimLoad(dataSpec);
+      if (load != null && !load.blockUntilOpened()) {
+        load.release();
+        load = null;
+      }
+      if (load == null) {
+        readingFromUpstream = true;
+        return upstream.open(dataSpec);
+      }
+      this.load = load;
+      loadPosition = dataSpec.position - load.dataSpec.position;
+      bytesRemaining =
+          dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : load.getLength(loadPosition);
+      return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (readingFromUpstream) {
+        return upstream.read(buffer, offset, length);
+      }
+      if (length == 0) {
+        return 0;
+      } else if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int readLength =
+          bytesRemaining == C.LENGTH_UNSET ? length : (int) min(length, bytesRemaining);
+      int bytesRead = checkNotNull(load).read(loadPosition, buffer, offset, readLength);
+      if (bytesRead == C.LENGTH_UNSET) {
+        // The prefetch failed, so read the remaining data from upstream.
+        checkNotNull(load).release();
+        load = null;
+        readingFromUpstream = true;
+        upstream.open(checkNotNull(dataSpec).subrange(this.bytesRead));
+        return upstream.read(buffer, offset, length);
+      } else if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      loadPosition += bytesRead;
+      this.bytesRead += bytesRead;
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        bytesRemaining -= bytesRead;
+      }
+      return bytesRead;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      if (load != null) {
+        @Nullable Uri uri = load.getUri();
+        return uri != null ? uri : load.dataSpec.uri;
+      }
+      return upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return load != null ? load.getResponseHeaders() : upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataSpec = null;
+      if (load != null) {
+        // Stop the prefetch in case the data wasn't read to the end.
+        load.release();
+        load = null;
+      }
+      if (readingFromUpstream) {
+        readingFromUpstream = false;
+        upstream.close();
+      }
+    }
+  }
+}
@@ -31,8 +31,10 @@ import androidx.media3.exoplayer.offline.SegmentDownloader;
 import androidx.media3.exoplayer.upstream.ParsingLoadable.Parser;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 /**
@@ -144,17 +146,30 @@ public final class HlsDownloader extends SegmentDownloader<HlsPlaylist> {
   }
 
   @Override
-  protected List<Segment> getSegments(DataSource dataSource, HlsPlaylist manifest, boolean removing)
-      throws IOException, InterruptedException {
-    ArrayList<DataSpec> mediaPlaylistDataSpecs = new ArrayList<>();
-    if (manifest instanceof HlsMultivariantPlaylist) {
-      HlsMultivariantPlaylist multivariantPlaylist = (HlsMultivariantPlaylist) manifest;
-      addMediaPlaylistDataSpecs(multivariantPlaylist.mediaPlaylistUrls, mediaPlaylistDataSpecs);
-    } else {
-      mediaPlaylistDataSpecs.add(
-          SegmentDownloader.getCompressibleDataSpec(Uri.parse(manifest.baseUri)));
+  protected List<SegmentListLoader> getSegmentListLoaders(HlsPlaylist manifest) {
+    ArrayList<DataSpec> mediaPlaylistDataSpecs = getMediaPlaylistDataSpecs(manifest);
+    // Each encryption key is listed once, by the first media playlist referencing it.
+    Set<Uri> seenEncryptionKeyUris = Collections.synchronizedSet(new HashSet<>());
+    ArrayList<SegmentListLoader> segmentListLoaders = new ArrayList<>();
+    for (int i = 0; i < mediaPlaylistDataSpecs.size(); i++) {
+      DataSpec mediaPlaylistDataSpec = mediaPlaylistDataSpecs.get(i);
+      segmentListLoaders.add(
+          dataSource -> {
+            HlsMediaPlaylist mediaPlaylist =
+                (HlsMediaPlaylist) loadManifest(dataSource, mediaPlaylistDataSpec);
+            ArrayList<Segment> segments = new ArrayList<>();
+            segments.add(new Segment(/* startTimeUs= */ 0, mediaPlaylistDataSpec));
+            addSegments(mediaPlaylist, seenEncryptionKeyUris, segments);
+            return segments;
+          });
     }
+    return segmentListLoaders;
+  }
 
+  @Override
+  protected List<Segment> getSegments(DataSource dataSource, HlsPlaylist manifest, boolean removing)
+      throws IOException, InterruptedException {
+    ArrayList<DataSpec> mediaPlaylistDataSpecs = getMediaPlaylistDataSpecs(manifest);
     ArrayList<Segment> segments = new ArrayList<>();
     HashSet<Uri> seenEncryptionKeyUris = new HashSet<>();
     for (DataSpec mediaPlaylistDataSpec : mediaPlaylistDataSpecs) {
@@ -169,31 +184,48 @@ public final class HlsDownloader extends SegmentDownloader<HlsPlaylist> {
         // Generating an incomplete segment list is allowed. Advance to the next media playlist.
         continue;
       }
-      @Nullable HlsMediaPlaylist.Segment lastInitSegment = null;
-      List<HlsMediaPlaylist.Segment> hlsSegments = mediaPlaylist.segments;
-      for (int i = 0; i < hlsSegments.size(); i++) {
-        HlsMediaPlaylist.Segment segment = hlsSegments.get(i);
-        HlsMediaPlaylist.Segment initSegment = segment.initializationSegment;
-        if (initSegment != null && initSegment != lastInitSegment) {
-          lastInitSegment = initSegment;
-          addSegment(mediaPlaylist, initSegment, seenEncryptionKeyUris, segments);
-        }
-        addSegment(mediaPlaylist, segment, seenEncryptionKeyUris, segments);
-      }
+      addSegments(mediaPlaylist, seenEncryptionKeyUris, segments);
     }
     return segments;
   }
 
+  private ArrayList<DataSpec> getMediaPlaylistDataSpecs(HlsPlaylist manifest) {
+    ArrayList<DataSpec> mediaPlaylistDataSpecs = new ArrayList<>();
+    if (manifest instanceof HlsMultivariantPlaylist) {
+      HlsMultivariantPlaylist multivariantPlaylist = (HlsMultivariantPlaylist) manifest;
+      addMediaPlaylistDataSpecs(multivariantPlaylist.mediaPlaylistUrls, mediaPlaylistDataSpecs);
+    } else {
+      mediaPlaylistDataSpecs.add(
+          SegmentDownloader.getCompressibleDataSpec(Uri.parse(manifest.baseUri)));
+    }
+    return mediaPlaylistDataSpecs;
+  }
+
   private void addMediaPlaylistDataSpecs(List<Uri> mediaPlaylistUrls, List<DataSpec> out) {
     for (int i = 0; i < mediaPlaylistUrls.size(); i++) {
       out.add(SegmentDownloader.getCompressibleDataSpec(mediaPlaylistUrls.get(i)));
     }
   }
 
+  private void addSegments(
+      HlsMediaPlaylist mediaPlaylist, Set<Uri> seenEncryptionKeyUris, ArrayList<Segment> out) {
+    @Nullable HlsMediaPlaylist.Segment lastInitSegment = null;
+    List<HlsMediaPlaylist.Segment> hlsSegments = mediaPlaylist.segments;
+    for (int i = 0; i < hlsSegments.size(); i++) {
+      HlsMediaPlaylist.Segment segment = hlsSegments.get(i);
+      HlsMediaPlaylist.Segment initSegment = segment.initializationSegment;
+      if (initSegment != null && initSegment != lastInitSegment) {
+        lastInitSegment = initSegment;
+        addSegment(mediaPlaylist, initSegment, seenEncryptionKeyUris, out);
+      }
+      addSegment(mediaPlaylist, segment, seenEncryptionKeyUris, out);
+    }
+  }
+
   private void addSegment(
       HlsMediaPlaylist mediaPlaylist,
       HlsMediaPlaylist.Segment segment,
-      HashSet<Uri> seenEncryptionKeyUris,
+      Set<Uri> seenEncryptionKeyUris,
       ArrayList<Segment> out) {
     String baseUri = mediaPlaylist.baseUri;
     long startTimeUs = mediaPlaylist.startTimeUs + segment.relativeStartTimeUs;
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.hls.playlist;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.upstream.ManifestCache;
+import androidx.media3.exoplayer.upstream.ParsingLoadable;
+import java.util.Arrays;
+
+/**
+ * A {@link HlsPlaylistParserFactory} whose parsers share the playlists parsed from responses read
+ * through a {@link ManifestCache}.
+ *
+ * <p>Responses of media playlists without an end tag are shared for at most half their part target
+ * duration, or half their target duration if they don't have parts. Delta updates aren't shared,
+ * because they're parsed based on the previous playlist of each player.
+ */
+@UnstableApi
+public final class CachingHlsPlaylistParserFactory implements HlsPlaylistParserFactory {
+
+  private static final String SKIP_QUERY_PARAMETER = "_HLS_skip";
+
+  private final HlsPlaylistParserFactory hlsPlaylistParserFactory;
+  private final ManifestCache manifestCache;
+
+  /**
+   * @param hlsPlaylistParserFactory A factory for the parsers of playlists that aren't in the
+   *     cache.
+   * @param manifestCache The {@link ManifestCache}.
+   */
+  public CachingHlsPlaylistParserFactory(
+      HlsPlaylistParserFactory hlsPlaylistParserFactory, ManifestCache manifestCache) {
+    this.hlsPlaylistParserFactory = hlsPlaylistParserFactory;
+    this.manifestCache = manifestCache;
+  }
+
+  @Override
+  public ParsingLoadable.Parser<HlsPlaylist> createPlaylistParser() {
+    return manifestCache.createParser(
+        hlsPlaylistParserFactory.createPlaylistParser(),
+        /* parserKey= */ null,
+        CachingHlsPlaylistParserFactory::getTtlMs);
+  }
+
+  @Override
+  public ParsingLoadable.Parser<HlsPlaylist> createPlaylistParser(
+      HlsMultivariantPlaylist multivariantPlaylist,
+      @Nullable HlsMediaPlaylist previousMediaPlaylist) {
+    ParsingLoadable.Parser<HlsPlaylist> parser =
+        hlsPlaylistParserFactory.createPlaylistParser(multivariantPlaylist, previousMediaPlaylist);
+    // Media playlists inherit these attributes from the multivariant playlist.
+    Object parserKey =
+        Arrays.asList(
+            multivariantPlaylist.hasIndependentSegments, multivariantPlaylist.variableDefinitions);
+    ParsingLoadable.Parser<HlsPlaylist> cachingParser =
+        manifestCache.createParser(parser, parserKey, CachingHlsPlaylistParserFactory::getTtlMs);
+    return (uri, inputStream) ->
+        uri.isHierarchical() && uri.getQueryParameter(SKIP_QUERY_PARAMETER) != null
+            ? parser.parse(uri, inputStream)
+            : cachingParser.parse(uri, inputStream);
+  }
+
+  private static long getTtlMs(HlsPlaylist playlist) {
+    if (!(playlist instanceof HlsMediaPlaylist) || ((HlsMediaPlaylist) playlist).hasEndTag) {
+      return C.TIME_UNSET;
+    }
+    HlsMediaPlaylist mediaPlaylist = (HlsMediaPlaylist) playlist;
+    long targetDurationUs =
+        mediaPlaylist.partTargetDurationUs != C.TIME_UNSET
+            ? mediaPlaylist.partTargetDurationUs
+            : mediaPlaylist.targetDurationUs;
+    // Players reload a playlist that hasn't changed after half the target duration.
+    return Util.usToMs(targetDurationUs / 2);
+  }
+}
@@ -23,6 +23,7 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.SystemClock;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.media3.common.C;
 import androidx.media3.common.ParserException;
 import androidx.media3.common.util.Assertions;
@@ -228,6 +229,18 @@ public final class DefaultHlsPlaylistTracker
     playlistBundles.get(url).loadPlaylist();
   }
 
+  @Override
+  public void refreshPlaylistAtRenditionReport(Uri url) {
+    MediaPlaylistBundle bundle = playlistBundles.get(url);
+    if (bundle.playlistSnapshot == null || !bundle.isSnapshotValid()) {
+      // Request the playlist at the position of the rendition report of the primary playlist, if
+      // any, rather than a possibly stale or uncached plain playlist.
+      bundle.loadPlaylistInternal(getRequestUriFromRenditionReport(url));
+    } else {
+      bundle.loadPlaylist();
+    }
+  }
+
   @Override
   public boolean isLive() {
     return isLive;
@@ -340,7 +353,7 @@ public final class DefaultHlsPlaylistTracker
       MediaPlaylistBundle bundle = checkNotNull(playlistBundles.get(variants.get(i).url));
       if (currentTimeMs > bundle.excludeUntilMs) {
         primaryMediaPlaylistUrl = bundle.playlistUrl;
-        bundle.loadPlaylistInternal(getRequestUriForPrimaryChange(primaryMediaPlaylistUrl));
+        bundle.loadPlaylistInternal(getRequestUriFromRenditionReport(primaryMediaPlaylistUrl));
         return true;
       }
     }
@@ -364,18 +377,18 @@ public final class DefaultHlsPlaylistTracker
     } else {
       // The snapshot for the new primary media playlist URL may be stale. Defer updating the
       // primary snapshot until after we've refreshed it.
-      newPrimaryBundle.loadPlaylistInternal(getRequestUriForPrimaryChange(url));
+      newPrimaryBundle.loadPlaylistInternal(getRequestUriFromRenditionReport(url));
     }
   }
 
-  private Uri getRequestUriForPrimaryChange(Uri newPrimaryPlaylistUri) {
+  private Uri getRequestUriFromRenditionReport(Uri playlistUri) {
     if (primaryMediaPlaylistSnapshot != null
         && primaryMediaPlaylistSnapshot.serverControl.canBlockReload) {
       @Nullable
       RenditionReport renditionReport =
-          primaryMediaPlaylistSnapshot.renditionReports.get(newPrimaryPlaylistUri);
+          primaryMediaPlaylistSnapshot.renditionReports.get(playlistUri);
       if (renditionReport != null) {
-        Uri.Builder uriBuilder = newPrimaryPlaylistUri.buildUpon();
+        Uri.Builder uriBuilder = playlistUri.buildUpon();
         uriBuilder.appendQueryParameter(
             MediaPlaylistBundle.BLOCK_MSN_PARAM, String.valueOf(renditionReport.lastMediaSequence));
         if (renditionReport.lastPartIndex != C.INDEX_UNSET) {
@@ -385,7 +398,7 @@ public final class DefaultHlsPlaylistTracker
         return uriBuilder.build();
       }
     }
-    return newPrimaryPlaylistUri;
+    return playlistUri;
   }
 
   /**
@@ -441,7 +454,15 @@ public final class DefaultHlsPlaylistTracker
     return anyExclusionFailed;
   }
 
-  private HlsMediaPlaylist getLatestPlaylistSnapshot(
+  /**
+   * Returns the snapshot of a media playlist after loading a refresh of it.
+   *
+   * @param oldPlaylist The current snapshot of the playlist, or null if it hasn't been loaded yet.
+   * @param loadedPlaylist The playlist that was loaded.
+   * @return The new snapshot of the playlist.
+   */
+  @VisibleForTesting
+  /* package */ HlsMediaPlaylist getLatestPlaylistSnapshot(
       @Nullable HlsMediaPlaylist oldPlaylist, HlsMediaPlaylist loadedPlaylist) {
     if (!loadedPlaylist.isNewerThan(oldPlaylist)) {
       if (loadedPlaylist.hasEndTag) {
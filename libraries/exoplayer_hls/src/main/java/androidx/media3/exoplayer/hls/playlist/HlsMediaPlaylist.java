@@ -25,6 +25,7 @@ import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.DrmInitData;
 import androidx.media3.common.StreamKey;
+import androidx.media3.common.util.NullableType;
 import androidx.media3.common.util.UnstableApi;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -34,6 +35,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -497,6 +499,13 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
   /** The attributes of the #EXT-X-SERVER-CONTROL header. */
   public final ServerControl serverControl;
 
+  /**
+   * The #EXTINF line from which each segment was parsed, or null if unknown. Used by {@link
+   * HlsPlaylistParser} to reuse the segments of this playlist when parsing the next one. Empty if
+   * the playlist wasn't parsed by {@link HlsPlaylistParser}.
+   */
+  /* package */ final List<@NullableType String> mediaDurationLines;
+
   /**
    * Constructs an instance.
    *
@@ -542,6 +551,52 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
       List<Part> trailingParts,
       ServerControl serverControl,
       Map<Uri, RenditionReport> renditionReports) {
+    this(
+        playlistType,
+        baseUri,
+        tags,
+        startOffsetUs,
+        preciseStart,
+        startTimeUs,
+        hasDiscontinuitySequence,
+        discontinuitySequence,
+        mediaSequence,
+        version,
+        targetDurationUs,
+        partTargetDurationUs,
+        hasIndependentSegments,
+        hasEndTag,
+        hasProgramDateTime,
+        protectionSchemes,
+        segments,
+        trailingParts,
+        serverControl,
+        renditionReports,
+        /* mediaDurationLines= */ Collections.emptyList());
+  }
+
+  /* package */ HlsMediaPlaylist(
+      @PlaylistType int playlistType,
+      String baseUri,
+      List<String> tags,
+      long startOffsetUs,
+      boolean preciseStart,
+      long startTimeUs,
+      boolean hasDiscontinuitySequence,
+      int discontinuitySequence,
+      long mediaSequence,
+      int version,
+      long targetDurationUs,
+      long partTargetDurationUs,
+      boolean hasIndependentSegments,
+      boolean hasEndTag,
+      boolean hasProgramDateTime,
+      @Nullable DrmInitData protectionSchemes,
+      List<Segment> segments,
+      List<Part> trailingParts,
+      ServerControl serverControl,
+      Map<Uri, RenditionReport> renditionReports,
+      List<@NullableType String> mediaDurationLines) {
     super(baseUri, tags, hasIndependentSegments);
     this.playlistType = playlistType;
     this.startTimeUs = startTimeUs;
@@ -578,6 +633,7 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
                 : max(0, durationUs + startOffsetUs);
     this.hasPositiveStartOffset = startOffsetUs >= 0;
     this.serverControl = serverControl;
+    this.mediaDurationLines = mediaDurationLines;
   }
 
   @Override
@@ -644,7 +700,8 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         segments,
         trailingParts,
         serverControl,
-        renditionReports);
+        renditionReports,
+        mediaDurationLines);
   }
 
   /**
@@ -675,6 +732,7 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         segments,
         trailingParts,
         serverControl,
-        renditionReports);
+        renditionReports,
+        mediaDurationLines);
   }
 }
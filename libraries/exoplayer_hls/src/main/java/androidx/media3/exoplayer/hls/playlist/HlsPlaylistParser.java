@@ -32,6 +32,7 @@ import androidx.media3.common.MimeTypes;
 import androidx.media3.common.ParserException;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.Log;
+import androidx.media3.common.util.NullableType;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.UriUtil;
 import androidx.media3.common.util.Util;
@@ -652,9 +653,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     @Nullable Part preloadPart = null;
     List<RenditionReport> renditionReports = new ArrayList<>();
     List<String> tags = new ArrayList<>();
+    List<@NullableType String> mediaDurationLines = new ArrayList<>();
 
-    long segmentDurationUs = 0;
-    String segmentTitle = "";
+    @Nullable String mediaDurationLine = null;
     boolean hasDiscontinuitySequence = false;
     int playlistDiscontinuitySequence = 0;
     int relativeDiscontinuitySequence = 0;
@@ -764,8 +765,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
               parseStringAttr(line, REGEX_VALUE, variableDefinitions));
         }
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs = parseTimeSecondsToUs(line, REGEX_MEDIA_DURATION);
-        segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        // The line is parsed once the segment URI is reached, unless the segment is reused from the
+        // previous playlist.
+        mediaDurationLine = line;
       } else if (line.startsWith(TAG_SKIP)) {
         int skippedSegmentCount = parseIntAttr(line, REGEX_SKIPPED_SEGMENTS);
         checkState(previousMediaPlaylist != null && segments.isEmpty());
@@ -788,6 +790,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
             segment = segment.copyWith(segmentStartTimeUs, newRelativeDiscontinuitySequence);
           }
           segments.add(segment);
+          mediaDurationLines.add(
+              i < previousMediaPlaylist.mediaDurationLines.size()
+                  ? previousMediaPlaylist.mediaDurationLines.get(i)
+                  : null);
           segmentStartTimeUs += segment.durationUs;
           partStartTimeUs = segmentStartTimeUs;
           if (segment.byteRangeLength != C.LENGTH_UNSET) {
@@ -992,25 +998,64 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
 
-        segments.add(
-            new Segment(
-                segmentUri,
-                initializationSegment != null ? initializationSegment : inferredInitSegment,
-                segmentTitle,
-                segmentDurationUs,
-                relativeDiscontinuitySequence,
-                segmentStartTimeUs,
-                cachedDrmInitData,
-                fullSegmentEncryptionKeyUri,
-                segmentEncryptionIV,
-                segmentByteRangeOffset,
-                segmentByteRangeLength,
-                hasGapTag,
-                trailingParts));
-        segmentStartTimeUs += segmentDurationUs;
+        @Nullable Segment segmentInitializationSegment =
+            initializationSegment != null ? initializationSegment : inferredInitSegment;
+        @Nullable
+        Segment reusableSegment =
+            variableDefinitions.isEmpty()
+                ? getReusableSegment(
+                    previousMediaPlaylist,
+                    /* mediaSequence= */ segmentMediaSequence - 1,
+                    mediaDurationLine,
+                    segmentUri,
+                    segmentInitializationSegment,
+                    cachedDrmInitData,
+                    fullSegmentEncryptionKeyUri,
+                    segmentEncryptionIV,
+                    segmentByteRangeLength,
+                    hasGapTag,
+                    trailingParts)
+                : null;
+        Segment segment;
+        if (reusableSegment != null) {
+          segment =
+              reusableSegment.relativeStartTimeUs == segmentStartTimeUs
+                      && reusableSegment.relativeDiscontinuitySequence
+                          == relativeDiscontinuitySequence
+                  ? reusableSegment
+                  : reusableSegment.copyWith(segmentStartTimeUs, relativeDiscontinuitySequence);
+          // Keep referencing the same initialization segment as the reused segments.
+          initializationSegment = segment.initializationSegment;
+        } else {
+          long segmentDurationUs = 0;
+          String segmentTitle = "";
+          if (mediaDurationLine != null) {
+            segmentDurationUs = parseTimeSecondsToUs(mediaDurationLine, REGEX_MEDIA_DURATION);
+            segmentTitle =
+                parseOptionalStringAttr(
+                    mediaDurationLine, REGEX_MEDIA_TITLE, "", variableDefinitions);
+          }
+          segment =
+              new Segment(
+                  segmentUri,
+                  segmentInitializationSegment,
+                  segmentTitle,
+                  segmentDurationUs,
+                  relativeDiscontinuitySequence,
+                  segmentStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  segmentEncryptionIV,
+                  segmentByteRangeOffset,
+                  segmentByteRangeLength,
+                  hasGapTag,
+                  trailingParts);
+        }
+        segments.add(segment);
+        mediaDurationLines.add(mediaDurationLine);
+        segmentStartTimeUs += segment.durationUs;
         partStartTimeUs = segmentStartTimeUs;
-        segmentDurationUs = 0;
-        segmentTitle = "";
+        mediaDurationLine = null;
         trailingParts = new ArrayList<>();
         if (segmentByteRangeLength != C.LENGTH_UNSET) {
           segmentByteRangeOffset += segmentByteRangeLength;
@@ -1062,7 +1107,70 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         segments,
         trailingParts,
         serverControl,
-        renditionReportMap);
+        renditionReportMap,
+        mediaDurationLines);
+  }
+
+  /**
+   * Returns the segment of the previous playlist with the given media sequence number if it was
+   * parsed from the same #EXTINF line and URI, and with the same parsing state, or null otherwise.
+   *
+   * <p>A live playlist repeats the segments of the previous playlist before the newly added ones,
+   * so reusing them means only the added segments need to be parsed.
+   */
+  @Nullable
+  private static Segment getReusableSegment(
+      @Nullable HlsMediaPlaylist previousMediaPlaylist,
+      long mediaSequence,
+      @Nullable String mediaDurationLine,
+      String url,
+      @Nullable Segment initializationSegment,
+      @Nullable DrmInitData drmInitData,
+      @Nullable String fullSegmentEncryptionKeyUri,
+      @Nullable String encryptionIV,
+      long byteRangeLength,
+      boolean hasGapTag,
+      List<Part> parts) {
+    if (previousMediaPlaylist == null
+        || mediaDurationLine == null
+        || byteRangeLength != C.LENGTH_UNSET
+        || !parts.isEmpty()) {
+      return null;
+    }
+    long index = mediaSequence - previousMediaPlaylist.mediaSequence;
+    if (index < 0 || index >= previousMediaPlaylist.mediaDurationLines.size()) {
+      return null;
+    }
+    Segment segment = previousMediaPlaylist.segments.get((int) index);
+    if (!mediaDurationLine.equals(previousMediaPlaylist.mediaDurationLines.get((int) index))
+        || !url.equals(segment.url)
+        || segment.byteRangeLength != C.LENGTH_UNSET
+        || segment.hasGapTag != hasGapTag
+        || !segment.parts.isEmpty()
+        || !Util.areEqual(segment.fullSegmentEncryptionKeyUri, fullSegmentEncryptionKeyUri)
+        || !Util.areEqual(segment.encryptionIV, encryptionIV)
+        || !Util.areEqual(segment.drmInitData, drmInitData)
+        || !isSameInitializationSegment(segment.initializationSegment, initializationSegment)) {
+      return null;
+    }
+    return segment;
+  }
+
+  private static boolean isSameInitializationSegment(
+      @Nullable Segment initializationSegment, @Nullable Segment otherInitializationSegment) {
+    if (initializationSegment == otherInitializationSegment) {
+      return true;
+    } else if (initializationSegment == null || otherInitializationSegment == null) {
+      return false;
+    }
+    return initializationSegment.url.equals(otherInitializationSegment.url)
+        && initializationSegment.byteRangeOffset == otherInitializationSegment.byteRangeOffset
+        && initializationSegment.byteRangeLength == otherInitializationSegment.byteRangeLength
+        && Util.areEqual(
+            initializationSegment.fullSegmentEncryptionKeyUri,
+            otherInitializationSegment.fullSegmentEncryptionKeyUri)
+        && Util.areEqual(
+            initializationSegment.encryptionIV, otherInitializationSegment.encryptionIV);
   }
 
   private static DrmInitData getPlaylistProtectionSchemes(
@@ -1255,6 +1363,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   private static String replaceVariableReferences(
       String string, Map<String, String> variableDefinitions) {
+    if (variableDefinitions.isEmpty()) {
+      // References to undefined variables are left as they are.
+      return string;
+    }
     Matcher matcher = REGEX_VARIABLE_REFERENCE.matcher(string);
     // TODO: Replace StringBuffer with StringBuilder once Java 9 is available.
     StringBuffer stringWithReplacements = new StringBuffer();
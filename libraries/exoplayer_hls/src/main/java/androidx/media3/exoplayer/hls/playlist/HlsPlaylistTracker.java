@@ -229,6 +229,19 @@ public interface HlsPlaylistTracker {
    */
   void refreshPlaylist(Uri url);
 
+  /**
+   * Requests a playlist refresh like {@link #refreshPlaylist(Uri)}. If there's no valid snapshot of
+   * the playlist, it's requested at the position given by the primary playlist's rendition report
+   * for it, if the server supports blocking playlist reloads.
+   *
+   * <p>The default implementation calls {@link #refreshPlaylist(Uri)}.
+   *
+   * @param url The {@link Uri} of the playlist to be refreshed.
+   */
+  default void refreshPlaylistAtRenditionReport(Uri url) {
+    refreshPlaylist(url);
+  }
+
   /**
    * Returns whether the tracked playlists describe a live stream.
    *
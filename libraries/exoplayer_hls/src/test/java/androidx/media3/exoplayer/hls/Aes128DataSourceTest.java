@@ -16,17 +16,26 @@
 package androidx.media3.exoplayer.hls;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import android.net.Uri;
 import androidx.media3.common.C;
 import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.TransferListener;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -75,6 +84,104 @@ public class Aes128DataSourceTest {
     assertThat(upstream.closedCalled).isTrue();
   }
 
+  @Test
+  public void read_returnsDecryptedData() throws Exception {
+    byte[] key = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 1);
+    byte[] iv = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 2);
+    byte[] data = TestUtil.buildTestData(/* length= */ 200_000);
+    byte[] encryptedData = encrypt(data, key, iv);
+    Uri uri = Uri.parse("https://example.test/0.ts");
+    // Split the encrypted data into reads that aren't aligned with the cipher blocks.
+    FakeDataSet.FakeData fakeData = new FakeDataSet().newData(uri);
+    for (int position = 0; position < encryptedData.length; position += 10_001) {
+      fakeData.appendReadData(
+          Arrays.copyOfRange(
+              encryptedData, position, Math.min(position + 10_001, encryptedData.length)));
+    }
+    FakeDataSource upstream = new FakeDataSource(fakeData.endData());
+    Aes128DataSource testInstance = new TestAes123DataSource(upstream, key, iv);
+
+    testInstance.open(new DataSpec(uri));
+    byte[] decryptedData = DataSourceUtil.readToEnd(testInstance);
+    testInstance.close();
+
+    assertThat(decryptedData).isEqualTo(data);
+    assertThat(upstream.isOpened()).isFalse();
+  }
+
+  @Test
+  public void read_upstreamReadError_throwsError() throws Exception {
+    byte[] key = new byte[16];
+    byte[] iv = new byte[16];
+    byte[] encryptedData = encrypt(TestUtil.buildTestData(/* length= */ 1000), key, iv);
+    Uri uri = Uri.parse("https://example.test/0.ts");
+    IOException readError = new IOException();
+    FakeDataSource upstream =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData(uri)
+                .appendReadData(Arrays.copyOf(encryptedData, 500))
+                .appendReadError(readError)
+                .appendReadData(Arrays.copyOfRange(encryptedData, 500, encryptedData.length))
+                .endData());
+    Aes128DataSource testInstance = new TestAes123DataSource(upstream, key, iv);
+
+    testInstance.open(new DataSpec(uri));
+    IOException thrownError =
+        assertThrows(IOException.class, () -> DataSourceUtil.readToEnd(testInstance));
+    testInstance.close();
+
+    assertThat(thrownError).isSameInstanceAs(readError);
+  }
+
+  @Test
+  public void read_upstreamThrowsError_throwsError() throws Exception {
+    OutOfMemoryError readError = new OutOfMemoryError();
+    UpstreamDataSource upstream =
+        new UpstreamDataSource() {
+          @Override
+          public int read(byte[] buffer, int offset, int length) {
+            throw readError;
+          }
+        };
+    Aes128DataSource testInstance = new TestAes123DataSource(upstream, new byte[16], new byte[16]);
+
+    testInstance.open(new DataSpec(Uri.parse("https://example.test/0.ts")));
+    OutOfMemoryError thrownError =
+        assertThrows(
+            OutOfMemoryError.class,
+            () -> testInstance.read(new byte[100], /* offset= */ 0, /* length= */ 100));
+    testInstance.close();
+
+    assertThat(thrownError).isSameInstanceAs(readError);
+    assertThat(upstream.closedCalled).isTrue();
+  }
+
+  @Test
+  public void close_beforeDataIsRead_closesUpstream() throws Exception {
+    byte[] key = new byte[16];
+    byte[] iv = new byte[16];
+    Uri uri = Uri.parse("https://example.test/0.ts");
+    FakeDataSource upstream =
+        new FakeDataSource(
+            new FakeDataSet()
+                .setData(uri, encrypt(TestUtil.buildTestData(/* length= */ 500_000), key, iv)));
+    Aes128DataSource testInstance = new TestAes123DataSource(upstream, key, iv);
+
+    testInstance.open(new DataSpec(uri));
+    testInstance.read(new byte[100], /* offset= */ 0, /* length= */ 100);
+    testInstance.close();
+
+    assertThat(upstream.isOpened()).isFalse();
+  }
+
+  private static byte[] encrypt(byte[] data, byte[] key, byte[] iv)
+      throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+    return cipher.doFinal(data);
+  }
+
   private static class TestAes123DataSource extends Aes128DataSource {
 
     public TestAes123DataSource(DataSource upstream, byte[] encryptionKey, byte[] encryptionIv) {
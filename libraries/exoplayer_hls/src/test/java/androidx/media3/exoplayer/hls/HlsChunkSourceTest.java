@@ -27,6 +27,11 @@ import androidx.media3.common.C;
 import androidx.media3.common.Format;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MimeTypes;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.ResolvingDataSource;
 import androidx.media3.exoplayer.LoadingInfo;
 import androidx.media3.exoplayer.SeekParameters;
 import androidx.media3.exoplayer.analytics.PlayerId;
@@ -35,15 +40,21 @@ import androidx.media3.exoplayer.hls.playlist.HlsPlaylistParser;
 import androidx.media3.exoplayer.hls.playlist.HlsPlaylistTracker;
 import androidx.media3.exoplayer.upstream.CmcdConfiguration;
 import androidx.media3.test.utils.ExoPlayerTestRunner;
+import androidx.media3.test.utils.FakeDataSet;
 import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -448,19 +459,215 @@ public class HlsChunkSourceTest {
                 + "nor=\"..%2F3.mp4\",nrr=\"0-\",ot=v,sf=h,sid=\"sessionId\",st=v,su,tb=800");
   }
 
+  @Test
+  public void getNextChunk_withMaxPrefetchedSegmentCount_prefetchesFollowingSegments()
+      throws Exception {
+    BlockingQueue<Uri> openedUris = new LinkedBlockingQueue<>();
+    HlsChunkSource testChunkSource =
+        createHlsChunkSource(
+            /* cmcdConfiguration= */ null,
+            createRecordingDataSourceFactory(new FakeDataSet(), openedUris),
+            /* maxPrefetchedSegmentCount= */ 2);
+    HlsChunkSource.HlsChunkHolder output = new HlsChunkSource.HlsChunkHolder();
+
+    try {
+      testChunkSource.getNextChunk(
+          new LoadingInfo.Builder().setPlaybackPositionUs(0).setPlaybackSpeed(1.0f).build(),
+          /* loadPositionUs= */ 0,
+          /* queue= */ ImmutableList.of(),
+          /* allowEndOfStream= */ true,
+          output);
+
+      assertThat(output.chunk.dataSpec.uri).isEqualTo(Uri.parse("http://example.com/2.mp4"));
+      assertThat(ImmutableSet.of(pollOpenedUri(openedUris), pollOpenedUri(openedUris)))
+          .containsExactly(
+              Uri.parse("http://example.com/3.mp4"), Uri.parse("http://example.com/4.mp4"));
+    } finally {
+      testChunkSource.release();
+    }
+  }
+
+  @Test
+  public void getNextChunk_playlistWithPreloadHint_prefetchesFollowingSegmentsAndPreloadHintPart()
+      throws Exception {
+    when(mockPlaylistTracker.getPlaylistSnapshot(eq(PLAYLIST_URI), anyBoolean()))
+        .thenReturn(
+            parsePlaylist(
+                "#EXTM3U\n"
+                    + "#EXT-X-TARGETDURATION:4\n"
+                    + "#EXT-X-PART-INF:PART-TARGET=1\n"
+                    + "#EXT-X-MEDIA-SEQUENCE:2\n"
+                    + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+                    + "#EXTINF:4,\n"
+                    + "2.ts\n"
+                    + "#EXTINF:4,\n"
+                    + "3.ts\n"
+                    + "#EXT-X-PART:DURATION=1,URI=\"4.0.ts\",INDEPENDENT=YES\n"
+                    + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"4.1.ts\"\n"));
+    BlockingQueue<Uri> openedUris = new LinkedBlockingQueue<>();
+    HlsChunkSource testChunkSource =
+        createHlsChunkSource(
+            /* cmcdConfiguration= */ null,
+            createRecordingDataSourceFactory(new FakeDataSet(), openedUris),
+            /* maxPrefetchedSegmentCount= */ 3);
+    HlsChunkSource.HlsChunkHolder output = new HlsChunkSource.HlsChunkHolder();
+
+    try {
+      testChunkSource.getNextChunk(
+          new LoadingInfo.Builder().setPlaybackPositionUs(0).setPlaybackSpeed(1.0f).build(),
+          /* loadPositionUs= */ 0,
+          /* queue= */ ImmutableList.of(),
+          /* allowEndOfStream= */ true,
+          output);
+
+      assertThat(output.chunk.dataSpec.uri).isEqualTo(Uri.parse("http://example.com/2.ts"));
+      // The parts of the segment that's being published aren't prefetched, except for the part of
+      // the preload hint.
+      assertThat(ImmutableSet.of(pollOpenedUri(openedUris), pollOpenedUri(openedUris)))
+          .containsExactly(
+              Uri.parse("http://example.com/3.ts"), Uri.parse("http://example.com/4.1.ts"));
+    } finally {
+      testChunkSource.release();
+    }
+  }
+
+  @Test
+  public void onPlaylistUpdated_withMaxPrefetchedSegmentCount_prefetchesAddedSegments()
+      throws Exception {
+    when(mockPlaylistTracker.getPlaylistSnapshot(eq(PLAYLIST_URI), anyBoolean()))
+        .thenReturn(
+            parsePlaylist(
+                "#EXTM3U\n"
+                    + "#EXT-X-MEDIA-SEQUENCE:2\n"
+                    + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+                    + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                    + "#EXTINF:4,\n"
+                    + "2.mp4\n"
+                    + "#EXT-X-ENDLIST\n"));
+    BlockingQueue<Uri> openedUris = new LinkedBlockingQueue<>();
+    HlsChunkSource testChunkSource =
+        createHlsChunkSource(
+            /* cmcdConfiguration= */ null,
+            createRecordingDataSourceFactory(new FakeDataSet(), openedUris),
+            /* maxPrefetchedSegmentCount= */ 1);
+    HlsChunkSource.HlsChunkHolder output = new HlsChunkSource.HlsChunkHolder();
+
+    try {
+      testChunkSource.getNextChunk(
+          new LoadingInfo.Builder().setPlaybackPositionUs(0).setPlaybackSpeed(1.0f).build(),
+          /* loadPositionUs= */ 0,
+          /* queue= */ ImmutableList.of(),
+          /* allowEndOfStream= */ true,
+          output);
+      when(mockPlaylistTracker.getPlaylistSnapshot(eq(PLAYLIST_URI), anyBoolean()))
+          .thenReturn(
+              parsePlaylist(
+                  "#EXTM3U\n"
+                      + "#EXT-X-MEDIA-SEQUENCE:2\n"
+                      + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+                      + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                      + "#EXTINF:4,\n"
+                      + "2.mp4\n"
+                      + "#EXTINF:4,\n"
+                      + "3.mp4\n"
+                      + "#EXT-X-ENDLIST\n"));
+      testChunkSource.onPlaylistUpdated((HlsMediaChunk) output.chunk);
+
+      assertThat(output.chunk.dataSpec.uri).isEqualTo(Uri.parse("http://example.com/2.mp4"));
+      assertThat(pollOpenedUri(openedUris)).isEqualTo(Uri.parse("http://example.com/3.mp4"));
+    } finally {
+      testChunkSource.release();
+    }
+  }
+
+  @Test
+  public void release_withMaxPrefetchedSegmentCount_interruptsPrefetch() throws Exception {
+    ConditionVariable prefetchStarted = new ConditionVariable();
+    ConditionVariable prefetchInterrupted = new ConditionVariable();
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    fakeDataSet
+        .newData(Uri.parse("http://example.com/3.mp4"))
+        .appendReadAction(
+            () -> {
+              prefetchStarted.open();
+              try {
+                new ConditionVariable().block();
+              } catch (InterruptedException e) {
+                prefetchInterrupted.open();
+              }
+            })
+        .appendReadData(TestUtil.buildTestData(/* length= */ 10))
+        .endData();
+    HlsChunkSource testChunkSource =
+        createHlsChunkSource(
+            /* cmcdConfiguration= */ null,
+            createRecordingDataSourceFactory(fakeDataSet, new LinkedBlockingQueue<>()),
+            /* maxPrefetchedSegmentCount= */ 1);
+    HlsChunkSource.HlsChunkHolder output = new HlsChunkSource.HlsChunkHolder();
+
+    testChunkSource.getNextChunk(
+        new LoadingInfo.Builder().setPlaybackPositionUs(0).setPlaybackSpeed(1.0f).build(),
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        output);
+    assertThat(prefetchStarted.block(/* timeoutMs= */ 10_000)).isTrue();
+    testChunkSource.release();
+
+    assertThat(prefetchInterrupted.block(/* timeoutMs= */ 10_000)).isTrue();
+  }
+
   private HlsChunkSource createHlsChunkSource(@Nullable CmcdConfiguration cmcdConfiguration) {
+    return createHlsChunkSource(
+        cmcdConfiguration,
+        new DefaultHlsDataSourceFactory(new FakeDataSource.Factory()),
+        /* maxPrefetchedSegmentCount= */ 0);
+  }
+
+  private HlsChunkSource createHlsChunkSource(
+      @Nullable CmcdConfiguration cmcdConfiguration,
+      HlsDataSourceFactory dataSourceFactory,
+      int maxPrefetchedSegmentCount) {
     return new HlsChunkSource(
         HlsExtractorFactory.DEFAULT,
         mockPlaylistTracker,
         new Uri[] {IFRAME_URI, PLAYLIST_URI},
         new Format[] {IFRAME_FORMAT, ExoPlayerTestRunner.VIDEO_FORMAT},
-        new DefaultHlsDataSourceFactory(new FakeDataSource.Factory()),
+        dataSourceFactory,
         /* mediaTransferListener= */ null,
         new TimestampAdjusterProvider(),
         /* timestampAdjusterInitializationTimeoutMs= */ 0,
         /* muxedCaptionFormats= */ null,
         PlayerId.UNSET,
-        cmcdConfiguration);
+        cmcdConfiguration,
+        maxPrefetchedSegmentCount);
+  }
+
+  /**
+   * Returns an {@link HlsDataSourceFactory} whose {@link DataSource DataSources} read from {@code
+   * fakeDataSet} and add the {@link Uri} of each {@link DataSpec} they open to {@code openedUris}.
+   */
+  private static HlsDataSourceFactory createRecordingDataSourceFactory(
+      FakeDataSet fakeDataSet, BlockingQueue<Uri> openedUris) {
+    return new DefaultHlsDataSourceFactory(
+        () ->
+            new ResolvingDataSource(
+                new FakeDataSource(fakeDataSet),
+                dataSpec -> {
+                  openedUris.add(dataSpec.uri);
+                  return dataSpec;
+                }));
+  }
+
+  private static HlsMediaPlaylist parsePlaylist(String playlist) throws IOException {
+    return (HlsMediaPlaylist)
+        new HlsPlaylistParser()
+            .parse(PLAYLIST_URI, new ByteArrayInputStream(Util.getUtf8Bytes(playlist)));
+  }
+
+  @Nullable
+  private static Uri pollOpenedUri(BlockingQueue<Uri> openedUris) throws InterruptedException {
+    return openedUris.poll(/* timeout= */ 10, TimeUnit.SECONDS);
   }
 
   private static long playlistTimeToPeriodTimeUs(long playlistTimeUs) {
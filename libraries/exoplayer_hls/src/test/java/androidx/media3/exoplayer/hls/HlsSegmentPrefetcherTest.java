@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.hls;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HlsSegmentPrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class HlsSegmentPrefetcherTest {
+
+  private static final Uri CURRENT_SEGMENT_URI = Uri.parse("https://example.test/0.ts");
+  private static final Uri NEXT_SEGMENT_URI = Uri.parse("https://example.test/1.ts");
+  private static final byte[] CURRENT_SEGMENT_DATA = TestUtil.buildTestData(/* length= */ 100);
+  private static final byte[] NEXT_SEGMENT_DATA = TestUtil.buildTestData(/* length= */ 200);
+
+  private FakeDataSet prefetchDataSet;
+  private FakeDataSource upstream;
+  private HlsSegmentPrefetcher segmentPrefetcher;
+
+  @Before
+  public void setUp() {
+    prefetchDataSet = new FakeDataSet();
+    FakeDataSet upstreamDataSet =
+        new FakeDataSet()
+            .setData(CURRENT_SEGMENT_URI, CURRENT_SEGMENT_DATA)
+            .setData(NEXT_SEGMENT_URI, NEXT_SEGMENT_DATA);
+    upstream = new FakeDataSource(upstreamDataSet);
+    segmentPrefetcher =
+        new HlsSegmentPrefetcher(
+            dataType -> new FakeDataSource(prefetchDataSet),
+            /* transferListener= */ null,
+            /* maxPrefetchedSegmentCount= */ 2);
+  }
+
+  @After
+  public void tearDown() {
+    segmentPrefetcher.release();
+  }
+
+  @Test
+  public void open_prefetchedSegment_readsSegmentWithoutOpeningUpstream() throws IOException {
+    prefetchDataSet.setData(NEXT_SEGMENT_URI, NEXT_SEGMENT_DATA);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+    byte[] data = readToEnd(dataSource, new DataSpec(NEXT_SEGMENT_URI));
+
+    assertThat(data).isEqualTo(NEXT_SEGMENT_DATA);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void open_rangeOfPrefetchedSegment_readsRange() throws IOException {
+    prefetchDataSet.setData(NEXT_SEGMENT_URI, NEXT_SEGMENT_DATA);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+    byte[] data =
+        readToEnd(
+            dataSource,
+            new DataSpec.Builder()
+                .setUri(NEXT_SEGMENT_URI)
+                .setPosition(50)
+                .setLength(100)
+                .build());
+
+    assertThat(data).isEqualTo(Arrays.copyOfRange(NEXT_SEGMENT_DATA, 50, 150));
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void open_segmentNotPrefetched_readsFromUpstream() throws IOException {
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), /* nextDataSpecs= */ ImmutableList.of());
+    byte[] data = readToEnd(dataSource, new DataSpec(CURRENT_SEGMENT_URI));
+
+    assertThat(data).isEqualTo(CURRENT_SEGMENT_DATA);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void open_prefetchFailed_readsRemainingDataFromUpstream() throws IOException {
+    prefetchDataSet
+        .newData(NEXT_SEGMENT_URI)
+        .setSimulateUnknownLength(true)
+        .appendReadData(Arrays.copyOf(NEXT_SEGMENT_DATA, 50))
+        .appendReadError(new IOException())
+        .endData();
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+    byte[] data = readToEnd(dataSource, new DataSpec(NEXT_SEGMENT_URI));
+
+    assertThat(data).isEqualTo(NEXT_SEGMENT_DATA);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void open_prefetchCanceled_readsFromUpstream() throws IOException {
+    prefetchDataSet.setData(NEXT_SEGMENT_URI, NEXT_SEGMENT_DATA);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+    segmentPrefetcher.cancelAll();
+    byte[] data = readToEnd(dataSource, new DataSpec(NEXT_SEGMENT_URI));
+
+    assertThat(data).isEqualTo(NEXT_SEGMENT_DATA);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void prefetch_segmentNoLongerNext_cancelsPrefetch() throws IOException {
+    prefetchDataSet.setData(NEXT_SEGMENT_URI, NEXT_SEGMENT_DATA);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+    // For example after switching to another track.
+    segmentPrefetcher.prefetch(
+        new DataSpec(Uri.parse("https://example.test/other/0.ts")),
+        /* nextDataSpecs= */ ImmutableList.of());
+    readToEnd(dataSource, new DataSpec(NEXT_SEGMENT_URI));
+
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void prefetch_preloadPartBecomesPart_keepsPrefetchOfPreloadPart() throws IOException {
+    prefetchDataSet.setData(NEXT_SEGMENT_URI, NEXT_SEGMENT_DATA);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+    // A preload hint without a known length.
+    DataSpec preloadPartDataSpec =
+        new DataSpec.Builder()
+            .setUri(NEXT_SEGMENT_URI)
+            .setFlags(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
+            .build();
+    // The part after the playlist update, with its length.
+    DataSpec partDataSpec =
+        new DataSpec.Builder().setUri(NEXT_SEGMENT_URI).setLength(NEXT_SEGMENT_DATA.length).build();
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(preloadPartDataSpec));
+    segmentPrefetcher.prefetch(new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(partDataSpec));
+    byte[] data = readToEnd(dataSource, partDataSpec);
+
+    assertThat(data).isEqualTo(NEXT_SEGMENT_DATA);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void prefetch_segmentNoLongerNext_interruptsBlockedLoad() throws Exception {
+    ConditionVariable loadStarted = new ConditionVariable();
+    ConditionVariable loadInterrupted = new ConditionVariable();
+    prefetchDataSet
+        .newData(NEXT_SEGMENT_URI)
+        .appendReadAction(
+            () -> {
+              loadStarted.open();
+              try {
+                new ConditionVariable().block();
+              } catch (InterruptedException e) {
+                loadInterrupted.open();
+              }
+            })
+        .appendReadData(NEXT_SEGMENT_DATA)
+        .endData();
+
+    segmentPrefetcher.prefetch(
+        new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+    loadStarted.block();
+    segmentPrefetcher.prefetch(
+        new DataSpec(Uri.parse("https://example.test/other/0.ts")),
+        /* nextDataSpecs= */ ImmutableList.of());
+
+    assertThat(loadInterrupted.block(/* timeoutMs= */ 10_000)).isTrue();
+  }
+
+  @Test
+  public void prefetch_whileCanceledLoadIsBlocked_doesNotQueueNewLoadBehindIt() throws Exception {
+    ConditionVariable loadStarted = new ConditionVariable();
+    ConditionVariable allowLoadToComplete = new ConditionVariable();
+    prefetchDataSet
+        .newData(NEXT_SEGMENT_URI)
+        .appendReadAction(
+            () -> {
+              loadStarted.open();
+              // Emulates an upstream read that doesn't respond to interrupts.
+              allowLoadToComplete.blockUninterruptible();
+            })
+        .appendReadData(NEXT_SEGMENT_DATA)
+        .endData();
+    HlsSegmentPrefetcher segmentPrefetcher =
+        new HlsSegmentPrefetcher(
+            dataType -> new FakeDataSource(prefetchDataSet),
+            /* transferListener= */ null,
+            /* maxPrefetchedSegmentCount= */ 1);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    try {
+      segmentPrefetcher.prefetch(
+          new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+      loadStarted.block();
+      // For example after switching to another track.
+      segmentPrefetcher.prefetch(
+          new DataSpec(Uri.parse("https://example.test/other/0.ts")),
+          ImmutableList.of(new DataSpec(CURRENT_SEGMENT_URI)));
+      byte[] data = readToEnd(dataSource, new DataSpec(CURRENT_SEGMENT_URI));
+
+      assertThat(data).isEqualTo(CURRENT_SEGMENT_DATA);
+      assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+    } finally {
+      allowLoadToComplete.open();
+      segmentPrefetcher.release();
+    }
+  }
+
+  @Test
+  public void open_prefetchExceedingMaxBufferedBytes_readsRemainingDataFromUpstream()
+      throws IOException {
+    Uri largeSegmentUri = Uri.parse("https://example.test/large.ts");
+    byte[] largeSegmentData = TestUtil.buildTestData(/* length= */ 400 * 1024);
+    prefetchDataSet
+        .newData(largeSegmentUri)
+        .setSimulateUnknownLength(true)
+        .appendReadData(largeSegmentData)
+        .endData();
+    upstream.getDataSet().setData(largeSegmentUri, largeSegmentData);
+    HlsSegmentPrefetcher segmentPrefetcher =
+        new HlsSegmentPrefetcher(
+            dataType -> new FakeDataSource(prefetchDataSet),
+            /* transferListener= */ null,
+            /* maxPrefetchedSegmentCount= */ 1,
+            /* maxBufferedBytes= */ 300 * 1024);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    try {
+      segmentPrefetcher.prefetch(
+          new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(largeSegmentUri)));
+      byte[] data = readToEnd(dataSource, new DataSpec(largeSegmentUri));
+
+      assertThat(data).isEqualTo(largeSegmentData);
+      DataSpec[] upstreamDataSpecs = upstream.getAndClearOpenedDataSpecs();
+      assertThat(upstreamDataSpecs).hasLength(1);
+      // The data that fits within the limit is read from memory.
+      assertThat(upstreamDataSpecs[0].position).isGreaterThan(0);
+    } finally {
+      segmentPrefetcher.release();
+    }
+  }
+
+  @Test
+  public void open_prefetchThrewError_readsFromUpstreamAndAllowsOtherPrefetches()
+      throws IOException {
+    prefetchDataSet
+        .newData(NEXT_SEGMENT_URI)
+        .appendReadAction(
+            () -> {
+              throw new OutOfMemoryError();
+            })
+        .appendReadData(NEXT_SEGMENT_DATA)
+        .endData();
+    prefetchDataSet.setData(CURRENT_SEGMENT_URI, CURRENT_SEGMENT_DATA);
+    HlsSegmentPrefetcher segmentPrefetcher =
+        new HlsSegmentPrefetcher(
+            dataType -> new FakeDataSource(prefetchDataSet),
+            /* transferListener= */ null,
+            /* maxPrefetchedSegmentCount= */ 1);
+    DataSource dataSource = segmentPrefetcher.createDataSource(upstream);
+
+    try {
+      segmentPrefetcher.prefetch(
+          new DataSpec(CURRENT_SEGMENT_URI), ImmutableList.of(new DataSpec(NEXT_SEGMENT_URI)));
+      byte[] nextSegmentData = readToEnd(dataSource, new DataSpec(NEXT_SEGMENT_URI));
+      // The failed load no longer counts towards the maximum number of prefetched segments.
+      segmentPrefetcher.prefetch(
+          new DataSpec(NEXT_SEGMENT_URI), ImmutableList.of(new DataSpec(CURRENT_SEGMENT_URI)));
+      byte[] currentSegmentData = readToEnd(dataSource, new DataSpec(CURRENT_SEGMENT_URI));
+
+      assertThat(nextSegmentData).isEqualTo(NEXT_SEGMENT_DATA);
+      assertThat(currentSegmentData).isEqualTo(CURRENT_SEGMENT_DATA);
+      assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+    } finally {
+      segmentPrefetcher.release();
+    }
+  }
+
+  private static byte[] readToEnd(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    try {
+      dataSource.open(dataSpec);
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
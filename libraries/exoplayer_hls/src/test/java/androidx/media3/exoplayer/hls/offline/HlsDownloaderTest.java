@@ -38,6 +38,7 @@ import android.net.Uri;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MimeTypes;
 import androidx.media3.common.StreamKey;
+import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.Util;
 import androidx.media3.datasource.PlaceholderDataSource;
 import androidx.media3.datasource.cache.Cache;
@@ -59,6 +60,10 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -156,6 +161,67 @@ public class HlsDownloaderTest {
     assertCachedData(cache, fakeDataSet);
   }
 
+  @Test
+  public void downloadMultipleRepresentations_withParallelExecutor_downloadsAllData()
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(/* nThreads= */ 4);
+    HlsDownloader downloader =
+        getHlsDownloader(
+            MULTIVARIANT_PLAYLIST_URI,
+            getKeys(MULTIVARIANT_MEDIA_PLAYLIST_1_INDEX, MULTIVARIANT_MEDIA_PLAYLIST_2_INDEX),
+            executor);
+
+    try {
+      downloader.download(progressListener);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertCachedData(cache, fakeDataSet);
+    progressListener.assertBytesDownloaded(
+        2 * MEDIA_PLAYLIST_DATA.length + 10 + 11 + 12 + 13 + 14 + 15);
+  }
+
+  @Test
+  public void download_withParallelExecutor_downloadsSegmentsWhileOtherPlaylistsLoad()
+      throws Exception {
+    ConditionVariable playlist1SegmentRead = new ConditionVariable();
+    AtomicBoolean playlist2LoadedAfterPlaylist1SegmentRead = new AtomicBoolean();
+    fakeDataSet
+        .newData(MEDIA_PLAYLIST_1_DIR + "fileSequence0.ts")
+        .appendReadAction(playlist1SegmentRead::open)
+        .appendReadData(10)
+        .endData()
+        .newData(MEDIA_PLAYLIST_2_URI)
+        .appendReadAction(
+            () -> {
+              try {
+                playlist2LoadedAfterPlaylist1SegmentRead.set(
+                    playlist1SegmentRead.block(/* timeoutMs= */ 10_000));
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            })
+        .appendReadData(MEDIA_PLAYLIST_DATA)
+        .endData();
+    ExecutorService executor = Executors.newFixedThreadPool(/* nThreads= */ 4);
+    HlsDownloader downloader =
+        getHlsDownloader(
+            MULTIVARIANT_PLAYLIST_URI,
+            getKeys(MULTIVARIANT_MEDIA_PLAYLIST_1_INDEX, MULTIVARIANT_MEDIA_PLAYLIST_2_INDEX),
+            executor);
+
+    try {
+      downloader.download(progressListener);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(playlist2LoadedAfterPlaylist1SegmentRead.get()).isTrue();
+    progressListener.assertBytesDownloaded(
+        2 * MEDIA_PLAYLIST_DATA.length + 10 + 11 + 12 + 13 + 14 + 15);
+  }
+
   @Test
   public void downloadAllRepresentations() throws Exception {
     // Add data for the rest of the playlists
@@ -219,13 +285,19 @@ public class HlsDownloaderTest {
   }
 
   private HlsDownloader getHlsDownloader(String mediaPlaylistUri, List<StreamKey> keys) {
+    return getHlsDownloader(mediaPlaylistUri, keys, /* executor= */ Runnable::run);
+  }
+
+  private HlsDownloader getHlsDownloader(
+      String mediaPlaylistUri, List<StreamKey> keys, Executor executor) {
     CacheDataSource.Factory cacheDataSourceFactory =
         new CacheDataSource.Factory()
             .setCache(cache)
             .setUpstreamDataSourceFactory(new FakeDataSource.Factory().setFakeDataSet(fakeDataSet));
     return new HlsDownloader(
         new MediaItem.Builder().setUri(mediaPlaylistUri).setStreamKeys(keys).build(),
-        cacheDataSourceFactory);
+        cacheDataSourceFactory,
+        executor);
   }
 
   private static ArrayList<StreamKey> getKeys(int... variantIndices) {
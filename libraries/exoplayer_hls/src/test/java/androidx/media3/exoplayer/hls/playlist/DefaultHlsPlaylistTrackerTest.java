@@ -15,6 +15,7 @@
  */
 package androidx.media3.exoplayer.hls.playlist;
 
+import static androidx.media3.common.util.Assertions.checkNotNull;
 import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
@@ -29,11 +30,14 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import okio.Buffer;
 import org.junit.After;
 import org.junit.Before;
@@ -89,6 +93,27 @@ public class DefaultHlsPlaylistTrackerTest {
   private static final String SAMPLE_M3U8_LIVE_MEDIA_CAN_SKIP_UNTIL_AND_BLOCK_RELOAD_NEXT_SKIPPED =
       "media/m3u8/live_low_latency_media_can_skip_until_and_block_reload_next_skipped";
 
+  private static final String MULTIVARIANT_PLAYLIST_WITH_TWO_VARIANTS =
+      "#EXTM3U\n"
+          + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+          + "#EXT-X-STREAM-INF:BANDWIDTH=2000000,CODECS=\"avc1.640028,mp4a.40.2\"\n"
+          + "media0/playlist.m3u8\n"
+          + "#EXT-X-STREAM-INF:BANDWIDTH=1000000,CODECS=\"avc1.640028,mp4a.40.2\"\n"
+          + "media1/playlist.m3u8\n";
+  private static final String MEDIA_PLAYLIST_WITH_RENDITION_REPORT =
+      "#EXTM3U\n"
+          + "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES\n"
+          + "#EXT-X-TARGETDURATION:4\n"
+          + "#EXT-X-PART-INF:PART-TARGET=1.000000\n"
+          + "#EXT-X-VERSION:3\n"
+          + "#EXT-X-MEDIA-SEQUENCE:10\n"
+          + "#EXTINF:4.00000,\n"
+          + "fileSequence10.ts\n"
+          + "#EXTINF:4.00000,\n"
+          + "fileSequence11.ts\n"
+          + "#EXT-X-PART:DURATION=1.00000,URI=\"fileSequence12.0.ts\"\n"
+          + "#EXT-X-RENDITION-REPORT:URI=\"../media1/playlist.m3u8\",LAST-MSN=12,LAST-PART=0\n";
+
   private MockWebServer mockWebServer;
   private int enqueueCounter;
   private int assertedRequestCounter;
@@ -395,6 +420,39 @@ public class DefaultHlsPlaylistTrackerTest {
     assertThat(mediaPlaylists.get(2).mediaSequence).isEqualTo(12);
   }
 
+  @Test
+  public void refreshPlaylistAtRenditionReport_noSnapshot_requestsPlaylistAtRenditionReport()
+      throws Exception {
+    List<String> requestPaths = new CopyOnWriteArrayList<>();
+    mockWebServer.setDispatcher(createRenditionReportDispatcher(requestPaths));
+    DefaultHlsPlaylistTracker playlistTracker = startPlaylistTrackerWithTwoVariants();
+    Uri media1Uri = Uri.parse(mockWebServer.url("/media1/playlist.m3u8").toString());
+
+    playlistTracker.refreshPlaylistAtRenditionReport(media1Uri);
+    RobolectricUtil.runMainLooperUntil(
+        () -> playlistTracker.getPlaylistSnapshot(media1Uri, /* isForPlayback= */ false) != null);
+    playlistTracker.stop();
+
+    assertThat(requestPaths).contains("/media1/playlist.m3u8?_HLS_msn=12&_HLS_part=0");
+    assertThat(requestPaths).doesNotContain("/media1/playlist.m3u8");
+  }
+
+  @Test
+  public void refreshPlaylist_noSnapshot_requestsPlainPlaylist() throws Exception {
+    List<String> requestPaths = new CopyOnWriteArrayList<>();
+    mockWebServer.setDispatcher(createRenditionReportDispatcher(requestPaths));
+    DefaultHlsPlaylistTracker playlistTracker = startPlaylistTrackerWithTwoVariants();
+    Uri media1Uri = Uri.parse(mockWebServer.url("/media1/playlist.m3u8").toString());
+
+    playlistTracker.refreshPlaylist(media1Uri);
+    RobolectricUtil.runMainLooperUntil(
+        () -> playlistTracker.getPlaylistSnapshot(media1Uri, /* isForPlayback= */ false) != null);
+    playlistTracker.stop();
+
+    assertThat(requestPaths).contains("/media1/playlist.m3u8");
+    assertThat(requestPaths).doesNotContain("/media1/playlist.m3u8?_HLS_msn=12&_HLS_part=0");
+  }
+
   private List<HttpUrl> enqueueWebServerResponses(String[] paths, MockResponse... mockResponses) {
     assertThat(paths).hasLength(mockResponses.length);
     for (MockResponse mockResponse : mockResponses) {
@@ -443,6 +501,46 @@ public class DefaultHlsPlaylistTrackerTest {
     return mediaPlaylists;
   }
 
+  /**
+   * Starts a playlist tracker for a multivariant playlist with two variants, and waits until it has
+   * loaded the media playlist of the first one, which is the primary playlist.
+   */
+  private DefaultHlsPlaylistTracker startPlaylistTrackerWithTwoVariants() throws TimeoutException {
+    DefaultHlsPlaylistTracker playlistTracker =
+        new DefaultHlsPlaylistTracker(
+            dataType -> new DefaultHttpDataSource.Factory().createDataSource(),
+            new DefaultLoadErrorHandlingPolicy(),
+            new DefaultHlsPlaylistParserFactory());
+    AtomicInteger primaryPlaylistCount = new AtomicInteger();
+    playlistTracker.start(
+        Uri.parse(mockWebServer.url("/multivariant.m3u8").toString()),
+        new MediaSourceEventListener.EventDispatcher(),
+        mediaPlaylist -> primaryPlaylistCount.incrementAndGet());
+    RobolectricUtil.runMainLooperUntil(() -> primaryPlaylistCount.get() > 0);
+    return playlistTracker;
+  }
+
+  /**
+   * Returns a {@link Dispatcher} that serves {@link #MULTIVARIANT_PLAYLIST_WITH_TWO_VARIANTS} and
+   * {@link #MEDIA_PLAYLIST_WITH_RENDITION_REPORT} for both variants, and adds the path of each
+   * request to {@code requestPaths}.
+   */
+  private static Dispatcher createRenditionReportDispatcher(List<String> requestPaths) {
+    return new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        String path = checkNotNull(request.getPath());
+        requestPaths.add(path);
+        if (path.equals("/multivariant.m3u8")) {
+          return new MockResponse().setBody(MULTIVARIANT_PLAYLIST_WITH_TWO_VARIANTS);
+        } else if (path.startsWith("/media0/") || path.startsWith("/media1/")) {
+          return new MockResponse().setBody(MEDIA_PLAYLIST_WITH_RENDITION_REPORT);
+        }
+        return new MockResponse().setResponseCode(404);
+      }
+    };
+  }
+
   private static MockResponse getMockResponse(String assetFile) throws IOException {
     return new MockResponse().setResponseCode(200).setBody(new Buffer().write(getBytes(assetFile)));
   }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.hls.playlist;
+
+import static androidx.media3.test.utils.BenchmarkUtil.assertAllocationsWithinBudget;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.ParsingLoadable;
+import androidx.media3.test.utils.BenchmarkUtil;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.ManifestBenchmark;
+import androidx.media3.test.utils.SyntheticManifestGenerator;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Performance regression tests for parsing and refreshing HLS playlists, using {@link
+ * ManifestBenchmark} with playlists created by {@link SyntheticManifestGenerator}.
+ *
+ * <p>Each test fails if the number of bytes allocated exceeds its budget, as described in {@link
+ * BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class HlsPlaylistBenchmarkTest {
+
+  private static final Uri PLAYLIST_URI = Uri.parse("https://example.test/playlist.m3u8");
+  private static final int SEGMENT_COUNT = 10_000;
+  private static final long SEGMENT_DURATION_MS = 2_000;
+
+  @Test
+  public void parseMediaPlaylist() throws IOException {
+    byte[] data =
+        Util.getUtf8Bytes(
+            SyntheticManifestGenerator.createHlsMediaPlaylist(
+                /* mediaSequence= */ 0,
+                SEGMENT_COUNT,
+                SEGMENT_DURATION_MS,
+                /* hasEndTag= */ false));
+    HlsMediaPlaylist playlist = (HlsMediaPlaylist) parse(new HlsPlaylistParser(), data);
+    assertThat(playlist.segments).hasSize(SEGMENT_COUNT);
+
+    ManifestBenchmark.Result result =
+        new ManifestBenchmark(
+                () -> {
+                  HlsPlaylistParser parser = new HlsPlaylistParser();
+                  return () -> parse(parser, data);
+                })
+            .run();
+
+    assertAllocationsWithinBudget(
+        "Media playlist", result, /* maxAllocatedBytes= */ 2_000L * SEGMENT_COUNT);
+  }
+
+  @Test
+  public void refreshMediaPlaylist() throws IOException {
+    byte[] previousData =
+        Util.getUtf8Bytes(
+            SyntheticManifestGenerator.createHlsMediaPlaylist(
+                /* mediaSequence= */ 0,
+                SEGMENT_COUNT,
+                SEGMENT_DURATION_MS,
+                /* hasEndTag= */ false));
+    byte[] data =
+        Util.getUtf8Bytes(
+            SyntheticManifestGenerator.createHlsMediaPlaylist(
+                /* mediaSequence= */ 1,
+                SEGMENT_COUNT,
+                SEGMENT_DURATION_MS,
+                /* hasEndTag= */ false));
+    HlsPlaylistParserFactory playlistParserFactory = new DefaultHlsPlaylistParserFactory();
+    DefaultHlsPlaylistTracker playlistTracker =
+        new DefaultHlsPlaylistTracker(
+            dataType -> new FakeDataSource(),
+            new DefaultLoadErrorHandlingPolicy(),
+            playlistParserFactory);
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist) parse(playlistParserFactory.createPlaylistParser(), previousData);
+    HlsMediaPlaylist refreshedPlaylist =
+        playlistTracker.getLatestPlaylistSnapshot(
+            previousPlaylist,
+            (HlsMediaPlaylist)
+                parse(
+                    playlistParserFactory.createPlaylistParser(
+                        HlsMultivariantPlaylist.EMPTY, previousPlaylist),
+                    data));
+    assertThat(refreshedPlaylist.segments).hasSize(SEGMENT_COUNT);
+    assertThat(refreshedPlaylist.startTimeUs).isEqualTo(SEGMENT_DURATION_MS * 1000);
+
+    ManifestBenchmark.Result result =
+        new ManifestBenchmark(
+                () -> {
+                  HlsMediaPlaylist oldPlaylist =
+                      (HlsMediaPlaylist)
+                          parse(playlistParserFactory.createPlaylistParser(), previousData);
+                  ParsingLoadable.Parser<HlsPlaylist> parser =
+                      playlistParserFactory.createPlaylistParser(
+                          HlsMultivariantPlaylist.EMPTY, oldPlaylist);
+                  return () ->
+                      playlistTracker.getLatestPlaylistSnapshot(
+                          oldPlaylist, (HlsMediaPlaylist) parse(parser, data));
+                })
+            .run();
+
+    assertAllocationsWithinBudget(
+        "Media playlist refresh", result, /* maxAllocatedBytes= */ 600L * SEGMENT_COUNT);
+  }
+
+  @Test
+  public void parseMultivariantPlaylist() throws IOException {
+    byte[] data =
+        Util.getUtf8Bytes(
+            SyntheticManifestGenerator.createHlsMultivariantPlaylist(
+                /* variantCount= */ 50,
+                /* audioRenditionCount= */ 8,
+                /* subtitleRenditionCount= */ 8));
+    HlsMultivariantPlaylist playlist =
+        (HlsMultivariantPlaylist) parse(new HlsPlaylistParser(), data);
+    assertThat(playlist.variants).hasSize(50);
+
+    ManifestBenchmark.Result result =
+        new ManifestBenchmark(
+                () -> {
+                  HlsPlaylistParser parser = new HlsPlaylistParser();
+                  return () -> parse(parser, data);
+                })
+            .run();
+
+    assertAllocationsWithinBudget(
+        "Multivariant playlist", result, /* maxAllocatedBytes= */ 700_000);
+  }
+
+  private static HlsPlaylist parse(ParsingLoadable.Parser<HlsPlaylist> parser, byte[] data)
+      throws IOException {
+    return parser.parse(PLAYLIST_URI, new ByteArrayInputStream(data));
+  }
+}
@@ -63,6 +63,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -143,6 +144,7 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
   private @AmrExtractor.Flags int amrFlags;
   private @FlacExtractor.Flags int flacFlags;
   private @MatroskaExtractor.Flags int matroskaFlags;
+  @Nullable private SeekIndexCache seekIndexCache;
   private @Mp4Extractor.Flags int mp4Flags;
   private @FragmentedMp4Extractor.Flags int fragmentedMp4Flags;
   private @Mp3Extractor.Flags int mp3Flags;
@@ -151,6 +153,7 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
   // TODO (b/261183220): Initialize tsSubtitleFormats in constructor once shrinking bug is fixed.
   @Nullable private ImmutableList<Format> tsSubtitleFormats;
   private int tsTimestampSearchBytes;
+  @Nullable private Executor tsParsingExecutor;
   private boolean textTrackTranscodingEnabled;
   private SubtitleParser.Factory subtitleParserFactory;
   private @JpegExtractor.Flags int jpegFlags;
@@ -261,6 +264,26 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     return this;
   }
 
+  /**
+   * Sets the {@link SeekIndexCache} used by {@link MatroskaExtractor} and {@link TsExtractor}
+   * instances created by the factory. The default value is null.
+   *
+   * <p>The cache isn't used by {@link TsExtractor} instances if the mode set by {@link
+   * #setTsExtractorMode(int)} is {@link TsExtractor#MODE_HLS}.
+   *
+   * @see MatroskaExtractor#MatroskaExtractor(int, SeekIndexCache)
+   * @see TsExtractor#TsExtractor(int, TimestampAdjuster, TsPayloadReader.Factory, int, Executor,
+   *     SeekIndexCache)
+   * @param seekIndexCache The {@link SeekIndexCache} to use, or null to not cache seek indices.
+   * @return The factory, for convenience.
+   */
+  @CanIgnoreReturnValue
+  public synchronized DefaultExtractorsFactory setSeekIndexCache(
+      @Nullable SeekIndexCache seekIndexCache) {
+    this.seekIndexCache = seekIndexCache;
+    return this;
+  }
+
   /**
    * Sets flags for {@link Mp4Extractor} instances created by the factory.
    *
@@ -358,6 +381,25 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     return this;
   }
 
+  /**
+   * Sets the {@link Executor} on which {@link TsExtractor} instances created by the factory parse
+   * the elementary streams of PES payloads. The default value is {@code null}, which means that
+   * elementary streams are parsed on the loading thread.
+   *
+   * <p>The executor isn't used if the mode set by {@link #setTsExtractorMode(int)} is {@link
+   * TsExtractor#MODE_HLS}.
+   *
+   * @see TsExtractor#TsExtractor(int, TimestampAdjuster, TsPayloadReader.Factory, int, Executor)
+   * @param parsingExecutor The {@link Executor}, or null to parse on the loading thread.
+   * @return The factory, for convenience.
+   */
+  @CanIgnoreReturnValue
+  public synchronized DefaultExtractorsFactory setTsExtractorParsingExecutor(
+      @Nullable Executor parsingExecutor) {
+    tsParsingExecutor = parsingExecutor;
+    return this;
+  }
+
   /**
    * Enables transcoding of text track samples to {@link MimeTypes#APPLICATION_MEDIA3_CUES} before
    * the data is emitted to {@link TrackOutput}.
@@ -486,7 +528,7 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
         extractors.add(new FlvExtractor());
         break;
       case FileTypes.MATROSKA:
-        extractors.add(new MatroskaExtractor(matroskaFlags));
+        extractors.add(new MatroskaExtractor(matroskaFlags, seekIndexCache));
         break;
       case FileTypes.MP3:
         extractors.add(
@@ -518,7 +560,9 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
                 tsMode,
                 new TimestampAdjuster(0),
                 new DefaultTsPayloadReaderFactory(tsFlags, tsSubtitleFormats),
-                tsTimestampSearchBytes));
+                tsTimestampSearchBytes,
+                tsMode == TsExtractor.MODE_HLS ? null : tsParsingExecutor,
+                tsMode == TsExtractor.MODE_HLS ? null : seekIndexCache));
         break;
       case FileTypes.WAV:
         extractors.add(new WavExtractor());
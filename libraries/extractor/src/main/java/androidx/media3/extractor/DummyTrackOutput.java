@@ -25,6 +25,7 @@ import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.UnstableApi;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** A fake {@link TrackOutput} implementation. */
 @UnstableApi
@@ -64,6 +65,11 @@ public final class DummyTrackOutput implements TrackOutput {
     data.skipBytes(length);
   }
 
+  @Override
+  public void sampleData(ByteBuffer data, int length, @SampleDataPart int sampleDataPart) {
+    data.position(data.position() + length);
+  }
+
   @Override
   public void sampleMetadata(
       long timeUs,
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.AtomicFile;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link SeekIndexCache} that stores each index in its own file in a directory.
+ *
+ * <p>The directory can be placed alongside a media cache directory so that seek indices persist for
+ * as long as the media does, but it must not be the media cache directory itself.
+ *
+ * <p>The total size of the index files is capped. When storing an index would exceed the cap, the
+ * least recently used indices are deleted. Use is tracked through the files' last modified times,
+ * so it persists across instances.
+ *
+ * <p>Errors reading or writing index files are logged and otherwise ignored, in which case the
+ * extractor reads the index from the media as if it weren't cached.
+ */
+@UnstableApi
+public final class FileSeekIndexCache implements SeekIndexCache {
+
+  /** The default maximum total size of the index files, in bytes. */
+  public static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+  private static final String TAG = "FileSeekIndexCache";
+
+  private static final int VERSION = 1;
+  private static final String FILE_SUFFIX = ".idx";
+
+  private final File directory;
+  private final long maxBytes;
+
+  /**
+   * Index file lengths keyed by file name, ordered from least to most recently used, or null if the
+   * directory hasn't been listed yet.
+   */
+  @Nullable private LinkedHashMap<String, Long> fileLengths;
+
+  private long totalLength;
+
+  /**
+   * Creates an instance whose index files take at most {@link #DEFAULT_MAX_BYTES}.
+   *
+   * @param directory The directory in which to store index files. It's created if it doesn't exist.
+   */
+  public FileSeekIndexCache(File directory) {
+    this(directory, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param directory The directory in which to store index files. It's created if it doesn't exist.
+   * @param maxBytes The maximum total size of the index files, in bytes.
+   */
+  public FileSeekIndexCache(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  @Override
+  @Nullable
+  public synchronized ChunkIndex get(String key) {
+    File file = getFile(key);
+    AtomicFile atomicFile = new AtomicFile(file);
+    if (!atomicFile.exists()) {
+      return null;
+    }
+    @Nullable DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+      if (input.readInt() != VERSION || !key.equals(input.readUTF())) {
+        return null;
+      }
+      int length = input.readInt();
+      if (length <= 0) {
+        return null;
+      }
+      int[] sizes = new int[length];
+      long[] offsets = new long[length];
+      long[] durationsUs = new long[length];
+      long[] timesUs = new long[length];
+      for (int i = 0; i < length; i++) {
+        sizes[i] = input.readInt();
+        offsets[i] = input.readLong();
+        durationsUs[i] = input.readLong();
+        timesUs[i] = input.readLong();
+      }
+      onFileUsed(file);
+      return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read seek index", e);
+      atomicFile.delete();
+      onFileDeleted(file);
+      return null;
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  @Override
+  public synchronized void put(String key, ChunkIndex chunkIndex) {
+    File file = getFile(key);
+    AtomicFile atomicFile = new AtomicFile(file);
+    @Nullable DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeUTF(key);
+      output.writeInt(chunkIndex.length);
+      for (int i = 0; i < chunkIndex.length; i++) {
+        output.writeInt(chunkIndex.sizes[i]);
+        output.writeLong(chunkIndex.offsets[i]);
+        output.writeLong(chunkIndex.durationsUs[i]);
+        output.writeLong(chunkIndex.timesUs[i]);
+      }
+      atomicFile.endWrite(output);
+      output = null;
+      onFileWritten(file);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write seek index", e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  private File getFile(String key) {
+    // Keys are chosen by extractors, so encode them to obtain a valid file name.
+    String fileName = Util.toHexString(Util.getUtf8Bytes(key)) + FILE_SUFFIX;
+    return new File(directory, fileName);
+  }
+
+  private void onFileUsed(File file) {
+    LinkedHashMap<String, Long> fileLengths = getFileLengths();
+    // Reinsert the file to move it to the most recently used end.
+    @Nullable Long length = fileLengths.remove(file.getName());
+    if (length == null) {
+      length = file.length();
+      totalLength += length;
+    }
+    fileLengths.put(file.getName(), length);
+    // Persist the use for other instances. Failure only affects the eviction order.
+    file.setLastModified(System.currentTimeMillis());
+  }
+
+  private void onFileDeleted(File file) {
+    @Nullable Long length = getFileLengths().remove(file.getName());
+    if (length != null) {
+      totalLength -= length;
+    }
+  }
+
+  private void onFileWritten(File file) {
+    onFileDeleted(file);
+    long length = file.length();
+    LinkedHashMap<String, Long> fileLengths = getFileLengths();
+    fileLengths.put(file.getName(), length);
+    totalLength += length;
+    Iterator<Map.Entry<String, Long>> iterator = fileLengths.entrySet().iterator();
+    while (totalLength > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      if (entry.getKey().equals(file.getName())) {
+        // Keep the index that was just written, even if it exceeds the cap on its own.
+        continue;
+      }
+      new AtomicFile(new File(directory, entry.getKey())).delete();
+      totalLength -= entry.getValue();
+      iterator.remove();
+    }
+  }
+
+  private LinkedHashMap<String, Long> getFileLengths() {
+    if (fileLengths != null) {
+      return fileLengths;
+    }
+    LinkedHashMap<String, Long> fileLengths = new LinkedHashMap<>();
+    totalLength = 0;
+    @Nullable File[] files = directory.listFiles();
+    if (files != null) {
+      Arrays.sort(
+          files, (file1, file2) -> Long.compare(file1.lastModified(), file2.lastModified()));
+      for (File file : files) {
+        if (file.getName().endsWith(FILE_SUFFIX)) {
+          long length = file.length();
+          fileLengths.put(file.getName(), length);
+          totalLength += length;
+        }
+      }
+    }
+    this.fileLengths = fileLengths;
+    return fileLengths;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+
+/**
+ * A cache of seek indices, keyed by the identity of the content they index.
+ *
+ * <p>Extractors that would otherwise have to read an index from a different part of the input
+ * before they can output a seekable {@link SeekMap} (for example the Matroska Cues element, which
+ * is often stored at the end of the file) can use a cache to skip that read when the same content
+ * is extracted again.
+ *
+ * <p>Implementations must be thread-safe, as a cache may be shared by extractors running on
+ * different loading threads.
+ */
+@UnstableApi
+public interface SeekIndexCache {
+
+  /**
+   * Returns the cached index for the given key, or null if there isn't one.
+   *
+   * @param key A key identifying the content, which is derived from the content by the extractor.
+   * @return The cached {@link ChunkIndex}, or null.
+   */
+  @Nullable
+  ChunkIndex get(String key);
+
+  /**
+   * Caches an index, replacing any index previously cached for the same key.
+   *
+   * @param key A key identifying the content, which is derived from the content by the extractor.
+   * @param chunkIndex The {@link ChunkIndex} to cache.
+   */
+  void put(String key, ChunkIndex chunkIndex);
+}
@@ -30,6 +30,7 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /** Receives track level data extracted by an {@link Extractor}. */
@@ -169,6 +170,14 @@ public interface TrackOutput {
     sampleData(data, length, SAMPLE_DATA_PART_MAIN);
   }
 
+  /**
+   * Equivalent to {@link #sampleData(ByteBuffer, int, int) sampleData(data, length,
+   * SAMPLE_DATA_PART_MAIN)}.
+   */
+  default void sampleData(ByteBuffer data, int length) {
+    sampleData(data, length, SAMPLE_DATA_PART_MAIN);
+  }
+
   /**
    * Called to write sample data to the output.
    *
@@ -194,6 +203,35 @@ public interface TrackOutput {
    */
   void sampleData(ParsableByteArray data, int length, @SampleDataPart int sampleDataPart);
 
+  /**
+   * Called to write sample data to the output.
+   *
+   * <p>This allows callers that already hold sample data in a {@link ByteBuffer}, including a
+   * direct buffer, to hand it to the output without first copying it into a {@link
+   * ParsableByteArray}. The default implementation wraps the backing array of {@code data} if it
+   * has one, and copies the data otherwise. Outputs that store sample data should override it to
+   * copy from {@code data} directly.
+   *
+   * @param data A {@link ByteBuffer} from which to read the sample data. Its position is advanced
+   *     by {@code length}.
+   * @param length The number of bytes to read, starting from {@code data.position()}.
+   * @param sampleDataPart The part of the sample data to which this call corresponds.
+   */
+  default void sampleData(ByteBuffer data, int length, @SampleDataPart int sampleDataPart) {
+    ParsableByteArray wrapper;
+    if (data.hasArray()) {
+      int position = data.arrayOffset() + data.position();
+      wrapper = new ParsableByteArray(data.array(), /* limit= */ position + length);
+      wrapper.setPosition(position);
+      data.position(data.position() + length);
+    } else {
+      byte[] bytes = new byte[length];
+      data.get(bytes);
+      wrapper = new ParsableByteArray(bytes);
+    }
+    sampleData(wrapper, length, sampleDataPart);
+  }
+
   /**
    * Called when metadata associated with a sample has been extracted from the stream.
    *
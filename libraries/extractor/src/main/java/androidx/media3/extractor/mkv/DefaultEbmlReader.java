@@ -15,12 +15,14 @@
  */
 package androidx.media3.extractor.mkv;
 
+import static java.lang.Math.max;
 import static java.lang.annotation.ElementType.TYPE_USE;
 
 import androidx.annotation.IntDef;
 import androidx.media3.common.C;
 import androidx.media3.common.ParserException;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.Util;
 import androidx.media3.extractor.ExtractorInput;
 import java.io.EOFException;
 import java.io.IOException;
@@ -28,7 +30,7 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
-import java.util.ArrayDeque;
+import java.util.Arrays;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
@@ -52,10 +54,19 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   private static final int VALID_FLOAT32_ELEMENT_SIZE_BYTES = 4;
   private static final int VALID_FLOAT64_ELEMENT_SIZE_BYTES = 8;
 
+  private static final int INITIAL_MASTER_ELEMENTS_STACK_CAPACITY = 8;
+
   private final byte[] scratch;
-  private final ArrayDeque<MasterElement> masterElementsStack;
   private final VarintReader varintReader;
 
+  // A stack of the ids and end positions of the master elements being read, used to track when the
+  // current master element ends so that EbmlProcessor.endMasterElement(int) can be called.
+  private int[] masterElementsStackIds;
+  private long[] masterElementsStackEndPositions;
+  private int masterElementsStackSize;
+
+  private byte[] stringScratch;
+
   private @MonotonicNonNull EbmlProcessor processor;
   private @ElementState int elementState;
   private int elementId;
@@ -63,8 +74,10 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
   public DefaultEbmlReader() {
     scratch = new byte[8];
-    masterElementsStack = new ArrayDeque<>();
     varintReader = new VarintReader();
+    masterElementsStackIds = new int[INITIAL_MASTER_ELEMENTS_STACK_CAPACITY];
+    masterElementsStackEndPositions = new long[INITIAL_MASTER_ELEMENTS_STACK_CAPACITY];
+    stringScratch = Util.EMPTY_BYTE_ARRAY;
   }
 
   @Override
@@ -75,7 +88,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   @Override
   public void reset() {
     elementState = ELEMENT_STATE_READ_ID;
-    masterElementsStack.clear();
+    masterElementsStackSize = 0;
     varintReader.reset();
   }
 
@@ -83,9 +96,10 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   public boolean read(ExtractorInput input) throws IOException {
     Assertions.checkStateNotNull(processor);
     while (true) {
-      MasterElement head = masterElementsStack.peek();
-      if (head != null && input.getPosition() >= head.elementEndPosition) {
-        processor.endMasterElement(masterElementsStack.pop().elementId);
+      if (masterElementsStackSize > 0
+          && input.getPosition() >= masterElementsStackEndPositions[masterElementsStackSize - 1]) {
+        masterElementsStackSize--;
+        processor.endMasterElement(masterElementsStackIds[masterElementsStackSize]);
         return true;
       }
 
@@ -112,7 +126,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         case EbmlProcessor.ELEMENT_TYPE_MASTER:
           long elementContentPosition = input.getPosition();
           long elementEndPosition = elementContentPosition + elementContentSize;
-          masterElementsStack.push(new MasterElement(elementId, elementEndPosition));
+          pushMasterElement(elementId, elementEndPosition);
           processor.startMasterElement(elementId, elementContentPosition, elementContentSize);
           elementState = ELEMENT_STATE_READ_ID;
           return true;
@@ -156,6 +170,18 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     }
   }
 
+  private void pushMasterElement(int elementId, long elementEndPosition) {
+    if (masterElementsStackSize == masterElementsStackIds.length) {
+      int newCapacity = masterElementsStackSize * 2;
+      masterElementsStackIds = Arrays.copyOf(masterElementsStackIds, newCapacity);
+      masterElementsStackEndPositions =
+          Arrays.copyOf(masterElementsStackEndPositions, newCapacity);
+    }
+    masterElementsStackIds[masterElementsStackSize] = elementId;
+    masterElementsStackEndPositions[masterElementsStackSize] = elementEndPosition;
+    masterElementsStackSize++;
+  }
+
   /**
    * Does a byte by byte search to try and find the next level 1 element. This method is called if
    * some invalid data is encountered in the parser.
@@ -228,11 +254,14 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * @return The read string value.
    * @throws IOException If an error occurs reading from the input.
    */
-  private static String readString(ExtractorInput input, int byteLength) throws IOException {
+  private String readString(ExtractorInput input, int byteLength) throws IOException {
     if (byteLength == 0) {
       return "";
     }
-    byte[] stringBytes = new byte[byteLength];
+    if (stringScratch.length < byteLength) {
+      stringScratch = new byte[max(byteLength, stringScratch.length * 2)];
+    }
+    byte[] stringBytes = stringScratch;
     input.readFully(stringBytes, 0, byteLength);
     // Remove zero padding.
     int trimmedLength = byteLength;
@@ -241,19 +270,4 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     }
     return new String(stringBytes, 0, trimmedLength);
   }
-
-  /**
-   * Used in {@link #masterElementsStack} to track when the current master element ends, so that
-   * {@link EbmlProcessor#endMasterElement(int)} can be called.
-   */
-  private static final class MasterElement {
-
-    private final int elementId;
-    private final long elementEndPosition;
-
-    private MasterElement(int elementId, long elementEndPosition) {
-      this.elementId = elementId;
-      this.elementEndPosition = elementEndPosition;
-    }
-  }
 }
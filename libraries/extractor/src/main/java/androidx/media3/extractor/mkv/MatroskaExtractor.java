@@ -54,6 +54,7 @@ import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.HevcConfig;
 import androidx.media3.extractor.MpegAudioUtil;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndexCache;
 import androidx.media3.extractor.SeekMap;
 import androidx.media3.extractor.TrackOutput;
 import androidx.media3.extractor.TrueHdSampleRechunker;
@@ -168,6 +169,7 @@ public class MatroskaExtractor implements Extractor {
   private static final int ID_INFO = 0x1549A966;
   private static final int ID_TIMECODE_SCALE = 0x2AD7B1;
   private static final int ID_DURATION = 0x4489;
+  private static final int ID_SEGMENT_UID = 0x73A4;
   private static final int ID_CLUSTER = 0x1F43B675;
   private static final int ID_TIME_CODE = 0xE7;
   private static final int ID_SIMPLE_BLOCK = 0xA3;
@@ -404,6 +406,7 @@ public class MatroskaExtractor implements Extractor {
   private final VarintReader varintReader;
   private final SparseArray<Track> tracks;
   private final boolean seekForCuesEnabled;
+  @Nullable private final SeekIndexCache seekIndexCache;
 
   // Temporary arrays.
   private final ParsableByteArray nalStartCode;
@@ -414,7 +417,6 @@ public class MatroskaExtractor implements Extractor {
   private final ParsableByteArray sampleStrippedBytes;
   private final ParsableByteArray subtitleSample;
   private final ParsableByteArray encryptionInitializationVector;
-  private final ParsableByteArray encryptionSubsampleData;
   private final ParsableByteArray supplementalData;
   private @MonotonicNonNull ByteBuffer encryptionSubsampleDataBuffer;
 
@@ -423,6 +425,7 @@ public class MatroskaExtractor implements Extractor {
   private long timecodeScale = C.TIME_UNSET;
   private long durationTimecode = C.TIME_UNSET;
   private long durationUs = C.TIME_UNSET;
+  @Nullable private byte[] segmentUid;
 
   // The track corresponding to the current TrackEntry element, or null.
   @Nullable private Track currentTrack;
@@ -459,6 +462,9 @@ public class MatroskaExtractor implements Extractor {
   private int blockAdditionalId;
   private boolean blockHasReferenceBlock;
   private long blockGroupDiscardPaddingNs;
+  private long blockAdditionsEndPosition;
+  private long blockMoreEndPosition;
+  private boolean blockSupplementalDataWritten;
 
   // Sample writing state.
   private int sampleBytesRead;
@@ -479,12 +485,30 @@ public class MatroskaExtractor implements Extractor {
   }
 
   public MatroskaExtractor(@Flags int flags) {
-    this(new DefaultEbmlReader(), flags);
+    this(flags, /* seekIndexCache= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param flags Flags that control the extractor's behavior.
+   * @param seekIndexCache A {@link SeekIndexCache} in which to look up and store the index built
+   *     from the Cues element, or null. Cached indices are only used for content that has a
+   *     SegmentUID, and avoid seeking to the Cues element when it's after the first cluster.
+   */
+  public MatroskaExtractor(@Flags int flags, @Nullable SeekIndexCache seekIndexCache) {
+    this(new DefaultEbmlReader(), flags, seekIndexCache);
   }
 
   /* package */ MatroskaExtractor(EbmlReader reader, @Flags int flags) {
+    this(reader, flags, /* seekIndexCache= */ null);
+  }
+
+  /* package */ MatroskaExtractor(
+      EbmlReader reader, @Flags int flags, @Nullable SeekIndexCache seekIndexCache) {
     this.reader = reader;
     this.reader.init(new InnerEbmlProcessor());
+    this.seekIndexCache = seekIndexCache;
     seekForCuesEnabled = (flags & FLAG_DISABLE_SEEK_FOR_CUES) == 0;
     varintReader = new VarintReader();
     tracks = new SparseArray<>();
@@ -496,7 +520,6 @@ public class MatroskaExtractor implements Extractor {
     sampleStrippedBytes = new ParsableByteArray();
     subtitleSample = new ParsableByteArray();
     encryptionInitializationVector = new ParsableByteArray(ENCRYPTION_IV_SIZE);
-    encryptionSubsampleData = new ParsableByteArray();
     supplementalData = new ParsableByteArray();
     blockSampleSizes = new int[1];
   }
@@ -631,6 +654,7 @@ public class MatroskaExtractor implements Extractor {
       case ID_LANGUAGE:
         return EbmlProcessor.ELEMENT_TYPE_STRING;
       case ID_SEEK_ID:
+      case ID_SEGMENT_UID:
       case ID_BLOCK_ADD_ID_EXTRA_DATA:
       case ID_CONTENT_COMPRESSION_SETTINGS:
       case ID_CONTENT_ENCRYPTION_KEY_ID:
@@ -704,8 +728,15 @@ public class MatroskaExtractor implements Extractor {
         if (!sentSeekMap) {
           // We need to build cues before parsing the cluster.
           if (seekForCuesEnabled && cuesContentPosition != C.INDEX_UNSET) {
-            // We know where the Cues element is located. Seek to request it.
-            seekForCues = true;
+            @Nullable ChunkIndex cachedChunkIndex = getCachedChunkIndex();
+            if (cachedChunkIndex != null) {
+              // The Cues element has been parsed before. Use the cached index instead of seeking.
+              extractorOutput.seekMap(cachedChunkIndex);
+              sentSeekMap = true;
+            } else {
+              // We know where the Cues element is located. Seek to request it.
+              seekForCues = true;
+            }
           } else {
             // We don't know where the Cues element is located. It's most likely omitted. Allow
             // playback, but disable seeking.
@@ -717,6 +748,15 @@ public class MatroskaExtractor implements Extractor {
       case ID_BLOCK_GROUP:
         blockHasReferenceBlock = false;
         blockGroupDiscardPaddingNs = 0L;
+        blockAdditionsEndPosition = C.INDEX_UNSET;
+        blockMoreEndPosition = C.INDEX_UNSET;
+        blockSupplementalDataWritten = false;
+        break;
+      case ID_BLOCK_ADDITIONS:
+        blockAdditionsEndPosition = contentPosition + contentSize;
+        break;
+      case ID_BLOCK_MORE:
+        blockMoreEndPosition = contentPosition + contentSize;
         break;
       case ID_CONTENT_ENCODING:
         // TODO: check and fail if more than one content encoding is present.
@@ -764,8 +804,12 @@ public class MatroskaExtractor implements Extractor {
         break;
       case ID_CUES:
         if (!sentSeekMap) {
-          extractorOutput.seekMap(buildSeekMap(cueTimesUs, cueClusterPositions));
+          SeekMap seekMap = buildSeekMap(cueTimesUs, cueClusterPositions);
+          extractorOutput.seekMap(seekMap);
           sentSeekMap = true;
+          if (seekMap instanceof ChunkIndex) {
+            maybeCacheChunkIndex((ChunkIndex) seekMap);
+          }
         } else {
           // We have already built the cues. Ignore.
         }
@@ -780,12 +824,13 @@ public class MatroskaExtractor implements Extractor {
         Track track = tracks.get(blockTrackNumber);
         track.assertOutputInitialized();
         if (blockGroupDiscardPaddingNs > 0L && CODEC_ID_OPUS.equals(track.codecId)) {
-          // For Opus, attach DiscardPadding to the block group samples as supplemental data.
-          supplementalData.reset(
-              ByteBuffer.allocate(8)
-                  .order(ByteOrder.LITTLE_ENDIAN)
-                  .putLong(blockGroupDiscardPaddingNs)
-                  .array());
+          // For Opus, attach DiscardPadding to the block group samples as supplemental data, in
+          // little endian byte order.
+          supplementalData.reset(/* limit= */ 8);
+          byte[] discardPaddingBytes = supplementalData.getData();
+          for (int i = 0; i < 8; i++) {
+            discardPaddingBytes[i] = (byte) (blockGroupDiscardPaddingNs >>> (i * 8));
+          }
         }
 
         // Commit sample metadata.
@@ -1178,6 +1223,10 @@ public class MatroskaExtractor implements Extractor {
         seekEntryIdBytes.setPosition(0);
         seekEntryId = (int) seekEntryIdBytes.readUnsignedInt();
         break;
+      case ID_SEGMENT_UID:
+        segmentUid = new byte[contentSize];
+        input.readFully(segmentUid, 0, contentSize);
+        break;
       case ID_BLOCK_ADD_ID_EXTRA_DATA:
         handleBlockAddIDExtraData(getCurrentTrack(id), input, contentSize);
         break;
@@ -1379,8 +1428,35 @@ public class MatroskaExtractor implements Extractor {
       throws IOException {
     if (blockAdditionalId == BLOCK_ADDITIONAL_TYPE_ITU_T_35
         || blockAdditionalId == BLOCK_ADDITIONAL_TYPE_LCEVC) {
-      supplementalData.reset(contentSize);
-      input.readFully(supplementalData.getData(), 0, contentSize);
+      if (blockSupplementalDataWritten) {
+        // Data written to the output can't be replaced. This only happens if a BlockGroup has more
+        // than one BlockAdditions element, which isn't valid.
+        input.skipFully(contentSize);
+      } else if ((blockFlags & C.BUFFER_FLAG_HAS_SUPPLEMENTAL_DATA) != 0
+          && blockSampleCount == 1
+          && track.trueHdSampleRechunker == null
+          && blockMoreEndPosition == blockAdditionsEndPosition) {
+        // The sample data has already been written, and this is the last BlockMore, so no other
+        // supported block additional data can replace this one. It can be written directly from
+        // the input instead of being copied into supplementalData.
+        track.assertOutputInitialized();
+        int bytesRemaining = contentSize;
+        while (bytesRemaining > 0) {
+          bytesRemaining -=
+              track.output.sampleData(
+                  input,
+                  bytesRemaining,
+                  /* allowEndOfInput= */ false,
+                  TrackOutput.SAMPLE_DATA_PART_SUPPLEMENTAL);
+        }
+        blockSampleSizes[0] += contentSize;
+        blockSupplementalDataWritten = true;
+        // Discard data copied from an earlier BlockMore, which this one replaces.
+        supplementalData.reset(/* limit= */ 0);
+      } else {
+        supplementalData.reset(contentSize);
+        input.readFully(supplementalData.getData(), 0, contentSize);
+      }
     } else {
       // Unhandled block additional data.
       input.skipFully(contentSize);
@@ -1584,9 +1660,9 @@ public class MatroskaExtractor implements Extractor {
               encryptionSubsampleDataBuffer.putShort((short) finalPartitionSize);
               encryptionSubsampleDataBuffer.putInt(0);
             }
-            encryptionSubsampleData.reset(encryptionSubsampleDataBuffer.array(), subsampleDataSize);
+            encryptionSubsampleDataBuffer.position(0);
             output.sampleData(
-                encryptionSubsampleData,
+                encryptionSubsampleDataBuffer,
                 subsampleDataSize,
                 TrackOutput.SAMPLE_DATA_PART_ENCRYPTION);
             sampleBytesWritten += subsampleDataSize;
@@ -1858,6 +1934,40 @@ public class MatroskaExtractor implements Extractor {
     return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
   }
 
+  /**
+   * Returns the key identifying the segment in the {@link SeekIndexCache}, or null if the segment
+   * can't be identified.
+   */
+  @Nullable
+  private String getSeekIndexCacheKey() {
+    if (segmentUid == null || segmentUid.length == 0 || cuesContentPosition == C.INDEX_UNSET) {
+      return null;
+    }
+    // The SegmentUID should be unique, but include the layout of the segment to guard against
+    // remuxed files that keep the SegmentUID of their source.
+    return "mkv:"
+        + Util.toHexString(segmentUid)
+        + ":"
+        + segmentContentPosition
+        + ":"
+        + segmentContentSize
+        + ":"
+        + cuesContentPosition;
+  }
+
+  @Nullable
+  private ChunkIndex getCachedChunkIndex() {
+    @Nullable String key = getSeekIndexCacheKey();
+    return seekIndexCache != null && key != null ? seekIndexCache.get(key) : null;
+  }
+
+  private void maybeCacheChunkIndex(ChunkIndex chunkIndex) {
+    @Nullable String key = getSeekIndexCacheKey();
+    if (seekIndexCache != null && key != null) {
+      seekIndexCache.put(key, chunkIndex);
+    }
+  }
+
   /**
    * Updates the position of the holder to Cues element's position if the extractor configuration
    * permits use of master seek entry. After building Cues sets the holder's position back to where
@@ -19,6 +19,7 @@ import static androidx.media3.common.MimeTypes.getMimeTypeFromMp4ObjectType;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import android.util.Pair;
 import androidx.annotation.Nullable;
@@ -132,30 +133,65 @@ import java.util.List;
         continue;
       }
       @Nullable
-      Track track =
-          modifyTrackFunction.apply(
-              parseTrak(
-                  atom,
-                  checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
-                  duration,
-                  drmInitData,
-                  ignoreEditLists,
-                  isQuickTime));
-      if (track == null) {
-        continue;
+      TrackSampleTable trackSampleTable =
+          parseTrakSampleTable(
+              atom,
+              checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
+              gaplessInfoHolder,
+              duration,
+              drmInitData,
+              ignoreEditLists,
+              isQuickTime,
+              modifyTrackFunction);
+      if (trackSampleTable != null) {
+        trackSampleTables.add(trackSampleTable);
       }
-      Atom.ContainerAtom stblAtom =
-          checkNotNull(
-              checkNotNull(
-                      checkNotNull(atom.getContainerAtomOfType(Atom.TYPE_mdia))
-                          .getContainerAtomOfType(Atom.TYPE_minf))
-                  .getContainerAtomOfType(Atom.TYPE_stbl));
-      TrackSampleTable trackSampleTable = parseStbl(track, stblAtom, gaplessInfoHolder);
-      trackSampleTables.add(trackSampleTable);
     }
     return trackSampleTables;
   }
 
+  /**
+   * Parses a trak atom and its sample table (defined in ISO/IEC 14496-12).
+   *
+   * @param trak Atom to decode.
+   * @param mvhd Movie header atom, used to get the timescale.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @param duration The duration in units of the timescale declared in the mvhd atom, or {@link
+   *     C#TIME_UNSET} if the duration should be parsed from the tkhd atom.
+   * @param drmInitData {@link DrmInitData} to be included in the format, or {@code null}.
+   * @param ignoreEditLists Whether to ignore any edit lists in the trak box.
+   * @param isQuickTime True for QuickTime media. False otherwise.
+   * @param modifyTrackFunction A function to apply to the {@link Track} in the result.
+   * @return The {@link TrackSampleTable}, or null if the track should be ignored.
+   * @throws ParserException Thrown if the trak atom can't be parsed.
+   */
+  @Nullable
+  public static TrackSampleTable parseTrakSampleTable(
+      Atom.ContainerAtom trak,
+      Atom.LeafAtom mvhd,
+      GaplessInfoHolder gaplessInfoHolder,
+      long duration,
+      @Nullable DrmInitData drmInitData,
+      boolean ignoreEditLists,
+      boolean isQuickTime,
+      Function<@NullableType Track, @NullableType Track> modifyTrackFunction)
+      throws ParserException {
+    @Nullable
+    Track track =
+        modifyTrackFunction.apply(
+            parseTrak(trak, mvhd, duration, drmInitData, ignoreEditLists, isQuickTime));
+    if (track == null) {
+      return null;
+    }
+    Atom.ContainerAtom stblAtom =
+        checkNotNull(
+            checkNotNull(
+                    checkNotNull(trak.getContainerAtomOfType(Atom.TYPE_mdia))
+                        .getContainerAtomOfType(Atom.TYPE_minf))
+                .getContainerAtomOfType(Atom.TYPE_stbl));
+    return parseStbl(track, stblAtom, gaplessInfoHolder);
+  }
+
   /**
    * Parses a udta atom.
    *
@@ -502,86 +538,124 @@ import java.util.List;
       flags = rechunkedResults.flags;
       duration = rechunkedResults.duration;
     } else {
-      offsets = new long[sampleCount];
-      sizes = new int[sampleCount];
-      timestamps = new long[sampleCount];
-      flags = new int[sampleCount];
-      long offset = 0;
+      // Record the offset and first sample index of each chunk that contains samples.
+      long[] chunkOffsetsBytes = new long[chunkIterator.length];
+      int[] chunkFirstSampleIndices = new int[chunkIterator.length];
+      int chunkCount = 0;
+      int chunkFirstSampleIndex = 0;
       int remainingSamplesInChunk = 0;
-
-      for (int i = 0; i < sampleCount; i++) {
-        // Advance to the next chunk if necessary.
-        boolean chunkDataComplete = true;
-        while (remainingSamplesInChunk == 0 && (chunkDataComplete = chunkIterator.moveNext())) {
-          offset = chunkIterator.offset;
-          remainingSamplesInChunk = chunkIterator.numSamples;
-        }
-        if (!chunkDataComplete) {
-          Log.w(TAG, "Unexpected end of chunk data");
-          sampleCount = i;
-          offsets = Arrays.copyOf(offsets, sampleCount);
-          sizes = Arrays.copyOf(sizes, sampleCount);
-          timestamps = Arrays.copyOf(timestamps, sampleCount);
-          flags = Arrays.copyOf(flags, sampleCount);
-          break;
-        }
-
-        // Add on the timestamp offset if ctts is present.
-        if (ctts != null) {
-          while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
-            remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
-            // The BMFF spec (ISO/IEC 14496-12) states that sample offsets should be unsigned
-            // integers in version 0 ctts boxes, however some streams violate the spec and use
-            // signed integers instead. It's safe to always decode sample offsets as signed integers
-            // here, because unsigned integers will still be parsed correctly (unless their top bit
-            // is set, which is never true in practice because sample offsets are always small).
-            timestampOffset = ctts.readInt();
-            remainingTimestampOffsetChanges--;
-          }
-          remainingSamplesAtTimestampOffset--;
+      while (chunkFirstSampleIndex < sampleCount && chunkIterator.moveNext()) {
+        int chunkSampleCount = chunkIterator.numSamples;
+        if (chunkSampleCount == 0) {
+          continue;
         }
-
-        offsets[i] = offset;
-        sizes[i] = sampleSizeBox.readNextSampleSize();
-        if (sizes[i] > maximumSize) {
-          maximumSize = sizes[i];
+        chunkOffsetsBytes[chunkCount] = chunkIterator.offset;
+        chunkFirstSampleIndices[chunkCount] = chunkFirstSampleIndex;
+        chunkCount++;
+        if (chunkSampleCount > sampleCount - chunkFirstSampleIndex) {
+          remainingSamplesInChunk = chunkSampleCount - (sampleCount - chunkFirstSampleIndex);
+          chunkFirstSampleIndex = sampleCount;
+        } else {
+          chunkFirstSampleIndex += chunkSampleCount;
         }
-        timestamps[i] = timestampTimeUnits + timestampOffset;
-
-        // All samples are synchronization samples if the stss is not present.
-        flags[i] = stss == null ? C.BUFFER_FLAG_KEY_FRAME : 0;
-        if (i == nextSynchronizationSampleIndex) {
-          flags[i] = C.BUFFER_FLAG_KEY_FRAME;
-          remainingSynchronizationSamples--;
-          if (remainingSynchronizationSamples > 0) {
-            nextSynchronizationSampleIndex = checkNotNull(stss).readUnsignedIntToInt() - 1;
+      }
+      if (chunkFirstSampleIndex < sampleCount) {
+        Log.w(TAG, "Unexpected end of chunk data");
+        sampleCount = chunkFirstSampleIndex;
+      }
+      chunkOffsetsBytes = Arrays.copyOf(chunkOffsetsBytes, chunkCount);
+      chunkFirstSampleIndices = Arrays.copyOf(chunkFirstSampleIndices, chunkCount);
+
+      @Nullable int[] sampleSizes = null;
+      if (sampleCount > 0) {
+        if (fixedSampleSize == C.LENGTH_UNSET) {
+          sampleSizes = new int[sampleCount];
+          for (int i = 0; i < sampleCount; i++) {
+            sampleSizes[i] = sampleSizeBox.readNextSampleSize();
+            if (sampleSizes[i] > maximumSize) {
+              maximumSize = sampleSizes[i];
+            }
           }
+        } else {
+          maximumSize = fixedSampleSize;
         }
+      }
 
-        // Add on the duration of this sample.
-        timestampTimeUnits += timestampDeltaInTimeUnits;
-        remainingSamplesAtTimestampDelta--;
-        if (remainingSamplesAtTimestampDelta == 0 && remainingTimestampDeltaChanges > 0) {
-          remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
-          // The BMFF spec (ISO/IEC 14496-12) states that sample deltas should be unsigned integers
-          // in stts boxes, however some streams violate the spec and use signed integers instead.
-          // See https://github.com/google/ExoPlayer/issues/3384. It's safe to always decode sample
-          // deltas as signed integers here, because unsigned integers will still be parsed
-          // correctly (unless their top bit is set, which is never true in practice because sample
-          // deltas are always small).
-          timestampDeltaInTimeUnits = stts.readInt();
-          remainingTimestampDeltaChanges--;
+      // Record the runs of samples with the same duration. A run with zero samples extends to the
+      // end of the track.
+      int maxTimestampDeltaRuns = min(remainingTimestampDeltaChanges, sampleCount) + 1;
+      int[] timeToSampleFirstSampleIndices = new int[maxTimestampDeltaRuns];
+      long[] timeToSampleStartTimes = new long[maxTimestampDeltaRuns];
+      int[] timeToSampleDeltas = new int[maxTimestampDeltaRuns];
+      int timestampDeltaRunCount = 0;
+      int timestampDeltaRunFirstSampleIndex = 0;
+      while (true) {
+        timeToSampleFirstSampleIndices[timestampDeltaRunCount] = timestampDeltaRunFirstSampleIndex;
+        timeToSampleStartTimes[timestampDeltaRunCount] = timestampTimeUnits;
+        timeToSampleDeltas[timestampDeltaRunCount] = timestampDeltaInTimeUnits;
+        timestampDeltaRunCount++;
+        if (remainingSamplesAtTimestampDelta <= 0
+            || remainingSamplesAtTimestampDelta > sampleCount - timestampDeltaRunFirstSampleIndex
+            || remainingTimestampDeltaChanges == 0) {
+          break;
         }
-
-        offset += sizes[i];
-        remainingSamplesInChunk--;
+        timestampDeltaRunFirstSampleIndex += remainingSamplesAtTimestampDelta;
+        timestampTimeUnits += (long) timestampDeltaInTimeUnits * remainingSamplesAtTimestampDelta;
+        remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
+        // The BMFF spec (ISO/IEC 14496-12) states that sample deltas should be unsigned integers
+        // in stts boxes, however some streams violate the spec and use signed integers instead.
+        // See https://github.com/google/ExoPlayer/issues/3384. It's safe to always decode sample
+        // deltas as signed integers here, because unsigned integers will still be parsed
+        // correctly (unless their top bit is set, which is never true in practice because sample
+        // deltas are always small).
+        timestampDeltaInTimeUnits = stts.readInt();
+        remainingTimestampDeltaChanges--;
       }
-      duration = timestampTimeUnits + timestampOffset;
+      remainingSamplesAtTimestampDelta -= sampleCount - timestampDeltaRunFirstSampleIndex;
 
-      // If the stbl's child boxes are not consistent the container is malformed, but the stream may
-      // still be playable.
+      // Record the runs of samples with the same timestamp offset, if ctts is present.
+      @Nullable int[] compositionOffsetFirstSampleIndices = null;
+      @Nullable int[] compositionOffsets = null;
       boolean isCttsValid = true;
       if (ctts != null) {
+        if (sampleCount > 0) {
+          int maxTimestampOffsetRuns = max(1, min(remainingTimestampOffsetChanges, sampleCount));
+          compositionOffsetFirstSampleIndices = new int[maxTimestampOffsetRuns];
+          compositionOffsets = new int[maxTimestampOffsetRuns];
+          int timestampOffsetRunCount = 0;
+          int timestampOffsetRunFirstSampleIndex = 0;
+          while (true) {
+            while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
+              remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
+              // The BMFF spec (ISO/IEC 14496-12) states that sample offsets should be unsigned
+              // integers in version 0 ctts boxes, however some streams violate the spec and use
+              // signed integers instead. It's safe to always decode sample offsets as signed
+              // integers here, because unsigned integers will still be parsed correctly (unless
+              // their top bit is set, which is never true in practice because sample offsets are
+              // always small).
+              timestampOffset = ctts.readInt();
+              remainingTimestampOffsetChanges--;
+            }
+            if (timestampOffsetRunCount == 0
+                || compositionOffsets[timestampOffsetRunCount - 1] != timestampOffset) {
+              compositionOffsetFirstSampleIndices[timestampOffsetRunCount] =
+                  timestampOffsetRunFirstSampleIndex;
+              compositionOffsets[timestampOffsetRunCount] = timestampOffset;
+              timestampOffsetRunCount++;
+            }
+            if (remainingSamplesAtTimestampOffset == 0
+                || remainingSamplesAtTimestampOffset
+                    >= sampleCount - timestampOffsetRunFirstSampleIndex) {
+              break;
+            }
+            timestampOffsetRunFirstSampleIndex += remainingSamplesAtTimestampOffset;
+            remainingSamplesAtTimestampOffset = 0;
+          }
+          remainingSamplesAtTimestampOffset -= sampleCount - timestampOffsetRunFirstSampleIndex;
+          compositionOffsetFirstSampleIndices =
+              Arrays.copyOf(compositionOffsetFirstSampleIndices, timestampOffsetRunCount);
+          compositionOffsets = Arrays.copyOf(compositionOffsets, timestampOffsetRunCount);
+        }
         while (remainingTimestampOffsetChanges > 0) {
           if (ctts.readUnsignedIntToInt() != 0) {
             isCttsValid = false;
@@ -591,6 +665,27 @@ import java.util.List;
           remainingTimestampOffsetChanges--;
         }
       }
+
+      // Record the sync samples. The stss entries are only used while they're increasing.
+      @Nullable int[] syncSampleIndices = null;
+      if (stss != null) {
+        syncSampleIndices = new int[min(remainingSynchronizationSamples, sampleCount)];
+        int syncSampleCount = 0;
+        while (nextSynchronizationSampleIndex < sampleCount
+            && nextSynchronizationSampleIndex
+                > (syncSampleCount == 0 ? -1 : syncSampleIndices[syncSampleCount - 1])) {
+          syncSampleIndices[syncSampleCount++] = nextSynchronizationSampleIndex;
+          remainingSynchronizationSamples--;
+          if (remainingSynchronizationSamples == 0) {
+            break;
+          }
+          nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
+        }
+        syncSampleIndices = Arrays.copyOf(syncSampleIndices, syncSampleCount);
+      }
+
+      // If the stbl's child boxes are not consistent the container is malformed, but the stream may
+      // still be playable.
       if (remainingSynchronizationSamples != 0
           || remainingSamplesAtTimestampDelta != 0
           || remainingSamplesInChunk != 0
@@ -613,6 +708,47 @@ import java.util.List;
                 + remainingSamplesAtTimestampOffset
                 + (!isCttsValid ? ", ctts invalid" : ""));
       }
+
+      if (sampleCount == 0) {
+        offsets = new long[0];
+        sizes = new int[0];
+        timestamps = new long[0];
+        flags = new int[0];
+        duration = 0;
+      } else {
+        CompactSampleTable compactSampleTable =
+            new CompactSampleTable(
+                sampleCount,
+                fixedSampleSize,
+                sampleSizes,
+                chunkOffsetsBytes,
+                chunkFirstSampleIndices,
+                Arrays.copyOf(timeToSampleFirstSampleIndices, timestampDeltaRunCount),
+                Arrays.copyOf(timeToSampleStartTimes, timestampDeltaRunCount),
+                Arrays.copyOf(timeToSampleDeltas, timestampDeltaRunCount),
+                compositionOffsetFirstSampleIndices,
+                compositionOffsets,
+                syncSampleIndices);
+        @Nullable
+        TrackSampleTable trackSampleTable =
+            createCompactTrackSampleTable(
+                track, compactSampleTable, maximumSize, gaplessInfoHolder);
+        if (trackSampleTable != null) {
+          return trackSampleTable;
+        }
+        // The edit list can only be applied to expanded sample arrays.
+        offsets = new long[sampleCount];
+        sizes = new int[sampleCount];
+        timestamps = new long[sampleCount];
+        flags = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+          offsets[i] = compactSampleTable.getOffset(i);
+          sizes[i] = compactSampleTable.getSize(i);
+          timestamps[i] = compactSampleTable.getTimestamp(i);
+          flags[i] = compactSampleTable.isSyncSample(i) ? C.BUFFER_FLAG_KEY_FRAME : 0;
+        }
+        duration = compactSampleTable.duration;
+      }
     }
     long durationUs = Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale);
 
@@ -768,6 +904,159 @@ import java.util.List;
         editedDurationUs);
   }
 
+  /**
+   * Returns a {@link TrackSampleTable} that decodes samples on demand from a {@link
+   * CompactSampleTable} with the track's edit list applied, or null if the edit list can only be
+   * applied to expanded sample arrays.
+   *
+   * @param track Track to which the sample table corresponds.
+   * @param compactSampleTable The compact sample table.
+   * @param maximumSize Maximum sample size in the compact sample table.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   */
+  @Nullable
+  private static TrackSampleTable createCompactTrackSampleTable(
+      Track track,
+      CompactSampleTable compactSampleTable,
+      int maximumSize,
+      GaplessInfoHolder gaplessInfoHolder) {
+    int sampleCount = compactSampleTable.sampleCount;
+    long duration = compactSampleTable.duration;
+    if (track.editListDurations == null) {
+      return new TrackSampleTable(
+          track,
+          compactSampleTable,
+          /* firstSampleIndex= */ 0,
+          sampleCount,
+          maximumSize,
+          /* editMediaTime= */ 0,
+          /* editStartTimeUs= */ 0,
+          /* clipToEditStart= */ false,
+          Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale));
+    }
+
+    // The edit list is applied in the same way as in parseStbl, but only where that doesn't
+    // require copying sample metadata.
+    long[] editListMediaTimes = checkNotNull(track.editListMediaTimes);
+    if (track.editListDurations.length == 1
+        && track.type == C.TRACK_TYPE_AUDIO
+        && sampleCount >= 2) {
+      long editStartTime = editListMediaTimes[0];
+      long editEndTime =
+          editStartTime
+              + Util.scaleLargeTimestamp(
+                  track.editListDurations[0], track.timescale, track.movieTimescale);
+      if (canApplyEditWithGaplessInfo(compactSampleTable, editStartTime, editEndTime)) {
+        long paddingTimeUnits = duration - editEndTime;
+        long encoderDelay =
+            Util.scaleLargeTimestamp(
+                editStartTime - compactSampleTable.getTimestamp(0),
+                track.format.sampleRate,
+                track.timescale);
+        long encoderPadding =
+            Util.scaleLargeTimestamp(paddingTimeUnits, track.format.sampleRate, track.timescale);
+        if ((encoderDelay != 0 || encoderPadding != 0)
+            && encoderDelay <= Integer.MAX_VALUE
+            && encoderPadding <= Integer.MAX_VALUE) {
+          gaplessInfoHolder.encoderDelay = (int) encoderDelay;
+          gaplessInfoHolder.encoderPadding = (int) encoderPadding;
+          long editedDurationUs =
+              Util.scaleLargeTimestamp(
+                  track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
+          return new TrackSampleTable(
+              track,
+              compactSampleTable,
+              /* firstSampleIndex= */ 0,
+              sampleCount,
+              maximumSize,
+              /* editMediaTime= */ 0,
+              /* editStartTimeUs= */ 0,
+              /* clipToEditStart= */ false,
+              editedDurationUs);
+        }
+      }
+    }
+
+    if (track.editListDurations.length == 1 && track.editListDurations[0] == 0) {
+      long editStartTime = editListMediaTimes[0];
+      return new TrackSampleTable(
+          track,
+          compactSampleTable,
+          /* firstSampleIndex= */ 0,
+          sampleCount,
+          maximumSize,
+          /* editMediaTime= */ editStartTime,
+          /* editStartTimeUs= */ 0,
+          /* clipToEditStart= */ false,
+          Util.scaleLargeTimestamp(duration - editStartTime, C.MICROS_PER_SECOND, track.timescale));
+    }
+
+    // Samples from more than one edit would need to be concatenated.
+    int mediaEditIndex = C.INDEX_UNSET;
+    for (int i = 0; i < editListMediaTimes.length; i++) {
+      if (editListMediaTimes[i] != -1) {
+        if (mediaEditIndex != C.INDEX_UNSET) {
+          return null;
+        }
+        mediaEditIndex = i;
+      }
+    }
+    long pts = 0;
+    long editStartPts = 0;
+    for (int i = 0; i < track.editListDurations.length; i++) {
+      if (i == mediaEditIndex) {
+        editStartPts = pts;
+      }
+      pts += track.editListDurations[i];
+    }
+    long editedDurationUs =
+        Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
+    if (mediaEditIndex == C.INDEX_UNSET) {
+      return new TrackSampleTable(
+          track,
+          compactSampleTable,
+          /* firstSampleIndex= */ 0,
+          /* sampleCount= */ 0,
+          /* maximumSize= */ 0,
+          /* editMediaTime= */ 0,
+          /* editStartTimeUs= */ 0,
+          /* clipToEditStart= */ false,
+          editedDurationUs);
+    }
+
+    long editMediaTime = editListMediaTimes[mediaEditIndex];
+    long editDuration =
+        Util.scaleLargeTimestamp(
+            track.editListDurations[mediaEditIndex], track.timescale, track.movieTimescale);
+    int startIndex =
+        compactSampleTable.binarySearchTimestampFloor(
+            editMediaTime, /* inclusive= */ true, /* stayInBounds= */ true);
+    int endIndex =
+        compactSampleTable.binarySearchTimestampCeil(
+            editMediaTime + editDuration,
+            /* inclusive= */ track.type == C.TRACK_TYPE_AUDIO,
+            /* stayInBounds= */ false);
+    if (endIndex < startIndex) {
+      return null;
+    }
+    if (startIndex < endIndex) {
+      // Advance to the next sync sample, as in parseStbl.
+      int syncSampleIndex = compactSampleTable.getNextSyncSampleIndex(startIndex);
+      startIndex = syncSampleIndex == C.INDEX_UNSET ? endIndex : min(syncSampleIndex, endIndex);
+    }
+    return new TrackSampleTable(
+        track,
+        compactSampleTable,
+        startIndex,
+        /* sampleCount= */ endIndex - startIndex,
+        compactSampleTable.getMaximumSize(startIndex, endIndex),
+        editMediaTime,
+        /* editStartTimeUs= */ Util.scaleLargeTimestamp(
+            editStartPts, C.MICROS_PER_SECOND, track.movieTimescale),
+        /* clipToEditStart= */ canTrimSamplesWithTimestampChange(track.type),
+        editedDurationUs);
+  }
+
   private static boolean canTrimSamplesWithTimestampChange(@C.TrackType int trackType) {
     // Audio samples have an inherent duration and we can't trim data by changing the sample
     // timestamp alone.
@@ -1991,6 +2280,22 @@ import java.util.List;
         && editEndTime <= duration;
   }
 
+  /**
+   * Returns whether it's possible to apply the specified edit to a compact sample table using
+   * gapless playback info.
+   */
+  private static boolean canApplyEditWithGaplessInfo(
+      CompactSampleTable sampleTable, long editStartTime, long editEndTime) {
+    int lastIndex = sampleTable.sampleCount - 1;
+    int latestDelayIndex = Util.constrainValue(MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    int earliestPaddingIndex =
+        Util.constrainValue(sampleTable.sampleCount - MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    return sampleTable.getTimestamp(0) <= editStartTime
+        && editStartTime < sampleTable.getTimestamp(latestDelayIndex)
+        && sampleTable.getTimestamp(earliestPaddingIndex) < editEndTime
+        && editEndTime <= sampleTable.duration;
+  }
+
   private AtomParsers() {
     // Prevent instantiation.
   }
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import java.util.Arrays;
+
+/**
+ * Sample table that keeps the run-length encoded form of the stts, ctts, stsc and stss boxes, and
+ * decodes the offset, timestamp and flags of individual samples on demand.
+ *
+ * <p>Compared to expanded per-sample arrays, only the sample sizes are stored per sample (and not
+ * even those if the sizes are fixed). Decoding is O(1) for sequential access, which is cached in a
+ * cursor, and O(log n) in the number of runs otherwise.
+ *
+ * <p>Timestamps are in the timescale of the track, and include composition time offsets.
+ */
+/* package */ final class CompactSampleTable {
+
+  /** Number of samples. */
+  public final int sampleCount;
+
+  /** The sum of the durations of all samples, plus the final composition time offset. */
+  public final long duration;
+
+  private final int fixedSampleSize;
+  @Nullable private final int[] sampleSizes;
+  private final long[] chunkOffsets;
+  private final int[] chunkFirstSampleIndices;
+  private final int[] timeToSampleFirstSampleIndices;
+  private final long[] timeToSampleStartTimes;
+  private final int[] timeToSampleDeltas;
+  @Nullable private final int[] compositionOffsetFirstSampleIndices;
+  @Nullable private final int[] compositionOffsets;
+  @Nullable private final int[] syncSampleIndices;
+
+  @GuardedBy("this")
+  private int cursorChunkIndex;
+
+  @GuardedBy("this")
+  private int cursorSampleIndex;
+
+  @GuardedBy("this")
+  private long cursorSampleOffset;
+
+  @GuardedBy("this")
+  private int cursorTimeToSampleIndex;
+
+  @GuardedBy("this")
+  private int cursorCompositionOffsetIndex;
+
+  /**
+   * Creates an instance.
+   *
+   * @param sampleCount The number of samples. Must be positive.
+   * @param fixedSampleSize The size of every sample, or {@link C#LENGTH_UNSET} if sizes vary.
+   * @param sampleSizes The size of each sample if {@code fixedSampleSize} is {@link
+   *     C#LENGTH_UNSET}, or null otherwise.
+   * @param chunkOffsets The byte offset of each non-empty chunk.
+   * @param chunkFirstSampleIndices The index of the first sample in each non-empty chunk.
+   * @param timeToSampleFirstSampleIndices The index of the first sample of each run of samples with
+   *     the same duration. The first element must be zero.
+   * @param timeToSampleStartTimes The decoding time of the first sample of each run.
+   * @param timeToSampleDeltas The duration of each sample in each run. The final run extends to the
+   *     last sample.
+   * @param compositionOffsetFirstSampleIndices The index of the first sample of each run of
+   *     samples with the same composition time offset, or null if there are no offsets. The first
+   *     element must be zero.
+   * @param compositionOffsets The composition time offset of the samples in each run, or null if
+   *     there are no offsets. The final run extends to the last sample.
+   * @param syncSampleIndices The sorted indices of the synchronization samples, or null if every
+   *     sample is a synchronization sample.
+   */
+  public CompactSampleTable(
+      int sampleCount,
+      int fixedSampleSize,
+      @Nullable int[] sampleSizes,
+      long[] chunkOffsets,
+      int[] chunkFirstSampleIndices,
+      int[] timeToSampleFirstSampleIndices,
+      long[] timeToSampleStartTimes,
+      int[] timeToSampleDeltas,
+      @Nullable int[] compositionOffsetFirstSampleIndices,
+      @Nullable int[] compositionOffsets,
+      @Nullable int[] syncSampleIndices) {
+    this.sampleCount = sampleCount;
+    this.fixedSampleSize = fixedSampleSize;
+    this.sampleSizes = sampleSizes;
+    this.chunkOffsets = chunkOffsets;
+    this.chunkFirstSampleIndices = chunkFirstSampleIndices;
+    this.timeToSampleFirstSampleIndices = timeToSampleFirstSampleIndices;
+    this.timeToSampleStartTimes = timeToSampleStartTimes;
+    this.timeToSampleDeltas = timeToSampleDeltas;
+    this.compositionOffsetFirstSampleIndices = compositionOffsetFirstSampleIndices;
+    this.compositionOffsets = compositionOffsets;
+    this.syncSampleIndices = syncSampleIndices;
+    cursorSampleOffset = chunkOffsets[0];
+    duration = getDecodingTime(sampleCount) + getCompositionOffset(sampleCount - 1);
+  }
+
+  /** Returns the size of a sample in bytes. */
+  public int getSize(int sampleIndex) {
+    return sampleSizes != null ? sampleSizes[sampleIndex] : fixedSampleSize;
+  }
+
+  /** Returns the maximum size of the samples in the range {@code [fromIndex, toIndex)}. */
+  public int getMaximumSize(int fromIndex, int toIndex) {
+    if (sampleSizes == null) {
+      return toIndex > fromIndex ? fixedSampleSize : 0;
+    }
+    int maximumSize = 0;
+    for (int i = fromIndex; i < toIndex; i++) {
+      maximumSize = max(maximumSize, sampleSizes[i]);
+    }
+    return maximumSize;
+  }
+
+  /** Returns the byte offset of a sample. */
+  public synchronized long getOffset(int sampleIndex) {
+    if (sampleIndex >= cursorSampleIndex
+        && isInRun(chunkFirstSampleIndices, cursorChunkIndex, sampleIndex)) {
+      // Continue from the cursor, which is typically the previous sample.
+      long offset = cursorSampleOffset;
+      for (int i = cursorSampleIndex; i < sampleIndex; i++) {
+        offset += getSize(i);
+      }
+      cursorSampleIndex = sampleIndex;
+      cursorSampleOffset = offset;
+      return offset;
+    }
+    int chunkIndex = findRun(chunkFirstSampleIndices, sampleIndex);
+    int chunkFirstSampleIndex = chunkFirstSampleIndices[chunkIndex];
+    long offset = chunkOffsets[chunkIndex];
+    if (sampleSizes == null) {
+      offset += (long) fixedSampleSize * (sampleIndex - chunkFirstSampleIndex);
+    } else {
+      for (int i = chunkFirstSampleIndex; i < sampleIndex; i++) {
+        offset += sampleSizes[i];
+      }
+    }
+    cursorChunkIndex = chunkIndex;
+    cursorSampleIndex = sampleIndex;
+    cursorSampleOffset = offset;
+    return offset;
+  }
+
+  /**
+   * Returns the presentation timestamp of a sample in the timescale of the track, which is its
+   * decoding time plus its composition time offset.
+   */
+  public long getTimestamp(int sampleIndex) {
+    return getDecodingTime(sampleIndex) + getCompositionOffset(sampleIndex);
+  }
+
+  /** Returns whether a sample is a synchronization sample. */
+  public boolean isSyncSample(int sampleIndex) {
+    return syncSampleIndices == null || Arrays.binarySearch(syncSampleIndices, sampleIndex) >= 0;
+  }
+
+  /**
+   * Returns the index of the last synchronization sample at or before {@code sampleIndex}, or
+   * {@link C#INDEX_UNSET} if there isn't one.
+   */
+  public int getPreviousSyncSampleIndex(int sampleIndex) {
+    if (sampleIndex < 0) {
+      return C.INDEX_UNSET;
+    }
+    if (syncSampleIndices == null) {
+      return sampleIndex;
+    }
+    int index =
+        Util.binarySearchFloor(
+            syncSampleIndices, sampleIndex, /* inclusive= */ true, /* stayInBounds= */ false);
+    return index >= 0 ? syncSampleIndices[index] : C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the index of the first synchronization sample at or after {@code sampleIndex}, or
+   * {@link C#INDEX_UNSET} if there isn't one.
+   */
+  public int getNextSyncSampleIndex(int sampleIndex) {
+    if (sampleIndex >= sampleCount) {
+      return C.INDEX_UNSET;
+    }
+    if (syncSampleIndices == null) {
+      return max(0, sampleIndex);
+    }
+    int index =
+        Util.binarySearchCeil(
+            syncSampleIndices, sampleIndex, /* inclusive= */ true, /* stayInBounds= */ false);
+    return index < syncSampleIndices.length ? syncSampleIndices[index] : C.INDEX_UNSET;
+  }
+
+  /**
+   * Equivalent to {@link Util#binarySearchFloor(long[], long, boolean, boolean)} applied to the
+   * sample timestamps.
+   *
+   * <p>The timestamps are not necessarily sorted, so the probe sequence matches {@link
+   * Arrays#binarySearch(long[], long)} to give the same result as searching expanded timestamps.
+   */
+  public int binarySearchTimestampFloor(long timestamp, boolean inclusive, boolean stayInBounds) {
+    int index = binarySearchTimestamp(timestamp);
+    if (index < 0) {
+      index = -(index + 2);
+    } else {
+      while (--index >= 0 && getTimestamp(index) == timestamp) {}
+      if (inclusive) {
+        index++;
+      }
+    }
+    return stayInBounds ? max(0, index) : index;
+  }
+
+  /**
+   * Equivalent to {@link Util#binarySearchCeil(long[], long, boolean, boolean)} applied to the
+   * sample timestamps.
+   *
+   * <p>The timestamps are not necessarily sorted, so the probe sequence matches {@link
+   * Arrays#binarySearch(long[], long)} to give the same result as searching expanded timestamps.
+   */
+  public int binarySearchTimestampCeil(long timestamp, boolean inclusive, boolean stayInBounds) {
+    int index = binarySearchTimestamp(timestamp);
+    if (index < 0) {
+      index = ~index;
+    } else {
+      while (++index < sampleCount && getTimestamp(index) == timestamp) {}
+      if (inclusive) {
+        index--;
+      }
+    }
+    return stayInBounds ? min(sampleCount - 1, index) : index;
+  }
+
+  private int binarySearchTimestamp(long timestamp) {
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimestamp = getTimestamp(mid);
+      if (midTimestamp < timestamp) {
+        low = mid + 1;
+      } else if (midTimestamp > timestamp) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private synchronized long getDecodingTime(int sampleIndex) {
+    int runIndex = cursorTimeToSampleIndex;
+    if (!isInRun(timeToSampleFirstSampleIndices, runIndex, sampleIndex)) {
+      runIndex = findRun(timeToSampleFirstSampleIndices, sampleIndex);
+      cursorTimeToSampleIndex = runIndex;
+    }
+    return timeToSampleStartTimes[runIndex]
+        + (long) timeToSampleDeltas[runIndex]
+            * (sampleIndex - timeToSampleFirstSampleIndices[runIndex]);
+  }
+
+  private synchronized int getCompositionOffset(int sampleIndex) {
+    if (compositionOffsetFirstSampleIndices == null || compositionOffsets == null) {
+      return 0;
+    }
+    int runIndex = cursorCompositionOffsetIndex;
+    if (!isInRun(compositionOffsetFirstSampleIndices, runIndex, sampleIndex)) {
+      runIndex = findRun(compositionOffsetFirstSampleIndices, sampleIndex);
+      cursorCompositionOffsetIndex = runIndex;
+    }
+    return compositionOffsets[runIndex];
+  }
+
+  /** Returns whether the run at {@code runIndex} contains {@code sampleIndex}. */
+  private static boolean isInRun(int[] runFirstSampleIndices, int runIndex, int sampleIndex) {
+    return runFirstSampleIndices[runIndex] <= sampleIndex
+        && (runIndex == runFirstSampleIndices.length - 1
+            || sampleIndex < runFirstSampleIndices[runIndex + 1]);
+  }
+
+  /** Returns the index of the run containing {@code sampleIndex}. */
+  private static int findRun(int[] runFirstSampleIndices, int sampleIndex) {
+    return Util.binarySearchFloor(
+        runFirstSampleIndices, sampleIndex, /* inclusive= */ true, /* stayInBounds= */ true);
+  }
+}
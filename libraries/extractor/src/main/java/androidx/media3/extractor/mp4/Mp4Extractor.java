@@ -17,7 +17,6 @@ package androidx.media3.extractor.mp4;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
-import static androidx.media3.extractor.mp4.AtomParsers.parseTraks;
 import static androidx.media3.extractor.mp4.Sniffer.BRAND_HEIC;
 import static androidx.media3.extractor.mp4.Sniffer.BRAND_QUICKTIME;
 import static java.lang.Math.max;
@@ -158,6 +157,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
   private final ParsableByteArray atomHeader;
   private final ArrayDeque<ContainerAtom> containerAtoms;
+  private final List<TrackSampleTable> parsedTrakSampleTables;
+  private final List<GaplessInfoHolder> parsedTrakGaplessInfoHolders;
   private final SefReader sefReader;
   private final List<Metadata.Entry> slowMotionMetadataEntries;
 
@@ -172,6 +173,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private int sampleBytesWritten;
   private int sampleCurrentNalBytesRemaining;
   private boolean seenFtypAtom;
+  private boolean tracksOutput;
+  private boolean formatsOutput;
 
   // Extractor outputs.
   private ExtractorOutput extractorOutput;
@@ -202,6 +205,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     slowMotionMetadataEntries = new ArrayList<>();
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     containerAtoms = new ArrayDeque<>();
+    parsedTrakSampleTables = new ArrayList<>();
+    parsedTrakGaplessInfoHolders = new ArrayList<>();
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
     nalLength = new ParsableByteArray(4);
     scratch = new ParsableByteArray();
@@ -224,12 +229,16 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   @Override
   public void seek(long position, long timeUs) {
     containerAtoms.clear();
+    parsedTrakSampleTables.clear();
+    parsedTrakGaplessInfoHolders.clear();
     atomHeaderBytesRead = 0;
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesRead = 0;
     sampleBytesWritten = 0;
     sampleCurrentNalBytesRemaining = 0;
     if (position == 0) {
+      tracksOutput = false;
+      formatsOutput = false;
       // Reading the SEF data occurs before normal MP4 parsing. Therefore we can not transition to
       // reading the atom header until that has completed.
       if (parserState != STATE_READING_SEF) {
@@ -325,14 +334,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
+      firstOffset = sampleTable.getOffset(sampleIndex);
       if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -408,6 +417,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
           "Atom size less than header length (unsupported).");
     }
 
+    @Nullable ContainerAtom parentAtom = containerAtoms.peek();
+    if (parentAtom != null
+        && parentAtom.type == Atom.TYPE_moov
+        && atomType != Atom.TYPE_trak
+        && input.getPosition() + atomSize - atomHeaderBytesRead == parentAtom.endPosition) {
+      maybeOutputTracksBeforeLastMoovChild(parentAtom);
+    }
+
     if (shouldParseContainerAtom(atomType)) {
       long endPosition = input.getPosition() + atomSize - atomHeaderBytesRead;
       if (atomSize != atomHeaderBytesRead && atomType == Atom.TYPE_meta) {
@@ -455,7 +472,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         seenFtypAtom = true;
         fileType = processFtypAtom(atomData);
       } else if (!containerAtoms.isEmpty()) {
-        containerAtoms.peek().add(new Atom.LeafAtom(atomType, atomData));
+        ContainerAtom parentAtom = containerAtoms.peek();
+        parentAtom.add(new Atom.LeafAtom(atomType, atomData));
+        if (atomType == Atom.TYPE_mvhd && parentAtom.type == Atom.TYPE_moov) {
+          processTrakAtomsPrecedingMvhd(parentAtom);
+        }
       }
     } else {
       if (!seenFtypAtom && atomType == Atom.TYPE_mdat) {
@@ -493,7 +514,12 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         containerAtoms.clear();
         parserState = STATE_READING_SAMPLE;
       } else if (!containerAtoms.isEmpty()) {
-        containerAtoms.peek().add(containerAtom);
+        ContainerAtom parentAtom = containerAtoms.peek();
+        if (containerAtom.type != Atom.TYPE_trak
+            || parentAtom.type != Atom.TYPE_moov
+            || !maybeProcessTrakAtom(containerAtom, parentAtom)) {
+          parentAtom.add(containerAtom);
+        }
       }
     }
     if (parserState != STATE_READING_SAMPLE) {
@@ -501,14 +527,121 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
-  /** Updates the stored track metadata to reflect the contents of the specified moov atom. */
-  private void processMoovAtom(ContainerAtom moov) throws ParserException {
+  /**
+   * Parses the sample table of a trak atom as soon as the atom ends, so that its children don't
+   * need to be retained until the end of a large moov atom. This is only possible once the mvhd
+   * atom has been read. Trak atoms preceding it are parsed by {@link
+   * #processTrakAtomsPrecedingMvhd}.
+   *
+   * @param trak The trak atom.
+   * @param moov The moov atom containing the trak atom, which hasn't ended yet.
+   * @return Whether the trak atom was processed.
+   */
+  private boolean maybeProcessTrakAtom(ContainerAtom trak, ContainerAtom moov)
+      throws ParserException {
+    @Nullable Atom.LeafAtom mvhd = moov.getLeafAtomOfType(Atom.TYPE_mvhd);
+    if (mvhd == null) {
+      return false;
+    }
+    // Gapless information from an edit list overrides information from the udta atom, which may
+    // follow the trak atoms, so it's kept per trak and merged in processMoovAtom.
+    GaplessInfoHolder gaplessInfoHolder = new GaplessInfoHolder();
+    @Nullable
+    TrackSampleTable trackSampleTable =
+        AtomParsers.parseTrakSampleTable(
+            trak,
+            mvhd,
+            gaplessInfoHolder,
+            /* duration= */ C.TIME_UNSET,
+            /* drmInitData= */ null,
+            /* ignoreEditLists= */ (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0,
+            /* isQuickTime= */ fileType == FILE_TYPE_QUICKTIME,
+            /* modifyTrackFunction= */ track -> track);
+    if (trackSampleTable != null) {
+      parsedTrakSampleTables.add(trackSampleTable);
+      parsedTrakGaplessInfoHolders.add(gaplessInfoHolder);
+    }
+    return true;
+  }
+
+  /** Parses the trak atoms that were retained because they preceded the mvhd atom. */
+  private void processTrakAtomsPrecedingMvhd(ContainerAtom moov) throws ParserException {
+    for (int i = 0; i < moov.containerChildren.size(); i++) {
+      ContainerAtom trak = moov.containerChildren.get(i);
+      if (trak.type == Atom.TYPE_trak && maybeProcessTrakAtom(trak, moov)) {
+        moov.containerChildren.remove(i--);
+      }
+    }
+  }
+
+  /**
+   * Outputs the tracks and the {@link SeekMap} when the header of the last child of the moov atom
+   * has been read, if that child isn't a trak atom. Every track is known at this point, so playback
+   * can be prepared without waiting for the end of the moov atom.
+   *
+   * <p>The formats are output too, unless the last child is a udta or meta atom whose metadata
+   * they depend on. The remaining moov atom is then read before the first sample.
+   */
+  private void maybeOutputTracksBeforeLastMoovChild(ContainerAtom moov) {
+    if (tracksOutput || moov.getLeafAtomOfType(Atom.TYPE_mvhd) == null) {
+      return;
+    }
+    outputTracks();
+    if (atomType != Atom.TYPE_udta && atomType != Atom.TYPE_meta) {
+      outputFormats(moov);
+    }
+  }
+
+  /** Outputs the tracks and formats that weren't output while the moov atom was read. */
+  private void processMoovAtom(ContainerAtom moov) {
+    checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd));
+    if (!tracksOutput) {
+      outputTracks();
+    }
+    if (!formatsOutput) {
+      outputFormats(moov);
+    }
+  }
+
+  /**
+   * Creates the tracks from the parsed trak atoms and outputs them, followed by the {@link
+   * SeekMap}. The formats are output separately by {@link #outputFormats}.
+   */
+  private void outputTracks() {
     int firstVideoTrackIndex = C.INDEX_UNSET;
     long durationUs = C.TIME_UNSET;
     List<Mp4Track> tracks = new ArrayList<>();
+    for (int i = 0; i < parsedTrakSampleTables.size(); i++) {
+      TrackSampleTable trackSampleTable = parsedTrakSampleTables.get(i);
+      if (trackSampleTable.sampleCount == 0) {
+        continue;
+      }
+      Track track = trackSampleTable.track;
+      durationUs = max(durationUs, getTrackDurationUs(trackSampleTable));
+      Mp4Track mp4Track =
+          new Mp4Track(track, trackSampleTable, extractorOutput.track(i, track.type));
+      if (track.type == C.TRACK_TYPE_VIDEO && firstVideoTrackIndex == C.INDEX_UNSET) {
+        firstVideoTrackIndex = tracks.size();
+      }
+      tracks.add(mp4Track);
+    }
+    parsedTrakSampleTables.clear();
+    this.firstVideoTrackIndex = firstVideoTrackIndex;
+    this.durationUs = durationUs;
+    this.tracks = tracks.toArray(new Mp4Track[0]);
+    accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    tracksOutput = true;
 
+    extractorOutput.endTracks();
+    extractorOutput.seekMap(this);
+  }
+
+  /**
+   * Outputs the format of each track, including the metadata and gapless information read from the
+   * moov atom so far.
+   */
+  private void outputFormats(ContainerAtom moov) {
     // Process metadata.
-    boolean isQuickTime = fileType == FILE_TYPE_QUICKTIME;
     GaplessInfoHolder gaplessInfoHolder = new GaplessInfoHolder();
     @Nullable Metadata udtaMetadata = null;
     @Nullable Atom.LeafAtom udta = moov.getLeafAtomOfType(Atom.TYPE_udta);
@@ -526,29 +659,20 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         new Metadata(
             AtomParsers.parseMvhd(checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)).data));
 
-    boolean ignoreEditLists = (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0;
-    List<TrackSampleTable> trackSampleTables =
-        parseTraks(
-            moov,
-            gaplessInfoHolder,
-            /* duration= */ C.TIME_UNSET,
-            /* drmInitData= */ null,
-            ignoreEditLists,
-            isQuickTime,
-            /* modifyTrackFunction= */ track -> track);
-
-    int trackCount = trackSampleTables.size();
-    for (int i = 0; i < trackCount; i++) {
-      TrackSampleTable trackSampleTable = trackSampleTables.get(i);
-      if (trackSampleTable.sampleCount == 0) {
-        continue;
+    // Gapless information from the edit lists of the traks overrides that from the udta atom.
+    for (int i = 0; i < parsedTrakGaplessInfoHolders.size(); i++) {
+      GaplessInfoHolder trakGaplessInfoHolder = parsedTrakGaplessInfoHolders.get(i);
+      if (trakGaplessInfoHolder.hasGaplessInfo()) {
+        gaplessInfoHolder.encoderDelay = trakGaplessInfoHolder.encoderDelay;
+        gaplessInfoHolder.encoderPadding = trakGaplessInfoHolder.encoderPadding;
       }
-      Track track = trackSampleTable.track;
-      long trackDurationUs =
-          track.durationUs != C.TIME_UNSET ? track.durationUs : trackSampleTable.durationUs;
-      durationUs = max(durationUs, trackDurationUs);
-      Mp4Track mp4Track =
-          new Mp4Track(track, trackSampleTable, extractorOutput.track(i, track.type));
+    }
+    parsedTrakGaplessInfoHolders.clear();
+
+    for (int i = 0; i < tracks.length; i++) {
+      Mp4Track mp4Track = tracks[i];
+      Track track = mp4Track.track;
+      TrackSampleTable trackSampleTable = mp4Track.sampleTable;
 
       int maxInputSize;
       if (MimeTypes.AUDIO_TRUEHD.equals(track.format.sampleMimeType)) {
@@ -566,10 +690,9 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         if ((flags & FLAG_MARK_FIRST_VIDEO_TRACK_WITH_MAIN_ROLE) != 0) {
           formatBuilder.setRoleFlags(
               track.format.roleFlags
-                  | (firstVideoTrackIndex == C.INDEX_UNSET
-                      ? C.ROLE_FLAG_MAIN
-                      : C.ROLE_FLAG_ALTERNATE));
+                  | (i == firstVideoTrackIndex ? C.ROLE_FLAG_MAIN : C.ROLE_FLAG_ALTERNATE));
         }
+        long trackDurationUs = getTrackDurationUs(trackSampleTable);
         if (trackDurationUs > 0 && trackSampleTable.sampleCount > 1) {
           float frameRate = trackSampleTable.sampleCount / (trackDurationUs / 1000000f);
           formatBuilder.setFrameRate(frameRate);
@@ -585,19 +708,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
           udtaMetadata,
           mvhdMetadata);
       mp4Track.trackOutput.format(formatBuilder.build());
-
-      if (track.type == C.TRACK_TYPE_VIDEO && firstVideoTrackIndex == C.INDEX_UNSET) {
-        firstVideoTrackIndex = tracks.size();
-      }
-      tracks.add(mp4Track);
     }
-    this.firstVideoTrackIndex = firstVideoTrackIndex;
-    this.durationUs = durationUs;
-    this.tracks = tracks.toArray(new Mp4Track[0]);
-    accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
-
-    extractorOutput.endTracks();
-    extractorOutput.seekMap(this);
+    formatsOutput = true;
   }
 
   /**
@@ -626,8 +738,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = tracks[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     @Nullable TrueHdSampleRechunker trueHdSampleRechunker = track.trueHdSampleRechunker;
     long skipAmount = position - inputPosition + sampleBytesRead;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
@@ -698,8 +810,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
     }
 
-    long timeUs = track.sampleTable.timestampsUs[sampleIndex];
-    @C.BufferFlags int flags = track.sampleTable.flags[sampleIndex];
+    long timeUs = track.sampleTable.getTimestampUs(sampleIndex);
+    @C.BufferFlags int flags = track.sampleTable.getFlags(sampleIndex);
     if (trueHdSampleRechunker != null) {
       trueHdSampleRechunker.sampleMetadata(
           trackOutput, timeUs, flags, sampleSize, /* offset= */ 0, /* cryptoData= */ null);
@@ -746,7 +858,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == track.sampleTable.sampleCount) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
       long sampleAccumulatedBytes = castNonNull(accumulatedSampleSizes)[trackIndex][sampleIndex];
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
@@ -828,7 +940,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     boolean[] tracksFinished = new boolean[tracks.length];
     for (int i = 0; i < tracks.length; i++) {
       accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
+      nextSampleTimesUs[i] = tracks[i].sampleTable.getTimestampUs(0);
     }
     long accumulatedSampleSize = 0;
     int finishedTracks = 0;
@@ -843,11 +955,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
       accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
+      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.getSize(trackSampleIndex);
       nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
       if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
         nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
+            tracks[minTimeTrackIndex].sampleTable.getTimestampUs(trackSampleIndex);
       } else {
         tracksFinished[minTimeTrackIndex] = true;
         finishedTracks++;
@@ -865,13 +977,18 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * @param offset The current offset.
    * @return The adjusted offset.
    */
+  private static long getTrackDurationUs(TrackSampleTable trackSampleTable) {
+    Track track = trackSampleTable.track;
+    return track.durationUs != C.TIME_UNSET ? track.durationUs : trackSampleTable.durationUs;
+  }
+
   private static long maybeAdjustSeekOffset(
       TrackSampleTable sampleTable, long seekTimeUs, long offset) {
     int sampleIndex = getSynchronizationSampleIndex(sampleTable, seekTimeUs);
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return min(sampleOffset, offset);
   }
 
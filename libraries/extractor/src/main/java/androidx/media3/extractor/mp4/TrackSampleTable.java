@@ -15,11 +15,22 @@
  */
 package androidx.media3.extractor.mp4;
 
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.Util;
+import java.util.Arrays;
 
-/** Sample table for a track in an MP4 file. */
+/**
+ * Sample table for a track in an MP4 file.
+ *
+ * <p>The table either holds expanded per-sample arrays, or decodes samples on demand from a {@link
+ * CompactSampleTable}, optionally restricted to a range of its samples and with timestamps adjusted
+ * by a single edit.
+ */
 /* package */ final class TrackSampleTable {
 
   /** The track corresponding to this sample table. */
@@ -28,24 +39,34 @@ import androidx.media3.common.util.Util;
   /** Number of samples. */
   public final int sampleCount;
 
-  /** Sample offsets in bytes. */
-  public final long[] offsets;
-
-  /** Sample sizes in bytes. */
-  public final int[] sizes;
-
-  /** Maximum sample size in {@link #sizes}. */
+  /** Maximum sample size in bytes. */
   public final int maximumSize;
 
-  /** Sample timestamps in microseconds. */
-  public final long[] timestampsUs;
-
-  /** Sample flags. */
-  public final int[] flags;
-
   /** The duration of the track sample table in microseconds. */
   public final long durationUs;
 
+  @Nullable private final long[] offsets;
+  @Nullable private final int[] sizes;
+  @Nullable private final long[] timestampsUs;
+  @Nullable private final int[] flags;
+
+  @Nullable private final CompactSampleTable compactSampleTable;
+  private final int firstSampleIndex;
+  private final long editMediaTime;
+  private final long editStartTimeUs;
+  private final boolean clipToEditStart;
+
+  /**
+   * Creates a table from expanded per-sample arrays.
+   *
+   * @param track The track corresponding to this sample table.
+   * @param offsets Sample offsets in bytes.
+   * @param sizes Sample sizes in bytes.
+   * @param maximumSize Maximum sample size in {@code sizes}.
+   * @param timestampsUs Sample timestamps in microseconds.
+   * @param flags Sample flags.
+   * @param durationUs The duration of the track sample table in microseconds.
+   */
   public TrackSampleTable(
       Track track,
       long[] offsets,
@@ -69,6 +90,103 @@ import androidx.media3.common.util.Util;
     if (flags.length > 0) {
       flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
     }
+    compactSampleTable = null;
+    firstSampleIndex = 0;
+    editMediaTime = 0;
+    editStartTimeUs = 0;
+    clipToEditStart = false;
+  }
+
+  /**
+   * Creates a table that decodes samples on demand from a {@link CompactSampleTable}.
+   *
+   * <p>The timestamp of each sample is {@code editStartTimeUs} plus the time from {@code
+   * editMediaTime} to the sample's timestamp in the compact table, optionally clipped so that it's
+   * not before {@code editStartTimeUs}.
+   *
+   * @param track The track corresponding to this sample table.
+   * @param compactSampleTable The compact sample table.
+   * @param firstSampleIndex The index of the first sample of this table in the compact table.
+   * @param sampleCount The number of samples.
+   * @param maximumSize Maximum sample size in bytes.
+   * @param editMediaTime The time in the compact table, in the track timescale, that corresponds
+   *     to {@code editStartTimeUs}.
+   * @param editStartTimeUs The start time of the edit in microseconds.
+   * @param clipToEditStart Whether sample timestamps before {@code editStartTimeUs} are clipped to
+   *     it.
+   * @param durationUs The duration of the track sample table in microseconds.
+   */
+  public TrackSampleTable(
+      Track track,
+      CompactSampleTable compactSampleTable,
+      int firstSampleIndex,
+      int sampleCount,
+      int maximumSize,
+      long editMediaTime,
+      long editStartTimeUs,
+      boolean clipToEditStart,
+      long durationUs) {
+    Assertions.checkArgument(firstSampleIndex + sampleCount <= compactSampleTable.sampleCount);
+    this.track = track;
+    this.compactSampleTable = compactSampleTable;
+    this.firstSampleIndex = firstSampleIndex;
+    this.sampleCount = sampleCount;
+    this.maximumSize = maximumSize;
+    this.editMediaTime = editMediaTime;
+    this.editStartTimeUs = editStartTimeUs;
+    this.clipToEditStart = clipToEditStart;
+    this.durationUs = durationUs;
+    offsets = null;
+    sizes = null;
+    timestampsUs = null;
+    flags = null;
+  }
+
+  /** Returns the offset of a sample in bytes. */
+  public long getOffset(int sampleIndex) {
+    return offsets != null
+        ? offsets[sampleIndex]
+        : checkNotNull(compactSampleTable).getOffset(firstSampleIndex + sampleIndex);
+  }
+
+  /** Returns the size of a sample in bytes. */
+  public int getSize(int sampleIndex) {
+    return sizes != null
+        ? sizes[sampleIndex]
+        : checkNotNull(compactSampleTable).getSize(firstSampleIndex + sampleIndex);
+  }
+
+  /** Returns the timestamp of a sample in microseconds. */
+  public long getTimestampUs(int sampleIndex) {
+    if (timestampsUs != null) {
+      return timestampsUs[sampleIndex];
+    }
+    long timeInEditUs =
+        Util.scaleLargeTimestamp(
+            checkNotNull(compactSampleTable).getTimestamp(firstSampleIndex + sampleIndex)
+                - editMediaTime,
+            C.MICROS_PER_SECOND,
+            track.timescale);
+    if (clipToEditStart) {
+      timeInEditUs = max(0, timeInEditUs);
+    }
+    return editStartTimeUs + timeInEditUs;
+  }
+
+  /** Returns the flags of a sample. */
+  public @C.BufferFlags int getFlags(int sampleIndex) {
+    if (flags != null) {
+      return flags[sampleIndex];
+    }
+    @C.BufferFlags
+    int flags =
+        checkNotNull(compactSampleTable).isSyncSample(firstSampleIndex + sampleIndex)
+            ? C.BUFFER_FLAG_KEY_FRAME
+            : 0;
+    if (sampleIndex == sampleCount - 1) {
+      flags |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    return flags;
   }
 
   /**
@@ -81,6 +199,16 @@ import androidx.media3.common.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
+    if (timestampsUs == null) {
+      int startIndex = binarySearchTimestampsFloor(timeUs);
+      int syncSampleIndex =
+          checkNotNull(compactSampleTable)
+              .getPreviousSyncSampleIndex(firstSampleIndex + startIndex);
+      return syncSampleIndex >= firstSampleIndex
+          ? syncSampleIndex - firstSampleIndex
+          : C.INDEX_UNSET;
+    }
+    int[] flags = checkNotNull(this.flags);
     int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
     for (int i = startIndex; i >= 0; i--) {
       if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
@@ -98,6 +226,15 @@ import androidx.media3.common.util.Util;
    * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
+    if (timestampsUs == null) {
+      int startIndex = binarySearchTimestampsCeil(timeUs);
+      int syncSampleIndex =
+          checkNotNull(compactSampleTable).getNextSyncSampleIndex(firstSampleIndex + startIndex);
+      return syncSampleIndex != C.INDEX_UNSET && syncSampleIndex < firstSampleIndex + sampleCount
+          ? syncSampleIndex - firstSampleIndex
+          : C.INDEX_UNSET;
+    }
+    int[] flags = checkNotNull(this.flags);
     int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
     for (int i = startIndex; i < timestampsUs.length; i++) {
       if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
@@ -106,4 +243,49 @@ import androidx.media3.common.util.Util;
     }
     return C.INDEX_UNSET;
   }
+
+  /**
+   * Equivalent to {@link Util#binarySearchFloor(long[], long, boolean, boolean)} with {@code
+   * inclusive} set and {@code stayInBounds} unset, applied to the decoded sample timestamps. The
+   * probe sequence matches {@link Arrays#binarySearch(long[], long)}, so that results are identical
+   * to searching expanded timestamps, even where they're not sorted.
+   */
+  private int binarySearchTimestampsFloor(long timeUs) {
+    int index = binarySearchTimestamps(timeUs);
+    if (index < 0) {
+      return -(index + 2);
+    }
+    while (--index >= 0 && getTimestampUs(index) == timeUs) {}
+    return index + 1;
+  }
+
+  /**
+   * Equivalent to {@link Util#binarySearchCeil(long[], long, boolean, boolean)} with {@code
+   * inclusive} set and {@code stayInBounds} unset, applied to the decoded sample timestamps.
+   */
+  private int binarySearchTimestampsCeil(long timeUs) {
+    int index = binarySearchTimestamps(timeUs);
+    if (index < 0) {
+      return ~index;
+    }
+    while (++index < sampleCount && getTimestampUs(index) == timeUs) {}
+    return index - 1;
+  }
+
+  private int binarySearchTimestamps(long timeUs) {
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimeUs = getTimestampUs(mid);
+      if (midTimeUs < timeUs) {
+        low = mid + 1;
+      } else if (midTimeUs > timeUs) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
 }
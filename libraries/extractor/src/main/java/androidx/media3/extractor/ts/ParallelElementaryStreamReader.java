@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.ParserException;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.extractor.ExtractorOutput;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link ElementaryStreamReader} that passes the calls it receives to a delegate on an {@link
+ * Executor}, in order.
+ *
+ * <p>Calls return once they're queued, so that the elementary streams of different PIDs can be
+ * parsed in parallel. Consecutive data passed to {@link #consume(ParsableByteArray)} is copied and
+ * coalesced into chunks. The number of queued calls is bounded, and callers block while the queue
+ * is full.
+ *
+ * <p>{@link #createTracks} is called on the delegate directly. {@link #blockUntilIdle()} must be
+ * called before the caller relies on the delegate's output, followed by {@link #maybeThrowError()}.
+ * {@link #seek()} blocks until the delegate is idle before seeking it, and discards any error that
+ * hasn't been thrown.
+ */
+/* package */ final class ParallelElementaryStreamReader implements ElementaryStreamReader {
+
+  private static final int MAX_QUEUED_CALLS = 64;
+  private static final int CHUNK_SIZE = 16 * 1024;
+
+  private static final int CALL_PACKET_STARTED = 0;
+  private static final int CALL_CONSUME = 1;
+  private static final int CALL_PACKET_FINISHED = 2;
+
+  private final ElementaryStreamReader delegate;
+  private final Executor executor;
+  private final Runnable processQueuedCallsRunnable;
+
+  @GuardedBy("this")
+  private final ArrayDeque<QueuedCall> queuedCalls;
+
+  @GuardedBy("this")
+  private final ArrayDeque<QueuedCall> recycledCalls;
+
+  @GuardedBy("this")
+  private boolean processing;
+
+  @GuardedBy("this")
+  @Nullable
+  private Throwable pendingException;
+
+  // Accessed only by the calling thread.
+  @Nullable private QueuedCall pendingConsumeCall;
+
+  // Accessed only by the thread that processes queued calls.
+  private final ParsableByteArray chunk;
+
+  /**
+   * Creates an instance.
+   *
+   * @param delegate The {@link ElementaryStreamReader} to which calls are passed.
+   * @param executor The {@link Executor} on which the delegate is called.
+   */
+  public ParallelElementaryStreamReader(ElementaryStreamReader delegate, Executor executor) {
+    this.delegate = delegate;
+    this.executor = executor;
+    processQueuedCallsRunnable = this::processQueuedCalls;
+    queuedCalls = new ArrayDeque<>();
+    recycledCalls = new ArrayDeque<>();
+    chunk = new ParsableByteArray();
+  }
+
+  @Override
+  public void seek() {
+    // Data queued before a discontinuity is parsed before the delegate is seeked, as it would be if
+    // the calls weren't queued.
+    blockUntilIdle();
+    synchronized (this) {
+      // Calls queued after a failed one were discarded, so the delegate can only be used again once
+      // it's been seeked.
+      pendingException = null;
+    }
+    delegate.seek();
+  }
+
+  @Override
+  public void createTracks(
+      ExtractorOutput extractorOutput, PesReader.TrackIdGenerator idGenerator) {
+    delegate.createTracks(extractorOutput, idGenerator);
+  }
+
+  @Override
+  public void packetStarted(long pesTimeUs, @TsPayloadReader.Flags int flags) {
+    flushPendingConsumeCall();
+    QueuedCall call = obtainCall(CALL_PACKET_STARTED, /* capacity= */ 0);
+    call.timeUs = pesTimeUs;
+    call.flags = flags;
+    queue(call);
+  }
+
+  @Override
+  public void consume(ParsableByteArray data) throws ParserException {
+    while (data.bytesLeft() > 0) {
+      if (pendingConsumeCall == null) {
+        pendingConsumeCall = obtainCall(CALL_CONSUME, max(CHUNK_SIZE, data.bytesLeft()));
+      }
+      QueuedCall call = pendingConsumeCall;
+      int bytesToCopy = min(data.bytesLeft(), call.data.length - call.length);
+      data.readBytes(call.data, call.length, bytesToCopy);
+      call.length += bytesToCopy;
+      if (call.length == call.data.length) {
+        flushPendingConsumeCall();
+      }
+    }
+  }
+
+  @Override
+  public void packetFinished(boolean isEndOfInput) {
+    flushPendingConsumeCall();
+    QueuedCall call = obtainCall(CALL_PACKET_FINISHED, /* capacity= */ 0);
+    call.isEndOfInput = isEndOfInput;
+    queue(call);
+  }
+
+  /** Blocks until all queued calls have been passed to the delegate. */
+  public void blockUntilIdle() {
+    flushPendingConsumeCall();
+    synchronized (this) {
+      while (processing || !queuedCalls.isEmpty()) {
+        waitUninterruptibly();
+      }
+    }
+  }
+
+  /**
+   * Throws the exception thrown by the delegate while processing a queued call, if any. Calls
+   * queued after the one that failed are discarded.
+   *
+   * @throws ParserException If the delegate threw a {@link ParserException}.
+   */
+  public void maybeThrowError() throws ParserException {
+    @Nullable Throwable exception;
+    synchronized (this) {
+      exception = pendingException;
+      pendingException = null;
+    }
+    if (exception instanceof ParserException) {
+      throw (ParserException) exception;
+    } else if (exception instanceof Error) {
+      throw (Error) exception;
+    } else if (exception != null) {
+      throw (RuntimeException) exception;
+    }
+  }
+
+  private void flushPendingConsumeCall() {
+    if (pendingConsumeCall != null) {
+      QueuedCall call = pendingConsumeCall;
+      pendingConsumeCall = null;
+      if (call.length > 0) {
+        queue(call);
+      } else {
+        synchronized (this) {
+          recycledCalls.add(call);
+        }
+      }
+    }
+  }
+
+  private synchronized QueuedCall obtainCall(int type, int capacity) {
+    @Nullable QueuedCall call = recycledCalls.poll();
+    if (call == null) {
+      call = new QueuedCall();
+    }
+    call.type = type;
+    call.length = 0;
+    if (call.data.length < capacity) {
+      call.data = new byte[capacity];
+    }
+    return call;
+  }
+
+  private synchronized void queue(QueuedCall call) {
+    while (queuedCalls.size() >= MAX_QUEUED_CALLS) {
+      waitUninterruptibly();
+    }
+    queuedCalls.add(call);
+    if (!processing) {
+      processing = true;
+      executor.execute(processQueuedCallsRunnable);
+    }
+  }
+
+  private void processQueuedCalls() {
+    try {
+      while (true) {
+        QueuedCall call;
+        synchronized (this) {
+          @Nullable QueuedCall nextCall = queuedCalls.poll();
+          if (nextCall == null || pendingException != null) {
+            return;
+          }
+          call = nextCall;
+          notifyAll();
+        }
+        try {
+          switch (call.type) {
+            case CALL_PACKET_STARTED:
+              delegate.packetStarted(call.timeUs, call.flags);
+              break;
+            case CALL_CONSUME:
+              chunk.reset(call.data, call.length);
+              delegate.consume(chunk);
+              break;
+            case CALL_PACKET_FINISHED:
+              delegate.packetFinished(call.isEndOfInput);
+              break;
+            default:
+              throw new IllegalStateException();
+          }
+        } catch (ParserException | RuntimeException | Error e) {
+          synchronized (this) {
+            pendingException = e;
+          }
+          if (e instanceof Error) {
+            // Errors aren't recoverable, so they're also propagated to the executor.
+            throw (Error) e;
+          }
+        }
+        synchronized (this) {
+          recycledCalls.add(call);
+        }
+      }
+    } finally {
+      // Always release threads waiting for the delegate to become idle, including if an Error was
+      // thrown, so that they don't block forever.
+      synchronized (this) {
+        queuedCalls.clear();
+        processing = false;
+        notifyAll();
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void waitUninterruptibly() {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        wait();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** A call queued for the delegate. */
+  private static final class QueuedCall {
+
+    public int type;
+    public long timeUs;
+    public @TsPayloadReader.Flags int flags;
+    public boolean isEndOfInput;
+    public byte[] data;
+    public int length;
+
+    public QueuedCall() {
+      timeUs = C.TIME_UNSET;
+      data = new byte[0];
+    }
+  }
+}
@@ -27,6 +27,7 @@ import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.TimestampAdjuster;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.extractor.ExtractorOutput;
+import java.util.concurrent.Executor;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
@@ -45,9 +46,10 @@ public final class PesReader implements TsPayloadReader {
   private static final int MAX_HEADER_EXTENSION_SIZE = 10;
   private static final int PES_SCRATCH_SIZE = 10; // max(HEADER_SIZE, MAX_HEADER_EXTENSION_SIZE)
 
-  private final ElementaryStreamReader reader;
   private final ParsableBitArray pesScratch;
 
+  private ElementaryStreamReader reader;
+
   private int state;
   private int bytesRead;
 
@@ -75,6 +77,19 @@ public final class PesReader implements TsPayloadReader {
     reader.createTracks(extractorOutput, idGenerator);
   }
 
+  /**
+   * Passes elementary stream data to the reader on the given {@link Executor}, and returns the
+   * {@link ParallelElementaryStreamReader} that does so. PES headers, including their timestamps,
+   * are still parsed on the calling thread. Must be called before {@link #init}.
+   */
+  /* package */ ParallelElementaryStreamReader parseElementaryStreamOn(Executor executor) {
+    Assertions.checkState(timestampAdjuster == null);
+    ParallelElementaryStreamReader parallelReader =
+        new ParallelElementaryStreamReader(reader, executor);
+    reader = parallelReader;
+    return parallelReader;
+  }
+
   // TsPayloadReader implementation.
 
   @Override
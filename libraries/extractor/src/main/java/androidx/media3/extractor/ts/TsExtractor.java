@@ -32,11 +32,13 @@ import androidx.media3.common.util.ParsableByteArray;
 import androidx.media3.common.util.TimestampAdjuster;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
+import androidx.media3.extractor.ChunkIndex;
 import androidx.media3.extractor.Extractor;
 import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndexCache;
 import androidx.media3.extractor.SeekMap;
 import androidx.media3.extractor.TrackOutput;
 import androidx.media3.extractor.ts.DefaultTsPayloadReaderFactory.Flags;
@@ -52,6 +54,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /** Extracts data from the MPEG-2 TS container format. */
@@ -119,6 +122,7 @@ public final class TsExtractor implements Extractor {
 
   private static final int BUFFER_SIZE = TS_PACKET_SIZE * 50;
   private static final int SNIFF_TS_PACKET_COUNT = 5;
+  private static final int MAX_PACKETS_PER_READ_WITH_PARALLEL_PARSING = 512;
 
   private final @Mode int mode;
   private final int timestampSearchBytes;
@@ -130,6 +134,9 @@ public final class TsExtractor implements Extractor {
   private final SparseBooleanArray trackIds;
   private final SparseBooleanArray trackPids;
   private final TsDurationReader durationReader;
+  @Nullable private final Executor parsingExecutor;
+  private final List<ParallelElementaryStreamReader> parallelElementaryStreamReaders;
+  @Nullable private final SeekIndexCache seekIndexCache;
 
   // Accessed only by the loading thread.
   private @MonotonicNonNull TsBinarySearchSeeker tsBinarySearchSeeker;
@@ -141,6 +148,9 @@ public final class TsExtractor implements Extractor {
   @Nullable private TsPayloadReader id3Reader;
   private int bytesSinceLastSync;
   private int pcrPid;
+  @Nullable private TsPcrIndexBuilder pcrIndexBuilder;
+  private boolean hasReadCachedPcrIndex;
+  private boolean hasCachedPcrIndex;
 
   public TsExtractor() {
     this(/* defaultTsPayloadReaderFlags= */ 0);
@@ -209,6 +219,72 @@ public final class TsExtractor implements Extractor {
       TimestampAdjuster timestampAdjuster,
       TsPayloadReader.Factory payloadReaderFactory,
       int timestampSearchBytes) {
+    this(
+        mode,
+        timestampAdjuster,
+        payloadReaderFactory,
+        timestampSearchBytes,
+        /* parsingExecutor= */ null,
+        /* seekIndexCache= */ null);
+  }
+
+  /**
+   * @param mode Mode for the extractor. One of {@link #MODE_MULTI_PMT} and {@link
+   *     #MODE_SINGLE_PMT}, or {@link #MODE_HLS} if {@code parsingExecutor} is null.
+   * @param timestampAdjuster A timestamp adjuster for offsetting and scaling sample timestamps.
+   * @param payloadReaderFactory Factory for injecting a custom set of payload readers.
+   * @param timestampSearchBytes The number of bytes searched from a given position in the stream to
+   *     find a PCR timestamp. See {@link #TsExtractor(int, TimestampAdjuster,
+   *     TsPayloadReader.Factory, int)}.
+   * @param parsingExecutor An {@link Executor} on which the elementary streams of PES payloads are
+   *     parsed, or null to parse them on the loading thread. Each elementary stream is parsed
+   *     serially, but different elementary streams are parsed in parallel if the executor has more
+   *     than one thread. PES headers and timestamps are always parsed on the loading thread, and
+   *     all parsing has finished when {@link #read} returns.
+   */
+  public TsExtractor(
+      @Mode int mode,
+      TimestampAdjuster timestampAdjuster,
+      TsPayloadReader.Factory payloadReaderFactory,
+      int timestampSearchBytes,
+      @Nullable Executor parsingExecutor) {
+    this(
+        mode,
+        timestampAdjuster,
+        payloadReaderFactory,
+        timestampSearchBytes,
+        parsingExecutor,
+        /* seekIndexCache= */ null);
+  }
+
+  /**
+   * @param mode Mode for the extractor. One of {@link #MODE_MULTI_PMT} and {@link
+   *     #MODE_SINGLE_PMT}, or {@link #MODE_HLS} if {@code parsingExecutor} and {@code
+   *     seekIndexCache} are null.
+   * @param timestampAdjuster A timestamp adjuster for offsetting and scaling sample timestamps.
+   * @param payloadReaderFactory Factory for injecting a custom set of payload readers.
+   * @param timestampSearchBytes The number of bytes searched from a given position in the stream to
+   *     find a PCR timestamp. See {@link #TsExtractor(int, TimestampAdjuster,
+   *     TsPayloadReader.Factory, int)}.
+   * @param parsingExecutor An {@link Executor} on which the elementary streams of PES payloads are
+   *     parsed, or null to parse them on the loading thread. See {@link #TsExtractor(int,
+   *     TimestampAdjuster, TsPayloadReader.Factory, int, Executor)}.
+   * @param seekIndexCache A {@link SeekIndexCache} in which {@link TsPcrIndexBuilder PCR indices}
+   *     are cached, or null. If an index of the stream is cached, it's output as the {@link
+   *     SeekMap}, so that the duration doesn't need to be read and seeking takes a single read
+   *     instead of a binary search. Otherwise an index is built and cached if the stream is read
+   *     from its start to its end without seeking.
+   */
+  public TsExtractor(
+      @Mode int mode,
+      TimestampAdjuster timestampAdjuster,
+      TsPayloadReader.Factory payloadReaderFactory,
+      int timestampSearchBytes,
+      @Nullable Executor parsingExecutor,
+      @Nullable SeekIndexCache seekIndexCache) {
+    // HLS chunks are extracted by a loader that may be canceled while read() is in progress.
+    Assertions.checkArgument(parsingExecutor == null || mode != MODE_HLS);
+    Assertions.checkArgument(seekIndexCache == null || mode != MODE_HLS);
     this.payloadReaderFactory = Assertions.checkNotNull(payloadReaderFactory);
     this.timestampSearchBytes = timestampSearchBytes;
     this.mode = mode;
@@ -224,6 +300,12 @@ public final class TsExtractor implements Extractor {
     tsPayloadReaders = new SparseArray<>();
     continuityCounters = new SparseIntArray();
     durationReader = new TsDurationReader(timestampSearchBytes);
+    this.parsingExecutor = parsingExecutor;
+    parallelElementaryStreamReaders = new ArrayList<>();
+    this.seekIndexCache = seekIndexCache;
+    if (seekIndexCache != null) {
+      pcrIndexBuilder = new TsPcrIndexBuilder();
+    }
     output = ExtractorOutput.PLACEHOLDER;
     pcrPid = -1;
     resetPayloadReaders();
@@ -286,6 +368,10 @@ public final class TsExtractor implements Extractor {
     if (timeUs != 0 && tsBinarySearchSeeker != null) {
       tsBinarySearchSeeker.setSeekTargetUs(timeUs);
     }
+    if (seekIndexCache != null && !hasCachedPcrIndex) {
+      // The index can only be built if the whole stream is read in order.
+      pcrIndexBuilder = position == 0 ? new TsPcrIndexBuilder() : null;
+    }
     tsPacketBuffer.reset(/* limit= */ 0);
     continuityCounters.clear();
     for (int i = 0; i < tsPayloadReaders.size(); i++) {
@@ -305,7 +391,11 @@ public final class TsExtractor implements Extractor {
     long inputLength = input.getLength();
     if (tracksEnded) {
       boolean canReadDuration = inputLength != C.LENGTH_UNSET && mode != MODE_HLS;
-      if (canReadDuration && !durationReader.isDurationReadFinished()) {
+      if (canReadDuration && !hasReadCachedPcrIndex) {
+        hasReadCachedPcrIndex = true;
+        maybeOutputCachedPcrIndex(inputLength);
+      }
+      if (canReadDuration && !hasOutputSeekMap && !durationReader.isDurationReadFinished()) {
         return durationReader.readDuration(input, seekPosition, pcrPid);
       }
       maybeOutputSeekMap(inputLength);
@@ -324,7 +414,38 @@ public final class TsExtractor implements Extractor {
       }
     }
 
+    if (parallelElementaryStreamReaders.isEmpty()) {
+      return readPacket(input, inputLength);
+    }
+    // Read a batch of packets so that the elementary streams can be parsed in parallel, stopping
+    // early if the tracks end because the duration may need to be read or a seek may be pending.
+    @ReadResult int result = RESULT_CONTINUE;
+    boolean wereTracksEnded = tracksEnded;
+    try {
+      for (int i = 0;
+          i < MAX_PACKETS_PER_READ_WITH_PARALLEL_PARSING
+              && result == RESULT_CONTINUE
+              && tracksEnded == wereTracksEnded;
+          i++) {
+        result = readPacket(input, inputLength);
+      }
+    } finally {
+      // The outputs mustn't be written to once this method returns.
+      for (int i = 0; i < parallelElementaryStreamReaders.size(); i++) {
+        parallelElementaryStreamReaders.get(i).blockUntilIdle();
+      }
+    }
+    for (int i = 0; i < parallelElementaryStreamReaders.size(); i++) {
+      parallelElementaryStreamReaders.get(i).maybeThrowError();
+    }
+    return result;
+  }
+
+  // Internals.
+
+  private @ReadResult int readPacket(ExtractorInput input, long inputLength) throws IOException {
     if (!fillBufferWithAtLeastOnePacket(input)) {
+      maybeCachePcrIndex(inputLength);
       // Send a synthesised empty pusi to allow for packetFinished to be triggered on the last unit.
       for (int i = 0; i < tsPayloadReaders.size(); i++) {
         TsPayloadReader payloadReader = tsPayloadReaders.valueAt(i);
@@ -408,7 +529,28 @@ public final class TsExtractor implements Extractor {
     return RESULT_CONTINUE;
   }
 
-  // Internals.
+  private void maybeOutputCachedPcrIndex(long inputLength) {
+    if (seekIndexCache == null || pcrIndexBuilder == null || hasOutputSeekMap) {
+      return;
+    }
+    @Nullable String cacheKey = pcrIndexBuilder.getCacheKey(inputLength);
+    @Nullable ChunkIndex pcrIndex = cacheKey != null ? seekIndexCache.get(cacheKey) : null;
+    if (pcrIndex != null) {
+      hasOutputSeekMap = true;
+      hasCachedPcrIndex = true;
+      pcrIndexBuilder = null;
+      output.seekMap(pcrIndex);
+    }
+  }
+
+  private void maybeCachePcrIndex(long inputLength) {
+    if (seekIndexCache != null
+        && pcrIndexBuilder != null
+        && pcrIndexBuilder.getBytesConsumed() == inputLength) {
+      hasCachedPcrIndex = pcrIndexBuilder.cacheIndex(seekIndexCache);
+    }
+    pcrIndexBuilder = null;
+  }
 
   private void maybeOutputSeekMap(long inputLength) {
     if (!hasOutputSeekMap) {
@@ -441,10 +583,16 @@ public final class TsExtractor implements Extractor {
     // Read more bytes until we have at least one packet.
     while (tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE) {
       int limit = tsPacketBuffer.limit();
+      if (pcrIndexBuilder != null && pcrIndexBuilder.getBytesConsumed() != input.getPosition()) {
+        pcrIndexBuilder = null;
+      }
       int read = input.read(data, limit, BUFFER_SIZE - limit);
       if (read == C.RESULT_END_OF_INPUT) {
         return false;
       }
+      if (pcrIndexBuilder != null) {
+        pcrIndexBuilder.consume(data, limit, read);
+      }
       tsPacketBuffer.setLimit(limit + read);
     }
     return true;
@@ -685,6 +833,10 @@ public final class TsExtractor implements Extractor {
         trackPids.put(trackPid, true);
         @Nullable TsPayloadReader reader = trackIdToReaderScratch.valueAt(i);
         if (reader != null) {
+          if (parsingExecutor != null && reader instanceof PesReader) {
+            parallelElementaryStreamReaders.add(
+                ((PesReader) reader).parseElementaryStreamOn(parsingExecutor));
+          }
           if (reader != id3Reader) {
             reader.init(
                 timestampAdjuster,
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static androidx.media3.extractor.ts.TsExtractor.TS_PACKET_SIZE;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.LongArray;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.TimestampAdjuster;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.extractor.ChunkIndex;
+import androidx.media3.extractor.SeekIndexCache;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.zip.CRC32;
+
+/**
+ * Builds a sparse index that maps PCR timestamps to byte offsets in an MPEG transport stream, so
+ * that a {@link TsExtractor} with a {@link SeekIndexCache} can output a seekable {@link ChunkIndex}
+ * instead of reading the stream's duration and seeking by binary search.
+ *
+ * <p>The stream is passed to {@link #consume(byte[], int, int)} in order, starting from its first
+ * byte. {@link TsExtractor} does this itself while the stream is played from the start to the end,
+ * and the same can be done while the stream is downloaded, for example by passing the downloaded
+ * data to an instance from a data sink, and then calling {@link #cacheIndex(SeekIndexCache)} once
+ * the download has completed.
+ *
+ * <p>The index holds an entry for the first PCR of the PCR PID in each interval of {@link
+ * #DEFAULT_MIN_ENTRY_INTERVAL_US} or more. The PCR PID is the PID of the first packet that carries
+ * a PCR. No index is built if the PCR of the stream goes backwards, other than by wrapping around.
+ */
+@UnstableApi
+public final class TsPcrIndexBuilder {
+
+  /** The default minimum interval between the timestamps of consecutive index entries. */
+  public static final long DEFAULT_MIN_ENTRY_INTERVAL_US = C.MICROS_PER_SECOND;
+
+  /** The number of bytes at the start of the stream from which its cache key is derived. */
+  private static final int CACHE_KEY_BYTES = 10 * TS_PACKET_SIZE;
+
+  private final long minEntryIntervalUs;
+  private final ParsableByteArray packetBuffer;
+  private final CRC32 cacheKeyCrc;
+  private final TimestampAdjuster pcrTimestampAdjuster;
+  private final LongArray offsets;
+  private final LongArray timesUs;
+
+  private long bytesConsumed;
+  private int pcrPid;
+  private long lastPcrTimeUs;
+  private boolean pcrDiscontinuous;
+
+  /** Creates an instance with {@link #DEFAULT_MIN_ENTRY_INTERVAL_US}. */
+  public TsPcrIndexBuilder() {
+    this(DEFAULT_MIN_ENTRY_INTERVAL_US);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param minEntryIntervalUs The minimum interval between the timestamps of consecutive index
+   *     entries, in microseconds.
+   */
+  public TsPcrIndexBuilder(long minEntryIntervalUs) {
+    this.minEntryIntervalUs = minEntryIntervalUs;
+    packetBuffer = new ParsableByteArray(TS_PACKET_SIZE);
+    packetBuffer.setLimit(0);
+    cacheKeyCrc = new CRC32();
+    pcrTimestampAdjuster = new TimestampAdjuster(/* firstSampleTimestampUs= */ 0);
+    offsets = new LongArray();
+    timesUs = new LongArray();
+    pcrPid = C.INDEX_UNSET;
+    lastPcrTimeUs = C.TIME_UNSET;
+  }
+
+  /** Returns the number of bytes passed to {@link #consume(byte[], int, int)}. */
+  public long getBytesConsumed() {
+    return bytesConsumed;
+  }
+
+  /**
+   * Consumes the next bytes of the stream.
+   *
+   * @param data An array holding the bytes.
+   * @param offset The offset of the bytes in {@code data}.
+   * @param length The number of bytes to consume.
+   */
+  public void consume(byte[] data, int offset, int length) {
+    if (bytesConsumed < CACHE_KEY_BYTES) {
+      cacheKeyCrc.update(data, offset, (int) min(length, CACHE_KEY_BYTES - bytesConsumed));
+    }
+    int end = offset + length;
+    byte[] packet = packetBuffer.getData();
+    while (offset < end) {
+      int packetBytes = packetBuffer.limit();
+      if (packetBytes == 0) {
+        // Skip to the next sync byte.
+        int syncBytePosition = TsUtil.findSyncBytePosition(data, offset, end);
+        bytesConsumed += syncBytePosition - offset;
+        offset = syncBytePosition;
+        if (offset == end) {
+          break;
+        }
+      }
+      int bytesToCopy = min(end - offset, TS_PACKET_SIZE - packetBytes);
+      System.arraycopy(data, offset, packet, packetBytes, bytesToCopy);
+      offset += bytesToCopy;
+      bytesConsumed += bytesToCopy;
+      packetBuffer.setLimit(packetBytes + bytesToCopy);
+      if (packetBuffer.limit() == TS_PACKET_SIZE) {
+        onPacket(/* packetPosition= */ bytesConsumed - TS_PACKET_SIZE);
+        packetBuffer.setLimit(0);
+      }
+    }
+  }
+
+  /**
+   * Returns the key under which the index of the stream is cached, or null if the key isn't known
+   * yet because too few bytes have been consumed.
+   *
+   * @param inputLength The length of the stream, in bytes.
+   */
+  @Nullable
+  public String getCacheKey(long inputLength) {
+    if (bytesConsumed < min(inputLength, CACHE_KEY_BYTES)) {
+      return null;
+    }
+    return "ts:" + inputLength + ":" + Long.toHexString(cacheKeyCrc.getValue());
+  }
+
+  /**
+   * Returns the index of the bytes consumed so far, or null if the stream doesn't contain enough
+   * PCRs or its PCR is discontinuous.
+   */
+  @Nullable
+  public ChunkIndex build() {
+    int length = offsets.size();
+    if (pcrDiscontinuous || length < 2) {
+      return null;
+    }
+    long[] offsets = this.offsets.toArray();
+    long[] timesUs = this.timesUs.toArray();
+    int[] sizes = new int[length];
+    long[] durationsUs = new long[length];
+    for (int i = 0; i < length - 1; i++) {
+      sizes[i] = (int) (offsets[i + 1] - offsets[i]);
+      durationsUs[i] = timesUs[i + 1] - timesUs[i];
+    }
+    sizes[length - 1] = (int) (bytesConsumed - offsets[length - 1]);
+    durationsUs[length - 1] = lastPcrTimeUs - timesUs[length - 1];
+    return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+  }
+
+  /**
+   * Builds the index of the bytes consumed so far and caches it, assuming that the whole stream
+   * has been consumed.
+   *
+   * @param seekIndexCache The {@link SeekIndexCache} in which to cache the index.
+   * @return Whether an index was cached.
+   */
+  @CanIgnoreReturnValue
+  public boolean cacheIndex(SeekIndexCache seekIndexCache) {
+    @Nullable String cacheKey = getCacheKey(bytesConsumed);
+    @Nullable ChunkIndex chunkIndex = build();
+    if (cacheKey == null || chunkIndex == null) {
+      return false;
+    }
+    seekIndexCache.put(cacheKey, chunkIndex);
+    return true;
+  }
+
+  private void onPacket(long packetPosition) {
+    if (pcrDiscontinuous) {
+      return;
+    }
+    byte[] packet = packetBuffer.getData();
+    int pid = ((packet[1] & 0x1F) << 8) | (packet[2] & 0xFF);
+    if (pcrPid != C.INDEX_UNSET && pid != pcrPid) {
+      return;
+    }
+    long pcrValue = TsUtil.readPcrFromPacket(packetBuffer, /* startOfPacket= */ 0, pid);
+    if (pcrValue == C.TIME_UNSET) {
+      return;
+    }
+    pcrPid = pid;
+    long pcrTimeUs = pcrTimestampAdjuster.adjustTsTimestamp(pcrValue);
+    if (lastPcrTimeUs == C.TIME_UNSET) {
+      // The first entry is at the start of the stream, so that seeking to the start doesn't skip
+      // any packets that precede the first PCR.
+      offsets.add(0);
+      timesUs.add(pcrTimeUs);
+    } else if (pcrTimeUs < lastPcrTimeUs) {
+      pcrDiscontinuous = true;
+      return;
+    } else if (pcrTimeUs - timesUs.get(timesUs.size() - 1) >= minEntryIntervalUs) {
+      offsets.add(packetPosition);
+      timesUs.add(pcrTimeUs);
+    }
+    lastPcrTimeUs = pcrTimeUs;
+  }
+}
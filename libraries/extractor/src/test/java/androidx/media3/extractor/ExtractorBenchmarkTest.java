@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import androidx.media3.extractor.flac.FlacExtractor;
+import androidx.media3.extractor.mkv.MatroskaExtractor;
+import androidx.media3.extractor.mp4.FragmentedMp4Extractor;
+import androidx.media3.extractor.mp4.Mp4Extractor;
+import androidx.media3.extractor.ogg.OggExtractor;
+import androidx.media3.extractor.ts.TsExtractor;
+import androidx.media3.test.utils.BenchmarkUtil;
+import androidx.media3.test.utils.ExtractorAsserts.ExtractorFactory;
+import androidx.media3.test.utils.ExtractorBenchmark;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Performance regression tests for extractors, using {@link ExtractorBenchmark}.
+ *
+ * <p>Each test fails if the number of bytes allocated per sample exceeds its budget, as described
+ * in {@link BenchmarkUtil}.
+ *
+ * <p>The sample data is discarded, so the allocations are those of the extractors. The TS tests
+ * include the NAL unit scanning of the H.264 and H.265 readers, whose raw throughput is measured by
+ * {@code NalUnitUtilBenchmarkTest}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorBenchmarkTest {
+
+  @Test
+  public void mp4() throws IOException {
+    assertAllocationsWithinBudget(
+        Mp4Extractor::new, "media/mp4/sample.mp4", /* maxAllocatedBytesPerSample= */ 600);
+  }
+
+  @Test
+  public void fragmentedMp4() throws IOException {
+    assertAllocationsWithinBudget(
+        FragmentedMp4Extractor::new,
+        "media/mp4/sample_fragmented.mp4",
+        /* maxAllocatedBytesPerSample= */ 500);
+  }
+
+  @Test
+  public void ts() throws IOException {
+    assertAllocationsWithinBudget(
+        TsExtractor::new, "media/ts/bbb_2500ms.ts", /* maxAllocatedBytesPerSample= */ 2_000);
+  }
+
+  @Test
+  public void tsH265() throws IOException {
+    assertAllocationsWithinBudget(
+        TsExtractor::new, "media/ts/sample_h265.ts", /* maxAllocatedBytesPerSample= */ 3_500);
+  }
+
+  @Test
+  public void matroska() throws IOException {
+    assertAllocationsWithinBudget(
+        MatroskaExtractor::new, "media/mkv/sample.mkv", /* maxAllocatedBytesPerSample= */ 600);
+  }
+
+  @Test
+  public void flac() throws IOException {
+    assertAllocationsWithinBudget(
+        FlacExtractor::new, "media/flac/bear.flac", /* maxAllocatedBytesPerSample= */ 2_500);
+  }
+
+  @Test
+  public void ogg() throws IOException {
+    assertAllocationsWithinBudget(
+        OggExtractor::new, "media/ogg/bear_vorbis.ogg", /* maxAllocatedBytesPerSample= */ 1_000);
+  }
+
+  private static void assertAllocationsWithinBudget(
+      ExtractorFactory extractorFactory, String file, long maxAllocatedBytesPerSample)
+      throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), file);
+
+    ExtractorBenchmark.Result result = new ExtractorBenchmark(extractorFactory).run(data);
+
+    BenchmarkUtil.assertAllocationsWithinBudget(file, result, maxAllocatedBytesPerSample);
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.Util;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link FileSeekIndexCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class FileSeekIndexCacheTest {
+
+  private static final ChunkIndex CHUNK_INDEX =
+      new ChunkIndex(
+          /* sizes= */ new int[] {100, 200, 300},
+          /* offsets= */ new long[] {1000, 1100, 1300},
+          /* durationsUs= */ new long[] {10_000, 20_000, 30_000},
+          /* timesUs= */ new long[] {0, 10_000, 30_000});
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(directory);
+  }
+
+  @Test
+  public void get_afterPutInOtherInstance_returnsEqualIndex() {
+    new FileSeekIndexCache(directory).put("key", CHUNK_INDEX);
+
+    @Nullable ChunkIndex chunkIndex = new FileSeekIndexCache(directory).get("key");
+
+    assertThat(chunkIndex).isNotNull();
+    assertThat(chunkIndex.sizes).isEqualTo(CHUNK_INDEX.sizes);
+    assertThat(chunkIndex.offsets).isEqualTo(CHUNK_INDEX.offsets);
+    assertThat(chunkIndex.durationsUs).isEqualTo(CHUNK_INDEX.durationsUs);
+    assertThat(chunkIndex.timesUs).isEqualTo(CHUNK_INDEX.timesUs);
+    assertThat(chunkIndex.getDurationUs()).isEqualTo(60_000);
+  }
+
+  @Test
+  public void get_unknownKey_returnsNull() {
+    FileSeekIndexCache seekIndexCache = new FileSeekIndexCache(directory);
+    seekIndexCache.put("key", CHUNK_INDEX);
+
+    assertThat(seekIndexCache.get("otherKey")).isNull();
+  }
+
+  @Test
+  public void get_truncatedFile_returnsNull() throws IOException {
+    FileSeekIndexCache seekIndexCache = new FileSeekIndexCache(directory);
+    seekIndexCache.put("key", CHUNK_INDEX);
+    File[] files = directory.listFiles();
+    assertThat(files).hasLength(1);
+    try (FileOutputStream outputStream = new FileOutputStream(files[0])) {
+      outputStream.write(new byte[] {0, 0, 0, 1});
+    }
+
+    assertThat(seekIndexCache.get("key")).isNull();
+  }
+
+  @Test
+  public void put_exceedingMaxBytes_evictsLeastRecentlyUsedIndex() {
+    new FileSeekIndexCache(directory).put("key1", CHUNK_INDEX);
+    long indexFileLength = directory.listFiles()[0].length();
+    FileSeekIndexCache seekIndexCache =
+        new FileSeekIndexCache(directory, /* maxBytes= */ 2 * indexFileLength);
+    seekIndexCache.put("key2", CHUNK_INDEX);
+    assertThat(seekIndexCache.get("key1")).isNotNull();
+
+    seekIndexCache.put("key3", CHUNK_INDEX);
+
+    assertThat(seekIndexCache.get("key1")).isNotNull();
+    assertThat(seekIndexCache.get("key2")).isNull();
+    assertThat(seekIndexCache.get("key3")).isNotNull();
+    assertThat(directory.listFiles()).hasLength(2);
+  }
+
+  @Test
+  public void put_exceedingMaxBytes_evictsLeastRecentlyUsedIndexOfOtherInstance() {
+    FileSeekIndexCache seekIndexCache = new FileSeekIndexCache(directory);
+    seekIndexCache.put("key1", CHUNK_INDEX);
+    seekIndexCache.put("key2", CHUNK_INDEX);
+    File[] files = directory.listFiles();
+    assertThat(files).hasLength(2);
+    long indexFileLength = files[0].length();
+    assertThat(files[0].setLastModified(/* time= */ 2_000_000)).isTrue();
+    assertThat(files[1].setLastModified(/* time= */ 1_000_000)).isTrue();
+
+    new FileSeekIndexCache(directory, /* maxBytes= */ 2 * indexFileLength).put("key3", CHUNK_INDEX);
+
+    assertThat(files[0].exists()).isTrue();
+    assertThat(files[1].exists()).isFalse();
+    assertThat(directory.listFiles()).hasLength(2);
+  }
+
+  @Test
+  public void put_indexExceedingMaxBytes_keepsIndex() {
+    FileSeekIndexCache seekIndexCache = new FileSeekIndexCache(directory, /* maxBytes= */ 1);
+    seekIndexCache.put("key1", CHUNK_INDEX);
+
+    seekIndexCache.put("key2", CHUNK_INDEX);
+
+    assertThat(seekIndexCache.get("key1")).isNull();
+    assertThat(seekIndexCache.get("key2")).isNotNull();
+  }
+}
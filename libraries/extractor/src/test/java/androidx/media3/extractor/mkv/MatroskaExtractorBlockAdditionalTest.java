@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mkv;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.FakeTrackOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.primitives.Bytes;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for the handling of BlockAdditional elements by {@link MatroskaExtractor}. */
+@RunWith(AndroidJUnit4.class)
+public final class MatroskaExtractorBlockAdditionalTest {
+
+  private static final int BLOCK_ADDITIONAL_TYPE_ITU_T_35 = 4;
+  private static final int BLOCK_ADDITIONAL_TYPE_LCEVC = 5;
+  private static final byte[] SAMPLE_DATA = TestUtil.createByteArray(1, 2, 3);
+
+  @Test
+  public void blockGroupWithBlockAdditional_outputsSupplementalDataAfterSampleData()
+      throws IOException {
+    byte[] blockAdditional = TestUtil.createByteArray(9, 8, 7, 6);
+    byte[] data =
+        createWebm(
+            createBlockGroup(
+                createBlockMore(BLOCK_ADDITIONAL_TYPE_ITU_T_35, blockAdditional)));
+
+    FakeTrackOutput trackOutput = extractVideoTrack(data);
+
+    assertThat(trackOutput.getSampleCount()).isEqualTo(1);
+    assertThat(trackOutput.getSampleFlags(0) & C.BUFFER_FLAG_HAS_SUPPLEMENTAL_DATA).isNotEqualTo(0);
+    // The sample size, the sample data and the supplemental data.
+    assertThat(trackOutput.getSampleData(0))
+        .isEqualTo(Bytes.concat(new byte[] {0, 0, 0, 3}, SAMPLE_DATA, blockAdditional));
+  }
+
+  @Test
+  public void blockGroupWithMultipleBlockAdditionals_outputsLastSupportedBlockAdditional()
+      throws IOException {
+    byte[] firstBlockAdditional = TestUtil.createByteArray(9, 8, 7, 6);
+    byte[] secondBlockAdditional = TestUtil.createByteArray(5, 4);
+    byte[] data =
+        createWebm(
+            createBlockGroup(
+                Bytes.concat(
+                    createBlockMore(/* blockAddId= */ 100, TestUtil.createByteArray(1)),
+                    createBlockMore(BLOCK_ADDITIONAL_TYPE_LCEVC, firstBlockAdditional),
+                    createBlockMore(BLOCK_ADDITIONAL_TYPE_ITU_T_35, secondBlockAdditional))));
+
+    FakeTrackOutput trackOutput = extractVideoTrack(data);
+
+    assertThat(trackOutput.getSampleCount()).isEqualTo(1);
+    assertThat(trackOutput.getSampleData(0))
+        .isEqualTo(Bytes.concat(new byte[] {0, 0, 0, 3}, SAMPLE_DATA, secondBlockAdditional));
+  }
+
+  @Test
+  public void blockGroupWithUnsupportedLastBlockAdditional_outputsLastSupportedBlockAdditional()
+      throws IOException {
+    byte[] firstBlockAdditional = TestUtil.createByteArray(9, 8, 7, 6);
+    byte[] secondBlockAdditional = TestUtil.createByteArray(5, 4);
+    byte[] data =
+        createWebm(
+            createBlockGroup(
+                Bytes.concat(
+                    createBlockMore(BLOCK_ADDITIONAL_TYPE_ITU_T_35, firstBlockAdditional),
+                    createBlockMore(BLOCK_ADDITIONAL_TYPE_LCEVC, secondBlockAdditional),
+                    createBlockMore(/* blockAddId= */ 100, TestUtil.createByteArray(1)))));
+
+    FakeTrackOutput trackOutput = extractVideoTrack(data);
+
+    assertThat(trackOutput.getSampleCount()).isEqualTo(1);
+    assertThat(trackOutput.getSampleData(0))
+        .isEqualTo(Bytes.concat(new byte[] {0, 0, 0, 3}, SAMPLE_DATA, secondBlockAdditional));
+  }
+
+  private static FakeTrackOutput extractVideoTrack(byte[] data) throws IOException {
+    MatroskaExtractor extractor = new MatroskaExtractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    while (extractor.read(input, positionHolder) != Extractor.RESULT_END_OF_INPUT) {}
+    return output.trackOutputs.get(1);
+  }
+
+  private static byte[] createWebm(byte[] blockGroup) {
+    byte[] ebmlHeader = createElement(0x1A45DFA3, createElement(0x4282, Util.getUtf8Bytes("webm")));
+    byte[] video =
+        createElement(
+            0xE0,
+            Bytes.concat(
+                createUnsignedIntElement(0xB0, /* value= */ 16),
+                createUnsignedIntElement(0xBA, /* value= */ 16)));
+    byte[] trackEntry =
+        createElement(
+            0xAE,
+            Bytes.concat(
+                createUnsignedIntElement(0xD7, /* value= */ 1),
+                createUnsignedIntElement(0x83, /* value= */ 1),
+                createElement(0x86, Util.getUtf8Bytes("V_VP9")),
+                video));
+    byte[] tracks = createElement(0x1654AE6B, trackEntry);
+    byte[] info = createElement(0x1549A966, createUnsignedIntElement(0x2AD7B1, 1_000_000));
+    byte[] cluster =
+        createElement(
+            0x1F43B675, Bytes.concat(createUnsignedIntElement(0xE7, /* value= */ 0), blockGroup));
+    return Bytes.concat(ebmlHeader, createElement(0x18538067, Bytes.concat(info, tracks, cluster)));
+  }
+
+  private static byte[] createBlockGroup(byte[] blockMores) {
+    // Track number 1 as a varint, a relative timecode of 0 and no flags.
+    byte[] block = Bytes.concat(TestUtil.createByteArray(0x81, 0x00, 0x00, 0x00), SAMPLE_DATA);
+    return createElement(
+        0xA0, Bytes.concat(createElement(0xA1, block), createElement(0x75A1, blockMores)));
+  }
+
+  private static byte[] createBlockMore(int blockAddId, byte[] blockAdditional) {
+    return createElement(
+        0xA6,
+        Bytes.concat(
+            createUnsignedIntElement(0xEE, blockAddId), createElement(0xA5, blockAdditional)));
+  }
+
+  private static byte[] createUnsignedIntElement(int id, long value) {
+    byte[] content = new byte[8];
+    for (int i = 0; i < 8; i++) {
+      content[i] = (byte) (value >> ((7 - i) * 8));
+    }
+    return createElement(id, content);
+  }
+
+  private static byte[] createElement(int id, byte[] content) {
+    ByteArrayOutputStream element = new ByteArrayOutputStream();
+    // Element IDs include their varint length marker, so they're written as they are.
+    boolean idStarted = false;
+    for (int i = 3; i >= 0; i--) {
+      int idByte = (id >> (i * 8)) & 0xFF;
+      if (idByte != 0 || idStarted) {
+        element.write(idByte);
+        idStarted = true;
+      }
+    }
+    // Sizes are written as 8 byte varints.
+    element.write(0x01);
+    for (int i = 6; i >= 0; i--) {
+      element.write((int) ((long) content.length >> (i * 8)) & 0xFF);
+    }
+    element.write(content, /* off= */ 0, content.length);
+    return element.toByteArray();
+  }
+}
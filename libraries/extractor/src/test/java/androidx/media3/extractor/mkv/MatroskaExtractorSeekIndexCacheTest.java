@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mkv;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.media3.extractor.ChunkIndex;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndexCache;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link MatroskaExtractor} with a {@link SeekIndexCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class MatroskaExtractorSeekIndexCacheTest {
+
+  private static final String SAMPLE_FILE = "media/mkv/sample.mkv";
+
+  @Test
+  public void extract_cuesAfterFirstCluster_cachesIndexAndSkipsSeekWhenCached()
+      throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    InMemorySeekIndexCache seekIndexCache = new InMemorySeekIndexCache();
+
+    FakeExtractorOutput firstOutput = new FakeExtractorOutput();
+    int firstSeekCount = extract(data, seekIndexCache, firstOutput);
+    FakeExtractorOutput secondOutput = new FakeExtractorOutput();
+    int secondSeekCount = extract(data, seekIndexCache, secondOutput);
+
+    // Seeking to the Cues element and back again requires two seeks.
+    assertThat(firstSeekCount).isEqualTo(2);
+    assertThat(secondSeekCount).isEqualTo(0);
+    assertThat(seekIndexCache.indices).hasSize(1);
+    ChunkIndex firstChunkIndex = (ChunkIndex) firstOutput.seekMap;
+    ChunkIndex secondChunkIndex = (ChunkIndex) secondOutput.seekMap;
+    assertThat(secondChunkIndex.timesUs).isEqualTo(firstChunkIndex.timesUs);
+    assertThat(secondChunkIndex.offsets).isEqualTo(firstChunkIndex.offsets);
+    assertThat(secondOutput.numberOfTracks).isEqualTo(firstOutput.numberOfTracks);
+    for (int i = 0; i < firstOutput.trackOutputs.size(); i++) {
+      assertThat(secondOutput.trackOutputs.valueAt(i).getSampleCount())
+          .isEqualTo(firstOutput.trackOutputs.valueAt(i).getSampleCount());
+    }
+  }
+
+  @Test
+  public void extract_seekForCuesDisabled_doesNotUseCache() throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    InMemorySeekIndexCache seekIndexCache = new InMemorySeekIndexCache();
+    extract(data, seekIndexCache, new FakeExtractorOutput());
+
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    Extractor extractor =
+        new MatroskaExtractor(MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES, seekIndexCache);
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    while (extractor.read(input, positionHolder) == Extractor.RESULT_CONTINUE) {}
+
+    assertThat(output.seekMap.isSeekable()).isFalse();
+  }
+
+  /** Extracts all samples and returns the number of seeks requested by the extractor. */
+  private static int extract(
+      byte[] data, SeekIndexCache seekIndexCache, FakeExtractorOutput output) throws IOException {
+    Extractor extractor = new MatroskaExtractor(/* flags= */ 0, seekIndexCache);
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    int seekCount = 0;
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+        seekCount++;
+      }
+    }
+    return seekCount;
+  }
+
+  private static final class InMemorySeekIndexCache implements SeekIndexCache {
+
+    private final Map<String, ChunkIndex> indices = new HashMap<>();
+
+    @Override
+    @Nullable
+    public ChunkIndex get(String key) {
+      return indices.get(key);
+    }
+
+    @Override
+    public void put(String key, ChunkIndex chunkIndex) {
+      indices.put(key, chunkIndex);
+    }
+  }
+}
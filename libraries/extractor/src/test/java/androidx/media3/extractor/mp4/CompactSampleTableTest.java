@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link CompactSampleTable}. */
+@RunWith(AndroidJUnit4.class)
+public final class CompactSampleTableTest {
+
+  // Samples 0-2 are in the chunk at 1000, samples 3-5 in the chunk at 5000.
+  private static final int[] SAMPLE_SIZES = new int[] {10, 20, 30, 40, 50, 60};
+  private static final long[] CHUNK_OFFSETS = new long[] {1000, 5000};
+  private static final int[] CHUNK_FIRST_SAMPLE_INDICES = new int[] {0, 3};
+  private static final long[] EXPECTED_OFFSETS = new long[] {1000, 1010, 1030, 5000, 5040, 5090};
+
+  // Samples 0-3 have a duration of 100 and samples 4-5 a duration of 50.
+  private static final int[] TIME_TO_SAMPLE_FIRST_SAMPLE_INDICES = new int[] {0, 4};
+  private static final long[] TIME_TO_SAMPLE_START_TIMES = new long[] {0, 400};
+  private static final int[] TIME_TO_SAMPLE_DELTAS = new int[] {100, 50};
+
+  // Samples 1 and 2 are swapped in presentation order, as are samples 4 and 5.
+  private static final int[] COMPOSITION_OFFSET_FIRST_SAMPLE_INDICES = new int[] {0, 1, 2, 3, 4, 5};
+  private static final int[] COMPOSITION_OFFSETS = new int[] {0, 100, -100, 0, 50, -50};
+  private static final long[] EXPECTED_TIMESTAMPS = new long[] {0, 200, 100, 300, 450, 400};
+
+  @Test
+  public void getOffset_sequentialAccess_returnsOffsets() {
+    CompactSampleTable sampleTable = createSampleTable(/* syncSampleIndices= */ null);
+
+    for (int i = 0; i < SAMPLE_SIZES.length; i++) {
+      assertThat(sampleTable.getOffset(i)).isEqualTo(EXPECTED_OFFSETS[i]);
+    }
+  }
+
+  @Test
+  public void getOffset_randomAccess_returnsOffsets() {
+    CompactSampleTable sampleTable = createSampleTable(/* syncSampleIndices= */ null);
+
+    for (int i : new int[] {5, 1, 4, 0, 2, 3, 2, 5}) {
+      assertThat(sampleTable.getOffset(i)).isEqualTo(EXPECTED_OFFSETS[i]);
+    }
+  }
+
+  @Test
+  public void getOffset_fixedSampleSize_returnsOffsets() {
+    CompactSampleTable sampleTable =
+        new CompactSampleTable(
+            /* sampleCount= */ 5,
+            /* fixedSampleSize= */ 8,
+            /* sampleSizes= */ null,
+            /* chunkOffsets= */ new long[] {100, 200},
+            /* chunkFirstSampleIndices= */ new int[] {0, 2},
+            /* timeToSampleFirstSampleIndices= */ new int[] {0},
+            /* timeToSampleStartTimes= */ new long[] {0},
+            /* timeToSampleDeltas= */ new int[] {10},
+            /* compositionOffsetFirstSampleIndices= */ null,
+            /* compositionOffsets= */ null,
+            /* syncSampleIndices= */ null);
+
+    assertThat(sampleTable.getOffset(4)).isEqualTo(216);
+    assertThat(sampleTable.getOffset(1)).isEqualTo(108);
+    assertThat(sampleTable.getOffset(2)).isEqualTo(200);
+    assertThat(sampleTable.getSize(3)).isEqualTo(8);
+    assertThat(sampleTable.getMaximumSize(/* fromIndex= */ 0, /* toIndex= */ 5)).isEqualTo(8);
+    assertThat(sampleTable.getTimestamp(4)).isEqualTo(40);
+    assertThat(sampleTable.duration).isEqualTo(50);
+  }
+
+  @Test
+  public void getTimestamp_returnsDecodingTimePlusCompositionOffset() {
+    CompactSampleTable sampleTable = createSampleTable(/* syncSampleIndices= */ null);
+
+    for (int i : new int[] {0, 1, 2, 3, 4, 5, 3, 0, 5}) {
+      assertThat(sampleTable.getTimestamp(i)).isEqualTo(EXPECTED_TIMESTAMPS[i]);
+    }
+    assertThat(sampleTable.duration).isEqualTo(450);
+  }
+
+  @Test
+  public void getMaximumSize_returnsMaximumInRange() {
+    CompactSampleTable sampleTable = createSampleTable(/* syncSampleIndices= */ null);
+
+    assertThat(sampleTable.getMaximumSize(/* fromIndex= */ 1, /* toIndex= */ 4)).isEqualTo(40);
+    assertThat(sampleTable.getMaximumSize(/* fromIndex= */ 2, /* toIndex= */ 2)).isEqualTo(0);
+  }
+
+  @Test
+  public void syncSamples_withSyncSampleIndices_returnsSyncSamples() {
+    CompactSampleTable sampleTable = createSampleTable(/* syncSampleIndices= */ new int[] {0, 3});
+
+    assertThat(sampleTable.isSyncSample(0)).isTrue();
+    assertThat(sampleTable.isSyncSample(2)).isFalse();
+    assertThat(sampleTable.isSyncSample(3)).isTrue();
+    assertThat(sampleTable.getPreviousSyncSampleIndex(2)).isEqualTo(0);
+    assertThat(sampleTable.getPreviousSyncSampleIndex(5)).isEqualTo(3);
+    assertThat(sampleTable.getPreviousSyncSampleIndex(-1)).isEqualTo(C.INDEX_UNSET);
+    assertThat(sampleTable.getNextSyncSampleIndex(1)).isEqualTo(3);
+    assertThat(sampleTable.getNextSyncSampleIndex(3)).isEqualTo(3);
+    assertThat(sampleTable.getNextSyncSampleIndex(4)).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void syncSamples_withoutSyncSampleIndices_treatsAllSamplesAsSyncSamples() {
+    CompactSampleTable sampleTable = createSampleTable(/* syncSampleIndices= */ null);
+
+    assertThat(sampleTable.isSyncSample(4)).isTrue();
+    assertThat(sampleTable.getPreviousSyncSampleIndex(4)).isEqualTo(4);
+    assertThat(sampleTable.getNextSyncSampleIndex(4)).isEqualTo(4);
+    assertThat(sampleTable.getNextSyncSampleIndex(6)).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void binarySearchTimestamp_unsortedTimestamps_matchesExpandedSearch() {
+    CompactSampleTable sampleTable = createSampleTable(/* syncSampleIndices= */ null);
+
+    for (long timestamp = -50; timestamp <= 500; timestamp += 25) {
+      for (boolean inclusive : new boolean[] {false, true}) {
+        for (boolean stayInBounds : new boolean[] {false, true}) {
+          assertThat(sampleTable.binarySearchTimestampFloor(timestamp, inclusive, stayInBounds))
+              .isEqualTo(
+                  Util.binarySearchFloor(EXPECTED_TIMESTAMPS, timestamp, inclusive, stayInBounds));
+          assertThat(sampleTable.binarySearchTimestampCeil(timestamp, inclusive, stayInBounds))
+              .isEqualTo(
+                  Util.binarySearchCeil(EXPECTED_TIMESTAMPS, timestamp, inclusive, stayInBounds));
+        }
+      }
+    }
+  }
+
+  private static CompactSampleTable createSampleTable(@Nullable int[] syncSampleIndices) {
+    return new CompactSampleTable(
+        SAMPLE_SIZES.length,
+        /* fixedSampleSize= */ C.LENGTH_UNSET,
+        SAMPLE_SIZES,
+        CHUNK_OFFSETS,
+        CHUNK_FIRST_SAMPLE_INDICES,
+        TIME_TO_SAMPLE_FIRST_SAMPLE_INDICES,
+        TIME_TO_SAMPLE_START_TIMES,
+        TIME_TO_SAMPLE_DELTAS,
+        COMPOSITION_OFFSET_FIRST_SAMPLE_INDICES,
+        COMPOSITION_OFFSETS,
+        syncSampleIndices);
+  }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.Format;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.common.util.Util;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.FakeExtractorInput.SimulatedIOException;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.FakeTrackOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Shorts;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for {@link Mp4Extractor} with different orders of the atoms in the moov atom.
+ *
+ * <p>The files are created by the test. Each has an mdat atom followed by a moov atom with two
+ * AMR-NB tracks and a udta atom after the trak atoms, optionally followed by a free atom. Trak
+ * atoms that follow the mvhd atom are parsed as soon as they end, and those that precede it are
+ * parsed when it ends. The tracks and the seek map are output once the last atom in the moov atom
+ * starts.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class Mp4ExtractorAtomOrderTest {
+
+  private static final int MOVIE_TIMESCALE = 1000;
+  private static final int SAMPLE_RATE = 8000;
+  private static final int SAMPLE_DURATION = 160;
+  private static final int SAMPLE_SIZE = 10;
+  private static final int FIRST_TRACK_SAMPLE_COUNT = 2;
+  private static final int SECOND_TRACK_SAMPLE_COUNT = 4;
+
+  // The edit list of the second track skips 40 samples at the start and 24 samples at the end.
+  private static final int EDIT_MEDIA_TIME = 40;
+  private static final int EDIT_DURATION = 72;
+  private static final int EDIT_LIST_ENCODER_DELAY = 40;
+  private static final int EDIT_LIST_ENCODER_PADDING = 24;
+
+  private static final String UDTA_GAPLESS_INFO = " 00000000 00000200 00000300 0000000000000280";
+  private static final int UDTA_ENCODER_DELAY = 0x200;
+  private static final int UDTA_ENCODER_PADDING = 0x300;
+
+  @Test
+  public void extract_trakBeforeAndAfterMvhd_outputsTracksInFileOrder() throws IOException {
+    FakeExtractorOutput output =
+        extract(createMp4(
+                /* isMvhdAfterTraks= */ false,
+                /* hasEditList= */ true,
+                /* hasTrailingFreeAtom= */ false));
+
+    assertThat(output.numberOfTracks).isEqualTo(2);
+    FakeTrackOutput firstTrackOutput = output.trackOutputs.get(0);
+    FakeTrackOutput secondTrackOutput = output.trackOutputs.get(1);
+    assertThat(checkNotNull(firstTrackOutput.lastFormat).id).isEqualTo("1");
+    assertThat(checkNotNull(firstTrackOutput.lastFormat).sampleMimeType)
+        .isEqualTo(MimeTypes.AUDIO_AMR_NB);
+    assertThat(firstTrackOutput.getSampleCount()).isEqualTo(FIRST_TRACK_SAMPLE_COUNT);
+    assertThat(checkNotNull(secondTrackOutput.lastFormat).id).isEqualTo("2");
+    assertThat(secondTrackOutput.getSampleCount()).isEqualTo(SECOND_TRACK_SAMPLE_COUNT);
+  }
+
+  @Test
+  public void extract_editListAndUdta_usesEditListGaplessInfo() throws IOException {
+    FakeExtractorOutput output =
+        extract(createMp4(
+                /* isMvhdAfterTraks= */ false,
+                /* hasEditList= */ true,
+                /* hasTrailingFreeAtom= */ false));
+
+    // Gapless information from an edit list overrides the udta atom's, even though the udta atom
+    // follows the trak atoms.
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      Format format = checkNotNull(output.trackOutputs.valueAt(i).lastFormat);
+      assertThat(format.encoderDelay).isEqualTo(EDIT_LIST_ENCODER_DELAY);
+      assertThat(format.encoderPadding).isEqualTo(EDIT_LIST_ENCODER_PADDING);
+    }
+  }
+
+  @Test
+  public void extract_udtaWithoutEditList_usesUdtaGaplessInfo() throws IOException {
+    FakeExtractorOutput output =
+        extract(createMp4(
+                /* isMvhdAfterTraks= */ false,
+                /* hasEditList= */ false,
+                /* hasTrailingFreeAtom= */ false));
+
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      Format format = checkNotNull(output.trackOutputs.valueAt(i).lastFormat);
+      assertThat(format.encoderDelay).isEqualTo(UDTA_ENCODER_DELAY);
+      assertThat(format.encoderPadding).isEqualTo(UDTA_ENCODER_PADDING);
+    }
+  }
+
+  @Test
+  public void extract_trakAfterMvhd_matchesTraksParsedAtEndOfMoov() throws IOException {
+    FakeExtractorOutput expectedOutput =
+        extract(createMp4(
+                /* isMvhdAfterTraks= */ true,
+                /* hasEditList= */ true,
+                /* hasTrailingFreeAtom= */ false));
+    FakeExtractorOutput output =
+        extract(createMp4(
+                /* isMvhdAfterTraks= */ false,
+                /* hasEditList= */ true,
+                /* hasTrailingFreeAtom= */ false));
+
+    assertThat(output.numberOfTracks).isEqualTo(expectedOutput.numberOfTracks);
+    for (int i = 0; i < expectedOutput.trackOutputs.size(); i++) {
+      FakeTrackOutput expectedTrackOutput = expectedOutput.trackOutputs.valueAt(i);
+      FakeTrackOutput trackOutput = output.trackOutputs.get(expectedOutput.trackOutputs.keyAt(i));
+      assertThat(trackOutput.lastFormat).isEqualTo(expectedTrackOutput.lastFormat);
+      assertThat(trackOutput.getSampleTimesUs())
+          .isEqualTo(expectedTrackOutput.getSampleTimesUs());
+    }
+    assertThat(checkNotNull(output.seekMap).getDurationUs())
+        .isEqualTo(checkNotNull(expectedOutput.seekMap).getDurationUs());
+  }
+
+  @Test
+  public void extract_freeAtomAfterUdta_outputsFormatsAndSeekMapBeforeEndOfMoov()
+      throws IOException {
+    byte[] data =
+        createMp4(
+            /* isMvhdAfterTraks= */ false,
+            /* hasEditList= */ true,
+            /* hasTrailingFreeAtom= */ true);
+    Extractor extractor = new Mp4Extractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder().setData(data).setSimulateIOErrors(true).build();
+
+    long tracksEndedPosition = readUntilTracksEnded(extractor, input, output);
+
+    // The moov atom is at the end of the file, and its free atom hasn't been read yet.
+    assertThat(tracksEndedPosition).isLessThan(data.length);
+    assertThat(output.numberOfTracks).isEqualTo(2);
+    assertThat(checkNotNull(output.seekMap).getDurationUs()).isGreaterThan(0);
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      FakeTrackOutput trackOutput = output.trackOutputs.valueAt(i);
+      Format format = checkNotNull(trackOutput.lastFormat);
+      assertThat(format.encoderDelay).isEqualTo(EDIT_LIST_ENCODER_DELAY);
+      assertThat(trackOutput.getSampleCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void extract_udtaAfterTraks_outputsSeekMapBeforeEndOfMoovAndFormatsAtEnd()
+      throws IOException {
+    byte[] data =
+        createMp4(
+            /* isMvhdAfterTraks= */ false,
+            /* hasEditList= */ false,
+            /* hasTrailingFreeAtom= */ false);
+    Extractor extractor = new Mp4Extractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder().setData(data).setSimulateIOErrors(true).build();
+
+    long tracksEndedPosition = readUntilTracksEnded(extractor, input, output);
+
+    // The formats depend on the metadata in the udta atom, which hasn't been read yet.
+    assertThat(tracksEndedPosition).isLessThan(data.length);
+    assertThat(output.numberOfTracks).isEqualTo(2);
+    assertThat(output.seekMap).isNotNull();
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      assertThat(output.trackOutputs.valueAt(i).lastFormat).isNull();
+    }
+
+    readUntilMoovEnded(extractor, input, data.length);
+
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      Format format = checkNotNull(output.trackOutputs.valueAt(i).lastFormat);
+      assertThat(format.encoderDelay).isEqualTo(UDTA_ENCODER_DELAY);
+    }
+  }
+
+  /** Reads until the tracks have ended, and returns the input position at that point. */
+  private static long readUntilTracksEnded(
+      Extractor extractor, FakeExtractorInput input, FakeExtractorOutput output)
+      throws IOException {
+    PositionHolder positionHolder = new PositionHolder();
+    while (true) {
+      int readResult;
+      try {
+        readResult = extractor.read(input, positionHolder);
+      } catch (SimulatedIOException e) {
+        // Interrupting each read makes the output observable between the reads.
+        readResult = Extractor.RESULT_CONTINUE;
+      }
+      if (output.tracksEnded) {
+        return input.getPosition();
+      }
+      assertThat(readResult).isNotEqualTo(Extractor.RESULT_END_OF_INPUT);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+  }
+
+  private static void readUntilMoovEnded(Extractor extractor, FakeExtractorInput input, int moovEnd)
+      throws IOException {
+    PositionHolder positionHolder = new PositionHolder();
+    while (input.getPosition() < moovEnd) {
+      try {
+        extractor.read(input, positionHolder);
+      } catch (SimulatedIOException e) {
+        // Retry.
+      }
+    }
+  }
+
+  private static FakeExtractorOutput extract(byte[] data) throws IOException {
+    Extractor extractor = new Mp4Extractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+    return output;
+  }
+
+  private static byte[] createMp4(
+      boolean isMvhdAfterTraks, boolean hasEditList, boolean hasTrailingFreeAtom) {
+    byte[] ftyp = box("ftyp", Util.getUtf8Bytes("isom"), Ints.toByteArray(0));
+    int sampleCount = FIRST_TRACK_SAMPLE_COUNT + SECOND_TRACK_SAMPLE_COUNT;
+    byte[] mdat = box("mdat", TestUtil.buildTestData(sampleCount * SAMPLE_SIZE));
+    int firstSampleOffset = ftyp.length + Atom.HEADER_SIZE;
+    byte[] firstTrak =
+        trak(
+            /* trackId= */ 1,
+            FIRST_TRACK_SAMPLE_COUNT,
+            /* chunkOffset= */ firstSampleOffset,
+            /* hasEditList= */ false);
+    byte[] secondTrak =
+        trak(
+            /* trackId= */ 2,
+            SECOND_TRACK_SAMPLE_COUNT,
+            /* chunkOffset= */ firstSampleOffset + FIRST_TRACK_SAMPLE_COUNT * SAMPLE_SIZE,
+            hasEditList);
+    byte[] mvhd =
+        fullBox(
+            "mvhd",
+            /* creationTime */ Ints.toByteArray(0),
+            /* modificationTime */ Ints.toByteArray(0),
+            Ints.toByteArray(MOVIE_TIMESCALE),
+            /* duration */ Ints.toByteArray(
+                SECOND_TRACK_SAMPLE_COUNT * SAMPLE_DURATION * MOVIE_TIMESCALE / SAMPLE_RATE),
+            /* rate */ Ints.toByteArray(0x10000),
+            /* volume and reserved */ new byte[12],
+            identityMatrix(),
+            /* preDefined */ new byte[24],
+            /* nextTrackId */ Ints.toByteArray(3));
+    byte[] udta =
+        box(
+            "udta",
+            fullBox(
+                "meta",
+                fullBox(
+                    "hdlr",
+                    /* preDefined */ Ints.toByteArray(0),
+                    Util.getUtf8Bytes("mdir"),
+                    /* reserved and name */ new byte[13]),
+                box(
+                    "ilst",
+                    box(
+                        "----",
+                        fullBox("mean", Util.getUtf8Bytes("com.apple.iTunes")),
+                        fullBox("name", Util.getUtf8Bytes("iTunSMPB")),
+                        fullBox(
+                            "data",
+                            /* locale */ Ints.toByteArray(0),
+                            Util.getUtf8Bytes(UDTA_GAPLESS_INFO))))));
+    byte[] free = hasTrailingFreeAtom ? box("free", new byte[1000]) : new byte[0];
+    byte[] moov =
+        isMvhdAfterTraks
+            ? box("moov", firstTrak, secondTrak, mvhd, udta, free)
+            : box("moov", firstTrak, mvhd, secondTrak, udta, free);
+    return Bytes.concat(ftyp, mdat, moov);
+  }
+
+  private static byte[] trak(int trackId, int sampleCount, int chunkOffset, boolean hasEditList) {
+    int mediaDuration = sampleCount * SAMPLE_DURATION;
+    byte[] tkhd =
+        fullBox(
+            "tkhd",
+            /* creationTime */ Ints.toByteArray(0),
+            /* modificationTime */ Ints.toByteArray(0),
+            Ints.toByteArray(trackId),
+            /* reserved */ Ints.toByteArray(0),
+            /* duration */ Ints.toByteArray(mediaDuration * MOVIE_TIMESCALE / SAMPLE_RATE),
+            /* reserved, layer, alternateGroup, volume and reserved */ new byte[16],
+            identityMatrix(),
+            /* width and height */ new byte[8]);
+    byte[] mdia =
+        box(
+            "mdia",
+            fullBox(
+                "mdhd",
+                /* creationTime */ Ints.toByteArray(0),
+                /* modificationTime */ Ints.toByteArray(0),
+                Ints.toByteArray(SAMPLE_RATE),
+                Ints.toByteArray(mediaDuration),
+                /* language ("und") */ Shorts.toByteArray((short) 0x55C4),
+                /* preDefined */ new byte[2]),
+            fullBox(
+                "hdlr",
+                /* preDefined */ Ints.toByteArray(0),
+                Util.getUtf8Bytes("soun"),
+                /* reserved and name */ new byte[13]),
+            box(
+                "minf",
+                box(
+                    "stbl",
+                    fullBox(
+                        "stsd",
+                        /* entryCount */ Ints.toByteArray(1),
+                        box(
+                            "samr",
+                            /* reserved */ new byte[6],
+                            /* dataReferenceIndex */ Shorts.toByteArray((short) 1),
+                            /* reserved */ new byte[8],
+                            /* channelCount */ Shorts.toByteArray((short) 1),
+                            /* sampleSize */ Shorts.toByteArray((short) 16),
+                            /* compressionId and packetSize */ new byte[4],
+                            /* sampleRate */ Ints.toByteArray(SAMPLE_RATE << 16))),
+                    fullBox(
+                        "stts",
+                        /* entryCount */ Ints.toByteArray(1),
+                        Ints.toByteArray(sampleCount),
+                        Ints.toByteArray(SAMPLE_DURATION)),
+                    fullBox(
+                        "stsc",
+                        /* entryCount */ Ints.toByteArray(1),
+                        /* firstChunk */ Ints.toByteArray(1),
+                        /* samplesPerChunk */ Ints.toByteArray(sampleCount),
+                        /* sampleDescriptionIndex */ Ints.toByteArray(1)),
+                    fullBox(
+                        "stsz", Ints.toByteArray(SAMPLE_SIZE), Ints.toByteArray(sampleCount)),
+                    fullBox(
+                        "stco",
+                        /* entryCount */ Ints.toByteArray(1),
+                        Ints.toByteArray(chunkOffset)))));
+    if (!hasEditList) {
+      return box("trak", tkhd, mdia);
+    }
+    byte[] edts =
+        box(
+            "edts",
+            fullBox(
+                "elst",
+                /* entryCount */ Ints.toByteArray(1),
+                /* segmentDuration */ Ints.toByteArray(EDIT_DURATION),
+                /* mediaTime */ Ints.toByteArray(EDIT_MEDIA_TIME),
+                /* mediaRate */ Ints.toByteArray(0x10000)));
+    return box("trak", tkhd, edts, mdia);
+  }
+
+  private static byte[] identityMatrix() {
+    return Bytes.concat(
+        Ints.toByteArray(0x10000),
+        new byte[12],
+        Ints.toByteArray(0x10000),
+        new byte[12],
+        Ints.toByteArray(0x40000000));
+  }
+
+  /** Returns a full box with version and flags set to 0. */
+  private static byte[] fullBox(String type, byte[]... contents) {
+    return box(type, Ints.toByteArray(0), Bytes.concat(contents));
+  }
+
+  private static byte[] box(String type, byte[]... contents) {
+    byte[] payload = Bytes.concat(contents);
+    return Bytes.concat(
+        Ints.toByteArray(Atom.HEADER_SIZE + payload.length), Util.getUtf8Bytes(type), payload);
+  }
+}
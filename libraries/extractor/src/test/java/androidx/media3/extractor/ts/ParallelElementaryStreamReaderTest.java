@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.ParserException;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link ParallelElementaryStreamReader}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParallelElementaryStreamReaderTest {
+
+  private ExecutorService executor;
+  private FakeElementaryStreamReader delegate;
+  private ParallelElementaryStreamReader reader;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+    delegate = new FakeElementaryStreamReader();
+    reader = new ParallelElementaryStreamReader(delegate, executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void consume_passesDataToDelegate() throws Exception {
+    reader.packetStarted(/* pesTimeUs= */ 0, /* flags= */ 0);
+    reader.consume(new ParsableByteArray(new byte[] {1, 2, 3}));
+    reader.consume(new ParsableByteArray(new byte[] {4, 5}));
+    reader.packetFinished(/* isEndOfInput= */ false);
+    reader.blockUntilIdle();
+    reader.maybeThrowError();
+
+    assertThat(delegate.consumedData.toByteArray()).isEqualTo(new byte[] {1, 2, 3, 4, 5});
+    assertThat(delegate.packetFinishedCount).isEqualTo(1);
+  }
+
+  @Test
+  public void delegateThrowsParserException_discardsLaterCallsAndThrows() throws Exception {
+    delegate.exceptionToThrow = ParserException.createForMalformedContainer("test", null);
+
+    reader.consume(new ParsableByteArray(new byte[] {1, 2, 3}));
+    reader.packetFinished(/* isEndOfInput= */ false);
+    reader.blockUntilIdle();
+
+    assertThrows(ParserException.class, reader::maybeThrowError);
+    assertThat(delegate.packetFinishedCount).isEqualTo(0);
+  }
+
+  @Test
+  public void delegateThrowsError_unblocksCallerAndThrows() throws Exception {
+    delegate.errorToThrow = new OutOfMemoryError();
+
+    reader.consume(new ParsableByteArray(new byte[] {1, 2, 3}));
+    reader.packetFinished(/* isEndOfInput= */ false);
+    reader.blockUntilIdle();
+
+    assertThrows(OutOfMemoryError.class, reader::maybeThrowError);
+  }
+
+  @Test
+  public void seekAfterDelegateThrew_discardsErrorAndPassesLaterCallsToDelegate()
+      throws Exception {
+    delegate.exceptionToThrow = ParserException.createForMalformedContainer("test", null);
+    reader.consume(new ParsableByteArray(new byte[] {1, 2, 3}));
+    reader.blockUntilIdle();
+
+    reader.seek();
+    reader.consume(new ParsableByteArray(new byte[] {4, 5}));
+    reader.packetFinished(/* isEndOfInput= */ false);
+    reader.blockUntilIdle();
+    reader.maybeThrowError();
+
+    assertThat(delegate.seekCount).isEqualTo(1);
+    assertThat(delegate.consumedData.toByteArray()).isEqualTo(new byte[] {4, 5});
+    assertThat(delegate.packetFinishedCount).isEqualTo(1);
+  }
+
+  private static final class FakeElementaryStreamReader implements ElementaryStreamReader {
+
+    private final ByteArrayOutputStream consumedData;
+
+    // Thrown by the next call to consume, then cleared.
+    @Nullable private ParserException exceptionToThrow;
+    @Nullable private Error errorToThrow;
+
+    private int seekCount;
+    private int packetFinishedCount;
+
+    public FakeElementaryStreamReader() {
+      consumedData = new ByteArrayOutputStream();
+    }
+
+    @Override
+    public void seek() {
+      seekCount++;
+    }
+
+    @Override
+    public void createTracks(
+        ExtractorOutput extractorOutput, PesReader.TrackIdGenerator idGenerator) {}
+
+    @Override
+    public void packetStarted(long pesTimeUs, @TsPayloadReader.Flags int flags) {}
+
+    @Override
+    public void consume(ParsableByteArray data) throws ParserException {
+      if (exceptionToThrow != null) {
+        ParserException exception = exceptionToThrow;
+        exceptionToThrow = null;
+        throw exception;
+      }
+      if (errorToThrow != null) {
+        Error error = errorToThrow;
+        errorToThrow = null;
+        throw error;
+      }
+      consumedData.write(data.getData(), data.getPosition(), data.bytesLeft());
+      data.skipBytes(data.bytesLeft());
+    }
+
+    @Override
+    public void packetFinished(boolean isEndOfInput) {
+      packetFinishedCount++;
+    }
+  }
+}
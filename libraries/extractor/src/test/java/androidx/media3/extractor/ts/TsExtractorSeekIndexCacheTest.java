@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.TimestampAdjuster;
+import androidx.media3.extractor.ChunkIndex;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekIndexCache;
+import androidx.media3.extractor.SeekMap;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link TsExtractor} with a {@link SeekIndexCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class TsExtractorSeekIndexCacheTest {
+
+  private static final String SAMPLE_FILE = "media/ts/bbb_2500ms.ts";
+
+  @Test
+  public void extract_readToEnd_cachesIndexAndSkipsDurationReadWhenCached() throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    InMemorySeekIndexCache seekIndexCache = new InMemorySeekIndexCache();
+
+    FakeExtractorOutput firstOutput = new FakeExtractorOutput();
+    int firstSeekCount = extract(data, seekIndexCache, firstOutput);
+    FakeExtractorOutput secondOutput = new FakeExtractorOutput();
+    int secondSeekCount = extract(data, seekIndexCache, secondOutput);
+
+    // Reading the duration requires seeking to the end and back to the start, whereas with a cached
+    // index the extractor only seeks back to the start once it has read the tracks.
+    assertThat(firstSeekCount).isEqualTo(2);
+    assertThat(secondSeekCount).isEqualTo(1);
+    assertThat(seekIndexCache.indices).hasSize(1);
+    ChunkIndex chunkIndex = (ChunkIndex) secondOutput.seekMap;
+    assertThat(chunkIndex.getDurationUs()).isEqualTo(firstOutput.seekMap.getDurationUs());
+    SeekMap.SeekPoints seekPoints = chunkIndex.getSeekPoints(/* timeUs= */ 1_500_000);
+    assertThat(seekPoints.first.timeUs).isAtMost(1_500_000);
+    assertThat(seekPoints.first.position).isGreaterThan(0);
+    assertThat(secondOutput.numberOfTracks).isEqualTo(firstOutput.numberOfTracks);
+    for (int i = 0; i < firstOutput.trackOutputs.size(); i++) {
+      assertThat(secondOutput.trackOutputs.valueAt(i).getSampleCount())
+          .isEqualTo(firstOutput.trackOutputs.valueAt(i).getSampleCount());
+    }
+  }
+
+  @Test
+  public void extract_seekDuringExtraction_doesNotCacheIndex() throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    InMemorySeekIndexCache seekIndexCache = new InMemorySeekIndexCache();
+    Extractor extractor = createExtractor(seekIndexCache);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    while (output.seekMap == null) {
+      if (extractor.read(input, positionHolder) == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+
+    SeekMap.SeekPoints seekPoints = output.seekMap.getSeekPoints(/* timeUs= */ 1_000_000);
+    extractor.seek(seekPoints.first.position, seekPoints.first.timeUs);
+    input.setPosition((int) seekPoints.first.position);
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+
+    assertThat(seekIndexCache.indices).isEmpty();
+  }
+
+  private static Extractor createExtractor(SeekIndexCache seekIndexCache) {
+    return new TsExtractor(
+        TsExtractor.MODE_SINGLE_PMT,
+        new TimestampAdjuster(0),
+        new DefaultTsPayloadReaderFactory(),
+        TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES,
+        /* parsingExecutor= */ null,
+        seekIndexCache);
+  }
+
+  /** Extracts all samples and returns the number of seeks requested by the extractor. */
+  private static int extract(
+      byte[] data, SeekIndexCache seekIndexCache, FakeExtractorOutput output) throws IOException {
+    Extractor extractor = createExtractor(seekIndexCache);
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    int seekCount = 0;
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+        seekCount++;
+      }
+    }
+    return seekCount;
+  }
+
+  private static final class InMemorySeekIndexCache implements SeekIndexCache {
+
+    private final Map<String, ChunkIndex> indices = new HashMap<>();
+
+    @Override
+    @Nullable
+    public ChunkIndex get(String key) {
+      return indices.get(key);
+    }
+
+    @Override
+    public void put(String key, ChunkIndex chunkIndex) {
+      indices.put(key, chunkIndex);
+    }
+  }
+}
@@ -37,6 +37,9 @@ import androidx.media3.test.utils.FakeTrackOutput;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import com.google.common.collect.ImmutableList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
@@ -157,6 +160,32 @@ public final class TsExtractorTest {
         TsExtractor::new, "media/ts/sample_with_junk", simulationConfig);
   }
 
+  @Test
+  public void sampleWithH264AndMpegAudio_parallelParsing_matchesSerialOutput() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(/* nThreads= */ 2);
+    try {
+      ExtractorAsserts.assertBehavior(
+          () -> createTsExtractorWithParsingExecutor(executor),
+          "media/ts/sample_h264_mpeg_audio.ts",
+          simulationConfig);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void sampleWithH262AndMpegAudio_parallelParsing_matchesSerialOutput() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(/* nThreads= */ 2);
+    try {
+      ExtractorAsserts.assertBehavior(
+          () -> createTsExtractorWithParsingExecutor(executor),
+          "media/ts/sample_h262_mpeg_audio.ts",
+          simulationConfig);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   @Test
   public void customPesReader() throws Exception {
     CustomTsPayloadReaderFactory factory = new CustomTsPayloadReaderFactory(true, false);
@@ -221,6 +250,15 @@ public final class TsExtractorTest {
     assertThat(factory.sdtReader.consumedSdts).isEqualTo(2);
   }
 
+  private static TsExtractor createTsExtractorWithParsingExecutor(Executor executor) {
+    return new TsExtractor(
+        TsExtractor.MODE_SINGLE_PMT,
+        new TimestampAdjuster(0),
+        new DefaultTsPayloadReaderFactory(),
+        TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES,
+        executor);
+  }
+
   private static final class CustomTsPayloadReaderFactory implements TsPayloadReader.Factory {
 
     private final boolean provideSdtReader;
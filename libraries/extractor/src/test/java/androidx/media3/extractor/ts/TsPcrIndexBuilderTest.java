@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.extractor.ChunkIndex;
+import androidx.media3.extractor.SeekIndexCache;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link TsPcrIndexBuilder}. */
+@RunWith(AndroidJUnit4.class)
+public final class TsPcrIndexBuilderTest {
+
+  private static final String SAMPLE_FILE = "media/ts/bbb_2500ms.ts";
+
+  @Test
+  public void build_entireStream_indexesEachSecondFromStart() throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    TsPcrIndexBuilder builder = new TsPcrIndexBuilder();
+    builder.consume(data, /* offset= */ 0, data.length);
+
+    @Nullable ChunkIndex chunkIndex = builder.build();
+
+    assertThat(chunkIndex).isNotNull();
+    assertThat(chunkIndex.length).isEqualTo(3);
+    assertThat(chunkIndex.offsets[0]).isEqualTo(0);
+    assertThat(chunkIndex.timesUs[0]).isEqualTo(0);
+    for (int i = 1; i < chunkIndex.length; i++) {
+      assertThat(chunkIndex.offsets[i] % TsExtractor.TS_PACKET_SIZE).isEqualTo(0);
+      assertThat(chunkIndex.timesUs[i] - chunkIndex.timesUs[i - 1])
+          .isAtLeast(TsPcrIndexBuilder.DEFAULT_MIN_ENTRY_INTERVAL_US);
+    }
+    long indexedBytes = 0;
+    for (int size : chunkIndex.sizes) {
+      indexedBytes += size;
+    }
+    assertThat(indexedBytes).isEqualTo(data.length);
+    assertThat(chunkIndex.getDurationUs()).isGreaterThan(2 * C.MICROS_PER_SECOND);
+  }
+
+  @Test
+  public void build_streamConsumedInSmallParts_returnsSameIndex() throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    TsPcrIndexBuilder wholeStreamBuilder = new TsPcrIndexBuilder();
+    wholeStreamBuilder.consume(data, /* offset= */ 0, data.length);
+    TsPcrIndexBuilder partsBuilder = new TsPcrIndexBuilder();
+    for (int offset = 0; offset < data.length; offset += 100) {
+      partsBuilder.consume(data, offset, min(100, data.length - offset));
+    }
+
+    ChunkIndex expectedChunkIndex = wholeStreamBuilder.build();
+    ChunkIndex chunkIndex = partsBuilder.build();
+
+    assertThat(chunkIndex.offsets).isEqualTo(expectedChunkIndex.offsets);
+    assertThat(chunkIndex.timesUs).isEqualTo(expectedChunkIndex.timesUs);
+    assertThat(chunkIndex.sizes).isEqualTo(expectedChunkIndex.sizes);
+    assertThat(chunkIndex.durationsUs).isEqualTo(expectedChunkIndex.durationsUs);
+  }
+
+  @Test
+  public void build_streamWithoutPcr_returnsNull() {
+    TsPcrIndexBuilder builder = new TsPcrIndexBuilder();
+    byte[] data = new byte[TsExtractor.TS_PACKET_SIZE * 10];
+
+    builder.consume(data, /* offset= */ 0, data.length);
+
+    assertThat(builder.getBytesConsumed()).isEqualTo(data.length);
+    assertThat(builder.build()).isNull();
+  }
+
+  @Test
+  public void cacheIndex_cachesIndexUnderKeyForStreamLength() throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    TsPcrIndexBuilder builder = new TsPcrIndexBuilder();
+    builder.consume(data, /* offset= */ 0, data.length);
+    Map<String, ChunkIndex> indices = new HashMap<>();
+    SeekIndexCache seekIndexCache =
+        new SeekIndexCache() {
+          @Override
+          @Nullable
+          public ChunkIndex get(String key) {
+            return indices.get(key);
+          }
+
+          @Override
+          public void put(String key, ChunkIndex chunkIndex) {
+            indices.put(key, chunkIndex);
+          }
+        };
+
+    boolean cached = builder.cacheIndex(seekIndexCache);
+
+    assertThat(cached).isTrue();
+    assertThat(indices.keySet()).containsExactly(builder.getCacheKey(data.length));
+  }
+}
@@ -36,26 +36,21 @@ import java.nio.ByteBuffer;
 
     ImmutableList.Builder<ByteBuffer> nalUnits = new ImmutableList.Builder<>();
 
+    int limit = input.limit();
     int lastStart = 4;
-    int zerosSeen = 0;
-
-    for (int i = 4; i < input.limit(); i++) {
-      if (input.get(i) == 1 && zerosSeen >= 3) {
-        // We're just looking at a start code.
-        nalUnits.add(getBytes(input, lastStart, i - 3 - lastStart));
-        lastStart = i + 1;
+    int searchStart = 4;
+    while (true) {
+      int startCodeEnd = findStartCodeEnd(input, searchStart, limit);
+      if (startCodeEnd == limit) {
+        break;
       }
-
+      nalUnits.add(getBytes(input, lastStart, startCodeEnd - 3 - lastStart));
+      lastStart = startCodeEnd + 1;
+      searchStart = lastStart;
+    }
+    if (limit > 4) {
       // Handle the end of the stream.
-      if (i == input.limit() - 1) {
-        nalUnits.add(getBytes(input, lastStart, input.limit() - lastStart));
-      }
-
-      if (input.get(i) == 0) {
-        zerosSeen++;
-      } else {
-        zerosSeen = 0;
-      }
+      nalUnits.add(getBytes(input, lastStart, limit - lastStart));
     }
     input.rewind();
     return nalUnits.build();
@@ -66,20 +61,19 @@ import java.nio.ByteBuffer;
     // For simplicity, we allocate the same number of bytes (although the eventual number might be
     // smaller).
     ByteBuffer output = ByteBuffer.allocate(input.limit());
-    int zerosSeen = 0;
-    for (int i = 0; i < input.limit(); i++) {
-      boolean lookingAtEmulationPreventionByte = input.get(i) == 0x03 && zerosSeen >= 2;
-
+    ByteBuffer source = input.duplicate();
+    int limit = input.limit();
+    int position = 0;
+    while (true) {
+      int emulationPreventionBytePosition = findEmulationPreventionByte(input, position, limit);
       // Only copy bytes if they aren't emulation prevention bytes.
-      if (!lookingAtEmulationPreventionByte) {
-        output.put(input.get(i));
-      }
-
-      if (input.get(i) == 0) {
-        zerosSeen++;
-      } else {
-        zerosSeen = 0;
+      source.limit(emulationPreventionBytePosition).position(position);
+      output.put(source);
+      if (emulationPreventionBytePosition == limit) {
+        break;
       }
+      position = emulationPreventionBytePosition + 1;
+      source.limit(limit);
     }
 
     output.flip();
@@ -87,6 +81,50 @@ import java.nio.ByteBuffer;
     return output;
   }
 
+  /**
+   * Returns the position of the final byte of the next 0x00000001 start code whose first byte is
+   * at or after {@code position}, or {@code limit} if there isn't one.
+   */
+  private static int findStartCodeEnd(ByteBuffer input, int position, int limit) {
+    int i = position + 3;
+    while (i < limit) {
+      byte value = input.get(i);
+      if (value == 0) {
+        // The start code might end at any of the next three positions.
+        i++;
+      } else if (value == 1
+          && input.get(i - 1) == 0
+          && input.get(i - 2) == 0
+          && input.get(i - 3) == 0) {
+        return i;
+      } else {
+        // A start code ending at any of the next three positions would have to include this byte.
+        i += 4;
+      }
+    }
+    return limit;
+  }
+
+  /**
+   * Returns the position of the next emulation prevention byte (0x03 preceded by two zeros) at or
+   * after {@code position + 2}, or {@code limit} if there isn't one.
+   */
+  private static int findEmulationPreventionByte(ByteBuffer input, int position, int limit) {
+    int i = position + 2;
+    while (i < limit) {
+      byte value = input.get(i);
+      if (value == 0) {
+        // The emulation prevention byte might be at either of the next two positions.
+        i++;
+      } else if (value == 3 && input.get(i - 1) == 0 && input.get(i - 2) == 0) {
+        return i;
+      } else {
+        i += 3;
+      }
+    }
+    return limit;
+  }
+
   private static ByteBuffer getBytes(ByteBuffer buf, int offset, int length) {
     ByteBuffer result = buf.duplicate();
     result.position(offset);
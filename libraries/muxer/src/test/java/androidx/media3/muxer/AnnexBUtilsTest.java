@@ -94,6 +94,19 @@ public class AnnexBUtilsTest {
     assertThat(components.get(1)).isEqualTo(ByteBuffer.wrap(getBytesFromHexString("AB")));
   }
 
+  @Test
+  public void findNalUnits_consecutiveStartCodes_returnsEmptyNalUnit() {
+    ByteBuffer buf =
+        ByteBuffer.wrap(getBytesFromHexString("00000001AB0000000100000001CDEF"));
+
+    ImmutableList<ByteBuffer> components = AnnexBUtils.findNalUnits(buf);
+
+    assertThat(components).hasSize(3);
+    assertThat(components.get(0)).isEqualTo(ByteBuffer.wrap(getBytesFromHexString("AB")));
+    assertThat(components.get(1).remaining()).isEqualTo(0);
+    assertThat(components.get(2)).isEqualTo(ByteBuffer.wrap(getBytesFromHexString("CDEF")));
+  }
+
   @Test
   public void stripEmulationPrevention_noEmulationPreventionBytes_copiesInput() {
     ByteBuffer buf = ByteBuffer.wrap(getBytesFromHexString("00000001ABCDEF000000000001AB"));
@@ -135,4 +148,13 @@ public class AnnexBUtilsTest {
 
     assertThat(output).isEqualTo(ByteBuffer.wrap(getBytesFromHexString("ABCDEF0000")));
   }
+
+  @Test
+  public void stripEmulationPrevention_consecutiveEmulationPreventionBytes_allStripped() {
+    ByteBuffer buf = ByteBuffer.wrap(getBytesFromHexString("000003000003000003AB"));
+
+    ByteBuffer output = AnnexBUtils.stripEmulationPrevention(buf);
+
+    assertThat(output).isEqualTo(ByteBuffer.wrap(getBytesFromHexString("000000000000AB")));
+  }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.utils;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.UnstableApi;
+import java.lang.reflect.Method;
+
+/**
+ * Utility methods for benchmarks and the performance regression tests that use them.
+ *
+ * <p>Performance regression tests fail if the number of bytes allocated exceeds a budget, which is
+ * set to roughly twice the number measured when the budget was last updated. Allocations are
+ * deterministic for a given input, unlike times, so only they fail the tests. Times are logged for
+ * comparison.
+ */
+@UnstableApi
+public final class BenchmarkUtil {
+
+  private static final String TAG = "BenchmarkUtil";
+
+  /**
+   * Returns the number of bytes allocated by the current thread, or {@link C#LENGTH_UNSET} if the
+   * runtime can't count them.
+   *
+   * <p>Allocations can be counted per thread on the JVM on which Robolectric tests run.
+   */
+  public static long getCurrentThreadAllocatedBytes() {
+    // The management APIs aren't part of the Android SDK, so they're accessed through reflection.
+    try {
+      Object threadMxBean =
+          Class.forName("java.lang.management.ManagementFactory")
+              .getMethod("getThreadMXBean")
+              .invoke(/* obj= */ null);
+      Method getThreadAllocatedBytes =
+          Class.forName("com.sun.management.ThreadMXBean")
+              .getMethod("getThreadAllocatedBytes", long.class);
+      @Nullable
+      Object allocatedBytes =
+          getThreadAllocatedBytes.invoke(threadMxBean, Thread.currentThread().getId());
+      return allocatedBytes instanceof Long && (Long) allocatedBytes >= 0
+          ? (Long) allocatedBytes
+          : C.LENGTH_UNSET;
+    } catch (Exception e) {
+      return C.LENGTH_UNSET;
+    }
+  }
+
+  /**
+   * Logs the result of an {@link ExtractorBenchmark} and asserts that the number of bytes allocated
+   * per sample is within a budget. Nothing is asserted if the runtime can't count allocations.
+   *
+   * @param name The name of the benchmark, used in the log and failure messages.
+   * @param result The {@link ExtractorBenchmark.Result}.
+   * @param maxAllocatedBytesPerSample The maximum number of bytes allocated per sample.
+   */
+  public static void assertAllocationsWithinBudget(
+      String name, ExtractorBenchmark.Result result, long maxAllocatedBytesPerSample) {
+    Log.i(TAG, name + ": " + result);
+    assertAllocationsWithinBudget(
+        "Allocated bytes per sample for " + name,
+        result.allocatedBytesPerSample,
+        maxAllocatedBytesPerSample);
+  }
+
+  /**
+   * Logs the result of a {@link ManifestBenchmark} and asserts that the number of bytes allocated
+   * by an operation is within a budget. Nothing is asserted if the runtime can't count allocations.
+   *
+   * @param name The name of the benchmark, used in the log and failure messages.
+   * @param result The {@link ManifestBenchmark.Result}.
+   * @param maxAllocatedBytes The maximum number of bytes allocated by an operation.
+   */
+  public static void assertAllocationsWithinBudget(
+      String name, ManifestBenchmark.Result result, long maxAllocatedBytes) {
+    Log.i(TAG, name + ": " + result);
+    assertAllocationsWithinBudget(
+        "Allocated bytes for " + name, result.allocatedBytes, maxAllocatedBytes);
+  }
+
+  private static void assertAllocationsWithinBudget(
+      String message, long allocatedBytes, long maxAllocatedBytes) {
+    if (allocatedBytes != C.LENGTH_UNSET) {
+      assertWithMessage(message).that(allocatedBytes).isAtMost(maxAllocatedBytes);
+    }
+  }
+
+  private BenchmarkUtil() {}
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.utils;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkState;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.DataReader;
+import androidx.media3.common.Format;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.extractor.DummyTrackOutput;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.TrackOutput;
+import androidx.media3.test.utils.ExtractorAsserts.ExtractorFactory;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Measures the performance of an {@link Extractor} by extracting all samples from in-memory data,
+ * read through a {@link FakeExtractorInput}. The extracted sample data is read and discarded, so
+ * that the measurements don't include the cost of storing it.
+ *
+ * <p>Each run creates a new extractor, so the measurements include the time and allocations needed
+ * to parse the headers of the data. The data is extracted a number of times to warm up before it's
+ * extracted the measured number of times.
+ *
+ * <p>The allocations are those of the thread running the benchmark. They're only measured where the
+ * runtime can count allocations per thread, such as on the JVM on which Robolectric tests run.
+ */
+@UnstableApi
+public final class ExtractorBenchmark {
+
+  /** The result of a benchmark. */
+  public static final class Result {
+
+    /** The number of bytes extracted in each run. */
+    public final long bytesPerRun;
+
+    /** The number of samples output in each run. */
+    public final int samplesPerRun;
+
+    /** The average number of bytes extracted per second. */
+    public final double bytesPerSecond;
+
+    /**
+     * The average number of bytes allocated per output sample, or {@link C#LENGTH_UNSET} if the
+     * runtime can't count allocations.
+     */
+    public final long allocatedBytesPerSample;
+
+    /**
+     * The median time from the creation of the extractor until the end of the {@link
+     * Extractor#read} call in which the first sample was output, in nanoseconds.
+     */
+    public final long timeToFirstSampleNs;
+
+    private Result(
+        long bytesPerRun,
+        int samplesPerRun,
+        double bytesPerSecond,
+        long allocatedBytesPerSample,
+        long timeToFirstSampleNs) {
+      this.bytesPerRun = bytesPerRun;
+      this.samplesPerRun = samplesPerRun;
+      this.bytesPerSecond = bytesPerSecond;
+      this.allocatedBytesPerSample = allocatedBytesPerSample;
+      this.timeToFirstSampleNs = timeToFirstSampleNs;
+    }
+
+    /** Returns the average number of megabytes (10^6 bytes) extracted per second. */
+    public double getMegabytesPerSecond() {
+      return bytesPerSecond / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+      return Util.formatInvariant(
+          "%.2f MB/s, %s allocated bytes/sample, %.3f ms to first sample, %d samples",
+          getMegabytesPerSecond(),
+          allocatedBytesPerSample == C.LENGTH_UNSET ? "?" : allocatedBytesPerSample,
+          timeToFirstSampleNs / 1_000_000.0,
+          samplesPerRun);
+    }
+  }
+
+  /** The default number of warm-up runs. */
+  public static final int DEFAULT_WARM_UP_RUNS = 5;
+
+  /** The default number of measured runs. */
+  public static final int DEFAULT_MEASURED_RUNS = 20;
+
+  private final ExtractorFactory extractorFactory;
+
+  private int warmUpRuns;
+  private int measuredRuns;
+
+  /**
+   * Creates an instance.
+   *
+   * @param extractorFactory An {@link ExtractorFactory} that creates the {@link Extractor} to
+   *     measure.
+   */
+  public ExtractorBenchmark(ExtractorFactory extractorFactory) {
+    this.extractorFactory = extractorFactory;
+    warmUpRuns = DEFAULT_WARM_UP_RUNS;
+    measuredRuns = DEFAULT_MEASURED_RUNS;
+  }
+
+  /**
+   * Sets the number of times the data is extracted before the measured runs. The default is {@link
+   * #DEFAULT_WARM_UP_RUNS}.
+   */
+  @CanIgnoreReturnValue
+  public ExtractorBenchmark setWarmUpRuns(int warmUpRuns) {
+    checkArgument(warmUpRuns >= 0);
+    this.warmUpRuns = warmUpRuns;
+    return this;
+  }
+
+  /**
+   * Sets the number of times the data is extracted while measuring. The default is {@link
+   * #DEFAULT_MEASURED_RUNS}.
+   */
+  @CanIgnoreReturnValue
+  public ExtractorBenchmark setMeasuredRuns(int measuredRuns) {
+    checkArgument(measuredRuns > 0);
+    this.measuredRuns = measuredRuns;
+    return this;
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param data The data to extract.
+   * @return The {@link Result}.
+   * @throws IOException If extracting the data fails.
+   */
+  public Result run(byte[] data) throws IOException {
+    for (int i = 0; i < warmUpRuns; i++) {
+      extract(data);
+    }
+    long[] timesToFirstSampleNs = new long[measuredRuns];
+    int samplesPerRun = 0;
+    long startAllocatedBytes = BenchmarkUtil.getCurrentThreadAllocatedBytes();
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < measuredRuns; i++) {
+      RunStats runStats = extract(data);
+      timesToFirstSampleNs[i] = runStats.timeToFirstSampleNs;
+      samplesPerRun = runStats.sampleCount;
+    }
+    long elapsedTimeNs = System.nanoTime() - startTimeNs;
+    long endAllocatedBytes = BenchmarkUtil.getCurrentThreadAllocatedBytes();
+    checkState(samplesPerRun > 0, "No samples were extracted");
+
+    long allocatedBytesPerSample =
+        startAllocatedBytes == C.LENGTH_UNSET || endAllocatedBytes == C.LENGTH_UNSET
+            ? C.LENGTH_UNSET
+            : (endAllocatedBytes - startAllocatedBytes) / ((long) samplesPerRun * measuredRuns);
+    Arrays.sort(timesToFirstSampleNs);
+    return new Result(
+        /* bytesPerRun= */ data.length,
+        samplesPerRun,
+        /* bytesPerSecond= */ (double) data.length * measuredRuns * 1_000_000_000 / elapsedTimeNs,
+        allocatedBytesPerSample,
+        /* timeToFirstSampleNs= */ timesToFirstSampleNs[measuredRuns / 2]);
+  }
+
+  private RunStats extract(byte[] data) throws IOException {
+    long startTimeNs = System.nanoTime();
+    Extractor extractor = extractorFactory.create();
+    SampleCountingExtractorOutput output = new SampleCountingExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    long timeToFirstSampleNs = C.TIME_UNSET;
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+      if (timeToFirstSampleNs == C.TIME_UNSET && output.sampleCount > 0) {
+        timeToFirstSampleNs = System.nanoTime() - startTimeNs;
+      }
+    }
+    extractor.release();
+    return new RunStats(output.sampleCount, timeToFirstSampleNs);
+  }
+
+  /** An {@link ExtractorOutput} that discards the sample data and counts the samples. */
+  private static final class SampleCountingExtractorOutput implements ExtractorOutput {
+
+    private final TrackOutput discardingTrackOutput;
+
+    public int sampleCount;
+
+    public SampleCountingExtractorOutput() {
+      discardingTrackOutput = new DummyTrackOutput();
+    }
+
+    @Override
+    public TrackOutput track(int id, @C.TrackType int type) {
+      return new TrackOutput() {
+        @Override
+        public void format(Format format) {
+          // Do nothing.
+        }
+
+        @Override
+        public int sampleData(
+            DataReader input,
+            int length,
+            boolean allowEndOfInput,
+            @SampleDataPart int sampleDataPart)
+            throws IOException {
+          return discardingTrackOutput.sampleData(
+              input, length, allowEndOfInput, sampleDataPart);
+        }
+
+        @Override
+        public void sampleData(
+            ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
+          discardingTrackOutput.sampleData(data, length, sampleDataPart);
+        }
+
+        @Override
+        public void sampleData(ByteBuffer data, int length, @SampleDataPart int sampleDataPart) {
+          discardingTrackOutput.sampleData(data, length, sampleDataPart);
+        }
+
+        @Override
+        public void sampleMetadata(
+            long timeUs,
+            @C.BufferFlags int flags,
+            int size,
+            int offset,
+            @Nullable CryptoData cryptoData) {
+          sampleCount++;
+        }
+      };
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+  }
+
+  private static final class RunStats {
+
+    public final int sampleCount;
+    public final long timeToFirstSampleNs;
+
+    public RunStats(int sampleCount, long timeToFirstSampleNs) {
+      this.sampleCount = sampleCount;
+      this.timeToFirstSampleNs = timeToFirstSampleNs;
+    }
+  }
+}
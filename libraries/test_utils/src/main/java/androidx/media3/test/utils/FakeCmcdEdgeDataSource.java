@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.utils;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.UriUtil;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.exoplayer.upstream.CmcdConfiguration;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fake {@link DataSource} that emulates a CDN edge which is aware of Common Media Client Data
+ * (CMCD).
+ *
+ * <p>The CMCD query parameter is removed from requests before they're passed to the upstream
+ * source, as an edge does when it computes its cache key. If a request carries a {@link
+ * CmcdConfiguration#KEY_NEXT_OBJECT_REQUEST next object request} without a {@link
+ * CmcdConfiguration#KEY_NEXT_RANGE_REQUEST next range request}, the response hints the next object
+ * with a {@code Link: <uri>; rel=preload} header, emulating an edge that pushes the next object to
+ * the client.
+ */
+@UnstableApi
+public final class FakeCmcdEdgeDataSource implements DataSource {
+
+  /** Factory to create a {@link FakeCmcdEdgeDataSource}. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamDataSourceFactory;
+
+    /**
+     * Creates an instance.
+     *
+     * @param upstreamDataSourceFactory The {@link DataSource.Factory} for the sources serving the
+     *     requests, typically a {@link FakeDataSource.Factory}.
+     */
+    public Factory(DataSource.Factory upstreamDataSourceFactory) {
+      this.upstreamDataSourceFactory = upstreamDataSourceFactory;
+    }
+
+    @Override
+    public FakeCmcdEdgeDataSource createDataSource() {
+      return new FakeCmcdEdgeDataSource(upstreamDataSourceFactory.createDataSource());
+    }
+  }
+
+  /** The response header carrying the next object hint. */
+  public static final String LINK_HEADER = "Link";
+
+  private final DataSource upstream;
+
+  @Nullable private Uri nextObjectUri;
+
+  /**
+   * Creates an instance.
+   *
+   * @param upstream The {@link DataSource} serving the requests.
+   */
+  public FakeCmcdEdgeDataSource(DataSource upstream) {
+    this.upstream = upstream;
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Uri uri = dataSpec.uri;
+    @Nullable
+    String cmcdRequestData = uri.getQueryParameter(CmcdConfiguration.CMCD_QUERY_PARAMETER_KEY);
+    if (cmcdRequestData != null) {
+      uri = UriUtil.removeQueryParameter(uri, CmcdConfiguration.CMCD_QUERY_PARAMETER_KEY);
+    } else {
+      cmcdRequestData = dataSpec.httpRequestHeaders.get(CmcdConfiguration.KEY_CMCD_REQUEST);
+    }
+    nextObjectUri = null;
+    if (cmcdRequestData != null) {
+      @Nullable String nextObjectRequest = null;
+      boolean hasNextRangeRequest = false;
+      for (String keyValuePair : cmcdRequestData.split(",", -1)) {
+        String[] keyAndValue = keyValuePair.trim().split("=", 2);
+        if (keyAndValue[0].equals(CmcdConfiguration.KEY_NEXT_OBJECT_REQUEST)
+            && keyAndValue.length == 2) {
+          nextObjectRequest = Uri.decode(keyAndValue[1].replace("\"", ""));
+        } else if (keyAndValue[0].equals(CmcdConfiguration.KEY_NEXT_RANGE_REQUEST)) {
+          hasNextRangeRequest = true;
+        }
+      }
+      if (nextObjectRequest != null && !hasNextRangeRequest) {
+        nextObjectUri = UriUtil.resolveToUri(uri.toString(), nextObjectRequest);
+      }
+    }
+    return upstream.open(dataSpec.withUri(uri));
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    return upstream.read(buffer, offset, length);
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    Map<String, List<String>> responseHeaders = upstream.getResponseHeaders();
+    if (nextObjectUri == null) {
+      return responseHeaders;
+    }
+    Map<String, List<String>> edgeResponseHeaders = new HashMap<>(responseHeaders);
+    edgeResponseHeaders.put(LINK_HEADER, ImmutableList.of("<" + nextObjectUri + ">; rel=preload"));
+    return edgeResponseHeaders;
+  }
+
+  @Override
+  public void close() throws IOException {
+    nextObjectUri = null;
+    upstream.close();
+  }
+}
@@ -16,6 +16,7 @@
 package androidx.media3.test.utils;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
 
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
@@ -27,7 +28,6 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import androidx.media3.extractor.TrackOutput;
 import androidx.media3.test.utils.Dumper.Dumpable;
-import com.google.common.primitives.Bytes;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -52,6 +52,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
   private final ArrayList<Dumpable> dumpables;
 
   private byte[] sampleData;
+  private int sampleDataLength;
   private int formatCount;
   private boolean receivedSampleInFormat;
 
@@ -62,6 +63,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     sampleInfos = new ArrayList<>();
     dumpables = new ArrayList<>();
     sampleData = Util.EMPTY_BYTE_ARRAY;
+    sampleDataLength = 0;
     formatCount = 0;
     receivedSampleInFormat = true;
   }
@@ -70,6 +72,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     sampleInfos.clear();
     dumpables.clear();
     sampleData = Util.EMPTY_BYTE_ARRAY;
+    sampleDataLength = 0;
     formatCount = 0;
     receivedSampleInFormat = true;
   }
@@ -97,24 +100,23 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
   public int sampleData(
       DataReader input, int length, boolean allowEndOfInput, @SampleDataPart int sampleDataPart)
       throws IOException {
-    byte[] newData = new byte[length];
-    int bytesAppended = input.read(newData, 0, length);
+    ensureSampleDataCapacity(length);
+    int bytesAppended = input.read(sampleData, sampleDataLength, length);
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
       }
       throw new EOFException();
     }
-    newData = Arrays.copyOf(newData, bytesAppended);
-    sampleData = Bytes.concat(sampleData, newData);
+    sampleDataLength += bytesAppended;
     return bytesAppended;
   }
 
   @Override
   public void sampleData(ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
-    byte[] newData = new byte[length];
-    data.readBytes(newData, 0, length);
-    sampleData = Bytes.concat(sampleData, newData);
+    ensureSampleDataCapacity(length);
+    data.readBytes(sampleData, sampleDataLength, length);
+    sampleDataLength += length;
   }
 
   @Override
@@ -135,7 +137,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
       addFormat(lastFormat);
     }
     addSampleInfo(
-        timeUs, flags, sampleData.length - offset - size, sampleData.length - offset, cryptoData);
+        timeUs, flags, sampleDataLength - offset - size, sampleDataLength - offset, cryptoData);
   }
 
   public void assertSampleCount(int count) {
@@ -186,7 +188,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
 
   @Override
   public void dump(Dumper dumper) {
-    dumper.add("total output bytes", sampleData.length);
+    dumper.add("total output bytes", sampleDataLength);
     dumper.add("sample count", sampleInfos.size());
     if (dumpables.isEmpty() && lastFormat != null) {
       new DumpableFormat(lastFormat, 0).dump(dumper);
@@ -196,6 +198,14 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     }
   }
 
+  private void ensureSampleDataCapacity(int additionalLength) {
+    int requiredLength = sampleDataLength + additionalLength;
+    if (requiredLength > sampleData.length) {
+      // Grow geometrically so that appending sample data takes amortized linear time.
+      sampleData = Arrays.copyOf(sampleData, max(requiredLength, sampleData.length * 2));
+    }
+  }
+
   private int getSampleStartOffset(int index) {
     return sampleInfos.get(index).startOffset;
   }
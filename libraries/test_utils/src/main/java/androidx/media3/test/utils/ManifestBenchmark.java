@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.utils;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Measures the performance of operations on media manifests, such as parsing an HLS playlist or
+ * merging a refreshed DASH manifest.
+ *
+ * <p>Each run creates an {@link Operation} with an {@link OperationFactory} and then runs it. Only
+ * running the operation is measured, so the factory can prepare the state the operation needs,
+ * such as the previous manifest for a refresh. The operation is run a number of times to warm up
+ * before it's run the measured number of times.
+ *
+ * <p>The allocations are those of the thread running the benchmark. They're only measured where the
+ * runtime can count allocations per thread, such as on the JVM on which Robolectric tests run.
+ *
+ * <p>Manifests of a given size can be created with {@link SyntheticManifestGenerator}.
+ */
+@UnstableApi
+public final class ManifestBenchmark {
+
+  /** An operation whose performance is measured. */
+  public interface Operation {
+
+    /** Runs the operation. */
+    void run() throws IOException;
+  }
+
+  /** Creates the {@link Operation} for each run. */
+  public interface OperationFactory {
+
+    /** Returns the {@link Operation} for the next run. */
+    Operation createOperation() throws IOException;
+  }
+
+  /** The result of a benchmark. */
+  public static final class Result {
+
+    /** The median time taken by an operation, in nanoseconds. */
+    public final long timeNs;
+
+    /**
+     * The average number of bytes allocated by an operation, or {@link C#LENGTH_UNSET} if the
+     * runtime can't count allocations.
+     */
+    public final long allocatedBytes;
+
+    private Result(long timeNs, long allocatedBytes) {
+      this.timeNs = timeNs;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return Util.formatInvariant(
+          "%.3f ms, %s allocated bytes",
+          timeNs / 1_000_000.0, allocatedBytes == C.LENGTH_UNSET ? "?" : allocatedBytes);
+    }
+  }
+
+  /** The default number of warm-up runs. */
+  public static final int DEFAULT_WARM_UP_RUNS = 5;
+
+  /** The default number of measured runs. */
+  public static final int DEFAULT_MEASURED_RUNS = 20;
+
+  private final OperationFactory operationFactory;
+
+  private int warmUpRuns;
+  private int measuredRuns;
+
+  /**
+   * Creates an instance.
+   *
+   * @param operationFactory An {@link OperationFactory} that creates the {@link Operation} to
+   *     measure.
+   */
+  public ManifestBenchmark(OperationFactory operationFactory) {
+    this.operationFactory = operationFactory;
+    warmUpRuns = DEFAULT_WARM_UP_RUNS;
+    measuredRuns = DEFAULT_MEASURED_RUNS;
+  }
+
+  /**
+   * Sets the number of times the operation is run before the measured runs. The default is {@link
+   * #DEFAULT_WARM_UP_RUNS}.
+   */
+  @CanIgnoreReturnValue
+  public ManifestBenchmark setWarmUpRuns(int warmUpRuns) {
+    checkArgument(warmUpRuns >= 0);
+    this.warmUpRuns = warmUpRuns;
+    return this;
+  }
+
+  /**
+   * Sets the number of times the operation is run while measuring. The default is {@link
+   * #DEFAULT_MEASURED_RUNS}.
+   */
+  @CanIgnoreReturnValue
+  public ManifestBenchmark setMeasuredRuns(int measuredRuns) {
+    checkArgument(measuredRuns > 0);
+    this.measuredRuns = measuredRuns;
+    return this;
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @return The {@link Result}.
+   * @throws IOException If creating or running an operation fails.
+   */
+  public Result run() throws IOException {
+    for (int i = 0; i < warmUpRuns; i++) {
+      operationFactory.createOperation().run();
+    }
+    long[] timesNs = new long[measuredRuns];
+    long totalAllocatedBytes = 0;
+    for (int i = 0; i < measuredRuns; i++) {
+      Operation operation = operationFactory.createOperation();
+      long startAllocatedBytes = BenchmarkUtil.getCurrentThreadAllocatedBytes();
+      long startTimeNs = System.nanoTime();
+      operation.run();
+      timesNs[i] = System.nanoTime() - startTimeNs;
+      long endAllocatedBytes = BenchmarkUtil.getCurrentThreadAllocatedBytes();
+      if (totalAllocatedBytes != C.LENGTH_UNSET) {
+        totalAllocatedBytes =
+            startAllocatedBytes == C.LENGTH_UNSET || endAllocatedBytes == C.LENGTH_UNSET
+                ? C.LENGTH_UNSET
+                : totalAllocatedBytes + endAllocatedBytes - startAllocatedBytes;
+      }
+    }
+    Arrays.sort(timesNs);
+    return new Result(
+        /* timeNs= */ timesNs[measuredRuns / 2],
+        /* allocatedBytes= */ totalAllocatedBytes == C.LENGTH_UNSET
+            ? C.LENGTH_UNSET
+            : totalAllocatedBytes / measuredRuns);
+  }
+}
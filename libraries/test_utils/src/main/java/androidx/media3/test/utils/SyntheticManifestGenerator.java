@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.utils;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+
+/**
+ * Generates synthetic HLS playlists and DASH manifests of a given size, for example to measure the
+ * cost of parsing and refreshing them with a {@link ManifestBenchmark}.
+ *
+ * <p>The manifests resemble those of live streams with a long DVR window. Calling a method again
+ * with a later first segment returns the manifest that a server would publish once the window has
+ * moved forward, so that refreshes can be measured.
+ */
+@UnstableApi
+public final class SyntheticManifestGenerator {
+
+  private static final String[] LANGUAGES = {"en", "es", "fr", "de", "it", "ja", "ko", "pt"};
+
+  /**
+   * Returns an HLS media playlist of a live stream.
+   *
+   * @param mediaSequence The media sequence number of the first segment.
+   * @param segmentCount The number of segments in the playlist.
+   * @param segmentDurationMs The duration of each segment, in milliseconds.
+   * @param hasEndTag Whether the playlist has an {@code #EXT-X-ENDLIST} tag.
+   * @return The playlist.
+   */
+  public static String createHlsMediaPlaylist(
+      long mediaSequence, int segmentCount, long segmentDurationMs, boolean hasEndTag) {
+    checkArgument(mediaSequence >= 0 && segmentCount > 0 && segmentDurationMs > 0);
+    StringBuilder playlist = new StringBuilder();
+    playlist
+        .append("#EXTM3U\n")
+        .append("#EXT-X-VERSION:6\n")
+        .append("#EXT-X-TARGETDURATION:")
+        .append(Util.ceilDivide(segmentDurationMs, 1000))
+        .append('\n')
+        .append("#EXT-X-MEDIA-SEQUENCE:")
+        .append(mediaSequence)
+        .append('\n')
+        .append("#EXT-X-MAP:URI=\"init.mp4\"\n");
+    String segmentDuration = Util.formatInvariant("%.3f", segmentDurationMs / 1000.0);
+    for (long sequence = mediaSequence; sequence < mediaSequence + segmentCount; sequence++) {
+      playlist
+          .append("#EXTINF:")
+          .append(segmentDuration)
+          .append(",\n")
+          .append("segment")
+          .append(sequence)
+          .append(".m4s\n");
+    }
+    if (hasEndTag) {
+      playlist.append("#EXT-X-ENDLIST\n");
+    }
+    return playlist.toString();
+  }
+
+  /**
+   * Returns an HLS multivariant playlist.
+   *
+   * <p>All variants refer to the same group of audio renditions and of subtitle renditions, in
+   * which each rendition has a different language.
+   *
+   * @param variantCount The number of variants.
+   * @param audioRenditionCount The number of audio renditions.
+   * @param subtitleRenditionCount The number of subtitle renditions.
+   * @return The playlist.
+   */
+  public static String createHlsMultivariantPlaylist(
+      int variantCount, int audioRenditionCount, int subtitleRenditionCount) {
+    checkArgument(variantCount > 0 && audioRenditionCount >= 0 && subtitleRenditionCount >= 0);
+    StringBuilder playlist = new StringBuilder();
+    playlist.append("#EXTM3U\n").append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+    for (int i = 0; i < audioRenditionCount; i++) {
+      playlist.append(
+          Util.formatInvariant(
+              "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"audio\",NAME=\"audio%d\",LANGUAGE=\"%s\","
+                  + "DEFAULT=%s,AUTOSELECT=YES,CHANNELS=\"2\",URI=\"audio%d.m3u8\"\n",
+              i, getLanguage(i), i == 0 ? "YES" : "NO", i));
+    }
+    for (int i = 0; i < subtitleRenditionCount; i++) {
+      playlist.append(
+          Util.formatInvariant(
+              "#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"subs\",NAME=\"subtitles%d\",LANGUAGE=\"%s\","
+                  + "DEFAULT=NO,AUTOSELECT=YES,URI=\"subtitles%d.m3u8\"\n",
+              i, getLanguage(i), i));
+    }
+    for (int i = 0; i < variantCount; i++) {
+      int height = 144 + (2160 - 144) * i / Math.max(1, variantCount - 1);
+      int width = height * 16 / 9;
+      long bandwidth = 200_000 + 15_800_000L * i / Math.max(1, variantCount - 1);
+      playlist.append(
+          Util.formatInvariant(
+              "#EXT-X-STREAM-INF:BANDWIDTH=%d,AVERAGE-BANDWIDTH=%d,RESOLUTION=%dx%d,"
+                  + "FRAME-RATE=30.000,CODECS=\"avc1.640028,mp4a.40.2\"",
+              bandwidth, bandwidth * 4 / 5, width, height));
+      if (audioRenditionCount > 0) {
+        playlist.append(",AUDIO=\"audio\"");
+      }
+      if (subtitleRenditionCount > 0) {
+        playlist.append(",SUBTITLES=\"subs\"");
+      }
+      playlist.append('\n').append("video").append(i).append(".m3u8\n");
+    }
+    return playlist.toString();
+  }
+
+  /**
+   * Returns a dynamic DASH manifest whose segments are listed in a {@code SegmentTimeline}.
+   *
+   * <p>The stream is divided into periods of {@code segmentCountPerPeriod} segments. The manifest
+   * lists the periods that contain the listed segments. Each period has a video adaptation set with
+   * {@code videoRepresentationCount} representations and an audio adaptation set with one
+   * representation, and each adaptation set has a timeline with an {@code S} element per segment.
+   *
+   * @param firstSegmentIndex The index of the first segment, counting from the start of the stream.
+   * @param segmentCount The number of segments in the manifest.
+   * @param segmentCountPerPeriod The number of segments in each period.
+   * @param segmentDurationMs The duration of each segment, in milliseconds.
+   * @param videoRepresentationCount The number of video representations in each period.
+   * @return The manifest.
+   */
+  public static String createDashManifest(
+      long firstSegmentIndex,
+      int segmentCount,
+      int segmentCountPerPeriod,
+      long segmentDurationMs,
+      int videoRepresentationCount) {
+    checkArgument(
+        firstSegmentIndex >= 0
+            && segmentCount > 0
+            && segmentCountPerPeriod > 0
+            && segmentDurationMs > 0
+            && videoRepresentationCount > 0);
+    StringBuilder manifest = new StringBuilder();
+    manifest
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"dynamic\"")
+        .append(" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\"")
+        .append(" availabilityStartTime=\"1970-01-01T00:00:00Z\"")
+        .append(" minimumUpdatePeriod=\"")
+        .append(formatDuration(segmentDurationMs))
+        .append("\" timeShiftBufferDepth=\"")
+        .append(formatDuration(segmentCount * segmentDurationMs))
+        .append("\" minBufferTime=\"")
+        .append(formatDuration(segmentDurationMs))
+        .append("\">\n");
+    long endSegmentIndex = firstSegmentIndex + segmentCount;
+    long periodIndex = firstSegmentIndex / segmentCountPerPeriod;
+    while (periodIndex * segmentCountPerPeriod < endSegmentIndex) {
+      long periodFirstSegmentIndex = periodIndex * segmentCountPerPeriod;
+      long periodStartMs = periodFirstSegmentIndex * segmentDurationMs;
+      manifest
+          .append("  <Period id=\"period")
+          .append(periodIndex)
+          .append("\" start=\"")
+          .append(formatDuration(periodStartMs))
+          .append("\">\n");
+      long firstListedSegmentIndex = Math.max(firstSegmentIndex, periodFirstSegmentIndex);
+      long endListedSegmentIndex =
+          Math.min(endSegmentIndex, periodFirstSegmentIndex + segmentCountPerPeriod);
+      manifest.append(
+          "    <AdaptationSet id=\"0\" contentType=\"video\" mimeType=\"video/mp4\""
+              + " segmentAlignment=\"true\">\n");
+      appendSegmentTemplate(
+          manifest,
+          firstListedSegmentIndex - periodFirstSegmentIndex,
+          endListedSegmentIndex - periodFirstSegmentIndex,
+          segmentDurationMs);
+      for (int i = 0; i < videoRepresentationCount; i++) {
+        int height = 144 + (2160 - 144) * i / Math.max(1, videoRepresentationCount - 1);
+        manifest.append(
+            Util.formatInvariant(
+                "      <Representation id=\"video%d\" bandwidth=\"%d\" width=\"%d\" height=\"%d\""
+                    + " frameRate=\"30\" codecs=\"avc1.640028\"/>\n",
+                i,
+                200_000 + 15_800_000L * i / Math.max(1, videoRepresentationCount - 1),
+                height * 16 / 9,
+                height));
+      }
+      manifest
+          .append("    </AdaptationSet>\n")
+          .append(
+              "    <AdaptationSet id=\"1\" contentType=\"audio\" mimeType=\"audio/mp4\""
+                  + " lang=\"en\" segmentAlignment=\"true\">\n");
+      appendSegmentTemplate(
+          manifest,
+          firstListedSegmentIndex - periodFirstSegmentIndex,
+          endListedSegmentIndex - periodFirstSegmentIndex,
+          segmentDurationMs);
+      manifest
+          .append(
+              "      <Representation id=\"audio\" bandwidth=\"128000\" codecs=\"mp4a.40.2\""
+                  + " audioSamplingRate=\"48000\"/>\n")
+          .append("    </AdaptationSet>\n")
+          .append("  </Period>\n");
+      periodIndex++;
+    }
+    manifest.append("</MPD>\n");
+    return manifest.toString();
+  }
+
+  private static void appendSegmentTemplate(
+      StringBuilder manifest,
+      long firstSegmentIndex,
+      long endSegmentIndex,
+      long segmentDurationMs) {
+    manifest
+        .append("      <SegmentTemplate timescale=\"1000\"")
+        .append(" initialization=\"$RepresentationID$/init.mp4\"")
+        .append(" media=\"$RepresentationID$/$Time$.m4s\">\n")
+        .append("        <SegmentTimeline>\n")
+        .append("          <S t=\"")
+        .append(firstSegmentIndex * segmentDurationMs)
+        .append("\" d=\"")
+        .append(segmentDurationMs)
+        .append("\"/>\n");
+    for (long i = firstSegmentIndex + 1; i < endSegmentIndex; i++) {
+      manifest.append("          <S d=\"").append(segmentDurationMs).append("\"/>\n");
+    }
+    manifest.append("        </SegmentTimeline>\n").append("      </SegmentTemplate>\n");
+  }
+
+  private static String formatDuration(long durationMs) {
+    return Util.formatInvariant("PT%.3fS", durationMs / 1000.0);
+  }
+
+  private static String getLanguage(int index) {
+    String language = LANGUAGES[index % LANGUAGES.length];
+    return index < LANGUAGES.length ? language : language + "-x" + index;
+  }
+
+  private SyntheticManifestGenerator() {}
+}